@@ -24,15 +24,18 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import ca.sqlpower.dao.PersistedSPOProperty;
@@ -155,6 +158,16 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 	 */
 	private final static String PERSIST_PROPERTY_METHOD_NAME = "persistProperty";
 	
+	/**
+	 * @see PersisterHelperFinder#registerHelper(String, SPPersisterHelper)
+	 */
+	private final static String REGISTER_HELPER_METHOD_NAME = "registerHelper";
+
+	/**
+	 * @see PersisterUtils#registerAllowedChildTypes(Class, List)
+	 */
+	private final static String REGISTER_ALLOWED_CHILD_TYPES_METHOD_NAME = "registerAllowedChildTypes";
+	
 	/**
 	 * The {@link AnnotationProcessorEnvironment} this
 	 * {@link AnnotationProcessor} will work with. The environment will give
@@ -192,6 +205,11 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 	public void process() {
 		Map<Class<? extends SPObject>, SPClassVisitor> visitors = new HashMap<Class<? extends SPObject>, SPClassVisitor>();
 		
+		// The classes each registry will cover, by the package of the
+		// persister helpers.
+		Multimap<String, Class<? extends SPObject>> registeredClasses = 
+			HashMultimap.create();
+		
 		for (TypeDeclaration typeDecl : environment.getTypeDeclarations()) {
 			SPClassVisitor visitor = new SPClassVisitor(typeDecl);
 			typeDecl.accept(DeclarationVisitors.getDeclarationScanner(DeclarationVisitors.NO_OP, visitor));
@@ -249,6 +267,112 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 						mutatorThrownTypes, 
 						propertiesToPersistOnlyIfNonNull);
 			}
+			registeredClasses.put(visitor.getVisitedClass().getPackage().getName() + "." + 
+					PersisterHelperFinder.GENERATED_PACKAGE_NAME, visitor.getVisitedClass());
+		}
+		
+		for (String helperPackage : registeredClasses.keySet()) {
+			generatePersisterHelperRegistryFile(helperPackage, registeredClasses.get(helperPackage));
+		}
+	}
+
+	/**
+	 * Generates the Java source file for the registry of the persister
+	 * helpers in one generated package. When the registry class is loaded it
+	 * registers one shared instance of each helper with the
+	 * {@link PersisterHelperFinder}, and the allowedChildTypes list of each
+	 * class with {@link PersisterUtils}, so neither has to load or reflect on
+	 * classes for each object that is persisted.
+	 * 
+	 * @param helperPackage
+	 *            The package the persister helpers were generated in.
+	 * @param visitedClasses
+	 *            The {@link SPObject} classes in the package that were
+	 *            visited by the annotation processor.
+	 */
+	private void generatePersisterHelperRegistryFile(String helperPackage, 
+			Collection<Class<? extends SPObject>> visitedClasses) {
+		try {
+			final String simpleClassName = PersisterHelperFinder.GENERATED_REGISTRY_CLASS_NAME;
+			
+			// Sorted by name so the generated file does not change between builds.
+			Map<String, Class<? extends SPObject>> sortedClasses = 
+				new TreeMap<String, Class<? extends SPObject>>();
+			for (Class<? extends SPObject> visitedClass : visitedClasses) {
+				sortedClasses.put(visitedClass.getName(), visitedClass);
+			}
+			
+			Filer f = environment.getFiler();
+			PrintWriter pw = f.createSourceFile(helperPackage + "." + simpleClassName);
+			
+			pw.print(generateWarning());
+			pw.print("\n");
+			pw.print(generateLicense());
+			pw.print("\n");
+			pw.print("package " + helperPackage + ";\n");
+			pw.print("\n");
+			pw.print("import " + PersisterUtils.class.getName() + ";\n");
+			pw.print("import " + PersisterHelperFinder.class.getName() + ";\n");
+			pw.print("\n");
+			
+			StringBuilder sb = new StringBuilder();
+			int tabs = 0;
+			println(sb, tabs, String.format("public final class %s {", simpleClassName));
+			tabs++;
+			niprintln(sb, "");
+			println(sb, tabs, "static {");
+			tabs++;
+			for (Class<? extends SPObject> visitedClass : sortedClasses.values()) {
+				final String className = visitedClass.getName().replaceAll("\\$", ".");
+				if (!Modifier.isAbstract(visitedClass.getModifiers())) {
+					// PersisterHelperFinder.registerHelper("<class name>", new <class>PersisterHelper());
+					println(sb, tabs, 
+							String.format("%s.%s(\"%s\", new %s());",
+									PersisterHelperFinder.class.getSimpleName(),
+									REGISTER_HELPER_METHOD_NAME,
+									visitedClass.getName(),
+									visitedClass.getSimpleName() + "PersisterHelper"));
+				}
+				if (hasPublicAllowedChildTypes(visitedClass)) {
+					// PersisterUtils.registerAllowedChildTypes(<class>.class, <class>.allowedChildTypes);
+					println(sb, tabs, 
+							String.format("%s.%s(%s.class, %s.allowedChildTypes);",
+									PersisterUtils.class.getSimpleName(),
+									REGISTER_ALLOWED_CHILD_TYPES_METHOD_NAME,
+									className,
+									className));
+				}
+			}
+			tabs--;
+			println(sb, tabs, "}");
+			niprintln(sb, "");
+			println(sb, tabs, String.format("private %s() {", simpleClassName));
+			tabs++;
+			println(sb, tabs, "// registers the helpers when it is loaded");
+			tabs--;
+			println(sb, tabs, "}");
+			tabs--;
+			println(sb, tabs, "}");
+			
+			pw.print(sb.toString());
+			pw.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns true if the given class declares its own public static
+	 * allowedChildTypes field, which the generated registry can then refer
+	 * to directly.
+	 */
+	private boolean hasPublicAllowedChildTypes(Class<? extends SPObject> visitedClass) {
+		try {
+			Field field = visitedClass.getDeclaredField("allowedChildTypes");
+			return Modifier.isPublic(field.getModifiers()) && Modifier.isStatic(field.getModifiers())
+				&& Modifier.isPublic(visitedClass.getModifiers());
+		} catch (NoSuchFieldException e) {
+			return false;
 		}
 	}
 
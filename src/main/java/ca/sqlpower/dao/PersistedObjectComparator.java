@@ -22,11 +22,12 @@ package ca.sqlpower.dao;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ca.sqlpower.object.MappedSPTree;
 import ca.sqlpower.object.SPObject;
+import ca.sqlpower.object.SPObjectUUIDIndex;
 import ca.sqlpower.util.SQLPowerUtils;
 
 /**
@@ -58,14 +59,35 @@ public class PersistedObjectComparator implements Comparator<PersistedSPObject>
 	private final Map<String, PersistedSPObject> persistedObjectsMap;
 	
 	/**
-	 * This cache provides a quick way to look up objects by UUID.
+	 * This provides a quick way to look up objects by UUID.
 	 */
-	private final Map<String, SPObject> lookupCache;
+	private final MappedSPTree lookup;
 
 	public PersistedObjectComparator(SPObject root, Map<String, PersistedSPObject> persistedObjectsMap) {
+		this(root, persistedObjectsMap, mapOf(root));
+	}
+
+	/**
+	 * @param lookup
+	 *            Finds the objects under the root by UUID, such as an
+	 *            {@link SPObjectUUIDIndex} the caller already keeps for the
+	 *            root. This saves building a map of the whole tree for each
+	 *            comparator.
+	 */
+	public PersistedObjectComparator(SPObject root, Map<String, PersistedSPObject> persistedObjectsMap,
+			MappedSPTree lookup) {
 		this.root = root;
 		this.persistedObjectsMap = persistedObjectsMap;
-		lookupCache = new HashMap<String, SPObject>(SQLPowerUtils.buildIdMap(this.root));
+		this.lookup = lookup;
+	}
+
+	private static MappedSPTree mapOf(SPObject root) {
+		final Map<String, SPObject> lookupCache = SQLPowerUtils.buildIdMap(root);
+		return new MappedSPTree() {
+			public SPObject getObjectInTree(String uuid) {
+				return lookupCache.get(uuid);
+			}
+		};
 	}
 
 	// If the two objects being compared are of the same type and are
@@ -265,12 +287,12 @@ public class PersistedObjectComparator implements Comparator<PersistedSPObject>
 	 * This section is originally taken from the SPSessionPersister and we may
 	 * need to refactor this to prevent code duplication.
 	 * <p>
-	 * This uuid lookup uses the cache created in the constructor of this class
+	 * This uuid lookup uses the lookup given in the constructor of this class
 	 * to find objects rather than iterating through the tree of objects.
 	 */
 	protected <T extends SPObject> T findByUuid(String uuid, Class<T> expectedType) {
-		if (lookupCache.get(uuid) != null) {
-			SPObject foundObject = lookupCache.get(uuid);
+		SPObject foundObject = uuid == null ? null : lookup.getObjectInTree(uuid);
+		if (foundObject != null) {
 			if (!expectedType.isAssignableFrom(foundObject.getClass())) {
 				throw new IllegalStateException("The object " + foundObject + " is not of type " + 
 						expectedType + " from the cache.");
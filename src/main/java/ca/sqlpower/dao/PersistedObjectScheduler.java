@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sqlpower.object.MappedSPTree;
+import ca.sqlpower.object.SPObject;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Works out the order to create a transaction's persisted objects in, in
+ * time linear in the number of objects apart from sorting each parent's new
+ * children. This replaces sorting the whole list with a
+ * {@link PersistedObjectComparator}, which builds the ancestor lists of both
+ * objects on every comparison.
+ * <p>
+ * The objects are put in a depth first order of the trees they form, so
+ * each object comes after its parent and each new subtree is created in
+ * full before the next. The children of each parent, and the existing
+ * objects the new subtrees hang off, are put in the order of the given
+ * comparator. Then, in the same pass:
+ * <ul>
+ * <li>objects of a type that was {@link #forceOrder(String, String) forced}
+ * after another type wait until all the objects of that other type have
+ * been placed, and their descendants wait with them;</li>
+ * <li>objects of a type that must be {@link #placeLast(String) placed last}
+ * wait until everything else has been placed.</li>
+ * </ul>
+ * Objects whose parents are neither in the transaction nor in the tree come
+ * after the others. Objects that can't be placed at all, because their
+ * parents form a cycle or because the forced orders can't all be met, come
+ * last.
+ */
+public class PersistedObjectScheduler {
+
+    /**
+     * Orders the children of the same parent and the existing objects new
+     * subtrees are added to.
+     */
+    private final Comparator<? super PersistedSPObject> siblingOrder;
+
+    /**
+     * Finds the existing objects new subtrees are added to.
+     */
+    private final MappedSPTree lookup;
+
+    /**
+     * Maps each type to the types that must be placed before it.
+     */
+    private final Multimap<String, String> mustFollow = HashMultimap.create();
+
+    private final Set<String> lastTypes = new HashSet<String>();
+
+    /**
+     * @param lookup
+     *            Finds existing objects in the tree being persisted to by
+     *            UUID.
+     * @param siblingOrder
+     *            Orders objects with the same parent, and the existing
+     *            objects that new objects are added to. A
+     *            {@link PersistedObjectComparator} gives the order of the
+     *            parents' allowed child types and then the objects' indexes.
+     */
+    public PersistedObjectScheduler(MappedSPTree lookup, Comparator<? super PersistedSPObject> siblingOrder) {
+        this.lookup = lookup;
+        this.siblingOrder = siblingOrder;
+    }
+
+    /**
+     * Places all the objects of the after type after all the objects of the
+     * before type. Both are fully qualified class names.
+     */
+    public void forceOrder(String beforeType, String afterType) {
+        mustFollow.put(afterType, beforeType);
+    }
+
+    /**
+     * Forces each key type of the given map before each of its values, as in
+     * {@link #forceOrder(String, String)}.
+     */
+    public void forceOrder(Multimap<String, String> beforeToAfterTypes) {
+        for (Map.Entry<String, String> entry : beforeToAfterTypes.entries()) {
+            forceOrder(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Places the objects of the given type after all the others.
+     */
+    public void placeLast(String type) {
+        lastTypes.add(type);
+    }
+
+    /**
+     * Returns the given objects in the order to create them.
+     */
+    public List<PersistedSPObject> schedule(Collection<PersistedSPObject> objects) {
+        Map<String, PersistedSPObject> byUUID = new HashMap<String, PersistedSPObject>();
+        for (PersistedSPObject pso : objects) {
+            byUUID.put(pso.getUUID(), pso);
+        }
+
+        // group the new objects under their parents, keeping the parents that
+        // are not new apart as the roots of the new subtrees
+        Map<String, List<PersistedSPObject>> children = new HashMap<String, List<PersistedSPObject>>();
+        Map<String, List<PersistedSPObject>> anchored = new LinkedHashMap<String, List<PersistedSPObject>>();
+        for (PersistedSPObject pso : objects) {
+            String parentUUID = pso.getParentUUID();
+            Map<String, List<PersistedSPObject>> groups =
+                (parentUUID != null && byUUID.containsKey(parentUUID)) ? children : anchored;
+            List<PersistedSPObject> group = groups.get(parentUUID);
+            if (group == null) {
+                group = new ArrayList<PersistedSPObject>();
+                groups.put(parentUUID, group);
+            }
+            group.add(pso);
+        }
+
+        List<PersistedSPObject> depthFirst = new ArrayList<PersistedSPObject>(objects.size());
+        Set<String> visited = new HashSet<String>();
+        for (String anchor : orderAnchors(anchored.keySet())) {
+            addSubtrees(anchored.get(anchor), children, depthFirst, visited);
+        }
+        // objects in parent cycles are never reached from an anchor
+        List<PersistedSPObject> unreachable = new ArrayList<PersistedSPObject>();
+        for (PersistedSPObject pso : objects) {
+            if (!visited.contains(pso.getUUID())) {
+                unreachable.add(pso);
+            }
+        }
+
+        return new Placement(byUUID, objects).place(depthFirst, unreachable);
+    }
+
+    /**
+     * Adds the given siblings and their descendants to the list in depth
+     * first order, without recursing so deep trees can't overflow the stack.
+     */
+    private void addSubtrees(List<PersistedSPObject> siblings, Map<String, List<PersistedSPObject>> children,
+            List<PersistedSPObject> depthFirst, Set<String> visited) {
+        List<PersistedSPObject> stack = new ArrayList<PersistedSPObject>();
+        pushSorted(siblings, stack);
+        while (!stack.isEmpty()) {
+            PersistedSPObject pso = stack.remove(stack.size() - 1);
+            if (!visited.add(pso.getUUID())) {
+                continue;
+            }
+            depthFirst.add(pso);
+            List<PersistedSPObject> kids = children.get(pso.getUUID());
+            if (kids != null) {
+                pushSorted(kids, stack);
+            }
+        }
+    }
+
+    private void pushSorted(List<PersistedSPObject> siblings, List<PersistedSPObject> stack) {
+        List<PersistedSPObject> sorted = new ArrayList<PersistedSPObject>(siblings);
+        Collections.sort(sorted, siblingOrder);
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            stack.add(sorted.get(i));
+        }
+    }
+
+    /**
+     * Orders the UUIDs of the parents that are not new: null first, for
+     * objects that replace the root, then the existing objects in the order
+     * of the sibling comparator, then the UUIDs that are not in the tree.
+     */
+    private List<String> orderAnchors(Collection<String> anchors) {
+        List<String> ordered = new ArrayList<String>(anchors.size());
+        final Map<PersistedSPObject, String> existing = new HashMap<PersistedSPObject, String>();
+        List<String> missing = new ArrayList<String>();
+        for (String uuid : anchors) {
+            SPObject spo = uuid == null ? null : lookup.getObjectInTree(uuid);
+            if (uuid == null) {
+                ordered.add(null);
+            } else if (spo != null) {
+                existing.put(PersisterUtils.createPersistedObjectFromSPObject(spo), uuid);
+            } else {
+                missing.add(uuid);
+            }
+        }
+        List<PersistedSPObject> sortedExisting = new ArrayList<PersistedSPObject>(existing.keySet());
+        Collections.sort(sortedExisting, siblingOrder);
+        for (PersistedSPObject pso : sortedExisting) {
+            ordered.add(existing.get(pso));
+        }
+        ordered.addAll(missing);
+        return ordered;
+    }
+
+    /**
+     * Places objects in one pass over the depth first order, holding back
+     * the ones that have to wait for something and releasing them as soon as
+     * it happens.
+     */
+    private class Placement {
+        private final Map<String, PersistedSPObject> byUUID;
+        private final List<PersistedSPObject> placed;
+        private final Set<String> placedUUIDs = new HashSet<String>();
+
+        /**
+         * The number of objects of each type that other types must follow
+         * still to be placed.
+         */
+        private final Map<String, Integer> remaining = new HashMap<String, Integer>();
+
+        /**
+         * The objects held back, by what they are waiting for: "uuid:" and
+         * the UUID of an object, "type:" and a type, or "last".
+         */
+        private final Multimap<String, PersistedSPObject> waiting = ArrayListMultimap.create();
+
+        private boolean placingLast;
+
+        Placement(Map<String, PersistedSPObject> byUUID, Collection<PersistedSPObject> objects) {
+            this.byUUID = byUUID;
+            placed = new ArrayList<PersistedSPObject>(objects.size());
+            Set<String> typesFollowed = new HashSet<String>(mustFollow.values());
+            for (PersistedSPObject pso : objects) {
+                if (typesFollowed.contains(pso.getType())) {
+                    Integer count = remaining.get(pso.getType());
+                    remaining.put(pso.getType(), count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        List<PersistedSPObject> place(List<PersistedSPObject> depthFirst, List<PersistedSPObject> unreachable) {
+            for (PersistedSPObject pso : depthFirst) {
+                offer(pso);
+            }
+            placingLast = true;
+            release("last");
+
+            // anything still waiting can't have what it waits for
+            Set<PersistedSPObject> stuck = new HashSet<PersistedSPObject>(waiting.values());
+            for (PersistedSPObject pso : depthFirst) {
+                if (stuck.contains(pso)) {
+                    placed.add(pso);
+                }
+            }
+            placed.addAll(unreachable);
+            return placed;
+        }
+
+        private void offer(PersistedSPObject pso) {
+            String blocker = findBlocker(pso);
+            if (blocker == null) {
+                place(pso);
+            } else {
+                waiting.put(blocker, pso);
+            }
+        }
+
+        private String findBlocker(PersistedSPObject pso) {
+            String parentUUID = pso.getParentUUID();
+            if (parentUUID != null && byUUID.containsKey(parentUUID) && !placedUUIDs.contains(parentUUID)) {
+                return "uuid:" + parentUUID;
+            }
+            for (String before : mustFollow.get(pso.getType())) {
+                Integer count = remaining.get(before);
+                if (count != null && count > 0 && !before.equals(pso.getType())) {
+                    return "type:" + before;
+                }
+            }
+            if (!placingLast && lastTypes.contains(pso.getType())) {
+                return "last";
+            }
+            return null;
+        }
+
+        private void place(PersistedSPObject pso) {
+            placed.add(pso);
+            placedUUIDs.add(pso.getUUID());
+            Integer count = remaining.get(pso.getType());
+            if (count != null) {
+                remaining.put(pso.getType(), count - 1);
+                if (count == 1) {
+                    release("type:" + pso.getType());
+                }
+            }
+            release("uuid:" + pso.getUUID());
+        }
+
+        private void release(String key) {
+            if (!waiting.containsKey(key)) {
+                return;
+            }
+            for (PersistedSPObject pso : new ArrayList<PersistedSPObject>(waiting.removeAll(key))) {
+                offer(pso);
+            }
+        }
+    }
+}
@@ -31,12 +31,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.imageio.ImageIO;
 
 import com.google.common.collect.Multimap;
 
 import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.helper.PersisterHelperFinder;
 import ca.sqlpower.dao.session.BidirectionalConverter;
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.object.SPObject;
@@ -47,6 +50,82 @@ import ca.sqlpower.sqlobject.SQLObject;
  * Utilities that are used by {@link SPPersister}s. 
  */
 public class PersisterUtils {
+
+	/**
+	 * The allowed child types of a parent class, along with the answers to
+	 * the questions the persisters ask about them. The allowed child type
+	 * lists never change once their class is loaded, so each answer only has
+	 * to be worked out once.
+	 */
+	private static class ChildTypeTable {
+		
+		private final List<Class<? extends SPObject>> allowedChildTypes;
+		
+		/**
+		 * Child classes to the index of the first allowed type they are
+		 * assignable to, or -1.
+		 */
+		private final ConcurrentMap<Class<?>, Integer> positions = 
+			new ConcurrentHashMap<Class<?>, Integer>();
+		
+		/**
+		 * Child classes to the index of their allowed type, preferring the
+		 * class itself over its first assignable type, or -1.
+		 */
+		private final ConcurrentMap<Class<?>, Integer> parentAllowedTypes = 
+			new ConcurrentHashMap<Class<?>, Integer>();
+		
+		ChildTypeTable(List<Class<? extends SPObject>> allowedChildTypes) {
+			this.allowedChildTypes = allowedChildTypes;
+		}
+		
+		int getTypePosition(Class<?> childType) {
+			Integer position = positions.get(childType);
+			if (position == null) {
+				position = firstAssignable(childType);
+				positions.put(childType, position);
+			}
+			return position;
+		}
+		
+		Class<? extends SPObject> getParentAllowedChildType(Class<?> childType) {
+			Integer position = parentAllowedTypes.get(childType);
+			if (position == null) {
+				position = allowedChildTypes.indexOf(childType);
+				if (position == -1) {
+					position = firstAssignable(childType);
+				}
+				parentAllowedTypes.put(childType, position);
+			}
+			return position == -1 ? null : allowedChildTypes.get(position);
+		}
+		
+		private int firstAssignable(Class<?> childType) {
+			for (int i = 0; i < allowedChildTypes.size(); i++) {
+				if (allowedChildTypes.get(i).isAssignableFrom(childType)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+	
+	/**
+	 * The child type tables of the parent classes seen so far. Tables are
+	 * added by the generated persister helper registries through
+	 * {@link #registerAllowedChildTypes(Class, List)} or, for classes they do
+	 * not cover, by reading the allowedChildTypes field reflectively once.
+	 */
+	private static final ConcurrentMap<Class<?>, ChildTypeTable> childTypeTables = 
+		new ConcurrentHashMap<Class<?>, ChildTypeTable>();
+	
+	/**
+	 * The classes the persisters have named so far, so persisting an object
+	 * does not have to go through the class loader for its type and its
+	 * parent's type each time.
+	 */
+	private static final ConcurrentMap<String, Class<?>> classesByName = 
+		new ConcurrentHashMap<String, Class<?>>();
 	
 	private PersisterUtils() {
 		//cannot instantiate this class as it is just static utility methods.
@@ -275,21 +354,11 @@ public class PersisterUtils {
      * returned, depending if it is the first. If the childType is not a
      * valid child type of the parentType -1 will be returned.
      */
-    @SuppressWarnings("unchecked")
     public static int getTypePosition(String childClassName, String parentClassName) 
             throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException, ClassNotFoundException {
-        Class<? extends SPObject> childType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(childClassName);
-        Class<? extends SPObject> parentType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(parentClassName);
-        
-        List<Class<? extends SPObject>> allowedChildTypes = (List<Class<? extends SPObject>>) 
-            parentType.getDeclaredField("allowedChildTypes").get(null);
-        for (int i = 0; i < allowedChildTypes.size(); i++) {
-            Class<? extends SPObject> allowedType = allowedChildTypes.get(i);
-            if (allowedType.isAssignableFrom(childType)) {
-                return i;
-            }
-        }
-        return -1;
+        Class<?> childType = loadClass(childClassName);
+        Class<?> parentType = loadClass(parentClassName);
+        return getChildTypeTable(parentType).getTypePosition(childType);
     }
 
     /**
@@ -302,42 +371,81 @@ public class PersisterUtils {
     @SuppressWarnings("unchecked")
     public static Class<? extends SPObject> getParentAllowedChildType(String childClassName, String parentClassName) 
             throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException, ClassNotFoundException {
-        Class<? extends SPObject> childType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(childClassName);
+        Class<? extends SPObject> childType = (Class<? extends SPObject>) loadClass(childClassName);
         
         if (parentClassName == null || parentClassName.trim().length() == 0) {
             return childType;
         }
         
-        Class<? extends SPObject> parentType = (Class<? extends SPObject>) PersisterUtils.class.getClassLoader().loadClass(parentClassName);
-        return getParentAllowedChildType(childType, parentType);
+        Class<?> parentType = loadClass(parentClassName);
+        return getChildTypeTable(parentType).getParentAllowedChildType(childType);
     }
 
-	@SuppressWarnings("unchecked")
 	public static Class<? extends SPObject> getParentAllowedChildType(
 			Class<? extends SPObject> childType,
 			Class<? extends SPObject> parentType)
 			throws IllegalAccessException, NoSuchFieldException {
-		List<Class<? extends SPObject>> allowedChildTypes = (List<Class<? extends SPObject>>) 
-            parentType.getDeclaredField("allowedChildTypes").get(null);
-        if (allowedChildTypes.contains(childType)) return childType;
-        for (int i = 0; i < allowedChildTypes.size(); i++) {
-            Class<? extends SPObject> allowedType = allowedChildTypes.get(i);
-            if (allowedType.isAssignableFrom(childType)) {
-                return allowedType;
-            }
-        }
-        return null;
+		return getChildTypeTable(parentType).getParentAllowedChildType(childType);
 	}
     
     /**
      * A way to get the allowed child list from a class object that is an SPObject.
      */
-    @SuppressWarnings("unchecked")
     public static List<Class<? extends SPObject>> getAllowedChildTypes(Class<? extends SPObject> parentClass) 
     		throws IllegalArgumentException, SecurityException, IllegalAccessException, NoSuchFieldException {
-		return (List<Class<? extends SPObject>>) parentClass.getDeclaredField("allowedChildTypes").get(null);
+		return getChildTypeTable(parentClass).allowedChildTypes;
     }
 
+	/**
+	 * Registers the allowed child types of the given class so they do not
+	 * have to be read reflectively. This is called by the registry classes
+	 * generated alongside the persister helpers.
+	 */
+	public static void registerAllowedChildTypes(Class<? extends SPObject> parentClass, 
+			List<Class<? extends SPObject>> allowedChildTypes) {
+		if (!childTypeTables.containsKey(parentClass)) {
+			childTypeTables.putIfAbsent(parentClass, new ChildTypeTable(allowedChildTypes));
+		}
+	}
+
+	/**
+	 * Returns the child type table of the given parent class, building it on
+	 * first use. The generated registry of the class's package is given the
+	 * chance to register it before its allowedChildTypes field is read
+	 * reflectively.
+	 */
+	@SuppressWarnings("unchecked")
+	private static ChildTypeTable getChildTypeTable(Class<?> parentType) 
+			throws IllegalAccessException, NoSuchFieldException {
+		ChildTypeTable table = childTypeTables.get(parentType);
+		if (table != null) return table;
+		
+		if (parentType.getPackage() != null 
+				&& PersisterHelperFinder.loadGeneratedRegistry(parentType.getPackage().getName())) {
+			table = childTypeTables.get(parentType);
+			if (table != null) return table;
+		}
+		
+		List<Class<? extends SPObject>> allowedChildTypes = (List<Class<? extends SPObject>>) 
+			parentType.getDeclaredField("allowedChildTypes").get(null);
+		table = new ChildTypeTable(allowedChildTypes);
+		ChildTypeTable existing = childTypeTables.putIfAbsent(parentType, table);
+		return existing != null ? existing : table;
+	}
+
+	/**
+	 * Loads the class of the given name with this class's class loader,
+	 * remembering it for the next time it is asked for.
+	 */
+	private static Class<?> loadClass(String className) throws ClassNotFoundException {
+		Class<?> type = classesByName.get(className);
+		if (type == null) {
+			type = PersisterUtils.class.getClassLoader().loadClass(className);
+			classesByName.put(className, type);
+		}
+		return type;
+	}
+
     /**
      * Returns true if there is a boolean property persisted on the given UUID
      * with the given property name and the property is being set to true.
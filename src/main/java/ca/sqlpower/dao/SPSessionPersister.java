@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,10 +40,12 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.dao.helper.PersisterHelperFinder;
 import ca.sqlpower.dao.helper.SPPersisterHelper;
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.MappedSPTree;
 import ca.sqlpower.object.ObjectDependentException;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
 import ca.sqlpower.object.SPObject;
+import ca.sqlpower.object.SPObjectUUIDIndex;
 import ca.sqlpower.sqlobject.SQLCatalog;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
@@ -103,12 +106,22 @@ public abstract class SPSessionPersister implements SPPersister {
 		new LinkedList<PersistedSPObject>();
 
 	/**
-	 * This map stores values looked up by findByUUID and allows them to be
-	 * looked up faster to improve performance. This cache should be cleared
-	 * regularly before and after each transaction so the values in it stay
-	 * consistent with what actually exists in the client model.
+	 * Finds the objects under the {@link #root} by UUID for findByUuid. It
+	 * listens to the tree to stay up to date, so it is kept between
+	 * transactions. It is built the first time an object is looked up, and
+	 * thrown away by {@link #clearUUIDCache()} and {@link #cleanup()}.
 	 */
-	private final Map<String, SPObject> lookupCache = new HashMap<String, SPObject>();
+	private SPObjectUUIDIndex uuidIndex;
+
+	/**
+	 * Looks objects up through {@link #findByUuid(SPObject, String, Class)}
+	 * for the converter while in a transaction.
+	 */
+	private final MappedSPTree uuidLookup = new MappedSPTree() {
+		public SPObject getObjectInTree(String uuid) {
+			return findByUuid(root, uuid, SPObject.class);
+		}
+	};
 	
 	/**
 	 * This map allows for fast lookups of persisted objects by their UUID.
@@ -354,8 +367,7 @@ public abstract class SPSessionPersister implements SPPersister {
 		synchronized (getWorkspaceContainer()) {
 			enforceThreadSafety();
 			if (transactionCount == 0) {
-				lookupCache.clear();
-				converter.setUUIDCache(lookupCache);
+				converter.setUUIDIndex(uuidLookup);
 			}
 			transactionCount++;
 			
@@ -429,8 +441,7 @@ public abstract class SPSessionPersister implements SPPersister {
 							persistedObjectsRollbackList.clear();
 							persistedProperties.clear();
 							persistedPropertiesRollbackList.clear();
-							lookupCache.clear();
-							converter.removeUUIDCache();
+							converter.setUUIDIndex(null);
 							currentThread = null;
 						}
 					}
@@ -699,8 +710,8 @@ public abstract class SPSessionPersister implements SPPersister {
 				persistedObjectsRollbackList.clear();
 				persistedProperties.clear();
 				persistedPropertiesRollbackList.clear();
-				lookupCache.clear();
-				converter.removeUUIDCache();
+				clearUUIDCache();
+				converter.setUUIDIndex(null);
 				transactionCount = 0;
 				currentThread = null;
 				headingToWisconsin = false;
@@ -760,11 +771,6 @@ public abstract class SPSessionPersister implements SPPersister {
 				parent.removeChild(spo);
 				// Add spo and hierarchy of its children to the remove-roll-back-list
 				removeRollBackList(spo, parent, index);
-				
-				Set<String> removedKeys = SQLPowerUtils.buildIdMap(spo).keySet();
-				for (String removedKey : removedKeys) {
-					lookupCache.remove(removedKey);
-				}
 			} catch (IllegalArgumentException e) {
 				throw new SPPersistenceException(removeEntry.getKey(), e);
 			} catch (ObjectDependentException e) {
@@ -788,48 +794,34 @@ public abstract class SPSessionPersister implements SPPersister {
 	 * @throws SPPersistenceException
 	 */
 	protected void commitObjects() throws SPPersistenceException {
-		Collections.sort(persistedObjects, getComparator());
-		
-		if (!forcedOrderList.isEmpty()) {
-			//The last position in the persisted objects list where this class type exists.
-			Map<String, Integer> classInsertPoint = new HashMap<String, Integer>();
-			//The classes we need to move based on the parent class that is closest to the end of the list.
-			Map<String, String> moveClasses = new HashMap<String, String>();
-			//The objects we need to move based on the above maps and the forcedOrderList
-			List<PersistedSPObject> objectsToMove = new ArrayList<PersistedSPObject>();
-			for (int i = persistedObjects.size() - 1; i >= 0; i--) {
-				String persistType = persistedObjects.get(i).getType();
-				if (forcedOrderList.containsKey(persistType) && !classInsertPoint.containsKey(persistType)) {
-					classInsertPoint.put(persistType, i);
-					for (String clazz : forcedOrderList.get(persistType)) {
-						if (!moveClasses.containsKey(clazz)) {
-							moveClasses.put(clazz, persistType);
-						}
-					}
-				}
-				if (moveClasses.containsKey(persistType)) {
-					objectsToMove.add(persistedObjects.get(i));
-				}
-			}
-
-			for (PersistedSPObject moveMe : objectsToMove) {
-				String parentType = moveClasses.get(moveMe.getType());
-				Integer parentPoint = classInsertPoint.get(parentType);
-				persistedObjects.remove(moveMe);
-				persistedObjects.add(parentPoint, moveMe);
-			}
-		}
+		List<PersistedSPObject> ordered = getScheduler().schedule(persistedObjects);
+		persistedObjects.clear();
+		persistedObjects.addAll(ordered);
 		
 		commitSortedObjects();
 	}
 	
+	/**
+	 * Returns the scheduler that puts the {@link PersistedSPObject} events in
+	 * the order to create the objects in. Its order puts parents before their
+	 * children, orders siblings by {@link #getComparator()}, honours the
+	 * orders given to {@link #forcePersistOrder(Class, Class)} and puts
+	 * imported keys after the relationships they belong to.
+	 */
+	protected PersistedObjectScheduler getScheduler() {
+		PersistedObjectScheduler scheduler = new PersistedObjectScheduler(uuidLookup, getComparator());
+		scheduler.forceOrder(forcedOrderList);
+		scheduler.placeLast(SQLRelationship.SQLImportedKey.class.getName());
+		return scheduler;
+	}
+
 	/**
 	 * Returns a comparator that can be used to sort the
 	 * {@link PersistedSPObject} events so the objects in the tree are created
 	 * in an order that does not cause them to cause exceptions.
 	 */
 	protected Comparator<? super PersistedSPObject> getComparator() {
-		return new PersistedObjectComparator(root, persistedObjectsMap);
+		return new PersistedObjectComparator(root, persistedObjectsMap, uuidLookup);
 	}
 
 	/**
@@ -842,12 +834,13 @@ public abstract class SPSessionPersister implements SPPersister {
 		// importedKeys must be persisted after relationships. This is a bit of a ridiculous hack, so
 		// we may want to change it!
 		List<PersistedSPObject> rImportedKeys = new ArrayList<PersistedSPObject>();
-		for (int i = 0; i < persistedObjects.size(); i++) {
-			if (persistedObjects.get(i).getType().equals(SQLRelationship.SQLImportedKey.class.getName())) {
-				rImportedKeys.add(persistedObjects.get(i));
+		for (Iterator<PersistedSPObject> it = persistedObjects.iterator(); it.hasNext(); ) {
+			PersistedSPObject pso = it.next();
+			if (pso.getType().equals(SQLRelationship.SQLImportedKey.class.getName())) {
+				rImportedKeys.add(pso);
+				it.remove();
 			}
 		}
-		persistedObjects.removeAll(rImportedKeys);
 		persistedObjects.addAll(rImportedKeys);
 		// --------------------------------------------------------------------------------------------
 		
@@ -860,9 +853,9 @@ public abstract class SPSessionPersister implements SPPersister {
 			SPObject spo = null;
 			
 			if (parent == null && pso.getType().equals(root.getClass().getName())) {
-				lookupCache.clear();
+				clearUUIDCache();
                 refreshRootNode(pso);
-                lookupCache.clear();
+                clearUUIDCache();
                 continue;
             } else if (parent == null) {
                 throw new IllegalStateException("Missing parent with uuid " + pso.getParentUUID() + 
@@ -970,7 +963,6 @@ public abstract class SPSessionPersister implements SPPersister {
 								new PersistedObjectEntry(
 										parent.getUUID(), 
 										spo.getUUID()));
-						lookupCache.putAll(SQLPowerUtils.buildIdMap(spo));
 					} catch (RuntimeException e) {
 						if (parent.getChildren().contains(spo)) {
 							try {
@@ -1497,27 +1489,53 @@ public abstract class SPSessionPersister implements SPPersister {
 		persister.setPersistedProperties(properties);
 		persister.setObjectsToRemove(objToRmv);
 
-		persister.begin();
-		persister.commit();
+		try {
+			persister.begin();
+			persister.commit();
+		} finally {
+			persister.clearUUIDCache();
+		}
 	}
 	
+	/**
+	 * Stops this persister listening to the objects under its root. Call
+	 * this when the persister is discarded; until then the tree keeps it
+	 * reachable. The persister can still be used afterwards, but it will
+	 * start listening to the tree again the next time it looks an object up.
+	 */
+	public void cleanup() {
+		clearUUIDCache();
+	}
+
+	/**
+	 * Throws away the index of the objects under the root, so it is built
+	 * again the next time an object is looked up. Call this after changing
+	 * the tree in a way that does not fire events.
+	 */
 	protected void clearUUIDCache() {
-		lookupCache.clear();
+		if (uuidIndex != null) {
+			uuidIndex.cleanup();
+			uuidIndex = null;
+		}
 	}
-	
+
+	/**
+	 * Finds the object under this persister's root with the given UUID, or
+	 * returns null if there isn't one. The root given is ignored; objects are
+	 * looked up in an index of this persister's root.
+	 */
 	protected <T extends SPObject> T findByUuid(SPObject root, String uuid, Class<T> expectedType) {
-		if (lookupCache.get(uuid) != null) {
-			SPObject foundObject = lookupCache.get(uuid);
-			if (!expectedType.isAssignableFrom(foundObject.getClass())) {
-				throw new IllegalStateException("The object " + foundObject + " is not of type " + 
-						expectedType + " from the cache.");
-			}
-			return expectedType.cast(foundObject);
+		if (uuid == null || uuid.trim().isEmpty()) return null;
+		if (uuidIndex == null) {
+			uuidIndex = new SPObjectUUIDIndex(this.root);
 		}
-		if (uuid == null || uuid.trim().isEmpty() || !lookupCache.isEmpty()) return null;
-		
-		lookupCache.putAll(SQLPowerUtils.buildIdMap(this.root));
-		return expectedType.cast(lookupCache.get(uuid));
+		SPObject foundObject = uuidIndex.getObjectInTree(uuid);
+		if (foundObject == null) return null;
+		if (!expectedType.isAssignableFrom(foundObject.getClass())) {
+			throw new IllegalStateException("The object " + foundObject + " is not of type " + 
+					expectedType + " from the cache.");
+		}
+		return expectedType.cast(foundObject);
 	}
 	
 	public void setDisableMagic(boolean disableMagic) {
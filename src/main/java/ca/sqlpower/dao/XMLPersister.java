@@ -4,12 +4,17 @@
 
 package ca.sqlpower.dao;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Stack;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.ProgressMonitor;
 
@@ -24,6 +29,13 @@ import ca.sqlpower.util.SQLPowerUtils;
  * children come before its siblings. This persister also does not support
  * incremental changes. Once the workspace is committed, this persister will
  * close.
+ * <p>
+ * The XML is written to the output stream as the persist calls come in,
+ * through a buffer, so the size of the workspace does not limit what can be
+ * saved. Because of this a rollback cannot take back what has already been
+ * written; it only stops anything more from being written. Callers that must
+ * not leave a partial file behind should write to a temporary file and
+ * replace the real one once the commit succeeds.
  */
 public class XMLPersister implements SPPersister {
 
@@ -39,9 +51,28 @@ public class XMLPersister implements SPPersister {
 	
 	private final Stack<String> currentType = new Stack<String>();
 	
-	private final PrintWriter out;
+	/**
+	 * The size of the buffers between the persist calls and the output
+	 * stream.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private final Writer out;
 	
-	private final ByteArrayOutputStream bufferedOut;
+	/**
+	 * The buffer in front of the output stream given to this persister. It is
+	 * flushed on the last commit but, like the stream, never closed.
+	 */
+	private final BufferedOutputStream bufferedOut;
+	
+	/**
+	 * Compresses the output, or null if it is written uncompressed.
+	 */
+	private final GZIPOutputStream compressedOut;
 
 	/**
 	 * The fully qualified class name of the object that is the root of the tree of objects being
@@ -51,20 +82,52 @@ public class XMLPersister implements SPPersister {
 	
 	private int transactionCount = 0;
 
-	private final OutputStream finalOut;
-
+	/**
+	 * Shows how many objects have been written. Its maximum should be set to
+	 * the number of objects that will be persisted by whoever creates it.
+	 */
 	private final ProgressMonitor pm;
 	
 	private int progress = 0;
+	
+	/**
+	 * Set once the persist calls have been rolled back. Nothing more is
+	 * written after this.
+	 */
+	private boolean rolledBack = false;
 
 	public XMLPersister(OutputStream out, String rootObject, String projectTag) {
 		this(out, rootObject, projectTag, null);
 	}
 	
 	public XMLPersister(OutputStream out, String rootObject, String projectTag, ProgressMonitor pm) {
-		bufferedOut = new ByteArrayOutputStream();
-		this.out = new PrintWriter(bufferedOut);
-		this.finalOut = out;
+		this(out, rootObject, projectTag, pm, false);
+	}
+
+	/**
+	 * @param pm
+	 *            Shows progress in the number of objects written. Its maximum
+	 *            should be set to the number of objects that will be
+	 *            persisted. Can be null.
+	 * @param compress
+	 *            If true the XML is gzip compressed as it is written.
+	 */
+	public XMLPersister(OutputStream out, String rootObject, String projectTag, ProgressMonitor pm, 
+			boolean compress) {
+		bufferedOut = new BufferedOutputStream(out, BUFFER_SIZE);
+		OutputStream xmlOut = bufferedOut;
+		if (compress) {
+			try {
+				compressedOut = new GZIPOutputStream(bufferedOut, BUFFER_SIZE);
+			} catch (IOException e) {
+				// The header only goes into the buffer so this should not happen.
+				throw new RuntimeException(e);
+			}
+			xmlOut = compressedOut;
+		} else {
+			compressedOut = null;
+		}
+		this.out = new BufferedWriter(new OutputStreamWriter(xmlOut, UTF_8), BUFFER_SIZE);
 		this.rootObject = rootObject;
 		this.pm = pm;
 		PROJECT_TAG = projectTag;
@@ -73,8 +136,8 @@ public class XMLPersister implements SPPersister {
 	@Override
 	public void begin() throws SPPersistenceException {
 		if (transactionCount == 0) {
-			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-			out.println("<" + PROJECT_TAG + " file-version=\"" + upgradePersisterManager.getStateVersion() + "\">");
+			println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			println("<" + PROJECT_TAG + " file-version=\"" + upgradePersisterManager.getStateVersion() + "\">");
 		}
 		transactionCount++;
 	}
@@ -85,26 +148,21 @@ public class XMLPersister implements SPPersister {
 		if (transactionCount == 0) {
 			while (!currentType.isEmpty()) {
 				currentObject.pop();
-				out.println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
+				println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
 			}
-			out.println("</" + PROJECT_TAG + ">");
-			out.flush();
+			println("</" + PROJECT_TAG + ">");
 			try {
-				byte[] byteArray = bufferedOut.toByteArray();
-				if (pm != null) {
-					pm.setMaximum(byteArray.length);
-				}
-				for (int i = 0; i < byteArray.length; i++) {
-					finalOut.write(byteArray[i]);
-					if (pm != null) {
-						pm.setProgress(++progress);
-					}
+				out.flush();
+				if (compressedOut != null) {
+					compressedOut.finish();
 				}
-		    	
-				finalOut.flush();
+				bufferedOut.flush();
 			} catch (IOException e) {
 				throw new SPPersistenceException(null, e);
 			}
+			if (pm != null) {
+				pm.setProgress(pm.getMaximum());
+			}
 		}
 	}
 
@@ -115,7 +173,7 @@ public class XMLPersister implements SPPersister {
 		if (parentUUID == null) parentUUID = "";
 		while (!currentObject.isEmpty() && !parentUUID.equals(currentObject.peek())) {
 			currentObject.pop();
-			out.println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
+			println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
 		}
 		if (currentObject.isEmpty()) {
 			if (!type.equals(rootObject)) {
@@ -130,9 +188,12 @@ public class XMLPersister implements SPPersister {
 					+ "] was persisted while the current object was ["
 					+ currentObject.peek() + "]");
 		}
-		out.println(tab() + "<" + type.replace("$", "..") + " UUID=\"" + SQLPowerUtils.escapeXML(uuid) + "\" index=\"" + index + "\">");
+		println(tab() + "<" + type.replace("$", "..") + " UUID=\"" + SQLPowerUtils.escapeXML(uuid) + "\" index=\"" + index + "\">");
 		currentObject.push(uuid);
 		currentType.push(type);
+		if (pm != null) {
+			pm.setProgress(++progress);
+		}
 	}
 
 	@Override
@@ -157,21 +218,21 @@ public class XMLPersister implements SPPersister {
 							+ currentObject.peek() + "]");
 		}
 		if (propertyType != DataType.NULL && newValue != null) {
-			out.print(tab() + "<property name=\"" + SQLPowerUtils.escapeNewLines(SQLPowerUtils.escapeXML(propertyName)) + "\" type=\"" + propertyType.toString() + "\"");
+			print(tab() + "<property name=\"" + SQLPowerUtils.escapeNewLines(SQLPowerUtils.escapeXML(propertyName)) + "\" type=\"" + propertyType.toString() + "\"");
 			if (propertyType == DataType.PNG_IMG) {
 				try {
-					out.print(" value=\"");
+					print(" value=\"");
 					ByteArrayOutputStream data = new ByteArrayOutputStream();
 					SQLPowerUtils.copyStream((InputStream) newValue, data);
 					byte[] bytes = data.toByteArray();
 					byte[] base64Bytes = Base64.encodeBase64(bytes);
-					out.print(new String(base64Bytes));
-					out.println("\"/>");
+					print(new String(base64Bytes, UTF_8));
+					println("\"/>");
 				} catch (IOException e) {
 					throw new SPPersistenceException(uuid, e);
 				}
 			} else {
-				out.println(" value=\"" + SQLPowerUtils.escapeXML(newValue.toString()) + "\"/>");
+				println(" value=\"" + SQLPowerUtils.escapeXML(newValue.toString()) + "\"/>");
 			}
 		}
 	}
@@ -182,9 +243,31 @@ public class XMLPersister implements SPPersister {
 		throw new UnsupportedOperationException("This persister does not support incremental updates");
 	}
 
+	/**
+	 * Stops this persister from writing anything more. What has already been
+	 * written to the output stream stays there, but whatever is still in this
+	 * persister's buffers is never flushed to it.
+	 */
 	@Override
 	public void rollback() {
-		
+		rolledBack = true;
+		transactionCount = 0;
+	}
+	
+	private void print(String s) throws SPPersistenceException {
+		if (rolledBack) {
+			throw new SPPersistenceException(null, "This persister has been rolled back");
+		}
+		try {
+			out.write(s);
+		} catch (IOException e) {
+			throw new SPPersistenceException(null, e);
+		}
+	}
+	
+	private void println(String s) throws SPPersistenceException {
+		print(s);
+		print(LINE_SEPARATOR);
 	}
 	
 	private String tab() {
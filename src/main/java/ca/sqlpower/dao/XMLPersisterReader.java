@@ -4,92 +4,436 @@
 
 package ca.sqlpower.dao;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Stack;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
-import org.apache.xerces.parsers.SAXParser;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 import ca.sqlpower.dao.SPPersister.DataType;
 import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
 import ca.sqlpower.util.SQLPowerUtils;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Reads the XML written by an {@link XMLPersister} and makes the persist
+ * calls it describes on a target {@link SPPersister}, upgrading the file
+ * through the {@link UpgradePersisterManager} first if it was written by an
+ * older version.
+ * <p>
+ * The file is read with a pull parser and each object and property is passed
+ * on as soon as it is read, in document order, so the reader itself only
+ * holds the path from the root to the current object. A target that collects
+ * everything it is sent until the final commit, such as an
+ * {@link SPSessionPersister}, can be kept from holding the whole file at once
+ * by giving this reader a commit batch size.
+ */
 public class XMLPersisterReader {
 
 	private static final Logger logger = Logger
 			.getLogger(XMLPersisterReader.class);
 	
+	/**
+	 * The first two bytes of a gzip stream.
+	 */
+	private static final int GZIP_MAGIC = 0x8b1f;
+	
+	private static final String PROPERTY_TAG = "property";
+	
+	private static XMLInputFactory inputFactory;
+	
+	/**
+	 * The XML to read, or null if it is read from {@link #inStream}.
+	 */
 	private final Reader in;
+	
+	/**
+	 * The XML to read, possibly gzip compressed, or null if it is read from
+	 * {@link #in}.
+	 */
+	private final InputStream inStream;
+	
 	private final SPPersister target;
 	private SPPersister upgradeTarget;
 	private UpgradePersisterManager upgradePersisterManager;
 	
+	/**
+	 * The number of objects to send the target in each transaction, or 0 to
+	 * send the whole file in one transaction.
+	 */
+	private int commitBatchSize = 0;
+	
+	/**
+	 * The fully qualified class names of the objects that are held back until
+	 * the last transaction when the file is read in batches.
+	 */
+	private final Set<String> heldBackTypes = new HashSet<String>();
+	
 	public final String PROJECT_TAG;
 
 	public XMLPersisterReader(Reader in, SPPersister target, UpgradePersisterManager upgradePersisterManager, String projectTag) {
 		this.in = in;
+		this.inStream = null;
+		this.target = target;
+		this.upgradePersisterManager = upgradePersisterManager;
+		this.PROJECT_TAG = projectTag;
+		holdBackUntilLastBatch(SQLRelationship.class);
+		holdBackUntilLastBatch(SQLImportedKey.class);
+	}
+
+	/**
+	 * Creates a reader for XML in a byte stream. The stream may be gzip
+	 * compressed, as written by an {@link XMLPersister} created to compress
+	 * its output, and its character encoding is taken from the XML
+	 * declaration.
+	 */
+	public XMLPersisterReader(InputStream in, SPPersister target, UpgradePersisterManager upgradePersisterManager, String projectTag) {
+		this.in = null;
+		this.inStream = in;
 		this.target = target;
 		this.upgradePersisterManager = upgradePersisterManager;
 		this.PROJECT_TAG = projectTag;
+		holdBackUntilLastBatch(SQLRelationship.class);
+		holdBackUntilLastBatch(SQLImportedKey.class);
+	}
+
+	/**
+	 * Sets the number of objects sent to the target in each transaction. When
+	 * the count is reached the transaction is committed before the next
+	 * object is sent and a new one is begun, so a target that holds on to
+	 * everything until it is committed only ever holds one batch. Each
+	 * object's properties are always sent in the same transaction as the
+	 * object, and an object's ancestors are always committed before it.
+	 * <p>
+	 * Objects that connect different branches of the tree, such as
+	 * relationships and imported keys, can refer to objects further on in the
+	 * file and depend on being created in the same transaction as each other.
+	 * Objects of the types given to {@link #holdBackUntilLastBatch(Class)},
+	 * their descendants and any object that refers to one of them are
+	 * therefore held back and sent in the last transaction. Every other object
+	 * must only refer to objects before it in the file or outside of it.
+	 * <p>
+	 * The target must be able to commit part of a tree whose ancestors were
+	 * committed earlier, as an {@link SPSessionPersister} can. If reading
+	 * fails only the current batch is rolled back. Files that have to be
+	 * upgraded are always read in one transaction as the upgrade persisters
+	 * may need to see the whole file.
+	 * 
+	 * @param commitBatchSize
+	 *            The number of objects in each transaction, or 0 to read the
+	 *            whole file in one transaction, which is the default.
+	 */
+	public void setCommitBatchSize(int commitBatchSize) {
+		this.commitBatchSize = commitBatchSize;
+	}
+	
+	public int getCommitBatchSize() {
+		return commitBatchSize;
+	}
+
+	/**
+	 * Holds objects of the given type back until the last transaction when
+	 * the file is read in batches. This is needed for any type that refers to
+	 * objects that may come after it in the file, or that an
+	 * {@link SPSessionPersister} has to create after other objects of the
+	 * same transaction, as in
+	 * {@link SPSessionPersister#forcePersistOrder(Class, Class)}. Relationships
+	 * and imported keys are always held back.
+	 */
+	public void holdBackUntilLastBatch(Class<? extends SPObject> type) {
+		heldBackTypes.add(type.getName());
 	}
 	
 	public void read() throws SPPersistenceException {
-		BufferedReader reader = new BufferedReader(in);
-		String line;
-		try {
-			reader.mark(200);
-			line = reader.readLine();
-			while (!line.contains("<" + PROJECT_TAG)) {
-				line = reader.readLine();
-			}
-			reader.reset();
-		} catch (IOException e) {
-			throw new SPPersistenceException(null, e);
-		}
-		
-		int version = Integer.valueOf(line.substring(line.indexOf("file-version=") + "file-version=\"".length(), line.length()-2));
-		
 		SPUpgradePersister latest = null;
 		SPPersister previousTarget = null;
-		upgradeTarget = target;
-		if (version != upgradePersisterManager.getStateVersion()) {
-			SPUpgradePersister newUpgradeTarget = upgradePersisterManager.getUpgradePersister(version);
-			if (newUpgradeTarget != null) {
-				upgradeTarget = newUpgradeTarget;
-			}
+		boolean begun = false;
+		XMLStreamReader xml = null;
+		try {
+			xml = createStreamReader();
 			
-			latest = upgradePersisterManager.getUpgradePersister(upgradePersisterManager.getStateVersion()-1);
+			// The project tag holds the file version, which decides where the
+			// persist calls have to go, so it is read before anything is sent.
+			while (xml.hasNext() && xml.next() != XMLStreamConstants.START_ELEMENT) {
+				// skip the prolog
+			}
+			if (!xml.isStartElement() || !PROJECT_TAG.equals(xml.getLocalName())) {
+				throw new SPPersistenceException(null, "The file does not start with a " + PROJECT_TAG + " element");
+			}
+			int version = Integer.parseInt(xml.getAttributeValue(null, "file-version"));
 			
-			if (latest != null) {
-				previousTarget = latest.getNextPersister();
-				latest.setNextPersister(target, false);
+			upgradeTarget = target;
+			if (version != upgradePersisterManager.getStateVersion()) {
+				SPUpgradePersister newUpgradeTarget = upgradePersisterManager.getUpgradePersister(version);
+				if (newUpgradeTarget != null) {
+					upgradeTarget = newUpgradeTarget;
+				}
+				
+				latest = upgradePersisterManager.getUpgradePersister(upgradePersisterManager.getStateVersion()-1);
+				
+				if (latest != null) {
+					previousTarget = latest.getNextPersister();
+					latest.setNextPersister(target, false);
+				}
 			}
-		}
-		
-		try {
+			
 			upgradeTarget.begin();
-			SAXHandler handler = new SAXHandler();
-			SAXParser parser = new SAXParser();
-			parser.setContentHandler(handler);
-			parser.parse(new InputSource(reader));
+			begun = true;
+			readObjects(xml, upgradeTarget == target ? commitBatchSize : 0);
+			begun = false;
 			upgradeTarget.commit();
 		} catch (Exception e) {
 			if (latest != null) {
 				latest.setNextPersister(previousTarget, false);
 			}
 			logger.error("error loading project", e);
-			upgradeTarget.rollback();
+			if (begun) {
+				upgradeTarget.rollback();
+			}
 			throw new SPPersistenceException(null, e);
+		} finally {
+			if (xml != null) {
+				try {
+					xml.close();
+				} catch (XMLStreamException e) {
+					logger.error("Could not close the XML reader", e);
+				}
+			}
 		}
 	}
+
+	/**
+	 * Sends the objects and properties in the project element to the upgrade
+	 * target, in document order. The reader must be positioned on the start
+	 * of the project element and the upgrade target must be in a
+	 * transaction.
+	 * 
+	 * @param batchSize
+	 *            The number of objects to send in each transaction, or 0 to
+	 *            send them all in the current one.
+	 */
+	private void readObjects(XMLStreamReader xml, int batchSize) 
+			throws XMLStreamException, SPPersistenceException {
+		Stack<String> currentObject = new Stack<String>();
+		BatchSplitter batches = null;
+		if (batchSize > 0) {
+			batches = new BatchSplitter(batchSize);
+		}
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String localName = xml.getLocalName();
+				if (PROPERTY_TAG.equals(localName)) {
+					String name = xml.getAttributeValue(null, "name");
+					DataType type = DataType.valueOf(xml.getAttributeValue(null, "type"));
+					String value = xml.getAttributeValue(null, "value");
+					
+					// The parser has already decoded the XML entities so
+					// the value only needs a second pass if it has newlines.
+					if (value == null) {
+						value = "";
+					} else if (value.indexOf("&crlf;") != -1) {
+						value = SQLPowerUtils.unEscapeNewLines(value);
+					}
+					if (batches != null) {
+						batches.persistProperty(new PersistedSPOProperty(currentObject.peek(), 
+								name, type, null, castValue(type, value), true));
+					} else {
+						upgradeTarget.persistProperty(currentObject.peek(), name, type, castValue(type, value));
+					}
+				} else {
+					logger.debug("Reading element " + localName);
+					String type = localName.replace("..", "$");
+					String UUID = xml.getAttributeValue(null, "UUID");
+					int index = Integer.parseInt(xml.getAttributeValue(null, "index"));
+
+					String parent;
+					if (currentObject.isEmpty()) {
+						parent = "";
+					} else {
+						parent = currentObject.peek();
+					}
+					currentObject.push(UUID);
+					if (batches != null) {
+						batches.persistObject(new PersistedSPObject(parent, type, UUID, index), 
+								currentObject.size());
+					} else {
+						upgradeTarget.persistObject(parent, type, UUID, index);
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String localName = xml.getLocalName();
+				if (PROJECT_TAG.equals(localName) && currentObject.isEmpty()) {
+					break;
+				} else if (!PROPERTY_TAG.equals(localName)) {
+					if (batches != null) {
+						batches.endObject(currentObject.size());
+					}
+					currentObject.pop();
+				}
+			}
+		}
+		if (batches != null) {
+			batches.sendHeldBackObjects();
+		}
+	}
+
+	/**
+	 * Sends the persist calls read from the file to the upgrade target in
+	 * transactions of a given number of objects, holding back the objects
+	 * described in {@link XMLPersisterReader#setCommitBatchSize(int)} until
+	 * the last one. Whether an object is held back is only known once its
+	 * properties have been read, so the object being read is kept until its
+	 * first child or its end.
+	 */
+	private class BatchSplitter {
+		
+		private final int batchSize;
+		private int objectsInBatch = 0;
+		
+		/**
+		 * The object whose properties are being read, or null if it has been
+		 * sent or held back already.
+		 */
+		private PersistedSPObject pending;
+		private int pendingDepth;
+		private final List<PersistedSPOProperty> pendingProperties = new ArrayList<PersistedSPOProperty>();
+		
+		/**
+		 * The depth of the held back object whose descendants are being read,
+		 * or -1 if the objects being read are not held back.
+		 */
+		private int heldBackDepth = -1;
+		private final List<PersistedSPObject> heldBackObjects = new ArrayList<PersistedSPObject>();
+		private final Multimap<String, PersistedSPOProperty> heldBackProperties = ArrayListMultimap.create();
+		private final Set<String> heldBackUUIDs = new HashSet<String>();
+		
+		public BatchSplitter(int batchSize) {
+			this.batchSize = batchSize;
+		}
+		
+		public void persistObject(PersistedSPObject pso, int depth) throws SPPersistenceException {
+			decidePending();
+			if (heldBackDepth != -1) {
+				heldBackObjects.add(pso);
+				heldBackUUIDs.add(pso.getUUID());
+			} else {
+				pending = pso;
+				pendingDepth = depth;
+			}
+		}
+		
+		public void persistProperty(PersistedSPOProperty property) throws SPPersistenceException {
+			if (pending != null && pending.getUUID().equals(property.getUUID())) {
+				pendingProperties.add(property);
+			} else if (heldBackUUIDs.contains(property.getUUID())) {
+				heldBackProperties.put(property.getUUID(), property);
+			} else {
+				sendProperty(property);
+			}
+		}
+		
+		public void endObject(int depth) throws SPPersistenceException {
+			decidePending();
+			if (depth == heldBackDepth) {
+				heldBackDepth = -1;
+			}
+		}
+		
+		public void sendHeldBackObjects() throws SPPersistenceException {
+			decidePending();
+			for (PersistedSPObject pso : heldBackObjects) {
+				sendObject(pso);
+				for (PersistedSPOProperty property : heldBackProperties.get(pso.getUUID())) {
+					sendProperty(property);
+				}
+			}
+		}
+		
+		private void decidePending() throws SPPersistenceException {
+			if (pending == null) return;
+			boolean holdBack = heldBackTypes.contains(pending.getType());
+			for (PersistedSPOProperty property : pendingProperties) {
+				if (property.getDataType() == DataType.REFERENCE 
+						&& heldBackUUIDs.contains(property.getNewValue())) {
+					holdBack = true;
+				}
+			}
+			
+			if (holdBack) {
+				heldBackDepth = pendingDepth;
+				heldBackObjects.add(pending);
+				heldBackUUIDs.add(pending.getUUID());
+				heldBackProperties.putAll(pending.getUUID(), pendingProperties);
+			} else {
+				if (objectsInBatch >= batchSize) {
+					upgradeTarget.commit();
+					upgradeTarget.begin();
+					objectsInBatch = 0;
+				}
+				sendObject(pending);
+				for (PersistedSPOProperty property : pendingProperties) {
+					sendProperty(property);
+				}
+				objectsInBatch++;
+			}
+			pending = null;
+			pendingProperties.clear();
+		}
+		
+		private void sendObject(PersistedSPObject pso) throws SPPersistenceException {
+			upgradeTarget.persistObject(pso.getParentUUID(), pso.getType(), pso.getUUID(), pso.getIndex());
+		}
+		
+		private void sendProperty(PersistedSPOProperty property) throws SPPersistenceException {
+			upgradeTarget.persistProperty(property.getUUID(), property.getPropertyName(), 
+					property.getDataType(), property.getNewValue());
+		}
+	}
+	
+	private XMLStreamReader createStreamReader() throws XMLStreamException, IOException {
+		if (in != null) {
+			return getInputFactory().createXMLStreamReader(in);
+		}
+		InputStream stream = new BufferedInputStream(inStream);
+		stream.mark(2);
+		int magic = stream.read() | (stream.read() << 8);
+		stream.reset();
+		if (magic == GZIP_MAGIC) {
+			stream = new BufferedInputStream(new GZIPInputStream(stream));
+		}
+		return getInputFactory().createXMLStreamReader(stream);
+	}
+	
+	private static synchronized XMLInputFactory getInputFactory() {
+		if (inputFactory == null) {
+			inputFactory = XMLInputFactory.newInstance();
+			// The files never have a DTD and nothing outside of them
+			// should be read.
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		}
+		return inputFactory;
+	}
 	
 	private Object castValue(DataType type, String value) {
 		switch (type) {
@@ -113,52 +457,4 @@ public class XMLPersisterReader {
 		}
 	}
 	
-	private class SAXHandler extends DefaultHandler {
-		
-		private Stack<String> currentObject = new Stack<String>();
-		
-		@Override
-		public void startElement(String uri, String localName, String qName,
-				Attributes attributes) throws SAXException {
-			try {
-				if ("property".equals(localName)) {
-					String name = attributes.getValue("name");
-					DataType type = DataType.valueOf(attributes.getValue("type"));
-					String value = attributes.getValue("value");
-					value = SQLPowerUtils.unEscapeNewLines(value);
-					upgradeTarget.persistProperty(currentObject.peek(), name, type, castValue(type, value));
-				} else if (PROJECT_TAG.equals(localName)) {
-					// ignore
-				} else {
-					logger.debug("Reading element " + localName);
-					String type = localName.replace("..", "$");
-					String UUID = attributes.getValue("UUID");
-					int index = Integer.valueOf(attributes.getValue("index"));
-
-					String parent;
-					if (currentObject.isEmpty()) {
-						parent = "";
-					} else {
-						parent = currentObject.peek();
-					}
-					upgradeTarget.persistObject(parent, type, UUID, index);
-					currentObject.push(UUID);
-				}
-			} catch (SPPersistenceException e) {
-				throw new RuntimeException(e);
-			}
-		}
-		
-		
-
-		@Override
-		public void endElement(String uri, String localName, String qName)
-				throws SAXException {
-			if (!"property".equals(localName) && !PROJECT_TAG.equals(localName)) {
-				currentObject.pop();
-			}
-		}
-		
-	}
-	
 }
@@ -19,14 +19,29 @@
 
 package ca.sqlpower.dao.helper;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
 import ca.sqlpower.object.SPObject;
 
 /**
  * This utility class helps find a {@link SPPersisterHelper} for a given class
  * object.
+ * <p>
+ * The generated persister helpers hold no state, so one instance of each is
+ * shared by everyone who asks for it. The annotation processor also generates
+ * a registry class in each generated package that hands this class the
+ * helpers of that package when it is loaded, so finding a helper is a map
+ * lookup rather than a class load and reflective instantiation per persisted
+ * object. Helpers that are missing from a registry are still found by
+ * reflection, once.
  */
 public class PersisterHelperFinder {
 	
+	private static final Logger logger = Logger.getLogger(PersisterHelperFinder.class);
+	
 	/**
 	 * All {@link SPPersisterHelper} classes will be placed in a package with 
 	 * this name under the package where the class the helper makes.
@@ -34,14 +49,35 @@ public class PersisterHelperFinder {
 	public static final String GENERATED_PACKAGE_NAME = "generated";
 
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
+	 * The simple name of the registry class generated in each package of
+	 * generated persister helpers. Loading the class registers the helpers of
+	 * that package with {@link #registerHelper(String, SPPersisterHelper)}.
+	 */
+	public static final String GENERATED_REGISTRY_CLASS_NAME = "PersisterHelperRegistry";
+
+	/**
+	 * The shared persister helpers, by the fully qualified name of the class
+	 * they persist.
+	 */
+	private static final ConcurrentMap<String, SPPersisterHelper<? extends SPObject>> helpers = 
+		new ConcurrentHashMap<String, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * The packages of persisted classes whose generated registry has been
+	 * looked for, mapped to whether it was found.
+	 */
+	private static final ConcurrentMap<String, Boolean> registries = 
+		new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Returns the shared instance of the persister helper for the given class. At
 	 * current all persisters are located in the
 	 * ca.sqlpower.dao.helper.generated package but this will change.
 	 * 
 	 * @param persistClass
-	 *            The new persister helper will create and modify objects of
+	 *            The persister helper will create and modify objects of
 	 *            this type.
-	 * @return A new persister helper that will create and modify objects of the
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -53,30 +89,21 @@ public class PersisterHelperFinder {
 	 *             Thrown if the default constructor is not visible for the
 	 *             persister helper.
 	 */
-	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			Class<? extends SPObject> persistClass) 
 			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-		String className;
-		if (persistClass.getSimpleName().indexOf("$") == -1) {
-			className = persistClass.getSimpleName();
-		} else {
-			className = persistClass.getSimpleName().substring(persistClass.getSimpleName().lastIndexOf("$") + 1);
-		}
-		String persisterClassName = persistClass.getPackage().getName() + "." + GENERATED_PACKAGE_NAME + "." + className + "PersisterHelper";
-		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		return (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		return findPersister(persistClass.getName());
 	}
 	
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
+	 * Returns the shared instance of the persister helper for the given class. At
 	 * current all persisters are located in the
 	 * ca.sqlpower.dao.helper.generated package but this will change.
 	 * 
 	 * @param type
-	 *            The new persister helper will create and modify objects of
+	 *            The persister helper will create and modify objects of
 	 *            this type. This must be the fully qualified class name.
-	 * @return A new persister helper that will create and modify objects of the
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -91,9 +118,60 @@ public class PersisterHelperFinder {
 	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			String type) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		SPPersisterHelper<? extends SPObject> helper = helpers.get(type);
+		if (helper != null) return helper;
+		
+		int lastDot = type.lastIndexOf(".");
+		if (lastDot != -1 && loadGeneratedRegistry(type.substring(0, lastDot))) {
+			helper = helpers.get(type);
+			if (helper != null) return helper;
+		}
+		
 		String persisterClassName = getPersisterHelperClassName(type);
 		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		return (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		helper = (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		SPPersisterHelper<? extends SPObject> existing = helpers.putIfAbsent(type, helper);
+		return existing != null ? existing : helper;
+	}
+
+	/**
+	 * Registers the shared persister helper for the given type. This is
+	 * called by the generated registry classes, but a helper can also be
+	 * registered by hand for a class whose helper is not generated.
+	 * 
+	 * @param type
+	 *            The fully qualified name of the class the helper persists.
+	 * @param helper
+	 *            The helper. It must not hold any state as it will be shared
+	 *            by every persister that persists objects of the type.
+	 */
+	public static void registerHelper(String type, SPPersisterHelper<? extends SPObject> helper) {
+		helpers.put(type, helper);
+	}
+
+	/**
+	 * Loads the registry generated for the persister helpers of the classes
+	 * in the given package, if there is one and it has not been loaded yet.
+	 * 
+	 * @param packageName
+	 *            The package of the persisted classes, not the package the
+	 *            helpers were generated in.
+	 * @return True if the package has a generated registry.
+	 */
+	public static boolean loadGeneratedRegistry(String packageName) {
+		Boolean found = registries.get(packageName);
+		if (found != null) return found.booleanValue();
+		
+		String registryClassName = packageName + "." + GENERATED_PACKAGE_NAME + "." + GENERATED_REGISTRY_CLASS_NAME;
+		try {
+			Class.forName(registryClassName, true, PersisterHelperFinder.class.getClassLoader());
+			found = Boolean.TRUE;
+		} catch (ClassNotFoundException e) {
+			logger.debug("No generated persister helper registry for " + packageName);
+			found = Boolean.FALSE;
+		}
+		registries.put(packageName, found);
+		return found.booleanValue();
 	}
 	
 	/**
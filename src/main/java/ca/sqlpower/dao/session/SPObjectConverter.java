@@ -23,6 +23,7 @@ import java.util.Map;
 
 import org.apache.commons.beanutils.ConversionException;
 
+import ca.sqlpower.object.MappedSPTree;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.util.SQLPowerUtils;
 
@@ -45,12 +46,19 @@ public class SPObjectConverter implements BidirectionalConverter<String, SPObjec
 	 */
 	private Map<String, SPObject> lookupCache = null;
 
+	/**
+	 * If this index is not null it is used to find objects by uuid instead
+	 * of iterating over the tree of objects.
+	 */
+	private MappedSPTree uuidIndex = null;
+
 	public SPObjectConverter(SPObject root) {
 		this.root = root;
 	}
 
 	public SPObject convertToComplexType(String convertFrom)
 			throws ConversionException {
+		if (uuidIndex != null) return uuidIndex.getObjectInTree(convertFrom);
 		if (lookupCache != null && lookupCache.get(convertFrom) != null) return lookupCache.get(convertFrom);
 		return SQLPowerUtils.findByUuid(root, convertFrom, SPObject.class); 
 	}
@@ -67,4 +75,13 @@ public class SPObjectConverter implements BidirectionalConverter<String, SPObjec
 		this.lookupCache = null;
 	}
 
+	/**
+	 * Sets an index of the objects under the root to find objects in, or
+	 * null to go back to searching the tree. Unlike the cache, an object
+	 * that is not in the index is taken not to exist.
+	 */
+	public void setUUIDIndex(MappedSPTree uuidIndex) {
+		this.uuidIndex = uuidIndex;
+	}
+
 }
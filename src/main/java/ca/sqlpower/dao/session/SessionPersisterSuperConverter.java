@@ -38,6 +38,7 @@ import java.util.Map;
 
 import javax.xml.namespace.QName;
 
+import ca.sqlpower.object.MappedSPTree;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -347,5 +348,14 @@ public class SessionPersisterSuperConverter {
 	public void removeUUIDCache() {
 		spObjectConverter.removeUUIDCache();
 	}
+
+	/**
+	 * Sets an index of the objects under the root to find {@link SPObject}s
+	 * in when converting from UUIDs, or null to search the tree. See
+	 * {@link SPObjectConverter#setUUIDIndex(MappedSPTree)}.
+	 */
+	public void setUUIDIndex(MappedSPTree uuidIndex) {
+		spObjectConverter.setUUIDIndex(uuidIndex);
+	}
 	
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.beans.PropertyChangeEvent;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * A map of UUIDs to the {@link SPObject}s in the tree under a root object
+ * that keeps itself up to date by listening to the tree. Objects are added
+ * and removed as child added and child removed events are fired and are
+ * moved to their new key when their UUID property changes, so looking an
+ * object up never has to walk the tree the way
+ * {@link ca.sqlpower.util.SQLPowerUtils#findByUuid(SPObject, String, Class)}
+ * does.
+ * <p>
+ * Objects that change their tree without firing events can leave the index
+ * out of date. Each object found is checked to still have the UUID it was
+ * found by and to still be under the root, so a stale entry is never
+ * returned, but an object added without an event will not be found until
+ * it is {@link #add(SPObject) added} or the index is {@link #rebuild()
+ * rebuilt}.
+ * <p>
+ * Like the tree it listens to, the index should only be changed on the
+ * root's foreground thread, but it can be read from any thread.
+ * {@link #cleanup()} must be called once the index is no longer needed to
+ * stop it listening to the tree.
+ */
+public class SPObjectUUIDIndex implements MappedSPTree {
+
+    private static final Logger logger = Logger.getLogger(SPObjectUUIDIndex.class);
+
+    private final SPObject root;
+
+    private final ConcurrentMap<String, SPObject> objects = new ConcurrentHashMap<String, SPObject>();
+
+    private final SPListener treeListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            add(e.getChild());
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            remove(e.getChild());
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            if ("UUID".equals(evt.getPropertyName())) {
+                if (evt.getOldValue() != null) {
+                    objects.remove(evt.getOldValue());
+                }
+                SPObject source = (SPObject) evt.getSource();
+                objects.put(source.getUUID(), source);
+            }
+        }
+    };
+
+    /**
+     * Indexes the tree under the given root and starts listening to it.
+     */
+    public SPObjectUUIDIndex(SPObject root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Root object is null");
+        }
+        this.root = root;
+        add(root);
+    }
+
+    public SPObject getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the object under the root with the given UUID, or null if
+     * there isn't one.
+     */
+    public SPObject getObjectInTree(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        SPObject spo = objects.get(uuid);
+        if (spo == null) {
+            return null;
+        }
+        if (!uuid.equals(spo.getUUID()) || !isUnderRoot(spo)) {
+            logger.debug("Dropping stale index entry " + uuid + " for " + spo);
+            objects.remove(uuid, spo);
+            return null;
+        }
+        return spo;
+    }
+
+    /**
+     * Returns the object under the root with the given UUID, or null if
+     * there isn't one. Throws ClassCastException if the object is not of the
+     * expected type.
+     */
+    public <T extends SPObject> T findByUuid(String uuid, Class<T> expectedType) {
+        return expectedType.cast(getObjectInTree(uuid));
+    }
+
+    private boolean isUnderRoot(SPObject spo) {
+        while (spo != null) {
+            if (spo == root) {
+                return true;
+            }
+            spo = spo.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given object and its descendants to the index and listens to
+     * them. It is safe to add an object that is already in the index.
+     */
+    public void add(SPObject spo) {
+        objects.put(spo.getUUID(), spo);
+        spo.addSPListener(treeListener);
+        for (SPObject child : childrenOf(spo)) {
+            add(child);
+        }
+    }
+
+    /**
+     * Removes the given object and its descendants from the index and stops
+     * listening to them.
+     */
+    public void remove(SPObject spo) {
+        objects.remove(spo.getUUID());
+        spo.removeSPListener(treeListener);
+        for (SPObject child : childrenOf(spo)) {
+            remove(child);
+        }
+    }
+
+    private static List<? extends SPObject> childrenOf(SPObject spo) {
+        if (spo instanceof SQLObject) {
+            return ((SQLObject) spo).getChildrenWithoutPopulating();
+        }
+        return spo.getChildren();
+    }
+
+    /**
+     * Throws away the index and indexes the whole tree again. This is only
+     * needed if the tree may have been changed without firing events.
+     */
+    public void rebuild() {
+        cleanup();
+        add(root);
+    }
+
+    /**
+     * Stops listening to the tree and empties the index.
+     */
+    public void cleanup() {
+        for (SPObject spo : objects.values()) {
+            spo.removeSPListener(treeListener);
+        }
+        objects.clear();
+    }
+
+    /**
+     * Returns the number of objects in the index.
+     */
+    public int size() {
+        return objects.size();
+    }
+}
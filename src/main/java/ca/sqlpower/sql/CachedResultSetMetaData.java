@@ -79,6 +79,24 @@ public class CachedResultSetMetaData implements ResultSetMetaData, java.io.Seria
 		populate(source);
 	}
 
+	/**
+	 * Creates a copy of only the given columns of the given ResultSetMetaData.
+	 * 
+	 * @param columns
+	 *            The 1-based indexes of the columns to copy, in the order
+	 *            they will appear in the copy.
+	 */
+	public CachedResultSetMetaData(ResultSetMetaData source, boolean upcaseColumnNames, int[] columns)
+		throws SQLException {
+        logger.debug("Creating new CachedResultSetMetaData");
+		this.upcaseColumnNames = upcaseColumnNames;
+		this.columnCount = columns.length;
+		createArrays(columnCount);
+		for (int i = 0; i < columns.length; i++) {
+			copyColumn(source, columns[i], i);
+		}
+	}
+
 	protected void createArrays(int columnCount) {
 		this.autoIncrement = new boolean[columnCount];
 		this.caseSensitive = new boolean[columnCount];
@@ -104,31 +122,39 @@ public class CachedResultSetMetaData implements ResultSetMetaData, java.io.Seria
 
 	protected void populate(ResultSetMetaData source) throws SQLException {
 		for (int i = 0; i < source.getColumnCount(); i++) {
-			this.autoIncrement[i] = source.isAutoIncrement(i+1);
-			this.caseSensitive[i] = source.isCaseSensitive(i+1);
-			this.searchable[i] = source.isSearchable(i+1);
-			this.currency[i] = source.isCurrency(i+1);
-			this.nullable[i] = source.isNullable(i+1);
-			this.signed[i] = source.isSigned(i+1);
-			this.columnDisplaySize[i] = source.getColumnDisplaySize(i+1);
-			this.columnLabel[i] = source.getColumnLabel(i+1);
-			if (upcaseColumnNames && source.getColumnName(i+1) != null) {
-				this.columnName[i] = source.getColumnName(i+1).toUpperCase();
-			} else {
-				this.columnName[i] = source.getColumnName(i+1);
-			}
-			this.schemaName[i] = source.getSchemaName(i+1);
-			this.precision[i] = source.getPrecision(i+1);
-			this.scale[i] = source.getScale(i+1);
-			this.tableName[i] = source.getTableName(i+1);
-			this.catalogName[i] = source.getCatalogName(i+1);
-			this.columnType[i] = source.getColumnType(i+1);
-			this.columnTypeName[i] = source.getColumnTypeName(i+1);
-			this.readOnly[i] = source.isReadOnly(i+1);
-			this.writable[i] = source.isWritable(i+1);
-			this.definitelyWritable[i] = source.isDefinitelyWritable(i+1);
-			this.columnClassName[i] = source.getColumnClassName(i+1);
+			copyColumn(source, i+1, i);
+		}
+	}
+
+	/**
+	 * Copies the properties of the given 1-based column of the source into
+	 * the given 0-based slot of this metadata.
+	 */
+	private void copyColumn(ResultSetMetaData source, int sourceColumn, int i) throws SQLException {
+		this.autoIncrement[i] = source.isAutoIncrement(sourceColumn);
+		this.caseSensitive[i] = source.isCaseSensitive(sourceColumn);
+		this.searchable[i] = source.isSearchable(sourceColumn);
+		this.currency[i] = source.isCurrency(sourceColumn);
+		this.nullable[i] = source.isNullable(sourceColumn);
+		this.signed[i] = source.isSigned(sourceColumn);
+		this.columnDisplaySize[i] = source.getColumnDisplaySize(sourceColumn);
+		this.columnLabel[i] = source.getColumnLabel(sourceColumn);
+		if (upcaseColumnNames && source.getColumnName(sourceColumn) != null) {
+			this.columnName[i] = source.getColumnName(sourceColumn).toUpperCase();
+		} else {
+			this.columnName[i] = source.getColumnName(sourceColumn);
 		}
+		this.schemaName[i] = source.getSchemaName(sourceColumn);
+		this.precision[i] = source.getPrecision(sourceColumn);
+		this.scale[i] = source.getScale(sourceColumn);
+		this.tableName[i] = source.getTableName(sourceColumn);
+		this.catalogName[i] = source.getCatalogName(sourceColumn);
+		this.columnType[i] = source.getColumnType(sourceColumn);
+		this.columnTypeName[i] = source.getColumnTypeName(sourceColumn);
+		this.readOnly[i] = source.isReadOnly(sourceColumn);
+		this.writable[i] = source.isWritable(sourceColumn);
+		this.definitelyWritable[i] = source.isDefinitelyWritable(sourceColumn);
+		this.columnClassName[i] = source.getColumnClassName(sourceColumn);
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package ca.sqlpower.sql;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -18,10 +19,14 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -72,9 +77,66 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 
 	/**
 	 * The current row.  This gets updated by next().
+	 * <p>
+	 * When this row set uses columnar storage, this is only used for the
+	 * insert row; the values of ordinary rows are read straight out of
+	 * {@link #columnar}.
 	 */
 	protected Object[] curRow;
 
+	/**
+	 * If true, {@link #populate(ResultSet, RowFilter, String...)} stores the
+	 * rows it copies in a {@link ColumnarRowList} rather than one Object[]
+	 * per row. Defaults to false.
+	 */
+	private boolean columnarStorage;
+
+	/**
+	 * The columnar store backing {@link #data}, or null if this row set keeps
+	 * one Object[] per row. When this is non-null, {@link #data} is a
+	 * synchronized view of this same list.
+	 */
+	private ColumnarRowList columnar;
+
+	/**
+	 * The estimated number of bytes of row data
+	 * {@link #populate(ResultSet, RowFilter, String...)} will keep on the heap
+	 * before writing further rows to a memory-mapped temporary file. A value
+	 * of 0 (the default) means never spill.
+	 */
+	private long spillThreshold;
+
+	/**
+	 * The directory spill files are created in. Null means the system default
+	 * temporary directory.
+	 */
+	private File spillDirectory;
+
+	/**
+	 * The spilling store backing {@link #data}, or null if this row set is
+	 * held entirely on the heap. This is transient because a spilled row set
+	 * serializes as a plain in-memory list.
+	 */
+	private transient SpillingRowList spill;
+
+	/**
+	 * The number of holders that have retained the spill file through
+	 * {@link #retainSpillFile()} and not yet released it.
+	 */
+	private transient int spillFileHolders;
+
+	/**
+	 * True once {@link #releaseSpillFile()} has deleted the spill file.
+	 */
+	private transient boolean spillFileReleased;
+
+	/**
+	 * The indexes built on this row set so far, keyed by kind and columns.
+	 * This is replaced with null whenever the rows change, and is only read
+	 * or filled in while holding the lock on {@link #data}.
+	 */
+	private transient volatile Map<String, RowSetIndex> indexes;
+
 	/**
 	 * The current column.  This gets set to -1 (invalid) in next(),
 	 * and to the most recently requested column index in the getXXX()
@@ -92,7 +154,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * rows are added.
      */
 	private final List<RowSetChangeListener> rowSetListeners =
-	    new ArrayList<RowSetChangeListener>();
+	    new CopyOnWriteArrayList<RowSetChangeListener>();
 	
 	/**
 	 * This is the "populate" method for streaming result sets. This method will
@@ -100,6 +162,13 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * the result set and notify the listener of the new row. Only rowLimit rows
 	 * will be stored in the cached row set and when the row limit is reached
 	 * the oldest row in the cached row set will be removed.
+	 * <p>
+	 * The rows are kept in a fixed-size ring buffer, so dropping the oldest
+	 * row costs nothing no matter how large the window is. Other threads may
+	 * read this row set while this method is still appending to it; row 1 is
+	 * always the oldest row still in the window. The events fired for each
+	 * row carry both its position in this row set and its position in the
+	 * stream.
 	 * 
 	 * @param rs
 	 *            The result set to track.
@@ -114,7 +183,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * @throws SQLException 
 	 */
 	public void follow(ResultSet rs, int rowLimit, String ... extraColNames) throws SQLException {
-	    data = Collections.synchronizedList(new ArrayList<Object[]>());
+	    columnar = null;
+	    deleteSpillFile();
+	    indexes = null;
+	    RingBufferRowList window = new RingBufferRowList(Math.max(rowLimit, 0));
+	    data = window;
 	    logger.debug("crs@" + System.identityHashCode(this) + " starting to follow...");
 	    
 		rsmd = new CachedResultSetMetaData(rs.getMetaData(), this.makeUppercase);
@@ -129,7 +202,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 					String.class.getName());
 		}
 
-		int rowNum = 0;
+		long rowNum = 0;
 		while (rs.next()) {
 		    
 			if (logger.isDebugEnabled()) {
@@ -153,14 +226,9 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 				row[i] = o;
 			}
             
-			synchronized (data) {	
-				data.add(row);				
-				while (data.size() > rowLimit) { 
-					data.remove(0);
-				}
-			}
+			window.add(row);
 			
-			fireRowAdded(row, rowNum);
+			fireRowAdded(row, window.size() - 1, rowNum);
 			rowNum++;
 		}
 	}
@@ -170,28 +238,209 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * will not be linked to the original one and will not be 
 	 * populated nor refreshed. It is a snapshot of the current state
 	 * of the resultset.
+	 * <p>
+	 * Use a {@link CachedRowSetSorter} directly to control the number of
+	 * threads and the memory budget of the sort.
 	 * 
 	 * @param c
 	 * 
 	 * @return A copy of this rs, sorted
 	 */
 	public CachedRowSet sort(RowComparator c) {
-		
-		CachedRowSet newRs = new CachedRowSet();
 		try {
-			newRs.populate(this);
+			return new CachedRowSetSorter(c).sortedCopy(this);
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
-		
-		
-		if (this.data != null) {
-			synchronized (data) {	
-				Collections.sort(newRs.data, c);
+	}
+
+	/**
+	 * Returns the order the rows of this row set would be in if it were
+	 * sorted with the given comparator, without copying any data. Entry
+	 * <i>i</i> of the result is the 0-based index of the row that belongs in
+	 * position <i>i</i>, so <code>absolute(index[i] + 1)</code> visits the
+	 * rows in sorted order.
+	 */
+	public int[] sortedIndex(RowComparator c) throws SQLException {
+		return new CachedRowSetSorter(c).sortedIndex(this);
+	}
+
+	/**
+	 * Returns an index for finding the rows whose values in the given columns
+	 * equal a given key. The index is built the first time it is asked for
+	 * and reused until the rows of this row set change. The rows do not have
+	 * to be in any particular order.
+	 * 
+	 * @param columns
+	 *            The 1-based indexes of the key columns.
+	 */
+	public HashRowSetIndex getHashIndex(int ... columns) throws SQLException {
+		return (HashRowSetIndex) getIndex(true, columns);
+	}
+
+	/**
+	 * Returns an index for finding the rows whose values in the given columns
+	 * fall in a range of keys. The index is built the first time it is asked
+	 * for and reused until the rows of this row set change. The rows do not
+	 * have to be in any particular order.
+	 * 
+	 * @param columns
+	 *            The 1-based indexes of the key columns, most significant
+	 *            first.
+	 */
+	public SortedRowSetIndex getSortedIndex(int ... columns) throws SQLException {
+		return (SortedRowSetIndex) getIndex(false, columns);
+	}
+
+	private RowSetIndex getIndex(boolean hash, int[] columns) throws SQLException {
+		if (data == null) {
+			return hash ? HashRowSetIndex.build(this, columns) : SortedRowSetIndex.build(this, columns);
+		}
+		String key = (hash ? "hash" : "sorted") + Arrays.toString(columns);
+		synchronized (data) {
+			Map<String, RowSetIndex> m = indexes;
+			RowSetIndex index = m == null ? null : m.get(key);
+			if (index == null) {
+				index = hash ? HashRowSetIndex.build(this, columns) : SortedRowSetIndex.build(this, columns);
+				// a followed row set slides under its indexes, so those are never kept
+				if (!(data instanceof RingBufferRowList)) {
+					if (m == null) {
+						m = new HashMap<String, RowSetIndex>();
+						indexes = m;
+					}
+					m.put(key, index);
+				}
 			}
+			return index;
 		}
-		
-		return newRs;
+	}
+
+	/**
+	 * Returns a new row set holding copies of the given rows of this one, in
+	 * the order given. This is typically used with the rows found by a
+	 * {@link RowSetIndex}.
+	 * 
+	 * @param rowIndexes
+	 *            The 0-based indexes of the rows to copy.
+	 * @param filter
+	 *            If not null, only the rows this filter accepts are copied.
+	 */
+	public CachedRowSet extractRows(int[] rowIndexes, RowFilter filter) throws SQLException {
+		CachedRowSet extracted = new CachedRowSet();
+		extracted.setColumnarStorage(columnarStorage);
+		extracted.setSpillThreshold(spillThreshold);
+		extracted.setSpillDirectory(spillDirectory);
+		extracted.prepareCopyOf(this);
+		if (data == null) {
+			return extracted;
+		}
+		synchronized (data) {
+			List<Object[]> rows = rowsForReading();
+			for (int rowIndex : rowIndexes) {
+				Object[] row = copyOfRow(rows, rowIndex);
+				if (filter == null || filter.acceptsRow(row)) {
+					extracted.data.add(row);
+				}
+			}
+		}
+		return extracted;
+	}
+
+	/**
+	 * Returns the 0-based indexes of the rows of this row set that the given
+	 * predicate accepts, in row order. The predicate is evaluated over the
+	 * rows in batches without moving this row set's cursor.
+	 */
+	public int[] select(RowPredicate predicate) throws SQLException {
+		if (data == null) {
+			return new int[0];
+		}
+		synchronized (data) {
+			return predicate.selectAll(rowsForReading(), columnar);
+		}
+	}
+
+	/**
+	 * Returns a read-only row set that presents the given rows of this one,
+	 * in the order given, without copying them. The view shares this row
+	 * set's rows, so it must not be used to update them, and it reflects
+	 * changes made to them through this row set.
+	 * 
+	 * @param rowIndexes
+	 *            The 0-based indexes of the rows to present, such as those
+	 *            returned by {@link #select(RowPredicate)} or a
+	 *            {@link RowSetIndex}.
+	 */
+	public CachedRowSet view(int[] rowIndexes) throws SQLException {
+		CachedRowSet view = new CachedRowSet();
+		view.rsmd = rsmd;
+		List<Object[]> rows;
+		if (data == null) {
+			rows = Collections.emptyList();
+		} else {
+			synchronized (data) {
+				rows = rowsForReading();
+			}
+		}
+		view.data = Collections.synchronizedList(new SelectionRowList(rows, rowIndexes));
+		return view;
+	}
+
+	/**
+	 * Returns a read-only view of the rows of this row set that the given
+	 * predicate accepts. This is the same as
+	 * <code>view(select(predicate))</code>.
+	 */
+	public CachedRowSet filteredView(RowPredicate predicate) throws SQLException {
+		return view(select(predicate));
+	}
+
+	/**
+	 * Sets this row set up as an empty copy of the given one: the same
+	 * columns, and no rows. Rows can then be added to {@link #data}.
+	 */
+	void prepareCopyOf(CachedRowSet source) throws SQLException {
+		rsmd = new CachedResultSetMetaData(source.getMetaData(), this.makeUppercase);
+		createStorage(rsmd.getColumnCount());
+	}
+
+	/**
+	 * Returns the rows of this row set in a form that will not change while
+	 * the caller holds the lock on {@link #data}. That is the data list
+	 * itself, except for a followed row set whose window can slide at any
+	 * time, in which case it is a snapshot of the window.
+	 */
+	List<Object[]> rowsForReading() {
+		if (data instanceof RingBufferRowList) {
+			Object[] snapshot = data.toArray();
+			List<Object[]> rows = new ArrayList<Object[]>(snapshot.length);
+			for (Object row : snapshot) {
+				rows.add((Object[]) row);
+			}
+			return rows;
+		}
+		return data;
+	}
+
+	/**
+	 * Returns a copy of the given row from a list returned by
+	 * {@link #rowsForReading()} that the caller is free to keep or modify.
+	 */
+	Object[] copyOfRow(List<Object[]> rows, int index) {
+		Object[] row = rows.get(index);
+		if (columnar != null || spill != null) {
+			// these are decoded afresh on every get()
+			return row;
+		}
+		return row.clone();
+	}
+
+	/**
+	 * Returns the columnar store backing this row set, or null if it is not
+	 * using columnar storage.
+	 */
+	ColumnarRowList getColumnarStore() {
+		return columnar;
 	}
 
     /**
@@ -226,6 +475,16 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * metadata for those columns will claim they are all VARCHAR columns,
      * but you can put any type of data in them. After populate() has returned,
      * all rows will contain null values for the extra columns.
+     * <p>
+     * If {@link #setColumnarStorage(boolean) columnar storage} is turned on,
+     * the storage layout of each column is chosen from its type in the
+     * result set's metadata. Otherwise, if a
+     * {@link #setSpillThreshold(long) spill threshold} is set, rows past that
+     * much heap are written to a memory-mapped temporary file.
+     * <p>
+     * If the filter is a {@link RowPredicate}, each row is tested against the
+     * result set before it is copied, so rejected rows are skipped without
+     * reading the columns the predicate does not look at.
      */
     public void populate(ResultSet rs, RowFilter filter, String ... extraColNames) throws SQLException {
 
@@ -241,18 +500,78 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 					String.class.getName());
 		}
 
+		copyRows(rs, filter, null, colCount);
+	}
+
+	/**
+	 * Fills this row set with only the given columns of the rows of the given
+	 * result set that pass the given filter. Columns that are not asked for
+	 * are never read from the result set.
+	 * 
+	 * @param rs
+	 *            The result set to copy.
+	 * @param filter
+	 *            If not null, only rows this filter accepts are copied. The
+	 *            filter refers to columns by their index in the result set,
+	 *            not in this row set. A {@link RowPredicate} is tested before
+	 *            any other column is read; any other filter is given a row of
+	 *            every column of the result set.
+	 * @param columns
+	 *            The 1-based indexes in the result set of the columns to
+	 *            copy, in the order they will appear in this row set.
+	 */
+	public void populateColumns(ResultSet rs, RowFilter filter, int ... columns) throws SQLException {
+		rsmd = new CachedResultSetMetaData(rs.getMetaData(), this.makeUppercase, columns);
+		copyRows(rs, filter, columns, columns.length);
+	}
+
+	/**
+	 * Copies the rows of the given result set into new storage for this row
+	 * set, whose metadata has already been set up.
+	 * 
+	 * @param columns
+	 *            The 1-based result set columns to copy, or null to copy
+	 *            every column of the result set in order.
+	 * @param colCount
+	 *            The width of each row in this row set, which is more than
+	 *            the number of copied columns if placeholder columns were
+	 *            added.
+	 */
+	private void copyRows(ResultSet rs, RowFilter filter, int[] columns, int colCount) throws SQLException {
+		int rsColCount = columns == null ? rs.getMetaData().getColumnCount() : columns.length;
 		int rowNum = 0;
-		data = Collections.synchronizedList(new ArrayList<Object[]>());
+		createStorage(rsColCount);
 
 		if (rs.getType() != ResultSet.TYPE_FORWARD_ONLY) {
 			rs.beforeFirst();
 		}
+
+		// Predicates, and any filter on a subset of the columns, are tested
+		// against the result set itself before the row is copied
+		RowPredicate predicate = null;
+		RowPredicate.ResultSetCursor cursor = null;
+		if (filter != null && (columns != null || filter instanceof RowPredicate)) {
+			predicate = RowPredicate.of(filter);
+			cursor = new RowPredicate.ResultSetCursor(rs);
+		}
 		
+		// the columnar store copies each row as it is added, so one buffer will do
+		Object[] row = columnarStorage ? new Object[colCount] : null;
 		while (rs.next()) {
 		    if (logger.isDebugEnabled()) logger.debug("Populating Row "+rowNum);
-			Object[] row = new Object[colCount];
+		    if (cursor != null) {
+		    	cursor.nextRow();
+		    	if (!predicate.test(cursor)) {
+		    		logger.debug("Skipped this row (rejected by filter)");
+		    		continue;
+		    	}
+		    }
+		    if (!columnarStorage) {
+		    	row = new Object[colCount];
+		    }
 			for (int i = 0; i < rsColCount; i++) {
-				Object o = rs.getObject(i+1);
+				int sourceCol = columns == null ? i + 1 : columns[i];
+				Object o = cursor == null ? rs.getObject(sourceCol) : cursor.getObject(sourceCol);
 				if (o == null) {
 				    if (logger.isDebugEnabled()) logger.debug("   Col "+i+": null");
 				} else {
@@ -261,7 +580,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 				row[i] = o;
 			}
             
-            if (filter == null || filter.acceptsRow(row)) {
+            if (cursor != null || filter == null || filter.acceptsRow(row)) {
             	synchronized (data) {
             		data.add(row);
             		rowNum++;					
@@ -270,6 +589,39 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
                 logger.debug("Skipped this row (rejected by filter)");
             }
 		}
+		
+		if (columnar != null) {
+			synchronized (data) {
+				columnar.trimToSize();
+			}
+		}
+		if (spill != null && spill.getSpilledRowCount() > 0) {
+			logger.debug("Spilled " + spill.getSpilledRowCount() + " of " + rowNum + " rows to disk");
+		}
+	}
+
+	/**
+	 * Replaces {@link #data} with a new, empty list of the kind the storage
+	 * settings of this row set call for.
+	 * 
+	 * @param objectColumnsFrom
+	 *            The first 0-based column that holds placeholder values rather
+	 *            than values of its declared type. Only used for columnar
+	 *            storage.
+	 */
+	private void createStorage(int objectColumnsFrom) throws SQLException {
+		columnar = null;
+		deleteSpillFile();
+		indexes = null;
+		if (columnarStorage) {
+			columnar = new ColumnarRowList(rsmd, objectColumnsFrom);
+			data = Collections.synchronizedList(columnar);
+		} else if (spillThreshold > 0) {
+			spill = new SpillingRowList(spillThreshold, spillDirectory);
+			data = Collections.synchronizedList(spill);
+		} else {
+			data = Collections.synchronizedList(new ArrayList<Object[]>());
+		}
 	}
 
 	public static class RowComparator implements Comparator<Object[]>, java.io.Serializable {
@@ -295,44 +647,14 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 			sortCols.add(new SortCol(columnIndex, ascending));
 		}
 
-		@SuppressWarnings("unchecked")
         public int compare(Object[] r1, Object[] r2) {
-//			Object[] r1 = (Object[]) row1;
-//			Object[] r2 = (Object[]) row2;
-
 			int diff = 0;
 
 			for (SortCol sc : sortCols) {
 				if (r1 == null && r2 == null) diff = 0;
 				else if (r1 == null) diff = -1;
 				else if (r2 == null) diff = 1;
-				else if (r1[sc.columnIndex - 1] instanceof Number && r2[sc.columnIndex - 1] instanceof Number) {
-					double d1 = ((Number) r1[sc.columnIndex - 1]).doubleValue();
-					double d2 = ((Number) r2[sc.columnIndex - 1]).doubleValue();  // see threepio
-					if (d1 < d2) diff = -1;
-					else if (d1 > d2) diff = 1;
-					else diff = 0;
-				} else if (r1[sc.columnIndex - 1] instanceof String && r2[sc.columnIndex - 1] instanceof String) {
-					String s1 = ((String) r1[sc.columnIndex - 1]);
-					String s2 = ((String) r2[sc.columnIndex - 1]);
-					diff = s1.compareToIgnoreCase(s2);
-				} else if (r1[sc.columnIndex - 1] instanceof Comparable && r2[sc.columnIndex - 1] instanceof Comparable) {
-				    Comparable c1 = (Comparable) r1[sc.columnIndex - 1];
-				    Comparable c2 = (Comparable) r2[sc.columnIndex - 1];
-				    
-				    //This may throw an exception if c1 and c2 are not of mutually comparable types.
-				    //That would mean the same column contains two different types of objects
-				    //that cannot be compared to each other, which we think would be a fault in the JDBC driver.
-				    diff = c1.compareTo(c2); 
-				} else {
-				    Object r1ColVal = r1[sc.columnIndex - 1];
-                    Object r2ColVal = r2[sc.columnIndex - 1];
-				    if (r1ColVal == null && r2ColVal == null) diff = 0;
-				    else if (r1ColVal == null) diff = -1;
-				    else if (r2ColVal == null) diff = 1;
-				    else diff = 0; // relying on stability of MergeSort to keep rows in order database returned them in
-				    
-				}
+				else diff = compareValues(r1[sc.columnIndex - 1], r2[sc.columnIndex - 1]);
 
 				if (diff != 0) {
 					if (sc.ascending) break;
@@ -343,6 +665,64 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 			return diff;
 		}
 
+		/**
+		 * Compares two values from the same column the way this comparator
+		 * orders them in ascending order. Numbers compare numerically,
+		 * strings compare without regard to case, other comparable values use
+		 * their natural order, and nulls come before everything else.
+		 */
+		@SuppressWarnings("unchecked")
+		static int compareValues(Object v1, Object v2) {
+			int diff;
+			if (v1 instanceof Number && v2 instanceof Number) {
+				double d1 = ((Number) v1).doubleValue();
+				double d2 = ((Number) v2).doubleValue();  // see threepio
+				if (d1 < d2) diff = -1;
+				else if (d1 > d2) diff = 1;
+				else diff = 0;
+			} else if (v1 instanceof String && v2 instanceof String) {
+				String s1 = ((String) v1);
+				String s2 = ((String) v2);
+				diff = s1.compareToIgnoreCase(s2);
+			} else if (v1 instanceof Comparable && v2 instanceof Comparable) {
+			    Comparable c1 = (Comparable) v1;
+			    Comparable c2 = (Comparable) v2;
+			    
+			    //This may throw an exception if c1 and c2 are not of mutually comparable types.
+			    //That would mean the same column contains two different types of objects
+			    //that cannot be compared to each other, which we think would be a fault in the JDBC driver.
+			    diff = c1.compareTo(c2); 
+			} else {
+			    if (v1 == null && v2 == null) diff = 0;
+			    else if (v1 == null) diff = -1;
+			    else if (v2 == null) diff = 1;
+			    else diff = 0; // relying on stability of MergeSort to keep rows in order database returned them in
+			}
+			return diff;
+		}
+
+		/**
+		 * Returns the number of columns this comparator sorts by.
+		 */
+		public int getSortColumnCount() {
+			return sortCols.size();
+		}
+
+		/**
+		 * Returns the 1-based column index of the given sort column. Sort
+		 * column 0 is the primary sort column.
+		 */
+		public int getSortColumnIndex(int sortColumn) {
+			return sortCols.get(sortColumn).columnIndex;
+		}
+
+		/**
+		 * Returns true if the given sort column sorts in ascending order.
+		 */
+		public boolean isSortColumnAscending(int sortColumn) {
+			return sortCols.get(sortColumn).ascending;
+		}
+
 		/**
 		 * Returns true iff there are no sort columns specified in this comparator.
 		 */
@@ -379,12 +759,49 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
         		return true;
         	} else {
         		synchronized (data) {	
+        			if (columnar != null && resultSetFilter instanceof RowPredicate) {
+        				// test the stored columns without building the row
+        				RowPredicate.StoreCursor cursor = new RowPredicate.StoreCursor(data, columnar);
+        				cursor.moveTo(row - 1);
+        				return ((RowPredicate) resultSetFilter).test(cursor);
+        			}
         			return resultSetFilter.acceptsRow(data.get(row - 1));
     			}
         	}
         }
     }
 
+	/**
+	 * Returns a rough estimate of the number of bytes of heap the rows of this
+	 * row set take up. Large row sets are estimated from a sample of their
+	 * rows, and rows spilled to disk are not counted. This is meant for
+	 * weighing row sets against each other in a cache, not for exact
+	 * accounting.
+	 */
+	public long estimateSize() {
+		if (data == null) {
+			return 0;
+		}
+		synchronized (data) {
+			if (spill != null) {
+				return spill.getHeapBytesUsed();
+			}
+			List<Object[]> rows = rowsForReading();
+			int size = rows.size();
+			if (size == 0) {
+				return 0;
+			}
+			int step = Math.max(1, size / 1000);
+			long sampled = 0;
+			int count = 0;
+			for (int i = 0; i < size; i += step) {
+				sampled += SpillingRowList.estimateSize(rows.get(i));
+				count++;
+			}
+			return sampled * size / count;
+		}
+	}
+
 	/**
 	 * Tells how many rows are in this row set.
 	 */
@@ -397,6 +814,170 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 		}
 	}
 	
+	/**
+	 * Tells this cached row set whether the next call to
+	 * {@link #populate(ResultSet, RowFilter, String...)} should store its rows
+	 * column by column, with numeric columns held in primitive arrays and
+	 * character columns dictionary encoded. This greatly reduces the memory
+	 * used by large numeric results, and the primitive getters such as
+	 * {@link #getInt(int)} and {@link #getDouble(int)} no longer allocate.
+	 * The values handed back by {@link #getObject(int)} are the same either way.
+	 * <p>
+	 * Row sets filled by {@link #follow(ResultSet, int, String...)} always
+	 * use row storage.
+	 */
+	public void setColumnarStorage(boolean columnarStorage) {
+		this.columnarStorage = columnarStorage;
+	}
+
+	/**
+	 * Sets the estimated number of bytes of row data the next call to
+	 * {@link #populate(ResultSet, RowFilter, String...)} will keep on the heap.
+	 * Rows beyond that are written to a memory-mapped temporary file and
+	 * decoded one at a time as the cursor reaches them, so very large results
+	 * can be cached and scrolled without growing the heap. A value of 0 (the
+	 * default) keeps every row on the heap.
+	 * <p>
+	 * This has no effect when {@link #setColumnarStorage(boolean) columnar
+	 * storage} is turned on. The spill file is removed by
+	 * {@link #deleteSpillFile()}, by the last {@link #releaseSpillFile()},
+	 * when this row set is populated again, or at JVM exit if none of those
+	 * happens first.
+	 */
+	public void setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	/**
+	 * See {@link #setSpillThreshold(long)}.
+	 */
+	public long getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Sets the directory spill files are created in. Null, the default, means
+	 * the system temporary directory.
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * See {@link #setSpillDirectory(File)}.
+	 */
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * Deletes the file rows past the {@link #setSpillThreshold(long) spill
+	 * threshold} were written to. The spilled rows are dropped from this row
+	 * set, so call this once you are done with it. Does nothing if no rows
+	 * were spilled.
+	 */
+	public void deleteSpillFile() {
+		if (spill != null) {
+			spill.close();
+			spill = null;
+		}
+	}
+
+	/**
+	 * Records one more holder of this row set, such as a cache or a reader
+	 * it was handed to by a cache. The spill file is kept until every holder
+	 * has called {@link #releaseSpillFile()}.
+	 * 
+	 * @return False if the last holder has already released this row set
+	 *         and its spilled rows are gone, in which case it should not be
+	 *         used.
+	 */
+	public synchronized boolean retainSpillFile() {
+		if (spillFileReleased) {
+			return false;
+		}
+		spillFileHolders++;
+		return true;
+	}
+
+	/**
+	 * Gives up a hold taken by {@link #retainSpillFile()}, deleting the spill
+	 * file if this was the last one.
+	 */
+	public synchronized void releaseSpillFile() {
+		if (spillFileHolders > 0 && --spillFileHolders == 0 && spill != null) {
+			spillFileReleased = true;
+			deleteSpillFile();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written to this row set's spill file, or 0
+	 * if no rows were spilled.
+	 */
+	public long getSpillFileSize() {
+		if (data == null) {
+			return 0;
+		}
+		synchronized (data) {
+			return spill == null ? 0 : spill.getSpillFileLength();
+		}
+	}
+
+	/**
+	 * Returns whether this row set will use columnar storage the next time
+	 * it is populated.
+	 * 
+	 * @see #setColumnarStorage(boolean)
+	 */
+	public boolean isColumnarStorage() {
+		return columnarStorage;
+	}
+
+	/**
+	 * Returns true if the cursor is on an ordinary row of a row set that is
+	 * using columnar storage. In that case {@link #curRow} is not used and
+	 * values come straight from {@link #columnar}.
+	 */
+	private boolean isOnColumnarRow() {
+		return columnar != null && rownum >= 0;
+	}
+
+	/**
+	 * Returns the value at the given 1-based column of the current row, and
+	 * remembers the column for {@link #wasNull()}.
+	 */
+	private Object getValue(int columnIndex) {
+		curCol = columnIndex - 1;
+		if (isOnColumnarRow()) {
+			return columnar.getObject(rownum, curCol);
+		} else {
+			return curRow[curCol];
+		}
+	}
+
+	/**
+	 * Replaces the value at the given 1-based column of the current row.
+	 */
+	private void setValue(int columnIndex, Object value) {
+		if (rownum >= 0) {
+			indexes = null;
+		}
+		if (isOnColumnarRow()) {
+			synchronized (data) {
+				columnar.set(rownum, columnIndex - 1, value);
+			}
+		} else {
+			curRow[columnIndex - 1] = value;
+			if (spill != null && rownum >= 0) {
+				// spilled rows are decoded copies, so the change has to be written back
+				synchronized (data) {
+					spill.set(rownum, curRow);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Tells this cached result set if it should make all column names upper case.
 	 * @param makeUppercase
@@ -484,14 +1065,34 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      *            The row number where the new row was inserted
      */
 	protected void fireRowAdded(Object[] row, int rowNum) {
+	    fireRowAdded(row, rowNum, rowNum);
+	}
+
+    /**
+     * Fires an event with the given row information. This CachedRowSet is the
+     * event's source. The row should already have been inserted into the result
+     * set prior to calling this method.
+     * 
+     * @param row
+     *            The actual data in the new row
+     * @param rowNum
+     *            The 0-based position of the new row in this row set
+     * @param sequenceNumber
+     *            The 0-based position of the new row in the stream it came
+     *            from. This differs from rowNum once a followed row set has
+     *            started dropping old rows.
+     */
+	protected void fireRowAdded(Object[] row, int rowNum, long sequenceNumber) {
+	    // listeners can come and go on other threads while a stream is being followed
+	    RowSetChangeListener[] listeners = rowSetListeners.toArray(new RowSetChangeListener[0]);
 	    if (logger.isDebugEnabled()) {
 	        logger.debug("crs@" + System.identityHashCode(this) +
-                " firing RowAdded for " + rowSetListeners.size() + " listeners...");
+                " firing RowAdded for " + listeners.length + " listeners...");
 	    }
 	    
-	    RowSetChangeEvent evt = new RowSetChangeEvent(this, row, rowNum);
-	    for (int i = rowSetListeners.size() - 1; i >= 0; i--) {
-	        RowSetChangeListener l = rowSetListeners.get(i);
+	    RowSetChangeEvent evt = new RowSetChangeEvent(this, row, rowNum, sequenceNumber);
+	    for (int i = listeners.length - 1; i >= 0; i--) {
+	        RowSetChangeListener l = listeners[i];
 	        if (logger.isDebugEnabled()) {
 	            logger.debug("crs@" + System.identityHashCode(this) +
 	                    " delivering RowAdded to " + l.getClass().getSimpleName() +
@@ -510,6 +1111,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * resources.  If you want to free the memory used by the cached
 	 * data in this row set, delete all references to this row set and
 	 * it will be garbage collected like any other normal object.
+	 * Rows spilled to disk are removed by {@link #deleteSpillFile()}.
 	 */
     public void close() throws SQLException {
 		return;
@@ -521,8 +1123,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * get methods for native java types (which can't be null).
 	 */
     public boolean wasNull() throws SQLException {
-		if (curRow == null || curCol < 0)
+		if ((curRow == null && !isOnColumnarRow()) || curCol < 0)
 			throw new SQLException("You haven't accessed a value with a getXXX() method yet!");
+		if (isOnColumnarRow()) {
+			return columnar.isNull(rownum, curCol);
+		}
 		return curRow[curCol] == null;
 	}
     
@@ -535,11 +1140,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public String getString(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return columnar.getString(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return null;
 		} else {
-			return curRow[columnIndex - 1].toString();
+			return value.toString();
 		}
 	}
 
@@ -548,11 +1157,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public boolean getBoolean(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return false;
 		} else {
-			return ((Boolean) curRow[columnIndex - 1]).booleanValue();
+			return ((Boolean) value).booleanValue();
 		}
 	}
 
@@ -561,11 +1170,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public byte getByte(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return (byte) columnar.getInt(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (byte) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).byteValue();
+			return ((Number) value).byteValue();
 		}
 	}
 
@@ -574,11 +1187,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public short getShort(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return (short) columnar.getInt(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (short) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).shortValue();
+			return ((Number) value).shortValue();
 		}
 	}
 
@@ -587,11 +1204,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public int getInt(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return columnar.getInt(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (int) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).intValue();
+			return ((Number) value).intValue();
 		}
 	}
 
@@ -600,11 +1221,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public long getLong(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return columnar.getLong(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (long) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).longValue();
+			return ((Number) value).longValue();
 		}
 	}
 
@@ -613,11 +1238,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public float getFloat(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return (float) columnar.getDouble(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (float) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).floatValue();
+			return ((Number) value).floatValue();
 		}
 	}
 
@@ -626,11 +1255,15 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public double getDouble(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		if (isOnColumnarRow()) {
+			curCol = columnIndex - 1;
+			return columnar.getDouble(rownum, curCol);
+		}
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return (double) 0;
 		} else {
-			return ((Number) curRow[columnIndex - 1]).doubleValue();
+			return ((Number) value).doubleValue();
 		}
 	}
 
@@ -653,11 +1286,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public java.sql.Date getDate(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return null;
 		} else {
-			java.util.Date uDate = (java.util.Date) curRow[columnIndex - 1];
+			java.util.Date uDate = (java.util.Date) value;
 			return new java.sql.Date (uDate.getTime());
 		}
 	}
@@ -667,11 +1300,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public java.sql.Time getTime(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return null;
 		} else {
-			return (java.sql.Time) curRow[columnIndex - 1];
+			return (java.sql.Time) value;
 		}
 	}
 
@@ -680,11 +1313,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public java.sql.Timestamp getTimestamp(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[columnIndex - 1] == null) {
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return null;
 		} else {
-			return (java.sql.Timestamp) curRow[columnIndex - 1];
+			return (java.sql.Timestamp) value;
 		}
 	}
 
@@ -714,8 +1347,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public Object getObject(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		return curRow[columnIndex - 1];
+		return getValue(columnIndex);
 	}
 
     /**
@@ -730,8 +1362,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public Ref getRef(int i) throws SQLException {
-		curCol = i - 1;
-		return (Ref) curRow[i - 1];
+		return (Ref) getValue(i);
 	}
 
 	/**
@@ -739,8 +1370,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public Blob getBlob(int i) throws SQLException {
-		curCol = i - 1;
-		return (Blob) curRow[i - 1];
+		return (Blob) getValue(i);
 	}
 
 	/**
@@ -748,8 +1378,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public Clob getClob(int i) throws SQLException {
-		curCol = i - 1;
-		return (Clob) curRow[i - 1];
+		return (Clob) getValue(i);
 	}
 
 	/**
@@ -757,8 +1386,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * (the first column number is 1, not 0).
 	 */
     public Array getArray(int i) throws SQLException {
-		curCol = i - 1;
-		return (Array) curRow[i - 1];
+		return (Array) getValue(i);
 	}
 
     /**
@@ -788,11 +1416,11 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * the URL is returned.
 	 */
     public java.net.URL getURL(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		if (curRow[curCol] == null) {
+		Object value = getValue(columnIndex);
+		if (value == null) {
 			return null;
-		} else if (curRow[curCol] instanceof java.net.URL) {
-			return (java.net.URL) curRow[curCol];
+		} else if (value instanceof java.net.URL) {
+			return (java.net.URL) value;
 		} else try {
 			return new java.net.URL(getString(columnIndex));
 		} catch (java.net.MalformedURLException e) {
@@ -1141,7 +1769,9 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 			
 			// now do the positioning
 			if (data.size() > 0) {
-				curRow = (Object[]) data.get(rownum);
+				if (columnar == null) {
+					curRow = (Object[]) data.get(rownum);
+				}
 				return true;
 			} else {
 				return false;
@@ -1202,7 +1832,9 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 				return false;
 			}
 			
-			curRow = (Object[]) data.get(rownum);
+			if (columnar == null) {
+				curRow = (Object[]) data.get(rownum);
+			}
 			return true;
 		}
 	}
@@ -1278,13 +1910,12 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
 	 * be converted and returned in a BigDecimal.
 	 */
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-		curCol = columnIndex - 1;
-		Object curColObject = curRow[columnIndex - 1];
+		Object curColObject = getValue(columnIndex);
 		if (curColObject == null) {
 			return new BigDecimal(0);
 		} else {
 			if (curColObject instanceof BigDecimal) {
-				return (BigDecimal) curRow[columnIndex - 1];
+				return (BigDecimal) curColObject;
 			} else if (curColObject instanceof Number) {
 				return new BigDecimal(String.valueOf(curColObject));
 			} else {
@@ -1368,7 +1999,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateNull(int columnIndex) throws SQLException {
-        curRow[columnIndex - 1] = null;
+        setValue(columnIndex, null);
 	}
 
     /**
@@ -1377,7 +2008,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateBoolean(int columnIndex, boolean x) throws SQLException {
-        curRow[columnIndex - 1] = (x ? Boolean.TRUE : Boolean.FALSE);
+        setValue(columnIndex, (x ? Boolean.TRUE : Boolean.FALSE));
 	}
 
     /**
@@ -1386,7 +2017,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateByte(int columnIndex, byte x) throws SQLException {
-        curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+        setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1395,7 +2026,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateShort(int columnIndex, short x) throws SQLException {
-        curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+        setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1404,7 +2035,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateInt(int columnIndex, int x) throws SQLException {
-		curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+		setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1413,7 +2044,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateLong(int columnIndex, long x) throws SQLException {
-        curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+        setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1422,7 +2053,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateFloat(int columnIndex, float x) throws SQLException {
-        curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+        setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1431,7 +2062,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateDouble(int columnIndex, double x) throws SQLException {
-        curRow[columnIndex - 1] = BigDecimal.valueOf(x);
+        setValue(columnIndex, BigDecimal.valueOf(x));
 	}
 
     /**
@@ -1440,7 +2071,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1449,7 +2080,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateString(int columnIndex, String x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1458,7 +2089,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateBytes(int columnIndex, byte x[]) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1467,7 +2098,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateDate(int columnIndex, java.sql.Date x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1476,7 +2107,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateTime(int columnIndex, java.sql.Time x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1486,7 +2117,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      */
     public void updateTimestamp(int columnIndex, java.sql.Timestamp x)
 		throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
 	/**
@@ -1519,7 +2150,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateObject(int columnIndex, Object x, int scale) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1528,7 +2159,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateObject(int columnIndex, Object x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1537,7 +2168,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateArray(int columnIndex, java.sql.Array x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1546,7 +2177,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
 	public void updateClob(int columnIndex, java.sql.Clob x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1555,7 +2186,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
 	public void updateBlob(int columnIndex, java.sql.Blob x) throws SQLException {
-        curRow[columnIndex - 1] = x;
+        setValue(columnIndex, x);
 	}
 
     /**
@@ -1564,8 +2195,8 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
      * the change will remain in memory for the life of this CachedRowSet.
      */
     public void updateRef(int columnIndex, java.sql.Ref x) throws SQLException {
-        if (curRow == null) throw new SQLException("Not on a valid row");
-        curRow[columnIndex - 1] = x;
+        if (curRow == null && !isOnColumnarRow()) throw new SQLException("Not on a valid row");
+        setValue(columnIndex, x);
 	}
 	
     // ====================================
@@ -1817,6 +2448,7 @@ public class CachedRowSet implements ResultSet, java.io.Serializable {
     			throw new SQLException("The insert row has already been inserted");
     		}
     		data.add(curRow);
+    		indexes = null;
     		insertRowAlreadyInserted = true;
 		}
     }
@@ -0,0 +1,797 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.CachedRowSet.RowComparator;
+
+/**
+ * Sorts the rows of a {@link CachedRowSet} in the order defined by a
+ * {@link RowComparator}, producing either a sorted copy or just the sorted
+ * permutation of row indexes.
+ * <p>
+ * Rather than comparing whole rows cell by cell, the sorter first extracts
+ * one typed key array per sort column: a <code>double[]</code> for numeric
+ * columns, a <code>String[]</code> for character columns and the raw values
+ * for anything else. The sort itself is a stable merge sort over an
+ * <code>int[]</code> of row indexes, split across several threads for large
+ * row sets. The threads are shared by every sorter and are created as they
+ * are needed. The resulting order is exactly the one
+ * {@link RowComparator#compare(Object[], Object[])} would produce.
+ * <p>
+ * If a memory budget is set and the keys for the whole row set would not fit
+ * in it, the sorter switches to an external merge sort: it sorts one budget's
+ * worth of rows at a time, writes each sorted run of row indexes and their
+ * key values to a temporary file, then merges the runs by the key values
+ * read back from the files, so only one key per run is held while merging.
+ * Key values that are neither numbers, strings nor comparable and
+ * serializable cannot be written to a run; non-comparable values are
+ * written as a marker, as they only sort by whether they are null.
+ */
+public class CachedRowSetSorter {
+
+    private static final Logger logger = Logger.getLogger(CachedRowSetSorter.class);
+
+    /**
+     * Row sets smaller than this are always sorted on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 50000;
+
+    /**
+     * Ranges this small are insertion sorted instead of being split further.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * The estimated working-set bytes per row, in addition to the key
+     * columns: the index array and its merge buffer.
+     */
+    private static final int BYTES_PER_ROW = 8;
+
+    /**
+     * The estimated bytes per row for each sort column's keys.
+     */
+    private static final int BYTES_PER_KEY = 16;
+
+    /**
+     * The tags for the key values written to a run file.
+     */
+    private static final byte KEY_NULL = 0;
+    private static final byte KEY_NUMBER = 1;
+    private static final byte KEY_STRING = 2;
+    private static final byte KEY_OBJECT = 3;
+    private static final byte KEY_INCOMPARABLE = 4;
+
+    /**
+     * Stands in for a key value that is not null but not comparable, which
+     * {@link RowComparator#compareValues(Object, Object)} treats as equal to
+     * every other non-null value.
+     */
+    private static final Object INCOMPARABLE = new Object();
+
+    /**
+     * The threads every sorter runs its parallel sorts on. Created when
+     * first needed; idle threads go away after a while.
+     */
+    private static ExecutorService sortThreads;
+
+    private final RowComparator comparator;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private long memoryBudget;
+
+    private File tempDirectory;
+
+    public CachedRowSetSorter(RowComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Sets the number of threads used to sort large row sets. A value of 1
+     * sorts on the calling thread. Defaults to the number of processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the approximate number of bytes the sort keys may occupy before
+     * the sorter switches to an external merge sort. A value of 0 (the
+     * default) means there is no limit.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the directory for the temporary run files of an external sort.
+     * Null, the default, means the system temporary directory.
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows in the given row set, in
+     * sorted order. Entry <i>i</i> of the result is the index of the row that
+     * belongs in position <i>i</i>. The row set itself is not modified.
+     */
+    public int[] sortedIndex(CachedRowSet rs) throws SQLException {
+        if (rs.data == null) {
+            return new int[0];
+        }
+        synchronized (rs.data) {
+            return sortedIndex(rs, rs.rowsForReading());
+        }
+    }
+
+    /**
+     * Returns the 0-based indexes of the given rows of the given row set in
+     * sorted order, for callers that have already taken a list of its rows
+     * from {@link CachedRowSet#rowsForReading()}. The caller must hold the
+     * lock on the row set's data.
+     */
+    int[] sortedIndex(CachedRowSet rs, List<Object[]> rows) throws SQLException {
+        final int[] result = new int[rows.size()];
+        sort(rs, rows, new IndexConsumer() {
+            int next = 0;
+            public void accept(int rowIndex) {
+                result[next++] = rowIndex;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns a sorted copy of the given row set. The copy uses the same
+     * storage settings as the original and is not linked to it in any way.
+     */
+    public CachedRowSet sortedCopy(final CachedRowSet rs) throws SQLException {
+        final CachedRowSet newRs = new CachedRowSet();
+        newRs.setColumnarStorage(rs.isColumnarStorage());
+        newRs.setSpillThreshold(rs.getSpillThreshold());
+        newRs.setSpillDirectory(rs.getSpillDirectory());
+        newRs.prepareCopyOf(rs);
+        if (rs.data == null) {
+            return newRs;
+        }
+        synchronized (rs.data) {
+            final List<Object[]> rows = rs.rowsForReading();
+            sort(rs, rows, new IndexConsumer() {
+                public void accept(int rowIndex) {
+                    newRs.data.add(rs.copyOfRow(rows, rowIndex));
+                }
+            });
+        }
+        return newRs;
+    }
+
+    /**
+     * Receives row indexes in sorted order.
+     */
+    private interface IndexConsumer {
+        void accept(int rowIndex) throws SQLException;
+    }
+
+    /**
+     * Compares two rows by position within the range whose keys were
+     * extracted.
+     */
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private void sort(CachedRowSet rs, List<Object[]> rows, IndexConsumer out) throws SQLException {
+        int n = rows.size();
+        long bytesPerRow = BYTES_PER_ROW + (long) BYTES_PER_KEY * comparator.getSortColumnCount();
+        if (memoryBudget > 0 && n * bytesPerRow > memoryBudget) {
+            int runSize = (int) Math.max(1024, memoryBudget / bytesPerRow);
+            externalSort(rs, rows, runSize, out);
+        } else {
+            int[] sorted = sortRange(rs, rows, 0, n);
+            for (int i = 0; i < n; i++) {
+                out.accept(sorted[i]);
+            }
+        }
+    }
+
+    /**
+     * Sorts the given range of rows in memory, returning their row indexes in
+     * sorted order.
+     */
+    private int[] sortRange(CachedRowSet rs, List<Object[]> rows, final int from, int to) throws SQLException {
+        int[] a = sortPositions(extractKeys(rs, rows, from, to), to - from);
+        for (int i = 0; i < a.length; i++) {
+            a[i] += from;
+        }
+        return a;
+    }
+
+    /**
+     * Sorts the positions 0 to n (exclusive) of the keys the given comparator
+     * was built from.
+     */
+    private int[] sortPositions(IndexComparator c, int n) throws SQLException {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        int[] tmp = new int[n];
+        if (parallelism > 1 && n >= PARALLEL_THRESHOLD) {
+            parallelMergeSort(a, tmp, c);
+        } else {
+            mergeSort(a, tmp, 0, n, c);
+        }
+        return a;
+    }
+
+    // ---------------- key extraction ----------------
+
+    /**
+     * Builds the typed sort keys for rows from (inclusive) to to (exclusive)
+     * and returns a comparator over positions in that range.
+     */
+    private KeyComparator extractKeys(CachedRowSet rs, List<Object[]> rows, int from, int to) {
+        int keyCount = comparator.getSortColumnCount();
+        final SortKey[] keys = new SortKey[keyCount];
+        final boolean[] ascending = new boolean[keyCount];
+        ColumnarRowList columnar = rs.getColumnarStore();
+        Object[][] values = new Object[keyCount][];
+        for (int k = 0; k < keyCount; k++) {
+            ascending[k] = comparator.isSortColumnAscending(k);
+            int col = comparator.getSortColumnIndex(k) - 1;
+            if (columnar != null && columnar.isNumericColumn(col)) {
+                keys[k] = NumberKey.fromColumnar(columnar, col, from, to);
+            } else {
+                values[k] = new Object[to - from];
+            }
+        }
+        // one pass over the rows so spilled rows are only decoded once
+        for (int i = from; i < to; i++) {
+            Object[] row = null;
+            for (int k = 0; k < keyCount; k++) {
+                if (values[k] != null) {
+                    int col = comparator.getSortColumnIndex(k) - 1;
+                    if (columnar != null) {
+                        values[k][i - from] = columnar.getObject(i, col);
+                    } else {
+                        if (row == null) {
+                            row = rows.get(i);
+                        }
+                        values[k][i - from] = row[col];
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < keyCount; k++) {
+            if (values[k] != null) {
+                keys[k] = SortKey.forValues(values[k]);
+                values[k] = null;
+            }
+        }
+        return new KeyComparator(keys, ascending);
+    }
+
+    /**
+     * Compares positions by the extracted keys of every sort column in turn.
+     */
+    private static class KeyComparator implements IndexComparator {
+        private final SortKey[] keys;
+        private final boolean[] ascending;
+
+        KeyComparator(SortKey[] keys, boolean[] ascending) {
+            this.keys = keys;
+            this.ascending = ascending;
+        }
+
+        public int compare(int a, int b) {
+            for (int k = 0; k < keys.length; k++) {
+                int diff = keys[k].compare(a, b);
+                if (diff != 0) {
+                    return ascending[k] ? diff : -diff;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the value of the given sort column's key at the given
+         * position, as a Double for a numeric key.
+         */
+        Object valueAt(int k, int position) {
+            return keys[k].valueAt(position);
+        }
+    }
+
+    /**
+     * The extracted values of one sort column, compared in ascending order
+     * using the same rules as {@link RowComparator}.
+     */
+    private static abstract class SortKey {
+
+        abstract int compare(int a, int b);
+
+        abstract Object valueAt(int i);
+
+        static SortKey forValues(Object[] values) {
+            boolean allNumbers = true;
+            boolean allStrings = true;
+            for (Object v : values) {
+                if (v != null) {
+                    allNumbers &= v instanceof Number;
+                    allStrings &= v instanceof String;
+                }
+            }
+            if (allNumbers) {
+                return NumberKey.fromValues(values);
+            } else if (allStrings) {
+                String[] strings = new String[values.length];
+                System.arraycopy(values, 0, strings, 0, values.length);
+                return new StringKey(strings);
+            } else {
+                return new ObjectKey(values);
+            }
+        }
+    }
+
+    private static class NumberKey extends SortKey {
+
+        private final double[] values;
+
+        private final BitSet nulls;
+
+        NumberKey(double[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        static NumberKey fromValues(Object[] objects) {
+            double[] values = new double[objects.length];
+            BitSet nulls = new BitSet(objects.length);
+            for (int i = 0; i < objects.length; i++) {
+                if (objects[i] == null) {
+                    nulls.set(i);
+                } else {
+                    values[i] = ((Number) objects[i]).doubleValue();
+                }
+            }
+            return new NumberKey(values, nulls);
+        }
+
+        static NumberKey fromColumnar(ColumnarRowList columnar, int col, int from, int to) {
+            double[] values = new double[to - from];
+            BitSet nulls = new BitSet(to - from);
+            for (int i = from; i < to; i++) {
+                if (columnar.isNull(i, col)) {
+                    nulls.set(i - from);
+                } else {
+                    values[i - from] = columnar.getDouble(i, col);
+                }
+            }
+            return new NumberKey(values, nulls);
+        }
+
+        @Override
+        int compare(int a, int b) {
+            boolean aNull = nulls.get(a);
+            boolean bNull = nulls.get(b);
+            if (aNull || bNull) {
+                return aNull == bNull ? 0 : (aNull ? -1 : 1);
+            }
+            double d1 = values[a];
+            double d2 = values[b];
+            if (d1 < d2) return -1;
+            else if (d1 > d2) return 1;
+            else return 0;
+        }
+
+        @Override
+        Object valueAt(int i) {
+            return nulls.get(i) ? null : Double.valueOf(values[i]);
+        }
+    }
+
+    private static class StringKey extends SortKey {
+
+        private final String[] values;
+
+        StringKey(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int compare(int a, int b) {
+            String s1 = values[a];
+            String s2 = values[b];
+            if (s1 == null || s2 == null) {
+                return s1 == s2 ? 0 : (s1 == null ? -1 : 1);
+            }
+            return s1.compareToIgnoreCase(s2);
+        }
+
+        @Override
+        Object valueAt(int i) {
+            return values[i];
+        }
+    }
+
+    private static class ObjectKey extends SortKey {
+
+        private final Object[] values;
+
+        ObjectKey(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int compare(int a, int b) {
+            return RowComparator.compareValues(values[a], values[b]);
+        }
+
+        @Override
+        Object valueAt(int i) {
+            return values[i];
+        }
+    }
+
+    // ---------------- in-memory merge sort ----------------
+
+    /**
+     * Stable merge sort of a[lo..hi) using tmp as scratch space.
+     */
+    private static void mergeSort(int[] a, int[] tmp, int lo, int hi, IndexComparator c) {
+        if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= lo && c.compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, tmp, lo, mid, c);
+        mergeSort(a, tmp, mid, hi, c);
+        merge(a, tmp, lo, mid, hi, c);
+    }
+
+    /**
+     * Merges the sorted ranges a[lo..mid) and a[mid..hi), preferring the left
+     * range on ties so the sort stays stable.
+     */
+    private static void merge(int[] a, int[] tmp, int lo, int mid, int hi, IndexComparator c) {
+        if (c.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, lo, tmp, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (i < mid && (j >= hi || c.compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    /**
+     * Sorts one chunk per thread, then merges neighbouring chunks in rounds
+     * until one sorted range remains. Each round's merges also run in
+     * parallel.
+     */
+    private void parallelMergeSort(final int[] a, final int[] tmp, final IndexComparator c) throws SQLException {
+        int n = a.length;
+        int chunks = parallelism;
+        final int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = (int) ((long) n * i / chunks);
+        }
+        ExecutorService executor = getSortThreads();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < chunks; i++) {
+            final int lo = bounds[i];
+            final int hi = bounds[i + 1];
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    mergeSort(a, tmp, lo, hi, c);
+                    return null;
+                }
+            });
+        }
+        runAll(executor, tasks);
+
+        for (int width = 1; width < chunks; width *= 2) {
+            tasks.clear();
+            for (int i = 0; i + width < chunks; i += 2 * width) {
+                final int lo = bounds[i];
+                final int mid = bounds[i + width];
+                final int hi = bounds[Math.min(i + 2 * width, chunks)];
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        if (lo < mid && mid < hi) {
+                            merge(a, tmp, lo, mid, hi, c);
+                        }
+                        return null;
+                    }
+                });
+            }
+            runAll(executor, tasks);
+        }
+    }
+
+    private static synchronized ExecutorService getSortThreads() {
+        if (sortThreads == null) {
+            sortThreads = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Row set sort");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return sortThreads;
+    }
+
+    private static void runAll(ExecutorService executor, List<Callable<Object>> tasks) throws SQLException {
+        try {
+            for (Future<Object> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while sorting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // ---------------- external merge sort ----------------
+
+    /**
+     * One sorted run of row indexes and their keys on disk, positioned at its
+     * next row.
+     */
+    private static class Run {
+        final int ordinal;
+        final File file;
+        final ObjectInputStream in;
+        int remaining;
+        int rowIndex;
+        final Object[] keys;
+
+        Run(int ordinal, File file, int count, int keyCount) throws IOException {
+            this.ordinal = ordinal;
+            this.file = file;
+            this.remaining = count;
+            this.keys = new Object[keyCount];
+            FileInputStream fileIn = new FileInputStream(file);
+            try {
+                this.in = new ObjectInputStream(new BufferedInputStream(fileIn));
+            } catch (IOException e) {
+                fileIn.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next row of this run, returning false if there are
+         * none left.
+         */
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            rowIndex = in.readInt();
+            for (int k = 0; k < keys.length; k++) {
+                keys[k] = readKey(in);
+            }
+            remaining--;
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close sort run " + file, e);
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Writes one key value to a run file. Numbers are written as doubles,
+     * which is how they are compared.
+     */
+    private static void writeKey(ObjectOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(KEY_NULL);
+        } else if (value instanceof Number) {
+            out.writeByte(KEY_NUMBER);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            String str = (String) value;
+            out.writeByte(KEY_STRING);
+            out.writeInt(str.length());
+            out.writeChars(str);
+        } else if (value instanceof Comparable<?>) {
+            if (!(value instanceof Serializable)) {
+                throw new NotSerializableException(value.getClass().getName());
+            }
+            out.writeByte(KEY_OBJECT);
+            out.writeObject(value);
+        } else {
+            out.writeByte(KEY_INCOMPARABLE);
+        }
+    }
+
+    private static Object readKey(ObjectInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case KEY_NULL:
+            return null;
+        case KEY_NUMBER:
+            return in.readDouble();
+        case KEY_STRING: {
+            char[] chars = new char[in.readInt()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = in.readChar();
+            }
+            return new String(chars);
+        }
+        case KEY_OBJECT:
+            try {
+                return in.readObject();
+            } catch (ClassNotFoundException e) {
+                IOException ex = new IOException("Could not read a sort key back: " + e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            }
+        case KEY_INCOMPARABLE:
+            return INCOMPARABLE;
+        default:
+            throw new IOException("Unknown sort key tag " + tag);
+        }
+    }
+
+    private void externalSort(CachedRowSet rs, List<Object[]> rows, int runSize, IndexConsumer out) throws SQLException {
+        int n = rows.size();
+        final int keyCount = comparator.getSortColumnCount();
+        final boolean[] ascending = new boolean[keyCount];
+        for (int k = 0; k < keyCount; k++) {
+            ascending[k] = comparator.isSortColumnAscending(k);
+        }
+        logger.debug("External sort of " + n + " rows in runs of " + runSize);
+        List<Run> runs = new ArrayList<Run>();
+        try {
+            for (int from = 0; from < n; from += runSize) {
+                int to = Math.min(n, from + runSize);
+                KeyComparator keys = extractKeys(rs, rows, from, to);
+                int[] sorted = sortPositions(keys, to - from);
+                File file = File.createTempFile("crs-sort", ".run", tempDirectory);
+                try {
+                    ObjectOutputStream runOut = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                    try {
+                        for (int position : sorted) {
+                            runOut.writeInt(from + position);
+                            for (int k = 0; k < keyCount; k++) {
+                                writeKey(runOut, keys.valueAt(k, position));
+                            }
+                            // forget the objects written so far, or the stream holds on to them
+                            runOut.reset();
+                        }
+                    } finally {
+                        runOut.close();
+                    }
+                    runs.add(new Run(runs.size(), file, sorted.length, keyCount));
+                } catch (IOException e) {
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                    throw e;
+                }
+            }
+
+            PriorityQueue<Run> heads = new PriorityQueue<Run>(Math.max(1, runs.size()), new Comparator<Run>() {
+                public int compare(Run r1, Run r2) {
+                    for (int k = 0; k < keyCount; k++) {
+                        int diff = RowComparator.compareValues(r1.keys[k], r2.keys[k]);
+                        if (diff != 0) {
+                            return ascending[k] ? diff : -diff;
+                        }
+                    }
+                    return r1.ordinal - r2.ordinal;
+                }
+            });
+            for (Run run : runs) {
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Run run = heads.poll();
+                out.accept(run.rowIndex);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+        } catch (IOException e) {
+            SQLException ex = new SQLException("External sort failed: " + e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column-oriented row store for {@link CachedRowSet}. Each column is kept
+ * in its own array: integral and floating point columns use primitive
+ * <code>int[]</code>, <code>long[]</code> and <code>double[]</code> arrays,
+ * character columns are dictionary encoded into an <code>int[]</code> of codes
+ * unless most of their values turn out to be distinct, and everything else is
+ * stored as plain objects. Nulls are tracked in a
+ * {@link BitSet} per column.
+ * <p>
+ * The store remembers the exact class of the values it was given, so
+ * {@link #getObject(int, int)} hands back the same type the JDBC driver
+ * originally returned (an INTEGER column comes back as Integer, a NUMERIC(10,0)
+ * column comes back as BigDecimal, and so on). If a value arrives that a
+ * primitive column cannot represent exactly, that column is quietly converted
+ * to object storage, so nothing is ever lost by choosing the columnar layout.
+ * <p>
+ * This class also implements <code>List&lt;Object[]&gt;</code> so the rest of
+ * CachedRowSet (sorting, insert rows, {@link CachedRowSet#getData()}) can keep
+ * treating it as a list of rows. Those list methods materialise a fresh
+ * Object[] for each row they touch; the typed getters in this class do not
+ * allocate at all.
+ */
+class ColumnarRowList extends AbstractList<Object[]> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of rows to allocate space for the first time a column
+     * needs room.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Column[] columns;
+
+    private int size;
+
+    private int capacity;
+
+    /**
+     * Creates a new empty row store with one column per column in the
+     * given metadata. The storage layout of each column is chosen from its
+     * SQL type, precision and scale.
+     *
+     * @param rsmd
+     *            The metadata describing the columns to store.
+     * @param objectColumnsFrom
+     *            The first 0-based column index that should always use plain
+     *            object storage regardless of its declared type. This is used
+     *            for the placeholder columns added by
+     *            {@link CachedRowSet#populate(java.sql.ResultSet, RowFilter, String...)}
+     *            which claim to be VARCHAR but may hold anything.
+     */
+    ColumnarRowList(CachedResultSetMetaData rsmd, int objectColumnsFrom) throws SQLException {
+        columns = new Column[rsmd.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            if (i >= objectColumnsFrom) {
+                columns[i] = new ObjectColumn();
+            } else {
+                columns[i] = createColumn(rsmd.getColumnType(i + 1), rsmd.getPrecision(i + 1), rsmd.getScale(i + 1));
+            }
+        }
+    }
+
+    /**
+     * Picks a column implementation for the given JDBC type.
+     */
+    static Column createColumn(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            return new IntColumn();
+        case Types.BIGINT:
+            return new LongColumn();
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            if (scale == 0 && precision > 0 && precision <= 18) {
+                return new LongColumn();
+            } else {
+                return new ObjectColumn();
+            }
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return new DoubleColumn();
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return new StringColumn();
+        default:
+            return new ObjectColumn();
+        }
+    }
+
+    // ---------------- typed, allocation-free accessors ----------------
+
+    /**
+     * Returns the number of columns in this store.
+     */
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns true if the given 0-based column is currently stored in a
+     * primitive numeric array, so {@link #getDouble(int, int)} reads it
+     * without boxing.
+     */
+    boolean isNumericColumn(int col) {
+        Column c = columns[col];
+        return c instanceof IntColumn || c instanceof LongColumn || c instanceof DoubleColumn;
+    }
+
+    /**
+     * Returns true if the given cell is SQL NULL. Both indexes are 0-based.
+     */
+    boolean isNull(int row, int col) {
+        checkRow(row);
+        return columns[col].isNull(row);
+    }
+
+    Object getObject(int row, int col) {
+        checkRow(row);
+        return columns[col].getObject(row);
+    }
+
+    int getInt(int row, int col) {
+        checkRow(row);
+        return columns[col].getInt(row);
+    }
+
+    long getLong(int row, int col) {
+        checkRow(row);
+        return columns[col].getLong(row);
+    }
+
+    double getDouble(int row, int col) {
+        checkRow(row);
+        return columns[col].getDouble(row);
+    }
+
+    String getString(int row, int col) {
+        checkRow(row);
+        return columns[col].getString(row);
+    }
+
+    /**
+     * Replaces the value of a single cell. If the given value does not fit
+     * the column's current storage, the column is converted to object
+     * storage first.
+     */
+    void set(int row, int col, Object value) {
+        checkRow(row);
+        if (!columns[col].set(row, value)) {
+            columns[col] = columns[col].toObjectColumn(size, capacity);
+            columns[col].set(row, value);
+        }
+    }
+
+    /**
+     * Appends a row to the end of this store. The given array is not retained.
+     */
+    void append(Object[] row) {
+        ensureCapacity(size + 1);
+        for (int col = 0; col < columns.length; col++) {
+            Object value = col < row.length ? row[col] : null;
+            if (!columns[col].set(size, value)) {
+                columns[col] = columns[col].toObjectColumn(size, capacity);
+                columns[col].set(size, value);
+            }
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Releases any spare capacity left over from populating this store.
+     */
+    void trimToSize() {
+        if (capacity > size) {
+            capacity = size;
+            for (Column c : columns) {
+                c.resize(capacity);
+            }
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > capacity) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, Math.max(minCapacity, capacity + (capacity >> 1)));
+            for (Column c : columns) {
+                c.resize(newCapacity);
+            }
+            capacity = newCapacity;
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of range (size=" + size + ")");
+        }
+    }
+
+    // ---------------- List<Object[]> implementation ----------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Materialises the given row as a new array. Changes to the returned
+     * array are not reflected in this store; use {@link #set(int, Object[])}
+     * or {@link #set(int, int, Object)} for that.
+     */
+    @Override
+    public Object[] get(int row) {
+        checkRow(row);
+        Object[] values = new Object[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            values[col] = columns[col].getObject(row);
+        }
+        return values;
+    }
+
+    @Override
+    public Object[] set(int row, Object[] values) {
+        Object[] old = get(row);
+        for (int col = 0; col < columns.length; col++) {
+            set(row, col, col < values.length ? values[col] : null);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean add(Object[] row) {
+        append(row);
+        return true;
+    }
+
+    @Override
+    public Object[] remove(int row) {
+        Object[] old = get(row);
+        for (Column c : columns) {
+            c.remove(row, size);
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (Column c : columns) {
+            c.resize(0);
+        }
+        size = 0;
+        capacity = 0;
+        modCount++;
+    }
+
+    // ---------------- column implementations ----------------
+
+    /**
+     * Storage for one column. Row indexes are 0-based and always within the
+     * capacity most recently given to {@link #resize(int)}.
+     */
+    static abstract class Column implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected BitSet nulls = new BitSet();
+
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        abstract Object getObject(int row);
+
+        int getInt(int row) {
+            return isNull(row) ? 0 : ((Number) getObject(row)).intValue();
+        }
+
+        long getLong(int row) {
+            return isNull(row) ? 0L : ((Number) getObject(row)).longValue();
+        }
+
+        double getDouble(int row) {
+            return isNull(row) ? 0.0 : ((Number) getObject(row)).doubleValue();
+        }
+
+        String getString(int row) {
+            return isNull(row) ? null : getObject(row).toString();
+        }
+
+        /**
+         * Stores the value at the given row, returning false (and changing
+         * nothing) if this column can not represent the value exactly, or
+         * can't do so any more cheaply than object storage.
+         */
+        final boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+                return true;
+            } else if (setValue(row, value)) {
+                nulls.clear(row);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        abstract boolean setValue(int row, Object value);
+
+        abstract void resize(int newCapacity);
+
+        /**
+         * Shifts every row after the given one up by one position.
+         */
+        abstract void remove(int row, int size);
+
+        void removeNull(int row, int size) {
+            for (int i = row; i < size - 1; i++) {
+                nulls.set(i, nulls.get(i + 1));
+            }
+            nulls.clear(size - 1);
+        }
+
+        ObjectColumn toObjectColumn(int size, int capacity) {
+            ObjectColumn c = new ObjectColumn();
+            c.resize(capacity);
+            for (int i = 0; i < size; i++) {
+                c.set(i, getObject(i));
+            }
+            return c;
+        }
+    }
+
+    static class ObjectColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private Object[] values = new Object[0];
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean setValue(int row, Object value) {
+            values[row] = value;
+            return true;
+        }
+
+        @Override
+        void resize(int newCapacity) {
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        void remove(int row, int size) {
+            System.arraycopy(values, row + 1, values, row, size - row - 1);
+            values[size - 1] = null;
+            removeNull(row, size);
+        }
+
+        @Override
+        ObjectColumn toObjectColumn(int size, int capacity) {
+            return this;
+        }
+    }
+
+    /**
+     * Holds TINYINT, SMALLINT and INTEGER values. Drivers disagree on whether
+     * the small types come back as Byte, Short or Integer, so the first value
+     * stored decides which wrapper type is handed back out.
+     */
+    static class IntColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private int[] values = new int[0];
+
+        private Class<?> boxType;
+
+        @Override
+        Object getObject(int row) {
+            if (isNull(row)) {
+                return null;
+            } else if (boxType == Short.class) {
+                return Short.valueOf((short) values[row]);
+            } else if (boxType == Byte.class) {
+                return Byte.valueOf((byte) values[row]);
+            } else {
+                return Integer.valueOf(values[row]);
+            }
+        }
+
+        @Override
+        int getInt(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        boolean setValue(int row, Object value) {
+            Class<?> c = value.getClass();
+            if (c != Integer.class && c != Short.class && c != Byte.class) {
+                return false;
+            }
+            if (boxType == null) {
+                boxType = c;
+            } else if (boxType != c) {
+                return false;
+            }
+            values[row] = ((Number) value).intValue();
+            return true;
+        }
+
+        @Override
+        void resize(int newCapacity) {
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        void remove(int row, int size) {
+            System.arraycopy(values, row + 1, values, row, size - row - 1);
+            removeNull(row, size);
+        }
+    }
+
+    /**
+     * Holds BIGINT values, and also NUMERIC/DECIMAL values with no
+     * fractional digits that fit in a long. The latter are handed back out as
+     * BigDecimal with a scale of 0, exactly as they went in.
+     */
+    static class LongColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] values = new long[0];
+
+        private Class<?> boxType;
+
+        @Override
+        Object getObject(int row) {
+            if (isNull(row)) {
+                return null;
+            } else if (boxType == BigDecimal.class) {
+                return BigDecimal.valueOf(values[row]);
+            } else {
+                return Long.valueOf(values[row]);
+            }
+        }
+
+        @Override
+        int getInt(int row) {
+            return isNull(row) ? 0 : (int) values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        boolean setValue(int row, Object value) {
+            Class<?> c = value.getClass();
+            long v;
+            if (c == Long.class) {
+                v = ((Long) value).longValue();
+            } else if (c == BigDecimal.class) {
+                BigDecimal bd = (BigDecimal) value;
+                if (bd.scale() != 0 || bd.precision() > 18) {
+                    return false;
+                }
+                v = bd.longValue();
+            } else {
+                return false;
+            }
+            if (boxType == null) {
+                boxType = c;
+            } else if (boxType != c) {
+                return false;
+            }
+            values[row] = v;
+            return true;
+        }
+
+        @Override
+        void resize(int newCapacity) {
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        void remove(int row, int size) {
+            System.arraycopy(values, row + 1, values, row, size - row - 1);
+            removeNull(row, size);
+        }
+    }
+
+    /**
+     * Holds DOUBLE, FLOAT and REAL values. Float values widen to double
+     * without loss, so they are handed back out as Float if that is what
+     * went in.
+     */
+    static class DoubleColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        private double[] values = new double[0];
+
+        private Class<?> boxType;
+
+        @Override
+        Object getObject(int row) {
+            if (isNull(row)) {
+                return null;
+            } else if (boxType == Float.class) {
+                return Float.valueOf((float) values[row]);
+            } else {
+                return Double.valueOf(values[row]);
+            }
+        }
+
+        @Override
+        int getInt(int row) {
+            return isNull(row) ? 0 : (int) values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return isNull(row) ? 0 : (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return isNull(row) ? 0 : values[row];
+        }
+
+        @Override
+        boolean setValue(int row, Object value) {
+            Class<?> c = value.getClass();
+            if (c != Double.class && c != Float.class) {
+                return false;
+            }
+            if (boxType == null) {
+                boxType = c;
+            } else if (boxType != c) {
+                return false;
+            }
+            values[row] = ((Number) value).doubleValue();
+            return true;
+        }
+
+        @Override
+        void resize(int newCapacity) {
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        void remove(int row, int size) {
+            System.arraycopy(values, row + 1, values, row, size - row - 1);
+            removeNull(row, size);
+        }
+    }
+
+    /**
+     * Holds character data as codes into a per-column dictionary, so a
+     * column with a handful of distinct values costs one int per row.
+     * <p>
+     * A column whose values are mostly distinct, like a key or free text,
+     * would cost the dictionary's list and map entries on top of the strings
+     * themselves. Once the dictionary has grown past
+     * {@link #MIN_DICTIONARY_SIZE} entries, a new value that would make it
+     * hold more than {@link #MAX_DISTINCT_RATIO} of the values stored is
+     * refused, which makes the row store switch the column to object
+     * storage.
+     */
+    static class StringColumn extends Column {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of distinct values a column may always have before the
+         * ratio of distinct values is checked.
+         */
+        static final int MIN_DICTIONARY_SIZE = 1024;
+
+        /**
+         * The most distinct values a column may have per value stored once
+         * its dictionary is past {@link #MIN_DICTIONARY_SIZE}.
+         */
+        static final double MAX_DISTINCT_RATIO = 0.5;
+
+        private int[] codes = new int[0];
+
+        /**
+         * The number of values that have been stored in this column,
+         * counting replaced ones.
+         */
+        private int storedCount;
+
+        private final List<String> dictionary = new ArrayList<String>();
+
+        private final Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>();
+
+        @Override
+        Object getObject(int row) {
+            return getString(row);
+        }
+
+        @Override
+        String getString(int row) {
+            return isNull(row) ? null : dictionary.get(codes[row]);
+        }
+
+        @Override
+        boolean setValue(int row, Object value) {
+            if (!(value instanceof String)) {
+                return false;
+            }
+            Integer code = dictionaryIndex.get(value);
+            if (code == null) {
+                if (dictionary.size() >= MIN_DICTIONARY_SIZE
+                        && dictionary.size() + 1 > (storedCount + 1) * MAX_DISTINCT_RATIO) {
+                    return false;
+                }
+                code = dictionary.size();
+                dictionary.add((String) value);
+                dictionaryIndex.put((String) value, code);
+            }
+            codes[row] = code;
+            storedCount++;
+            return true;
+        }
+
+        @Override
+        void resize(int newCapacity) {
+            codes = Arrays.copyOf(codes, newCapacity);
+        }
+
+        @Override
+        void remove(int row, int size) {
+            System.arraycopy(codes, row + 1, codes, row, size - row - 1);
+            removeNull(row, size);
+        }
+    }
+}
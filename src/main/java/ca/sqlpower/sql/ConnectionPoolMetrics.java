@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what happens when connections are borrowed from an
+ * {@link InstrumentedConnectionPool}: how many borrows there were, how long
+ * each one waited, how many timed out or failed, and the most connections
+ * ever in use at once. The live active and idle counts come from the pool
+ * itself.
+ * <p>
+ * Borrow times are kept in a histogram with fixed buckets (see
+ * {@link #getBucketBounds()}), so recording one is a couple of atomic
+ * increments and the metrics take the same space however long the pool
+ * lives. All methods are thread safe.
+ */
+public class ConnectionPoolMetrics {
+
+    /**
+     * The upper bounds, in milliseconds, of the borrow time histogram
+     * buckets. There is one more bucket for longer borrows.
+     */
+    private static final long[] BUCKET_BOUNDS = {
+        1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+    };
+
+    private final InstrumentedConnectionPool pool;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong peakActive = new AtomicLong();
+
+    ConnectionPoolMetrics(InstrumentedConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Records a successful borrow that took the given time and left the
+     * given number of connections in use.
+     */
+    void recordBorrow(long waitNanos, int activeAfter) {
+        borrows.incrementAndGet();
+        recordWait(waitNanos);
+        long millis = waitNanos / 1000000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+        for (;;) {
+            long peak = peakActive.get();
+            if (activeAfter <= peak || peakActive.compareAndSet(peak, activeAfter)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records a borrow that gave up after waiting the given time because
+     * the pool was exhausted.
+     */
+    void recordTimeout(long waitNanos) {
+        timeouts.incrementAndGet();
+        recordWait(waitNanos);
+    }
+
+    /**
+     * Records a borrow that failed because a connection could not be made.
+     */
+    void recordFailure(long waitNanos) {
+        failures.incrementAndGet();
+        recordWait(waitNanos);
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        for (;;) {
+            long max = maxWaitNanos.get();
+            if (waitNanos <= max || maxWaitNanos.compareAndSet(max, waitNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the upper bounds, in milliseconds, of all but the last bucket
+     * of {@link #getBorrowTimeHistogram()}.
+     */
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * Returns the number of successful borrows that took less than each of
+     * the {@link #getBucketBounds() bucket bounds} (and at least the one
+     * before), followed by the number that took longer than the last bound.
+     */
+    public long[] getBorrowTimeHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of successful borrows.
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * Returns the number of borrows that gave up waiting for a connection
+     * because the pool was exhausted.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the number of borrows that failed because a new connection
+     * could not be made or validated.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the total time spent in all borrows, whether they succeeded or
+     * not.
+     */
+    public long getTotalWaitMillis() {
+        return totalWaitNanos.get() / 1000000;
+    }
+
+    /**
+     * Returns the longest time a single borrow took.
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000;
+    }
+
+    /**
+     * Returns the mean time a borrow took, or 0 if there have been none.
+     */
+    public double getMeanWaitMillis() {
+        long count = borrows.get() + timeouts.get() + failures.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the most connections that have been in use at once.
+     */
+    public int getPeakActive() {
+        return (int) peakActive.get();
+    }
+
+    /**
+     * Returns the number of connections in use now.
+     */
+    public int getActiveCount() {
+        return pool.getNumActive();
+    }
+
+    /**
+     * Returns the number of open connections waiting in the pool now.
+     */
+    public int getIdleCount() {
+        return pool.getNumIdle();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("active=").append(getActiveCount());
+        sb.append(", idle=").append(getIdleCount());
+        sb.append(", peakActive=").append(getPeakActive());
+        sb.append(", borrows=").append(getBorrowCount());
+        sb.append(", timeouts=").append(getTimeoutCount());
+        sb.append(", failures=").append(getFailureCount());
+        sb.append(", meanWait=").append(String.format("%.2f", getMeanWaitMillis())).append("ms");
+        sb.append(", maxWait=").append(getMaxWaitMillis()).append("ms");
+        sb.append(", histogram=[");
+        long[] counts = getBorrowTimeHistogram();
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(i < BUCKET_BOUNDS.length ? "<" + BUCKET_BOUNDS[i] : ">=" + BUCKET_BOUNDS[i - 1]);
+            sb.append("ms:").append(counts[i]);
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * The sizing and validation settings of an {@link InstrumentedConnectionPool}.
+ * <p>
+ * The settings can be stored among a data source's properties with
+ * {@link #writeTo(SPDataSource)}, so each data source in a
+ * {@link DataSourceCollection} can have its own pool size. A property that
+ * is missing or can not be parsed keeps the default value.
+ * <p>
+ * When the pool is exhausted, a request for a connection waits in line for
+ * up to {@link #getMaxWaitMillis()} for one to be returned, rather than
+ * failing straight away. Connections are validated when they are borrowed
+ * only if they have sat idle for longer than
+ * {@link #getValidationIdleMillis()}, so a busy pool does not pay for a
+ * validation query on every borrow.
+ */
+public class ConnectionPoolSettings {
+
+    private static final Logger logger = Logger.getLogger(ConnectionPoolSettings.class);
+
+    public static final String POOL_MAX_ACTIVE = "Pool Max Active";
+    public static final String POOL_MAX_IDLE = "Pool Max Idle";
+    public static final String POOL_MIN_IDLE = "Pool Min Idle";
+    public static final String POOL_MAX_WAIT = "Pool Max Wait";
+    public static final String POOL_VALIDATION_IDLE_TIME = "Pool Validation Idle Time";
+    public static final String POOL_VALIDATION_QUERY = "Pool Validation Query";
+    public static final String POOL_EVICTABLE_IDLE_TIME = "Pool Evictable Idle Time";
+
+    private int maxActive = 8;
+    private int maxIdle = 8;
+    private int minIdle = 0;
+    private long maxWaitMillis = 30000;
+    private long validationIdleMillis = 60000;
+    private long minEvictableIdleMillis = 1000 * 60 * 5;
+    private long timeBetweenEvictionRunsMillis = 30000;
+    private String validationQuery;
+
+    /**
+     * Creates settings with the default values.
+     */
+    public ConnectionPoolSettings() {
+    }
+
+    public ConnectionPoolSettings(ConnectionPoolSettings copyMe) {
+        maxActive = copyMe.maxActive;
+        maxIdle = copyMe.maxIdle;
+        minIdle = copyMe.minIdle;
+        maxWaitMillis = copyMe.maxWaitMillis;
+        validationIdleMillis = copyMe.validationIdleMillis;
+        minEvictableIdleMillis = copyMe.minEvictableIdleMillis;
+        timeBetweenEvictionRunsMillis = copyMe.timeBetweenEvictionRunsMillis;
+        validationQuery = copyMe.validationQuery;
+    }
+
+    /**
+     * Returns a copy of the given defaults, overridden by any pool settings
+     * among the given data source's properties.
+     */
+    public static ConnectionPoolSettings forDataSource(SPDataSource ds, ConnectionPoolSettings defaults) {
+        ConnectionPoolSettings settings = new ConnectionPoolSettings(defaults);
+        settings.maxActive = (int) readLong(ds, POOL_MAX_ACTIVE, settings.maxActive);
+        settings.maxIdle = (int) readLong(ds, POOL_MAX_IDLE, settings.maxIdle);
+        settings.minIdle = (int) readLong(ds, POOL_MIN_IDLE, settings.minIdle);
+        settings.maxWaitMillis = readLong(ds, POOL_MAX_WAIT, settings.maxWaitMillis);
+        settings.validationIdleMillis = readLong(ds, POOL_VALIDATION_IDLE_TIME, settings.validationIdleMillis);
+        settings.minEvictableIdleMillis = readLong(ds, POOL_EVICTABLE_IDLE_TIME, settings.minEvictableIdleMillis);
+        String query = ds.get(POOL_VALIDATION_QUERY);
+        if (query != null && query.trim().length() > 0) {
+            settings.validationQuery = query;
+        }
+        return settings;
+    }
+
+    private static long readLong(SPDataSource ds, String key, long defaultValue) {
+        String value = ds.get(key);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid value \"" + value + "\" for " + key + " of " + ds.getName());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Stores these settings among the given data source's properties.
+     */
+    public void writeTo(SPDataSource ds) {
+        ds.put(POOL_MAX_ACTIVE, String.valueOf(maxActive));
+        ds.put(POOL_MAX_IDLE, String.valueOf(maxIdle));
+        ds.put(POOL_MIN_IDLE, String.valueOf(minIdle));
+        ds.put(POOL_MAX_WAIT, String.valueOf(maxWaitMillis));
+        ds.put(POOL_VALIDATION_IDLE_TIME, String.valueOf(validationIdleMillis));
+        ds.put(POOL_EVICTABLE_IDLE_TIME, String.valueOf(minEvictableIdleMillis));
+        ds.put(POOL_VALIDATION_QUERY, validationQuery);
+    }
+
+    /**
+     * Returns the commons-pool configuration these settings describe.
+     */
+    GenericObjectPool.Config toPoolConfig() {
+        GenericObjectPool.Config config = new GenericObjectPool.Config();
+        config.maxActive = maxActive;
+        config.maxIdle = maxIdle;
+        config.minIdle = minIdle;
+        if (maxWaitMillis == 0) {
+            config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+        } else {
+            config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+            config.maxWait = maxWaitMillis;
+        }
+        config.testOnBorrow = validationIdleMillis >= 0;
+        config.testOnReturn = false;
+        config.testWhileIdle = timeBetweenEvictionRunsMillis > 0;
+        config.minEvictableIdleTimeMillis = minEvictableIdleMillis;
+        config.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+        config.numTestsPerEvictionRun = 3;
+        return config;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * Sets the most connections the pool will have open at once. A
+     * negative number means no limit.
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Sets the most connections the pool will keep open while they are not
+     * in use.
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Sets the fewest connections the pool's evictor will leave open while
+     * they are not in use.
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets how long a request for a connection waits for one to be returned
+     * when the pool is exhausted. 0 fails straight away, and a negative
+     * number waits as long as it takes.
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getValidationIdleMillis() {
+        return validationIdleMillis;
+    }
+
+    /**
+     * Sets how long a connection may sit idle before it is validated on its
+     * way out of the pool. 0 validates on every borrow, and a negative number
+     * never validates on borrow, leaving it to the evictor.
+     */
+    public void setValidationIdleMillis(long validationIdleMillis) {
+        this.validationIdleMillis = validationIdleMillis;
+    }
+
+    public long getMinEvictableIdleMillis() {
+        return minEvictableIdleMillis;
+    }
+
+    /**
+     * Sets how long a connection may sit idle before the evictor may close
+     * it.
+     */
+    public void setMinEvictableIdleMillis(long minEvictableIdleMillis) {
+        this.minEvictableIdleMillis = minEvictableIdleMillis;
+    }
+
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Sets how often the evictor checks idle connections. 0 or less turns the
+     * evictor off.
+     */
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    /**
+     * Sets the query used to check a connection still works, or null to only
+     * check that it has not been closed.
+     */
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    @Override
+    public String toString() {
+        return "maxActive=" + maxActive + ", maxIdle=" + maxIdle + ", minIdle=" + minIdle +
+                ", maxWait=" + maxWaitMillis + "ms, validationIdle=" + validationIdleMillis + "ms";
+    }
+}
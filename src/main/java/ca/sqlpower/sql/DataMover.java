@@ -19,6 +19,8 @@
 
 package ca.sqlpower.sql;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -27,15 +29,30 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.dbcp.DelegatingConnection;
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.sql.jdbcwrapper.ConnectionDecorator;
+import ca.sqlpower.util.Monitorable;
+import ca.sqlpower.util.MonitorableImpl;
+
 /**
  * The DataMover class is used to move data and structure from one
  * database to another, even if they are not from the same vendor.
  */
-public class DataMover {
+public class DataMover implements Monitorable {
 	
 	private static final Logger logger = Logger.getLogger(DataMover.class);
 	
@@ -70,6 +87,92 @@ public class DataMover {
 	 */
 	protected boolean truncatingDestinationTable;
 
+	/**
+	 * The number of rows sent to the destination in each JDBC batch, and
+	 * read from the source in each fetch.
+	 */
+	protected int batchSize = 1000;
+
+	/**
+	 * The number of rows to insert between commits, or 0 to commit only
+	 * once the whole table has been copied.
+	 */
+	protected int commitInterval;
+
+	/**
+	 * If true, the source is read on a separate thread while the
+	 * destination is written. This is skipped when the source and
+	 * destination share a physical connection, or a column is read as an
+	 * object that may refer back into the source result set.
+	 */
+	protected boolean pipelined = true;
+
+	/**
+	 * The number of batches the reader thread may fill before the writer
+	 * has caught up. Only used when pipelined.
+	 */
+	protected int queueCapacity = 4;
+
+	/**
+	 * The number of rows written to the destination so far in the current
+	 * copy.
+	 */
+	private int rowsCopied;
+
+	/**
+	 * The number of rows written to the destination since the last commit.
+	 */
+	private int rowsSinceCommit;
+
+	/**
+	 * The statistics of the last table copied, or null if none has been.
+	 */
+	private TableCopyStats lastCopyStats;
+
+	/**
+	 * The number of rows to copy in each transaction of a chunked copy.
+	 */
+	protected int chunkSize = 100000;
+
+	/**
+	 * The columns to order a chunked copy by, or null to use the source
+	 * table's primary key.
+	 */
+	protected List<String> keyColumns;
+
+	/**
+	 * The file each chunked copy's checkpoint is saved to, or null.
+	 */
+	protected File checkpointFile;
+
+	/**
+	 * The checkpoint of the last chunk committed by a chunked copy.
+	 */
+	private TableCopyCheckpoint lastCheckpoint;
+
+	/**
+	 * True while a chunked copy is running, which commits per chunk rather
+	 * than per {@link #commitInterval}.
+	 */
+	private boolean chunking;
+
+	/**
+	 * The 0-based positions of the key columns in the source result set
+	 * during a chunked copy, or null.
+	 */
+	private int[] keyColumnIndexes;
+
+	/**
+	 * The key of the last row written during a chunked copy.
+	 */
+	private Object[] lastKey;
+
+	/**
+	 * Reports the progress of the current copy. See the {@link Monitorable}
+	 * methods.
+	 */
+	private final MonitorableImpl monitor = new MonitorableImpl();
+
 	/**
 	 * Constructs a data mover instance for moving data from source to
 	 * dest.  Sets the connections to non-autocommit mode.
@@ -92,18 +195,31 @@ public class DataMover {
 	 * Copies all the data in the source table (in the source
 	 * database) to the table the the given name in the destination
 	 * database.
+	 * <p>
+	 * Rows are sent to the destination in JDBC batches of
+	 * {@link #getBatchSize()} rows. If {@link #isPipelined()} is true, a
+	 * second thread reads the next batches from the source while the
+	 * current one is being written, so neither database waits on the
+	 * other. The destination is committed every
+	 * {@link #getCommitInterval()} rows, and always at the end. If the copy
+	 * fails, only the rows since the last commit are rolled back.
+	 * 
+	 * @return The number of rows copied. {@link #getLastCopyStats()} gives
+	 *         the time it took as well.
 	 */
 	public int copyTable(String destTableName, String sourceTableName) throws SQLException {
 		Statement srcStmt = null;
-		Statement tmpStmt = null;
 		PreparedStatement dstStmt = null;
 		ResultSet srcRS = null;
 		ResultSetMetaData srcRSMD = null;
 		long startTime = System.currentTimeMillis();
-		int numRows = 0;
+		rowsCopied = 0;
+		rowsSinceCommit = 0;
+		startMonitoring(null);
 		
 		try {
 			srcStmt = srcCon.createStatement();
+			srcStmt.setFetchSize(batchSize);
 			lastSqlString = "select * from "+sourceTableName;
 			srcRS = srcStmt.executeQuery(lastSqlString);
 			srcRSMD = srcRS.getMetaData();
@@ -111,6 +227,195 @@ public class DataMover {
 			if (debug) logger.debug(summarizeResultSetMetaData(srcRSMD));
 
 			dstCon.setAutoCommit(false);
+			prepareDestinationTable(srcRSMD, destTableName, truncatingDestinationTable);
+
+			lastSqlString = generateInsertStatement(srcRSMD, destTableName);
+			dstStmt = dstCon.prepareStatement(lastSqlString);
+
+			ColumnTransfer[] transfers = ColumnTransfer.forColumns(srcRSMD);
+			transfer(srcRS, transfers, dstStmt, sourceTableName);
+			
+			dstCon.commit();
+			logger.debug("Committed transaction");
+			
+		} catch (SQLException e) {
+			try { 
+				dstCon.rollback();
+			} catch (Exception e2) {
+				logger.error("Roll back on error failed", e2);
+			}
+			throw new RuntimeException(
+			        "Prepared insert statement failed at row " + rowsCopied + ":\n" + lastSqlString, e);
+		} finally {
+			if (srcRS != null) srcRS.close();
+			if (srcStmt != null) srcStmt.close();
+			if (dstStmt != null) dstStmt.close();
+			monitor.setFinished(true);
+		}
+		long endTime = System.currentTimeMillis();
+		lastCopyStats = new TableCopyStats(sourceTableName, rowsCopied, endTime - startTime);
+		logger.debug(lastCopyStats);
+		return rowsCopied;
+	}
+
+	/**
+	 * Copies the source table to the destination one chunk of
+	 * {@link #getChunkSize()} rows at a time, committing after each chunk.
+	 * The source is read in primary key order, and each chunk starts after
+	 * the key of the last row of the one before it rather than at an
+	 * offset, so every chunk costs the same however far into the table it
+	 * is.
+	 * <p>
+	 * After each chunk commits, a {@link TableCopyCheckpoint} with the last
+	 * key copied is made available through {@link #getLastCheckpoint()} and,
+	 * if a {@link #setCheckpointFile(File) checkpoint file} is set, saved to
+	 * it. If the copy fails or is cancelled, passing that checkpoint back to
+	 * this method carries on from the next row. When resuming, any
+	 * destination rows after the checkpoint's key are deleted first, in case
+	 * a chunk was committed but its checkpoint was not saved.
+	 * <p>
+	 * The key is the source table's primary key unless
+	 * {@link #setKeyColumns(List)} names other columns, which must be unique
+	 * and have the same names in the destination. Progress and the speed of
+	 * each chunk are reported through this data mover's {@link Monitorable}
+	 * methods, and cancelling stops the copy after the current chunk.
+	 * 
+	 * @param resumeFrom
+	 *            The checkpoint to resume from, or null to start at the
+	 *            beginning. A fresh start truncates the destination if
+	 *            {@link #isTruncatingDestinationTable()}; resuming never does.
+	 * @return The total number of rows copied, including those copied before
+	 *         the checkpoint.
+	 * @throws IllegalArgumentException
+	 *             If the checkpoint was made by a copy between different
+	 *             tables.
+	 */
+	public int copyTableInChunks(String destTableName, String sourceTableName, TableCopyCheckpoint resumeFrom)
+			throws SQLException {
+		if (resumeFrom != null
+				&& (!sourceTableName.equalsIgnoreCase(resumeFrom.getSourceTableName())
+						|| !destTableName.equalsIgnoreCase(resumeFrom.getDestTableName()))) {
+			throw new IllegalArgumentException("Checkpoint is for a copy from " + resumeFrom.getSourceTableName() +
+					" to " + resumeFrom.getDestTableName() + ", not from " + sourceTableName + " to " + destTableName);
+		}
+		PreparedStatement srcStmt = null;
+		PreparedStatement dstStmt = null;
+		ResultSet srcRS = null;
+		long startTime = System.currentTimeMillis();
+		int startRows = resumeFrom == null ? 0 : resumeFrom.getRowsCopied();
+		rowsCopied = startRows;
+		rowsSinceCommit = 0;
+		chunking = true;
+		lastCheckpoint = resumeFrom;
+		
+		try {
+			List<String> keys;
+			if (resumeFrom != null) {
+				keys = resumeFrom.getKeyColumns();
+			} else if (keyColumns != null) {
+				keys = keyColumns;
+			} else {
+				keys = findKeyColumns(sourceTableName);
+			}
+			startMonitoring(countRows(sourceTableName));
+			dstCon.setAutoCommit(false);
+			
+			Object[] fromKey = resumeFrom == null ? null : resumeFrom.getLastKey();
+			ColumnTransfer[] transfers = null;
+			int chunk = 0;
+			for (;;) {
+				lastSqlString = generateChunkQuery(sourceTableName, keys, fromKey != null);
+				srcStmt = srcCon.prepareStatement(lastSqlString);
+				srcStmt.setMaxRows(chunkSize);
+				srcStmt.setFetchSize(Math.min(batchSize, chunkSize));
+				if (fromKey != null) {
+					bindKey(srcStmt, fromKey);
+				}
+				srcRS = srcStmt.executeQuery();
+				
+				if (transfers == null) {
+					ResultSetMetaData srcRSMD = srcRS.getMetaData();
+					if (debug) logger.debug(summarizeResultSetMetaData(srcRSMD));
+					transfers = ColumnTransfer.forColumns(srcRSMD);
+					keyColumnIndexes = findColumns(srcRSMD, keys);
+					prepareDestinationTable(srcRSMD, destTableName,
+							resumeFrom == null && truncatingDestinationTable);
+					if (fromKey != null) {
+						deleteAfterKey(destTableName, keys, fromKey);
+					}
+					lastSqlString = generateInsertStatement(srcRSMD, destTableName);
+					dstStmt = dstCon.prepareStatement(lastSqlString);
+				}
+				
+				long chunkStart = System.currentTimeMillis();
+				int chunkStartRows = rowsCopied;
+				lastKey = null;
+				transfer(srcRS, transfers, dstStmt, sourceTableName);
+				srcRS.close();
+				srcRS = null;
+				srcStmt.close();
+				srcStmt = null;
+				
+				int chunkRows = rowsCopied - chunkStartRows;
+				if (chunkRows == 0) {
+					break;
+				}
+				dstCon.commit();
+				rowsSinceCommit = 0;
+				fromKey = lastKey;
+				chunk++;
+				
+				lastCheckpoint = new TableCopyCheckpoint(sourceTableName, destTableName, keys, fromKey, rowsCopied);
+				if (checkpointFile != null) {
+					try {
+						lastCheckpoint.save(checkpointFile);
+					} catch (IOException e) {
+						throw new RuntimeException("Could not save checkpoint " + lastCheckpoint, e);
+					}
+				}
+				
+				TableCopyStats chunkStats = new TableCopyStats(
+						sourceTableName, chunkRows, System.currentTimeMillis() - chunkStart);
+				monitor.setMessage("Chunk " + chunk + " of " + chunkStats);
+				logger.debug("Chunk " + chunk + " of " + chunkStats);
+				
+				if (chunkRows < chunkSize || monitor.isCancelled()) {
+					break;
+				}
+			}
+			dstCon.commit();
+			
+		} catch (SQLException e) {
+			try { 
+				dstCon.rollback();
+			} catch (Exception e2) {
+				logger.error("Roll back on error failed", e2);
+			}
+			throw new RuntimeException(
+			        "Chunked copy failed at row " + rowsCopied + ". It can be resumed from " +
+			        lastCheckpoint + ":\n" + lastSqlString, e);
+		} finally {
+			chunking = false;
+			keyColumnIndexes = null;
+			if (srcRS != null) srcRS.close();
+			if (srcStmt != null) srcStmt.close();
+			if (dstStmt != null) dstStmt.close();
+			monitor.setFinished(true);
+		}
+		lastCopyStats = new TableCopyStats(sourceTableName, rowsCopied - startRows,
+				System.currentTimeMillis() - startTime);
+		logger.debug(lastCopyStats);
+		return rowsCopied;
+	}
+
+	/**
+	 * Creates the destination table if {@link #creatingDestinationTable} is
+	 * set and it doesn't exist, and empties it if asked to.
+	 */
+	private void prepareDestinationTable(ResultSetMetaData srcRSMD, String destTableName, boolean truncate)
+			throws SQLException {
+		Statement tmpStmt = null;
+		try {
 			if (creatingDestinationTable) {
 				try {
 					tmpStmt = dstCon.createStatement();
@@ -127,54 +432,747 @@ public class DataMover {
 				}
 			}
 			
-			if (truncatingDestinationTable) {
+			if (truncate) {
 				tmpStmt = dstCon.createStatement();
 				lastSqlString = "DELETE FROM "+destTableName;
 				int count = tmpStmt.executeUpdate(lastSqlString);
 				logger.debug("Deleted "+count+" rows from destination table");
-				tmpStmt.close();
-				tmpStmt = null;
 			}
+		} finally {
+			if (tmpStmt != null) tmpStmt.close();
+		}
+	}
 
-			lastSqlString = generateInsertStatement(srcRSMD, destTableName);
-			dstStmt = dstCon.prepareStatement(lastSqlString);
+	/**
+	 * Returns the primary key columns of the given source table.
+	 * 
+	 * @throws SQLException
+	 *             If the table has no primary key.
+	 */
+	private List<String> findKeyColumns(String sourceTableName) throws SQLException {
+		int dot = sourceTableName.lastIndexOf('.');
+		String table = sourceTableName.substring(dot + 1);
+		List<?> key;
+		if (dot < 0) {
+			key = SQL.findPrimaryKey(srcCon, table);
+		} else {
+			String schema = sourceTableName.substring(0, dot);
+			schema = schema.substring(schema.lastIndexOf('.') + 1);
+			key = SQL.findPrimaryKey(srcCon, schema, table);
+		}
+		if (key.isEmpty()) {
+			throw new SQLException("Table " + sourceTableName + " has no primary key to copy it in chunks by." +
+					" Use setKeyColumns() to name unique columns to use instead.");
+		}
+		List<String> names = new ArrayList<String>();
+		for (Object o : key) {
+			names.add((String) o);
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the number of rows in the source table, or null if they can
+	 * not be counted.
+	 */
+	private Integer countRows(String sourceTableName) {
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = srcCon.createStatement();
+			rs = stmt.executeQuery("SELECT COUNT(*) FROM " + sourceTableName);
+			return rs.next() ? rs.getInt(1) : null;
+		} catch (SQLException e) {
+			logger.info("Could not count the rows in " + sourceTableName + ". Progress will be indeterminate.", e);
+			return null;
+		} finally {
+			try {
+				if (rs != null) rs.close();
+				if (stmt != null) stmt.close();
+			} catch (SQLException e) {
+				logger.error("Failed to close count query! Squishing this exception: ", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the 0-based positions of the named columns in the given
+	 * result set.
+	 */
+	private static int[] findColumns(ResultSetMetaData rsmd, List<String> names) throws SQLException {
+		int[] indexes = new int[names.size()];
+		for (int k = 0; k < indexes.length; k++) {
+			indexes[k] = -1;
+			for (int col = 1; col <= rsmd.getColumnCount(); col++) {
+				if (rsmd.getColumnName(col).equalsIgnoreCase(names.get(k))) {
+					indexes[k] = col - 1;
+					break;
+				}
+			}
+			if (indexes[k] < 0) {
+				throw new SQLException("Key column " + names.get(k) + " is not in the source table");
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Generates the query for one chunk: the rows whose key comes after the
+	 * given one, in key order. For a key (a, b) the condition is
+	 * <code>a &gt; ? OR (a = ? AND b &gt; ?)</code>, which unlike
+	 * <code>(a, b) &gt; (?, ?)</code> every database understands.
+	 */
+	protected String generateChunkQuery(String sourceTableName, List<String> keys, boolean afterKey) {
+		StringBuilder sql = new StringBuilder("SELECT * FROM ").append(sourceTableName);
+		if (afterKey) {
+			sql.append(" WHERE ").append(keyAfterCondition(keys));
+		}
+		sql.append(" ORDER BY ");
+		for (int k = 0; k < keys.size(); k++) {
+			if (k > 0) sql.append(", ");
+			sql.append(keys.get(k));
+		}
+		return sql.toString();
+	}
+
+	private static String keyAfterCondition(List<String> keys) {
+		StringBuilder sql = new StringBuilder();
+		for (int k = 0; k < keys.size(); k++) {
+			if (k > 0) sql.append(" OR ");
+			sql.append("(");
+			for (int j = 0; j < k; j++) {
+				sql.append(keys.get(j)).append(" = ? AND ");
+			}
+			sql.append(keys.get(k)).append(" > ?)");
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Binds the given key to the parameters of a {@link #keyAfterCondition(List)}.
+	 */
+	private static void bindKey(PreparedStatement stmt, Object[] key) throws SQLException {
+		int param = 1;
+		for (int k = 0; k < key.length; k++) {
+			for (int j = 0; j <= k; j++) {
+				stmt.setObject(param++, key[j]);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the destination rows whose key comes after the given one.
+	 */
+	private void deleteAfterKey(String destTableName, List<String> keys, Object[] key) throws SQLException {
+		lastSqlString = "DELETE FROM " + destTableName + " WHERE " + keyAfterCondition(keys);
+		PreparedStatement stmt = dstCon.prepareStatement(lastSqlString);
+		try {
+			bindKey(stmt, key);
+			int count = stmt.executeUpdate();
+			logger.debug("Deleted " + count + " rows after the checkpoint from " + destTableName);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Resets the progress reported through the {@link Monitorable} methods
+	 * for a new copy.
+	 */
+	private void startMonitoring(Integer jobSize) {
+		monitor.setCancelled(false);
+		monitor.setFinished(false);
+		monitor.setJobSize(jobSize);
+		monitor.setProgress(rowsCopied);
+		monitor.setMessage(null);
+		monitor.setStarted(true);
+	}
+
+	/**
+	 * Copies every row of the given result set to the destination, on one
+	 * thread or two depending on {@link #pipelined}.
+	 */
+	private void transfer(ResultSet srcRS, ColumnTransfer[] transfers, PreparedStatement dstStmt,
+			String tableName) throws SQLException {
+		boolean batching = batchSize > 1 && dstCon.getMetaData().supportsBatchUpdates();
+		if (pipelined && canPipeline(transfers)) {
+			pipelinedTransfer(srcRS, transfers, dstStmt, batching, tableName);
+		} else {
+			RowBatch batch = new RowBatch(transfers, batchSize);
+			do {
+				readBatch(srcRS, transfers, batch);
+				writeBatch(dstStmt, transfers, batch, batching);
+			} while (!batch.last);
+		}
+	}
+
+	/**
+	 * Returns false if reading the source on another thread is unsafe: when
+	 * the source and destination are the same physical connection, which
+	 * most drivers do not allow two threads to use at once, or when a
+	 * column's values may be locators that are only valid while the source
+	 * result set stays on their row.
+	 */
+	private boolean canPipeline(ColumnTransfer[] transfers) {
+		if (physicalConnection(srcCon) == physicalConnection(dstCon)) {
+			logger.debug("Source and destination share a connection; copying on one thread");
+			return false;
+		}
+		for (ColumnTransfer transfer : transfers) {
+			if (transfer.holdsLocators()) {
+				logger.debug("Column of type " + transfer.sqlType + " may hold locators; copying on one thread");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the connection to the database underneath any decorators or
+	 * pool wrappers around the given one.
+	 */
+	static Connection physicalConnection(Connection con) {
+		for (;;) {
+			Connection inner = null;
+			if (con instanceof ConnectionDecorator) {
+				inner = ((ConnectionDecorator) con).getDelegate();
+			} else if (con instanceof DelegatingConnection) {
+				// null if the pool does not allow access to it
+				inner = ((DelegatingConnection) con).getInnermostDelegate();
+			}
+			if (inner == null || inner == con) {
+				return con;
+			}
+			con = inner;
+		}
+	}
 
-			int numberOfColumns = srcRSMD.getColumnCount();
-			while (srcRS.next()) {
-				if (debug) logger.debug("Row "+numRows);
-				for (int col = 1; col <= numberOfColumns; col++) {
-				    if (debug) logger.debug(srcRS.getMetaData().getColumnName(col)+":"+srcRS.getObject(col)+ "(type="+srcRSMD.getColumnType(col)+")"+srcRS.getObject(col));
-					Object object = null; 
-					if (srcRS.getObject(col) != null){
-						object = (srcRS.getObject(col).getClass() == BigDecimal.class)? ((BigDecimal) srcRS.getObject(col)).doubleValue():srcRS.getObject(col);
+	/**
+	 * Reads batches on a separate thread and writes them on this one. The
+	 * two threads trade a fixed set of batches through a pair of queues, so
+	 * at most {@link #queueCapacity} batches are in memory no matter how
+	 * far the reader gets ahead.
+	 */
+	private void pipelinedTransfer(final ResultSet srcRS, final ColumnTransfer[] transfers,
+			PreparedStatement dstStmt, boolean batching, String tableName) throws SQLException {
+		final BlockingQueue<RowBatch> free = new ArrayBlockingQueue<RowBatch>(queueCapacity);
+		final BlockingQueue<RowBatch> full = new ArrayBlockingQueue<RowBatch>(queueCapacity + 1);
+		for (int i = 0; i < queueCapacity; i++) {
+			free.add(new RowBatch(transfers, batchSize));
+		}
+		final RowBatch failed = new RowBatch(new ColumnTransfer[0], 0);
+		final Throwable[] readFailure = new Throwable[1];
+		
+		Thread reader = new Thread("DataMover reader for " + tableName) {
+			@Override
+			public void run() {
+				try {
+					RowBatch batch;
+					do {
+						batch = free.take();
+						readBatch(srcRS, transfers, batch);
+						full.put(batch);
+					} while (!batch.last);
+				} catch (InterruptedException e) {
+					// the writer gave up
+				} catch (Throwable t) {
+					readFailure[0] = t;
+					full.offer(failed);
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		
+		try {
+			boolean last;
+			do {
+				RowBatch batch = full.take();
+				if (batch == failed) {
+					if (readFailure[0] instanceof SQLException) {
+						throw (SQLException) readFailure[0];
+					} else if (readFailure[0] instanceof RuntimeException) {
+						throw (RuntimeException) readFailure[0];
 					}
-					dstStmt.setObject(col,object , srcRSMD.getColumnType(col));
+					throw new RuntimeException("Reading from " + tableName + " failed", readFailure[0]);
+				}
+				writeBatch(dstStmt, transfers, batch, batching);
+				// the reader may start refilling the batch as soon as it is put back
+				last = batch.last;
+				free.put(batch);
+			} while (!last);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while copying " + tableName);
+		} finally {
+			if (reader.isAlive()) {
+				reader.interrupt();
+				try {
+					reader.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills the given batch with the next rows of the source result set.
+	 * The batch is marked last if the result set ran out before it was
+	 * full.
+	 */
+	private void readBatch(ResultSet srcRS, ColumnTransfer[] transfers, RowBatch batch) throws SQLException {
+		batch.size = 0;
+		batch.last = false;
+		while (batch.size < batch.capacity) {
+			if (!srcRS.next()) {
+				batch.last = true;
+				return;
+			}
+			int row = batch.size;
+			for (int i = 0; i < transfers.length; i++) {
+				batch.nulls[i][row] = transfers[i].read(srcRS, i + 1, batch.values[i], row);
+			}
+			if (debug) logger.debug("Row " + (rowsCopied + row) + ": " + batch.describe(transfers, row));
+			batch.size++;
+		}
+	}
+
+	/**
+	 * Sends the rows in the given batch to the destination, committing if
+	 * {@link #commitInterval} rows have been written since the last commit.
+	 */
+	private void writeBatch(PreparedStatement dstStmt, ColumnTransfer[] transfers, RowBatch batch,
+			boolean batching) throws SQLException {
+		if (batch.size == 0) {
+			return;
+		}
+		for (int row = 0; row < batch.size; row++) {
+			for (int i = 0; i < transfers.length; i++) {
+				if (batch.nulls[i][row]) {
+					dstStmt.setNull(i + 1, transfers[i].sqlType);
+				} else {
+					transfers[i].write(dstStmt, i + 1, batch.values[i], row);
 				}
+			}
+			if (batching) {
+				dstStmt.addBatch();
+			} else {
 				dstStmt.executeUpdate();
-				numRows++;
+				rowsCopied++;
 			}
-			
+		}
+		if (batching) {
+			dstStmt.executeBatch();
+			rowsCopied += batch.size;
+		}
+		rowsSinceCommit += batch.size;
+		monitor.setProgress(rowsCopied);
+		if (keyColumnIndexes != null) {
+			lastKey = new Object[keyColumnIndexes.length];
+			for (int k = 0; k < lastKey.length; k++) {
+				int col = keyColumnIndexes[k];
+				lastKey[k] = transfers[col].get(batch.values[col], batch.size - 1);
+			}
+		}
+		if (commitInterval > 0 && !chunking && rowsSinceCommit >= commitInterval) {
 			dstCon.commit();
-			logger.debug("Committed transaction");
-			
-		} catch (SQLException e) {
-			try { 
-				dstCon.rollback();
-			} catch (Exception e2) {
-				logger.error("Roll back on error failed", e2);
+			rowsSinceCommit = 0;
+			logger.debug("Committed after " + rowsCopied + " rows");
+		}
+	}
+
+	/**
+	 * Copies several tables at once, each over its own pair of connections
+	 * and with this data mover's settings. Each destination table has the
+	 * same name as its source table, without the schema or catalog.
+	 * 
+	 * @param destination
+	 *            The data source to open destination connections on.
+	 * @param source
+	 *            The data source to open source connections on.
+	 * @param sourceTableNames
+	 *            The tables to copy.
+	 * @param parallelism
+	 *            The most tables to copy at the same time.
+	 * @return The statistics for each table, in the same order as the table
+	 *         names.
+	 */
+	public List<TableCopyStats> copyTables(final JDBCDataSource destination, final JDBCDataSource source,
+			List<String> sourceTableNames, int parallelism) throws SQLException {
+		List<Callable<TableCopyStats>> tasks = new ArrayList<Callable<TableCopyStats>>();
+		for (final String tableName : sourceTableNames) {
+			tasks.add(new Callable<TableCopyStats>() {
+				public TableCopyStats call() throws Exception {
+					Connection dst = null;
+					Connection src = null;
+					try {
+						dst = destination.createConnection();
+						src = source.createConnection();
+						DataMover mover = new DataMover(dst, src);
+						mover.copySettingsFrom(DataMover.this);
+						mover.copyTable(tableName);
+						TableCopyStats stats = mover.getLastCopyStats();
+						logger.info(stats);
+						return stats;
+					} finally {
+						if (src != null) src.close();
+						if (dst != null) dst.close();
+					}
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, tasks.size())));
+		try {
+			List<TableCopyStats> results = new ArrayList<TableCopyStats>();
+			for (Future<TableCopyStats> f : executor.invokeAll(tasks)) {
+				results.add(f.get());
 			}
-			throw new RuntimeException(
-			        "Prepared insert statement failed at row " + numRows + ":\n" + lastSqlString, e);
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while copying tables");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		} finally {
-			if (srcRS != null) srcRS.close();
-			if (srcStmt != null) srcStmt.close();
-			if (dstStmt != null) dstStmt.close();
-			if (tmpStmt != null) tmpStmt.close();
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Copies the settings that control how a table is copied, but not the
+	 * connections, from the given data mover.
+	 */
+	private void copySettingsFrom(DataMover other) {
+		debug = other.debug;
+		creatingDestinationTable = other.creatingDestinationTable;
+		truncatingDestinationTable = other.truncatingDestinationTable;
+		batchSize = other.batchSize;
+		commitInterval = other.commitInterval;
+		pipelined = other.pipelined;
+		queueCapacity = other.queueCapacity;
+		chunkSize = other.chunkSize;
+		keyColumns = other.keyColumns;
+	}
+
+	/**
+	 * How long copying one table took.
+	 */
+	public static class TableCopyStats {
+		private final String tableName;
+		private final int rowCount;
+		private final long elapsedMillis;
+
+		public TableCopyStats(String tableName, int rowCount, long elapsedMillis) {
+			this.tableName = tableName;
+			this.rowCount = rowCount;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public double getRowsPerSecond() {
+			return rowCount * 1000.0 / Math.max(1, elapsedMillis);
+		}
+
+		@Override
+		public String toString() {
+			return tableName + ": " + rowCount + " rows copied in " + elapsedMillis + " ms. (" +
+				getRowsPerSecond() + " rows/sec)";
+		}
+	}
+
+	/**
+	 * A block of rows on its way from the source to the destination, kept
+	 * one array per column so that numeric values are not boxed.
+	 */
+	private static class RowBatch {
+		final int capacity;
+		
+		/**
+		 * One array per column, of the type the column's
+		 * {@link ColumnTransfer} made.
+		 */
+		final Object[] values;
+		final boolean[][] nulls;
+		int size;
+		
+		/**
+		 * True if the source had no rows after this batch.
+		 */
+		boolean last;
+
+		RowBatch(ColumnTransfer[] transfers, int capacity) {
+			this.capacity = capacity;
+			values = new Object[transfers.length];
+			nulls = new boolean[transfers.length][capacity];
+			for (int i = 0; i < transfers.length; i++) {
+				values[i] = transfers[i].newBuffer(capacity);
+			}
+		}
+
+		String describe(ColumnTransfer[] transfers, int row) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < transfers.length; i++) {
+				if (i > 0) sb.append(", ");
+				sb.append(nulls[i][row] ? null : transfers[i].get(values[i], row));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Moves the values of one column from the source result set into a
+	 * {@link RowBatch}, and from there into the insert statement, with the
+	 * getter and setter that suit the column's type. DECIMAL and NUMERIC
+	 * values are kept as BigDecimal so no precision is lost.
+	 */
+	private static abstract class ColumnTransfer {
+		final int sqlType;
+
+		ColumnTransfer(int sqlType) {
+			this.sqlType = sqlType;
+		}
+
+		static ColumnTransfer[] forColumns(ResultSetMetaData rsmd) throws SQLException {
+			ColumnTransfer[] transfers = new ColumnTransfer[rsmd.getColumnCount()];
+			for (int i = 0; i < transfers.length; i++) {
+				transfers[i] = forType(rsmd.getColumnType(i + 1));
+			}
+			return transfers;
+		}
+
+		static ColumnTransfer forType(int sqlType) {
+			switch (sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				return new LongTransfer(sqlType);
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return new DoubleTransfer(sqlType);
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return new BigDecimalTransfer(sqlType);
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.CLOB:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+			case Types.NCLOB:
+				// LOBs are read in full so no locator outlives its row
+				return new StringTransfer(sqlType);
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				return new BytesTransfer(sqlType);
+			case Types.DATE:
+				return new DateTransfer(sqlType);
+			case Types.TIMESTAMP:
+				return new TimestampTransfer(sqlType);
+			default:
+				return new ObjectTransfer(sqlType);
+			}
+		}
+
+		abstract Object newBuffer(int capacity);
+
+		/**
+		 * Reads the current row's value into the buffer.
+		 * 
+		 * @return True if the value was null.
+		 */
+		abstract boolean read(ResultSet rs, int column, Object buffer, int row) throws SQLException;
+
+		/**
+		 * Sets the parameter to the non-null value in the buffer.
+		 */
+		abstract void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException;
+
+		/**
+		 * Returns the value in the buffer as an object, for logging.
+		 */
+		abstract Object get(Object buffer, int row);
+
+		/**
+		 * Returns true if the values read may refer back into the source
+		 * result set, so they can not be kept once it has moved on.
+		 */
+		boolean holdsLocators() {
+			return false;
+		}
+	}
+
+	private static class LongTransfer extends ColumnTransfer {
+		LongTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object newBuffer(int capacity) {
+			return new long[capacity];
+		}
+		boolean read(ResultSet rs, int column, Object buffer, int row) throws SQLException {
+			((long[]) buffer)[row] = rs.getLong(column);
+			return rs.wasNull();
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			long value = ((long[]) buffer)[row];
+			// unsigned INTEGER columns, as in MySQL, can hold values too big
+			// for an int
+			if (sqlType == Types.BIGINT || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				ps.setLong(column, value);
+			} else {
+				ps.setInt(column, (int) value);
+			}
+		}
+		Object get(Object buffer, int row) {
+			return ((long[]) buffer)[row];
+		}
+	}
+
+	private static class DoubleTransfer extends ColumnTransfer {
+		DoubleTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object newBuffer(int capacity) {
+			return new double[capacity];
+		}
+		boolean read(ResultSet rs, int column, Object buffer, int row) throws SQLException {
+			((double[]) buffer)[row] = rs.getDouble(column);
+			return rs.wasNull();
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setDouble(column, ((double[]) buffer)[row]);
+		}
+		Object get(Object buffer, int row) {
+			return ((double[]) buffer)[row];
+		}
+	}
+
+	/**
+	 * Base class for the types that have to be kept as objects anyway.
+	 */
+	private static abstract class ReferenceTransfer extends ColumnTransfer {
+		ReferenceTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object newBuffer(int capacity) {
+			return new Object[capacity];
+		}
+		boolean read(ResultSet rs, int column, Object buffer, int row) throws SQLException {
+			Object value = getValue(rs, column);
+			((Object[]) buffer)[row] = value;
+			return value == null;
+		}
+		Object get(Object buffer, int row) {
+			return ((Object[]) buffer)[row];
+		}
+		abstract Object getValue(ResultSet rs, int column) throws SQLException;
+	}
+
+	private static class BigDecimalTransfer extends ReferenceTransfer {
+		BigDecimalTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getBigDecimal(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setBigDecimal(column, (BigDecimal) ((Object[]) buffer)[row]);
+		}
+	}
+
+	private static class StringTransfer extends ReferenceTransfer {
+		StringTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getString(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setString(column, (String) ((Object[]) buffer)[row]);
+		}
+	}
+
+	private static class DateTransfer extends ReferenceTransfer {
+		DateTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getDate(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setDate(column, (java.sql.Date) ((Object[]) buffer)[row]);
+		}
+	}
+
+	private static class TimestampTransfer extends ReferenceTransfer {
+		TimestampTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getTimestamp(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setTimestamp(column, (Timestamp) ((Object[]) buffer)[row]);
+		}
+	}
+
+	private static class BytesTransfer extends ReferenceTransfer {
+		BytesTransfer(int sqlType) {
+			super(sqlType);
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getBytes(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setBytes(column, (byte[]) ((Object[]) buffer)[row]);
+		}
+	}
+
+	private static class ObjectTransfer extends ReferenceTransfer {
+		ObjectTransfer(int sqlType) {
+			super(sqlType);
+		}
+		@Override
+		boolean holdsLocators() {
+			switch (sqlType) {
+			case Types.ARRAY:
+			case Types.REF:
+			case Types.STRUCT:
+			case Types.SQLXML:
+			case Types.DATALINK:
+				return true;
+			default:
+				return false;
+			}
+		}
+		Object getValue(ResultSet rs, int column) throws SQLException {
+			return rs.getObject(column);
+		}
+		void write(PreparedStatement ps, int column, Object buffer, int row) throws SQLException {
+			ps.setObject(column, ((Object[]) buffer)[row], sqlType);
 		}
-		long endTime = System.currentTimeMillis();
-		long elapsedTime = endTime-startTime;
-		logger.debug(numRows+" rows copied in "+elapsedTime+" ms. ("+((double) numRows)/((double) elapsedTime)*1000.0+" rows/sec)");
-		return numRows;
 	}
 	
 	protected String summarizeResultSetMetaData(ResultSetMetaData rsmd) throws SQLException {
@@ -350,6 +1348,143 @@ public class DataMover {
 		this.truncatingDestinationTable = argTruncatingDestinationTable;
 	}
 
+	public TableCopyStats getLastCopyStats() {
+		return lastCopyStats;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of rows to read and insert at a time. Drivers that do
+	 * not support batch updates still get one insert per row.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1, not " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Sets how many rows to insert between commits. The destination is
+	 * committed after the first batch that reaches this many rows. 0, the
+	 * default, commits once at the end.
+	 */
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets how many batches the reader thread may get ahead of the writer
+	 * when pipelined.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1, not " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the number of rows each transaction of
+	 * {@link #copyTableInChunks(String, String, TableCopyCheckpoint)}
+	 * copies.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1, not " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	public List<String> getKeyColumns() {
+		return keyColumns;
+	}
+
+	/**
+	 * Sets the unique columns a chunked copy orders the source by. Null, the
+	 * default, uses the source table's primary key.
+	 */
+	public void setKeyColumns(List<String> keyColumns) {
+		this.keyColumns = keyColumns;
+	}
+
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * Sets the file a chunked copy saves its checkpoint to after each
+	 * chunk, so a copy can be resumed by a later process with
+	 * {@link TableCopyCheckpoint#load(File)}.
+	 */
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * Returns the checkpoint of the last chunk committed, or the one the
+	 * current chunked copy resumed from if none have been yet.
+	 */
+	public TableCopyCheckpoint getLastCheckpoint() {
+		return lastCheckpoint;
+	}
+
+	// Monitorable, reporting rows copied
+
+	public int getProgress() {
+		return monitor.getProgress();
+	}
+
+	public Integer getJobSize() {
+		return monitor.getJobSize();
+	}
+
+	public boolean hasStarted() {
+		return monitor.hasStarted();
+	}
+
+	public boolean isFinished() {
+		return monitor.isFinished();
+	}
+
+	public String getMessage() {
+		return monitor.getMessage();
+	}
+
+	/**
+	 * Asks a chunked copy to stop once its current chunk is committed.
+	 */
+	public void setCancelled(boolean cancelled) {
+		monitor.setCancelled(cancelled);
+	}
+
+	public boolean isCancelled() {
+		return monitor.isCancelled();
+	}
+
 	public static void main(String[] args) throws Exception {
 		DataMover mover = null;
 		try {
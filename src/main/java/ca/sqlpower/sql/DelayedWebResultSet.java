@@ -15,16 +15,20 @@ import ca.sqlpower.util.SynchronizedCache;
 public class DelayedWebResultSet extends WebResultSet {
 
 	/**
-	 * Holds the set of cached resultset objects (keyed on SQL query
-	 * string).  Never reference this directly; use getResultCache(),
-	 * which can be overridden by subclasses.  Also, never call
-	 * put(key,value) directly on the cache; use
-	 * addResultsToCache(key,value) because that can also be
-	 * overridden.
+	 * The legacy cache returned by {@link #getResultCache()}. It is no
+	 * longer used by execute().
 	 */
 	private static Cache resultCache = null;
 	private static Object resultCacheMutex = new Object();
 
+	/**
+	 * Holds the cached query results, keyed on the query, database URL
+	 * and user name. Never reference this directly; use
+	 * {@link #getQueryResultCache()}, which can be overridden by
+	 * subclasses.
+	 */
+	private static QueryResultCache queryResultCache = null;
+
 	private static final Logger logger = Logger.getLogger(DelayedWebResultSet.class);
 
 	protected int givenColCount;
@@ -48,6 +52,14 @@ public class DelayedWebResultSet extends WebResultSet {
 	 */
 	protected boolean cacheEnabled;
 
+	/**
+	 * The cached results this result set is reading, which the cache has
+	 * retained for it. They are released when this result set is executed
+	 * again or closed, so the cache can delete their spill file once it has
+	 * dropped them.
+	 */
+	private CachedRowSet retainedResults;
+
 	/**
 	 * The amount of time spent in Statement.execute() for this query.
 	 * It only makes sense to check this value after calling
@@ -85,6 +97,38 @@ public class DelayedWebResultSet extends WebResultSet {
 	 */
 	protected int maxRows;
 
+	/**
+	 * The heap budget, in bytes, for the CachedRowSet that holds this
+	 * query's results when the cache is enabled. Rows past the budget are
+	 * spilled to a memory-mapped temporary file. A value of 0 means
+	 * the whole result is kept on the heap.
+	 *
+	 * @see CachedRowSet#setSpillThreshold(long)
+	 */
+	protected long spillThreshold;
+
+	/**
+	 * How long, in milliseconds, this query's results stay fresh in the
+	 * cache once they are loaded. 0 (the default) means they never
+	 * expire, and are only dropped when the cache needs the room.
+	 */
+	protected long cacheTtl;
+
+	/**
+	 * How long, in milliseconds, after they expire this query's cached
+	 * results may still be used while they are refreshed in the
+	 * background. Only used when {@link #refreshDataSource} is set.
+	 */
+	protected long maxStaleTime;
+
+	/**
+	 * The data source stale results are refreshed from, or null to
+	 * never serve stale results. The connection given to execute() can't
+	 * be used for this because the refresh happens after execute()
+	 * returns.
+	 */
+	protected JDBCDataSource refreshDataSource;
+
 	/**
 	 * Creates a new <code>DelayedWebResultSet</code> which uses the
 	 * query resultset cache.
@@ -171,39 +215,26 @@ public class DelayedWebResultSet extends WebResultSet {
 		ResultSet newRS = null;
 
 		if (cacheEnabled) {
-				
 			String cacheKey = sqlQuery 
 				+"&"+con.getMetaData().getURL() 
 				+"&"+con.getMetaData().getUserName();
 			
-			CachedRowSet results = (CachedRowSet) getCachedResult(cacheKey);
-			if (results != null) {
+			queryExecuteTime = 0;
+			resultPopulateTime = 0;
+			fromCache = true;
+			CachedRowSet results = getCachedResult(cacheKey);
+			if (results == null) {
+				results = fetchResults(cacheKey);
+			}
+			if (fromCache) {
 				logger.debug("cache hit, key: " + cacheKey);
 				// we don't want to close cached resultset
 				closeOldRS=false;
-				queryExecuteTime = 0;
-				resultPopulateTime = 0;
-				fromCache = true;
 			} else {
 				logger.debug("cache miss, key: " + cacheKey);
-				long queryStartTime = System.currentTimeMillis();
-				Statement stmt = null;
-				try {
-					stmt = con.createStatement();
-					stmt.setMaxRows(getMaxRows());
-					results = new CachedRowSet();
-					ResultSet rs = stmt.executeQuery(sqlQuery);
-					queryExecuteTime = System.currentTimeMillis() - queryStartTime;
-					results.populate(rs);
-					resultPopulateTime = System.currentTimeMillis() - queryStartTime - queryExecuteTime;
-				} finally {
-					if (stmt != null) {
-						stmt.close();
-					}
-				}
-				logger.debug("adding results to cache, key: " + cacheKey);
-				results = addResultsToCache(cacheKey, results);
 			}
+			releaseCachedResults();
+			retainedResults = results;
 			newRS=results;
 		} else {
 			// not using cache
@@ -225,6 +256,80 @@ public class DelayedWebResultSet extends WebResultSet {
 		this.totalExecuteTime = System.currentTimeMillis() - startTime;
 	}
 
+	/**
+	 * Gets this query's results when {@link #getCachedResult(String)} has
+	 * no fresh results for them. The query is run on {@link #con} unless
+	 * the results are stale and {@link #refreshDataSource} is set, in which
+	 * case the stale results are returned and refreshed in the background.
+	 * When several threads need the same results at once, the query is
+	 * only run once. Results from the query are passed through
+	 * {@link #addResultsToCache(String, CachedRowSet)}. If the query is run
+	 * on this thread, {@link #fromCache} is cleared and the query times are
+	 * recorded.
+	 */
+	protected CachedRowSet fetchResults(final String cacheKey) throws SQLException {
+		final String query = sqlQuery;
+		final int rowLimit = getMaxRows();
+		final long spill = spillThreshold;
+		QueryResultCache.Loader loader = new QueryResultCache.Loader() {
+			public CachedRowSet load() throws SQLException {
+				fromCache = false;
+				long[] times = new long[2];
+				CachedRowSet results = runQuery(con, query, rowLimit, spill, times);
+				queryExecuteTime = times[0];
+				resultPopulateTime = times[1];
+				logger.debug("adding results to cache, key: " + cacheKey);
+				return addResultsToCache(cacheKey, results);
+			}
+		};
+		QueryResultCache.Loader refresher = null;
+		final JDBCDataSource ds = refreshDataSource;
+		if (ds != null && maxStaleTime > 0) {
+			refresher = new QueryResultCache.Loader() {
+				public CachedRowSet load() throws SQLException {
+					Connection refreshCon = ds.createConnection();
+					try {
+						return addResultsToCache(cacheKey, runQuery(refreshCon, query, rowLimit, spill, null));
+					} finally {
+						refreshCon.close();
+					}
+				}
+			};
+		}
+		return getQueryResultCache().get(cacheKey, cacheTtl, maxStaleTime, loader, refresher);
+	}
+
+	/**
+	 * Runs the given query and reads all its rows into a new CachedRowSet.
+	 * 
+	 * @param times
+	 *            If not null, the time spent executing the query and
+	 *            reading its rows are stored in its first two elements.
+	 */
+	private static CachedRowSet runQuery(Connection con, String query, int maxRows, long spillThreshold,
+			long[] times) throws SQLException {
+		long queryStartTime = System.currentTimeMillis();
+		Statement stmt = null;
+		try {
+			stmt = con.createStatement();
+			stmt.setMaxRows(maxRows);
+			CachedRowSet results = new CachedRowSet();
+			results.setSpillThreshold(spillThreshold);
+			ResultSet rs = stmt.executeQuery(query);
+			long executeTime = System.currentTimeMillis() - queryStartTime;
+			results.populate(rs);
+			if (times != null) {
+				times[0] = executeTime;
+				times[1] = System.currentTimeMillis() - queryStartTime - executeTime;
+			}
+			return results;
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+		}
+	}
+
 	/**
 	 * The execute method calls this just before returning to make
 	 * sure everything adds up (and the user didn't specify an
@@ -276,11 +381,38 @@ public class DelayedWebResultSet extends WebResultSet {
 	}
 	
 	/**
-	 * Returns the cache that the DelayedWebResultSets in this JVM are
-	 * using.  You should always use this method for getting the
-	 * cache; it can be overridden by subclasses so it might not
-	 * reference the private static resultCache variable.
+	 * Returns the query result cache that the DelayedWebResultSets in
+	 * this JVM are using. You should always use this method for getting
+	 * the cache; it can be overridden by subclasses so it might not
+	 * reference the private static queryResultCache variable.
 	 */
+	public QueryResultCache getQueryResultCache() {
+		return staticGetQueryResultCache();
+	}
+
+	/**
+	 * Returns the query result cache shared by the DelayedWebResultSets in
+	 * this JVM. It starts out holding up to 100 results and 64MB.
+	 */
+	public static QueryResultCache staticGetQueryResultCache() {
+		synchronized (resultCacheMutex) {
+			if (queryResultCache == null) {
+				queryResultCache = new QueryResultCache(100, 64L * 1024 * 1024);
+			}
+			return queryResultCache;
+		}
+	}
+
+	/**
+	 * Returns the cache that DelayedWebResultSets used before
+	 * {@link QueryResultCache}.
+	 * 
+	 * @deprecated Query results are no longer kept in this cache, so it
+	 *             stays empty and its statistics are always zero. Use
+	 *             {@link #getQueryResultCache()}, which also reports hit,
+	 *             miss and eviction counts.
+	 */
+	@Deprecated
 	public Cache getResultCache() {
 		if (resultCache == null) {
 			synchronized (resultCacheMutex) {
@@ -294,7 +426,15 @@ public class DelayedWebResultSet extends WebResultSet {
 	
 	/**
 	 * Exists mainly as a backdoor for the CacheStatsServlet.
+	 * 
+	 * @deprecated Query results are no longer kept in this cache, so the
+	 *             CacheStatsServlet and its subclasses will only see an
+	 *             empty cache here. Report on
+	 *             {@link #staticGetQueryResultCache()} instead; see
+	 *             {@link QueryResultCache#getHitCount()} and the other
+	 *             statistics accessors.
 	 */
+	@Deprecated
 	public static Cache staticGetResultCache() {
 		if (resultCache == null) {
 			synchronized (resultCacheMutex) {
@@ -310,14 +450,17 @@ public class DelayedWebResultSet extends WebResultSet {
 	 * This method adds the given results to the cache under the given
 	 * key.  It exists primarily as a hook for subclasses to use
 	 * fancier caches: if you override this, you can use custom put()
-	 * methods on your cache.
+	 * methods on your cache. It is called with the results of every query
+	 * run for the cache, including background refreshes, and whatever it
+	 * returns is what the DelayedWebResultSets that asked for the results
+	 * get.
 	 *
 	 * @param key The value that will be given to getCachedResult when
 	 * and if this row set needs to be retrieved again.
 	 * @param results The CachedRowSet to add to the cache.
 	 */
 	protected CachedRowSet addResultsToCache(String key, CachedRowSet results) throws SQLException  {
-		getResultCache().put(key, results);
+		getQueryResultCache().put(key, results, cacheTtl);
 		return results;
 	}
 
@@ -330,24 +473,34 @@ public class DelayedWebResultSet extends WebResultSet {
 	 * @param key The cache key.  For a given result set, this will be
 	 * the same key that was passed to
 	 * {@link #addResultsToCache(String,CachedRowSet)}.
-	 * @return A copy of the CachedRowSet that was previously stored
-	 * under the same key, or null if there was nothing stored in the
-	 * cache under that key.
+	 * @return The CachedRowSet that was previously stored under the
+	 * same key, or null if there is no fresh result stored in the cache
+	 * under that key. It must have been retained for this result set
+	 * through {@link CachedRowSet#retainSpillFile()}, as
+	 * {@link QueryResultCache#getIfPresent(String)} does.
 	 */
 	protected CachedRowSet getCachedResult(String key) throws SQLException {
-		CachedRowSet results = (CachedRowSet) getResultCache().get(key);
-		return results;
+		return getQueryResultCache().getIfPresent(key);
 	}
 
 	/**
 	 * Behaves like close() in WebResultSet unless the
 	 * DelayedWebResultSet result cache is turned on.  In that case,
-	 * does nothing because the database resources are already released.
+	 * the database resources are already released, so this only lets
+	 * the cache know this result set is done with its cached results.
 	 */
 	public void close() throws SQLException {
 		if(!cacheEnabled) {
 			super.close();
 		}
+		releaseCachedResults();
+	}
+
+	private void releaseCachedResults() {
+		if (retainedResults != null) {
+			retainedResults.releaseSpillFile();
+			retainedResults = null;
+		}
 	}
 
 	public boolean isEmpty() throws SQLException {
@@ -400,4 +553,61 @@ public class DelayedWebResultSet extends WebResultSet {
 	public int getMaxRows() {
 		return maxRows;
 	}
+
+	/**
+	 * See {@link #spillThreshold}.
+	 */
+	public void setSpillThreshold(long v) {
+		spillThreshold = v;
+	}
+
+	/**
+	 * See {@link #spillThreshold}.
+	 */
+	public long getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * See {@link #cacheTtl}.
+	 */
+	public void setCacheTtl(long v) {
+		cacheTtl = v;
+	}
+
+	/**
+	 * See {@link #cacheTtl}.
+	 */
+	public long getCacheTtl() {
+		return cacheTtl;
+	}
+
+	/**
+	 * Lets this query's cached results be used for up to the given time
+	 * after they expire, while fresh ones are loaded in the background
+	 * from the given data source.
+	 * 
+	 * @param maxStaleTime
+	 *            See {@link #maxStaleTime}. 0 turns this off.
+	 * @param ds
+	 *            See {@link #refreshDataSource}. Null turns this off.
+	 */
+	public void setStaleWhileRevalidate(long maxStaleTime, JDBCDataSource ds) {
+		this.maxStaleTime = maxStaleTime;
+		this.refreshDataSource = ds;
+	}
+
+	/**
+	 * See {@link #maxStaleTime}.
+	 */
+	public long getMaxStaleTime() {
+		return maxStaleTime;
+	}
+
+	/**
+	 * See {@link #refreshDataSource}.
+	 */
+	public JDBCDataSource getRefreshDataSource() {
+		return refreshDataSource;
+	}
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RowSetIndex} for equality lookups. The rows are grouped by key in
+ * a hash table, so a lookup costs the same no matter how many rows the row
+ * set has, and the rows do not have to be in any particular order.
+ * <p>
+ * Keys are compared with {@link Object#equals(Object)}, so strings are case
+ * sensitive. Numbers are the exception: an Integer, a Long and a BigDecimal
+ * with the same value are the same key, because JDBC drivers do not agree on
+ * which type to return for a numeric column.
+ */
+public class HashRowSetIndex extends RowSetIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * Stands in for a null key value, which the hash table can not hold.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * Maps each key to the ascending row indexes having it. Keys are kept in
+     * the order they first appear in the row set.
+     */
+    private final Map<Object, int[]> buckets;
+
+    /**
+     * Builds a hash index on the given columns of the given row set. The
+     * caller must hold the lock on the row set's data.
+     */
+    static HashRowSetIndex build(CachedRowSet rs, int[] columns) throws SQLException {
+        List<Object[]> rows = rowsOf(rs);
+        return new HashRowSetIndex(columns, extractColumns(rs, rows, columns), rows.size());
+    }
+
+    private HashRowSetIndex(int[] columns, Object[][] values, int rowCount) {
+        super(columns, rowCount);
+        // each bucket is an int[] whose first entry is the number of rows in it
+        Map<Object, int[]> building = new LinkedHashMap<Object, int[]>();
+        Object[] key = new Object[columns.length];
+        for (int r = 0; r < rowCount; r++) {
+            for (int k = 0; k < key.length; k++) {
+                key[k] = values[k][r];
+            }
+            Object hashKey = hashKey(key);
+            int[] bucket = building.get(hashKey);
+            if (bucket == null) {
+                bucket = new int[4];
+                building.put(hashKey, bucket);
+            } else if (bucket[0] + 1 == bucket.length) {
+                bucket = Arrays.copyOf(bucket, bucket.length * 2);
+                building.put(hashKey, bucket);
+            }
+            bucket[++bucket[0]] = r;
+        }
+        for (Map.Entry<Object, int[]> entry : building.entrySet()) {
+            int[] bucket = entry.getValue();
+            entry.setValue(Arrays.copyOfRange(bucket, 1, bucket[0] + 1));
+        }
+        buckets = building;
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows having the given key, in the
+     * order they appear in the row set. The returned array belongs to the
+     * caller.
+     */
+    @Override
+    public int[] lookup(Object ... key) {
+        int[] rows = buckets.get(hashKey(checkKey(key)));
+        return rows == null ? NO_ROWS : rows.clone();
+    }
+
+    @Override
+    public boolean contains(Object ... key) {
+        return buckets.containsKey(hashKey(checkKey(key)));
+    }
+
+    /**
+     * Returns the number of distinct keys in the index.
+     */
+    public int getDistinctKeyCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Returns each distinct key once, in the order it first appears in the
+     * row set. For a single-column index the keys are the column values
+     * themselves, which makes this a quick way to build a list of choices
+     * for {@link WebResultSet#setColumnChoicesList(int, List)}; for a
+     * multi-column index each key is a list of the column values.
+     * <p>
+     * Numeric keys are returned in the normalized form the index compares
+     * them in, which may not be the type the driver returned.
+     */
+    public List<Object> getDistinctKeys() {
+        List<Object> keys = new ArrayList<Object>(buckets.size());
+        for (Object hashKey : buckets.keySet()) {
+            if (hashKey == NULL_KEY) {
+                keys.add(null);
+            } else {
+                keys.add(hashKey);
+            }
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Returns the hash table key for the given key values.
+     */
+    private static Object hashKey(Object[] key) {
+        if (key.length == 1) {
+            Object value = normalize(key[0]);
+            return value == null ? NULL_KEY : value;
+        }
+        Object[] normalized = new Object[key.length];
+        for (int k = 0; k < key.length; k++) {
+            normalized[k] = normalize(key[k]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(normalized));
+    }
+
+    /**
+     * Converts numbers that are equal in value to a single representation:
+     * whole numbers that fit in a long become a Long, and other finite
+     * values become a BigDecimal without trailing zeros. Everything else is
+     * returned as-is.
+     */
+    static Object normalize(Object value) {
+        if (value instanceof Long) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return Long.valueOf(((Number) value).longValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            BigDecimal d = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal((BigInteger) value);
+            if (d.signum() == 0) {
+                return Long.valueOf(0);
+            }
+            d = d.stripTrailingZeros();
+            if (d.scale() <= 0 && d.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) >= 0
+                    && d.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0) {
+                return Long.valueOf(d.longValue());
+            }
+            return d;
+        } else if (value instanceof Double || value instanceof Float) {
+            double v = ((Number) value).doubleValue();
+            if (v == Math.rint(v) && v >= Long.MIN_VALUE && v < Long.MAX_VALUE) {
+                return Long.valueOf((long) v);
+            }
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                return Double.valueOf(v);
+            }
+            return new BigDecimal(v).stripTrailingZeros();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.dbcp.ConnectionFactory;
+import org.apache.commons.dbcp.PoolableConnectionFactory;
+import org.apache.commons.pool.PoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of JDBC connections that keeps {@link ConnectionPoolMetrics} on
+ * how it is used. It is a DBCP pool underneath, sized and validated
+ * according to a {@link ConnectionPoolSettings}.
+ * <p>
+ * Connections handed out are DBCP pooled connections; closing one returns
+ * it to the pool.
+ */
+public class InstrumentedConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(InstrumentedConnectionPool.class);
+
+    private final String name;
+    private final ConnectionPoolSettings settings;
+    private final GenericObjectPool pool;
+    private final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(this);
+
+    /**
+     * Creates a pool of connections made by the given factory.
+     *
+     * @param name
+     *            Identifies the pool in log and error messages. It should not
+     *            contain a password.
+     * @param closingStatements
+     *            If true, connections are made by a
+     *            {@link StatementClosingPoolableConnectionFactory}, which
+     *            closes a connection's statements when it is returned and
+     *            expects the Power*Loader schema. Otherwise a plain DBCP
+     *            {@link PoolableConnectionFactory} is used.
+     */
+    public InstrumentedConnectionPool(String name, ConnectionFactory cf, ConnectionPoolSettings settings,
+            boolean closingStatements) throws SQLException {
+        this.name = name;
+        this.settings = new ConnectionPoolSettings(settings);
+        pool = new GenericObjectPool(null, settings.toPoolConfig());
+        PoolableConnectionFactory pcf;
+        if (closingStatements) {
+            try {
+                pcf = new StatementClosingPoolableConnectionFactory(
+                        cf, pool, null, settings.getValidationQuery(), false, true);
+            } catch (Exception e) {
+                throw new SQLException("Could not set up connection pool " + name, e);
+            }
+        } else {
+            pcf = new PoolableConnectionFactory(cf, pool, null, settings.getValidationQuery(), false, true);
+        }
+        pool.setFactory(new IdleValidatingFactory(pcf, settings.getValidationIdleMillis()));
+        logger.debug("Created connection pool " + name + " (" + settings + ")");
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be returned if all are in
+     * use. Close the connection to give it back.
+     *
+     * @throws SQLTimeoutException
+     *             If no connection was returned within the settings' maximum
+     *             wait.
+     * @throws SQLException
+     *             If a new connection could not be made.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection con = (Connection) pool.borrowObject();
+            metrics.recordBorrow(System.nanoTime() - start, pool.getNumActive());
+            return con;
+        } catch (NoSuchElementException e) {
+            long waited = System.nanoTime() - start;
+            if (pool.getNumActive() >= settings.getMaxActive() && settings.getMaxActive() >= 0) {
+                metrics.recordTimeout(waited);
+                throw new SQLTimeoutException("Timed out after " + waited / 1000000 + " ms waiting for one of the " +
+                        settings.getMaxActive() + " connections in pool " + name, e);
+            }
+            metrics.recordFailure(waited);
+            throw new SQLException("Could not get a valid connection from pool " + name, e);
+        } catch (SQLException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        } catch (Exception e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw new SQLException("Could not get a connection from pool " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    public ConnectionPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a copy of the settings this pool was created with.
+     */
+    public ConnectionPoolSettings getSettings() {
+        return new ConnectionPoolSettings(settings);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    /**
+     * Closes the idle connections and stops lending new ones. Connections
+     * that are in use are closed when they are returned.
+     */
+    public void close() throws SQLException {
+        logger.debug("Closing connection pool " + name + ": " + metrics);
+        try {
+            pool.close();
+        } catch (Exception e) {
+            throw new SQLException("Could not close connection pool " + name, e);
+        }
+    }
+
+    /**
+     * Validates a connection on borrow only if it has been idle for longer
+     * than a given time. A connection that was returned a moment ago is
+     * almost certainly still good, and on a busy pool validating it anyway
+     * would add a round trip to every borrow.
+     */
+    private static class IdleValidatingFactory implements PoolableObjectFactory {
+
+        private final PoolableObjectFactory delegate;
+        private final long validationIdleMillis;
+
+        /**
+         * When each pooled connection was last returned or validated.
+         */
+        private final Map<Object, Long> lastChecked =
+            Collections.synchronizedMap(new IdentityHashMap<Object, Long>());
+
+        IdleValidatingFactory(PoolableObjectFactory delegate, long validationIdleMillis) {
+            this.delegate = delegate;
+            this.validationIdleMillis = validationIdleMillis;
+        }
+
+        public Object makeObject() throws Exception {
+            Object obj = delegate.makeObject();
+            lastChecked.put(obj, System.currentTimeMillis());
+            return obj;
+        }
+
+        public void activateObject(Object obj) throws Exception {
+            delegate.activateObject(obj);
+        }
+
+        public boolean validateObject(Object obj) {
+            long now = System.currentTimeMillis();
+            Long checked = lastChecked.get(obj);
+            if (checked != null && now - checked < validationIdleMillis) {
+                return true;
+            }
+            boolean valid = delegate.validateObject(obj);
+            if (valid) {
+                lastChecked.put(obj, now);
+            }
+            return valid;
+        }
+
+        public void passivateObject(Object obj) throws Exception {
+            delegate.passivateObject(obj);
+            lastChecked.put(obj, System.currentTimeMillis());
+        }
+
+        public void destroyObject(Object obj) throws Exception {
+            lastChecked.remove(obj);
+            delegate.destroyObject(obj);
+        }
+    }
+}
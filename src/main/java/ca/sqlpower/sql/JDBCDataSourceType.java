@@ -23,8 +23,6 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.JarURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.security.AllPermission;
@@ -44,7 +42,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.jar.JarEntry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +54,8 @@ import javax.swing.undo.UndoableEdit;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.util.JarEntryIndex;
+
 /**
  * Defines a type of data source.  We wanted to call this SPDataSourceClass,
  * but that would be confusing in that we mean class as in class, type, genre, sort,
@@ -134,6 +133,13 @@ public class JDBCDataSourceType {
          */
         private final List<String> classpath;
 
+        /**
+         * The entries of all the JAR files on the classpath. It is built the
+         * first time a class or resource is looked for, so data source types
+         * whose drivers are never loaded don't open their JARs.
+         */
+        private JarEntryIndex index;
+
         /**
          * Don't call this method directly. Use the
          * {@link JDBCDataSourceType#getClassLoaderFromCache()} method instead.
@@ -174,6 +180,23 @@ public class JDBCDataSourceType {
                 });
         }
         
+        /**
+         * Returns the index of the classpath's JAR files, building it if this
+         * is the first time it is needed. Missing JAR files are left out.
+         */
+        private synchronized JarEntryIndex getIndex() {
+            if (index == null) {
+                List<URL> jarLocations = new ArrayList<URL>(classpath.size());
+                for (String jarFileName : classpath) {
+                    jarLocations.add(JDBCDataSource.jarSpecToFile(jarFileName, getParent(), serverBaseUri));
+                }
+                index = new JarEntryIndex(jarLocations);
+                logger.debug("JDBC Classloader @" + System.identityHashCode(this) + " indexed " +
+                        index.size() + " entries of " + classpath);
+            }
+            return index;
+        }
+
         /**
          * Searches the jar files listed by getJdbcJarList() for the
          * named class.  Throws ClassNotFoundException if the class can't
@@ -195,42 +218,14 @@ public class JDBCDataSourceType {
                         ": Looking for class "+name+" (count = "+count+")");
             }
 
-            for (String jarFileName : classpath) {
-                try {
-                    logger.debug("checking file "+jarFileName);
-                    URL jarLocation = JDBCDataSource.jarSpecToFile(jarFileName, getParent(), serverBaseUri);
-                    if (jarLocation == null) {
-                    	// missing JAR file in classpath. just skip it.
-                    	continue;
-                    }
-                    
-                    String jarEntryPath = name.replace('.','/') + ".class";
-                    URL url = new URL("jar:" + jarLocation.toString() + "!/" + jarEntryPath);
-                    JarURLConnection jarConnection;
-                    try {
-                        jarConnection = (JarURLConnection) url.openConnection();
-                    } catch (IOException ex) {
-                        // this was the old behaviour if the file didn't exist. still a good idea?
-                        logger.debug("Skipping non-existant JAR file "+jarFileName);
-                        continue;
-                    }
-                    
-                    JarEntry ent = jarConnection.getJarEntry();
-                    byte[] buf = new byte[(int) ent.getSize()];
-                    InputStream is = jarConnection.getInputStream();
-                    int offs = 0, n = 0;
-                    while ( (n = is.read(buf, offs, buf.length-offs)) >= 0 && offs < buf.length) {
-                        offs += n;
-                    }
-                    final int total = offs;
-                    if (total != ent.getSize()) {
-                        logger.warn("What gives?  ZipEntry "+ent.getName()+" is "+ent.getSize()+" bytes long, but we only read "+total+" bytes!");
-                    }
+            String jarEntryPath = name.replace('.','/') + ".class";
+            try {
+                byte[] buf = getIndex().readEntry(jarEntryPath);
+                if (buf != null) {
                     return defineClass(name, buf, 0, buf.length);
-                } catch (IOException ex) {
-                    // there might be more classpath entries to search
-                    continue;
                 }
+            } catch (IOException ex) {
+                logger.warn("Couldn't read " + jarEntryPath + " from the JDBC Driver JAR files", ex);
             }
             String errorMsg =
                 "Could not locate class " + name +
@@ -260,40 +255,13 @@ public class JDBCDataSourceType {
         @Override
         protected Enumeration<URL> findResources(String name) {
             logger.debug("Looking for all resources with path "+name);
-            List<URL> results = new ArrayList<URL>();
-            for (String jarName : classpath) {
-                logger.debug("Converting JAR name: " + jarName);
-                URL jarLocation = JDBCDataSource.jarSpecToFile(jarName, getParent(), serverBaseUri);
-                logger.debug("  JAR is "+jarLocation);
-                try {
-                    if (jarLocation == null) {
-                        logger.debug("  Skipping non-existant JAR file " + jarName);
-                        continue;
-                    } else {
-                        logger.debug("  Searching JAR " + jarLocation);
-                    }
-                    
-                    URL url = new URL("jar:" + jarLocation.toString() + "!/" + name);
-
-                    JarURLConnection jarConnection;
-                    try {
-                        jarConnection = (JarURLConnection) url.openConnection();
-                    } catch (IOException ex) {
-                        // this was the old behaviour if the file didn't exist. still a good idea?
-                        logger.debug("Skipping non-existant JAR file " + jarLocation);
-                        continue;
-                    }
-                    
-                    JarEntry ent = jarConnection.getJarEntry();
-                    if (ent != null) {
-                        results.add(url);
-                        logger.debug("    Found entry " + name);
-                    }
-                } catch (IOException ex) {
-                    // missing resource is not a fatal error
-                    logger.debug("  IO Exception while searching "+ jarLocation
-                                + " for resource " + name + ". Continuing...", ex);
-                }
+            List<URL> results;
+            try {
+                results = getIndex().findEntryURLs(name);
+            } catch (IOException ex) {
+                // missing resource is not a fatal error
+                logger.debug("  IO Exception while searching for resource " + name + ". Continuing...", ex);
+                results = Collections.emptyList();
             }
             return Collections.enumeration(results);
         }
@@ -316,6 +284,13 @@ public class JDBCDataSourceType {
      * during 'Forward engineering' in a 'SQL Power Architect'.
      */
     public static final String SUPPORTS_QUOTING_NAME = "Supports Quoting Name";
+
+    /**
+     * The clause that goes after a table name in a FROM list to have the
+     * database return a random sample of the table's rows, with {0} where the
+     * percentage of rows to return goes. For example, "SAMPLE ({0})" on Oracle.
+     */
+    public static final String TABLE_SAMPLE_CLAUSE = "Table Sample Clause";
     
     /**
      * This type's parent type.  This value will be null if this type has no
@@ -628,6 +603,16 @@ public class JDBCDataSourceType {
         return true;
     }
 
+    /**
+     * Returns the clause that samples a table on this platform, with {0} where
+     * the percentage of rows goes, or null if the platform can't sample tables.
+     * 
+     * @see #TABLE_SAMPLE_CLAUSE
+     */
+    public String getTableSampleClause() {
+        return getProperty(TABLE_SAMPLE_CLAUSE);
+    }
+
     /**
      * Returns all the properties of this data source type.  This will not
      * include any inherited values, so unless you're trying to save this data source
@@ -2,15 +2,13 @@ package ca.sqlpower.sql;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
-import org.apache.commons.dbcp.PoolableConnectionFactory;
-import org.apache.commons.dbcp.PoolingDataSource;
-import org.apache.commons.pool.ObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
 
 /**
  * Connection pool wrapper class, providing a simple connection pool interface
@@ -25,48 +23,59 @@ import org.apache.commons.pool.impl.GenericObjectPool;
  */
 public class Pool {
 
-	private static Map pools = new HashMap();	
-	private static Map objPools = new HashMap(); // for debugging and stats tracking
+	private static final Logger logger = Logger.getLogger(Pool.class);
+
+	private static Map<String, InstrumentedConnectionPool> pools = new HashMap<String, InstrumentedConnectionPool>();
 	private DBConnectionSpec dbcs;
 	private String poolName;
-	private PoolingDataSource dataSource;
-	ObjectPool connectionPool;
+	InstrumentedConnectionPool connectionPool;
+
+	/**
+	 * Returns the settings new pools get unless they are given others: up to
+	 * 100 connections, 50 of them idle, with callers waiting up to 10 seconds
+	 * when they are all in use. Connections idle for more than a minute are
+	 * validated against the Power*Loader schema before they are handed out.
+	 */
+	public static ConnectionPoolSettings getDefaultSettings() {
+		ConnectionPoolSettings settings = new ConnectionPoolSettings();
+		settings.setMaxActive(100);
+		settings.setMaxIdle(50);
+		settings.setMaxWaitMillis(10000);
+		settings.setMinEvictableIdleMillis(1000*60*5);
+		settings.setTimeBetweenEvictionRunsMillis(10000);
+		settings.setValidationIdleMillis(60000);
+		settings.setValidationQuery("select 1 from def_param");
+		return settings;
+	}
 	
+	/** 
+	 * Prepares a connection pool for the specified DBConnectionSpec with the
+	 * {@link #getDefaultSettings() default settings}.
+	 */
+	public Pool(DBConnectionSpec dbcs) throws Exception {
+		this(dbcs, getDefaultSettings());
+	}
+
 	/** 
 	 * Prepares a connection pool for the specified DBConnectionSpec. Adds
 	 * the pool to a cache of pools for re-use whenever the DBConnectionSpec,
 	 * username, and password are re-used. This essentially creates one pool
-	 * per unique database/user combination.
+	 * per unique database/user combination. The settings are only used if
+	 * there is no pool for the combination yet.
 	 */
-	public Pool(DBConnectionSpec dbcs) throws Exception {
+	public Pool(DBConnectionSpec dbcs, ConnectionPoolSettings settings) throws Exception {
 		this.dbcs = dbcs;
         poolName =  dbcs.getUrl()+"-"+dbcs.getUser()+"-"+dbcs.getPass();
-        dataSource = (PoolingDataSource) pools.get(poolName);
-        connectionPool = (ObjectPool) objPools.get(poolName); // for debugging
-        
-        if (dataSource == null) {
-        	GenericObjectPool.Config poolConfig = new GenericObjectPool.Config();
-  
-			// XXX: this should come from a properties file.
-        	poolConfig.maxActive = 100;
-        	poolConfig.maxIdle = 50;
-        	poolConfig.maxWait = 10000;
-        	poolConfig.minEvictableIdleTimeMillis = 1000*60*5;
-        	poolConfig.timeBetweenEvictionRunsMillis = 10000;
-        	poolConfig.numTestsPerEvictionRun = 5;
-			poolConfig.testOnBorrow = true;
-
-
-		    connectionPool = new GenericObjectPool(null,poolConfig);
-
-		    ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(dbcs.getUrl(),dbcs.getUser(),dbcs.getPass());
-        	PoolableConnectionFactory poolableConnectionFactory = new StatementClosingPoolableConnectionFactory(connectionFactory,connectionPool,null,null,false,true);
-			poolableConnectionFactory.setValidationQuery("select 1 from def_param");
-	        this.dataSource = new PoolingDataSource(connectionPool);
-	        pools.put(poolName, dataSource);	
-	        objPools.put(poolName, connectionPool);   // for debugging      
-        } else {
-			// found connection pool in cache
+        synchronized (pools) {
+        	connectionPool = pools.get(poolName);
+        	if (connectionPool == null) {
+        		ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(dbcs.getUrl(),dbcs.getUser(),dbcs.getPass());
+        		connectionPool = new InstrumentedConnectionPool(
+        				dbcs.getUrl()+"-"+dbcs.getUser(), connectionFactory, settings, true);
+        		pools.put(poolName, connectionPool);
+        	} else {
+        		// found connection pool in cache
+        	}
         }
 	}
 		
@@ -78,17 +87,28 @@ public class Pool {
 	 * this method intercepts it and removes this connection pool from
 	 * the cache.  This is important because we don't want to keep
 	 * pools of connections with invalid username/password
-	 * combinations!
+	 * combinations! A timeout waiting for a busy pool does not remove it.
 	 */
 	public Connection getConnection() throws SQLException {
-		Connection con;
 		try {
-			con = dataSource.getConnection();
+			return connectionPool.getConnection();
+		} catch (SQLTimeoutException e) {
+			logger.warn("Connection pool exhausted: " + connectionPool.getMetrics());
+			throw e;
 		} catch (SQLException e) {
-			pools.remove(poolName);
-			objPools.remove(poolName);
+			synchronized (pools) {
+				if (pools.get(poolName) == connectionPool) {
+					pools.remove(poolName);
+				}
+			}
 			throw e;
 		}
-		return con;
-	}		
+	}
+
+	/**
+	 * Returns the borrow statistics of this pool.
+	 */
+	public ConnectionPoolMetrics getMetrics() {
+		return connectionPool.getMetrics();
+	}
 }
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A cache of query results, such as the one {@link DelayedWebResultSet}
+ * uses. It is bounded both by a number of entries and by the estimated heap
+ * and spill file space the cached row sets take up, and evicts the least
+ * recently used entries to stay within both.
+ * <p>
+ * Each entry can be given a time to live. When several threads miss on the
+ * same key at once, only one of them runs the query and the others wait for
+ * its result, so a burst of requests for a page that has just expired does
+ * not send the same query to the database many times over.
+ * <p>
+ * An entry can also be served stale for a while after it expires, as long
+ * as the caller can supply a way to refresh it that does not depend on the
+ * caller's own connection. The stale result is returned straight away and
+ * the refresh runs on a background thread, so hot pages never wait on the
+ * database.
+ * <p>
+ * The cache holds each row set it keeps through
+ * {@link CachedRowSet#retainSpillFile()}, and every row set it returns has
+ * been retained for the caller as well. Callers should call
+ * {@link CachedRowSet#releaseSpillFile()} once they are done with a result,
+ * so that the spill file of a result the cache has dropped is deleted once
+ * nobody is reading it any more.
+ * <p>
+ * All methods are thread safe.
+ */
+public class QueryResultCache {
+
+    private static final Logger logger = Logger.getLogger(QueryResultCache.class);
+
+    /**
+     * Produces a result to cache on a miss.
+     */
+    public static interface Loader {
+        CachedRowSet load() throws SQLException;
+    }
+
+    private static class Entry {
+        final CachedRowSet results;
+        final long weight;
+
+        /**
+         * When the entry stops being fresh, in the currentTimeMillis() time
+         * base, or Long.MAX_VALUE if it never does.
+         */
+        final long expires;
+
+        Entry(CachedRowSet results, long weight, long expires) {
+            this.results = results;
+            this.weight = weight;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The cached entries, least recently used first. All access is
+     * synchronized on the map, but queries are never run while holding the
+     * lock.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * The loads in progress, so concurrent misses on the same key can wait
+     * for the same one.
+     */
+    private final ConcurrentHashMap<String, FutureTask<CachedRowSet>> inFlight =
+        new ConcurrentHashMap<String, FutureTask<CachedRowSet>>();
+
+    private int maxEntries;
+    private long maxWeight;
+    private long weight;
+
+    private ExecutorService refresher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries
+     *            The most results to keep.
+     * @param maxWeight
+     *            The most heap and spill file space, in bytes, the cached
+     *            results may take up, as given by
+     *            {@link CachedRowSet#estimateSize()} and
+     *            {@link CachedRowSet#getSpillFileSize()}. 0 means no limit.
+     */
+    public QueryResultCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached result for the given key, loading it if it is not
+     * cached or has expired.
+     *
+     * @param key
+     *            Identifies the query. It should include everything that
+     *            affects the result, such as the database URL and user.
+     * @param ttlMillis
+     *            How long a newly loaded result stays fresh. 0 or less means
+     *            forever.
+     * @param maxStaleMillis
+     *            How long after it expires a result may still be returned
+     *            while it is refreshed in the background. Only used if
+     *            refresher is not null.
+     * @param loader
+     *            Loads the result on a miss, on the calling thread.
+     * @param refresher
+     *            Loads the result on a background thread to replace a stale
+     *            one, or null to always load on the calling thread. It must
+     *            not use any resources the caller might release once this
+     *            method returns.
+     */
+    public CachedRowSet get(String key, long ttlMillis, long maxStaleMillis,
+            Loader loader, Loader refresher) throws SQLException {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now < entry.expires) {
+                    hits.incrementAndGet();
+                    entry.results.retainSpillFile();
+                    return entry.results;
+                }
+                if (refresher != null && now - entry.expires < maxStaleMillis) {
+                    staleHits.incrementAndGet();
+                    refreshInBackground(key, ttlMillis, refresher);
+                    entry.results.retainSpillFile();
+                    return entry.results;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return load(key, ttlMillis, loader);
+    }
+
+    /**
+     * Returns the cached result for the given key if it is still fresh, or
+     * null. A fresh result counts as a hit.
+     */
+    public CachedRowSet getIfPresent(String key) {
+        synchronized (entries) {
+            CachedRowSet results = getFresh(key);
+            if (results != null) {
+                hits.incrementAndGet();
+                results.retainSpillFile();
+            }
+            return results;
+        }
+    }
+
+    private CachedRowSet getFresh(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() < entry.expires) {
+                return entry.results;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Caches the given result under the given key, replacing any result
+     * already there. A result too heavy to fit in the cache at all is not
+     * cached.
+     *
+     * @param ttlMillis
+     *            How long the result stays fresh. 0 or less means forever.
+     */
+    public void put(String key, CachedRowSet results, long ttlMillis) {
+        long entryWeight = results.estimateSize() + results.getSpillFileSize();
+        long expires = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        synchronized (entries) {
+            Entry old = entries.remove(key);
+            if (old != null) {
+                weight -= old.weight;
+            }
+            boolean alreadyHeld = old != null && old.results == results;
+            if (maxWeight > 0 && entryWeight > maxWeight) {
+                logger.debug("Not caching " + key + ": its " + entryWeight + " bytes exceed the cache's limit");
+                if (old != null) {
+                    old.results.releaseSpillFile();
+                }
+                return;
+            }
+            if (!alreadyHeld) {
+                if (old != null) {
+                    old.results.releaseSpillFile();
+                }
+                if (!results.retainSpillFile()) {
+                    logger.debug("Not caching " + key + ": its spill file has already been deleted");
+                    return;
+                }
+            }
+            entries.put(key, new Entry(results, entryWeight, expires));
+            weight += entryWeight;
+            evict();
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within its
+     * limits. Must be called while holding the lock on {@link #entries}.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || (maxWeight > 0 && weight > maxWeight))) {
+            Entry eldest = it.next();
+            it.remove();
+            weight -= eldest.weight;
+            eldest.results.releaseSpillFile();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Loads and caches the result for the given key on this thread, or waits
+     * for a load of it that is already in progress.
+     */
+    private CachedRowSet load(String key, long ttlMillis, Loader loader) throws SQLException {
+        for (;;) {
+            CachedRowSet results = loadOnce(key, ttlMillis, loader);
+            if (results.retainSpillFile()) {
+                return results;
+            }
+            // the results were dropped and released before we could retain them
+            logger.debug("Results of " + key + " were released while loading; loading them again");
+        }
+    }
+
+    private CachedRowSet loadOnce(String key, long ttlMillis, Loader loader) throws SQLException {
+        FutureTask<CachedRowSet> task = new FutureTask<CachedRowSet>(loadTask(key, ttlMillis, loader, true));
+        FutureTask<CachedRowSet> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            existing = task;
+        } else {
+            coalesced.incrementAndGet();
+            logger.debug("Waiting for the load of " + key + " already in progress");
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the results of " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException("Loading the results of " + key + " failed", cause);
+        }
+    }
+
+    /**
+     * Starts a background refresh of the given key, unless a load of it is
+     * already in progress.
+     */
+    private void refreshInBackground(final String key, long ttlMillis, Loader refresher) {
+        final FutureTask<CachedRowSet> task = new FutureTask<CachedRowSet>(
+                loadTask(key, ttlMillis, refresher, false));
+        if (inFlight.putIfAbsent(key, task) != null) {
+            return;
+        }
+        logger.debug("Refreshing stale results of " + key + " in the background");
+        getRefresher().execute(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                    task.get();
+                } catch (ExecutionException e) {
+                    logger.warn("Background refresh of " + key + " failed; serving stale results", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.remove(key, task);
+                }
+            }
+        });
+    }
+
+    private Callable<CachedRowSet> loadTask(final String key, final long ttlMillis, final Loader loader,
+            final boolean useFresh) {
+        return new Callable<CachedRowSet>() {
+            public CachedRowSet call() throws Exception {
+                if (useFresh) {
+                    // another thread may have finished loading since we missed
+                    CachedRowSet fresh = getFresh(key);
+                    if (fresh != null) {
+                        return fresh;
+                    }
+                }
+                CachedRowSet results = loader.load();
+                // the loader may have cached the results itself
+                if (getFresh(key) != results) {
+                    put(key, results, ttlMillis);
+                }
+                return results;
+            }
+        };
+    }
+
+    private synchronized ExecutorService getRefresher() {
+        if (refresher == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Query result cache refresh");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            refresher = executor;
+        }
+        return refresher;
+    }
+
+    /**
+     * Removes the result for the given key.
+     */
+    public void remove(String key) {
+        synchronized (entries) {
+            Entry old = entries.remove(key);
+            if (old != null) {
+                weight -= old.weight;
+                old.results.releaseSpillFile();
+            }
+        }
+    }
+
+    /**
+     * Removes all results.
+     */
+    public void clear() {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                entry.results.releaseSpillFile();
+            }
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the estimated heap and spill file space the cached results
+     * take up, in bytes.
+     */
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public int getMaxEntries() {
+        synchronized (entries) {
+            return maxEntries;
+        }
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        synchronized (entries) {
+            this.maxEntries = maxEntries;
+            evict();
+        }
+    }
+
+    public long getMaxWeight() {
+        synchronized (entries) {
+            return maxWeight;
+        }
+    }
+
+    /**
+     * Sets the most heap and spill file space, in bytes, the cached results
+     * may take up. 0 means no limit.
+     */
+    public void setMaxWeight(long maxWeight) {
+        synchronized (entries) {
+            this.maxWeight = maxWeight;
+            evict();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered with a fresh cached result.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests answered with a stale result while it
+     * was refreshed in the background.
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * Returns the number of requests that had to wait for a result to load.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of misses that waited for another thread's load
+     * rather than running the query themselves.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + size() + ", weight=" + getWeight() + ", hits=" + getHitCount() +
+            ", staleHits=" + getStaleHitCount() + ", misses=" + getMissCount() +
+            ", coalesced=" + getCoalescedCount() + ", evictions=" + getEvictionCount();
+    }
+}
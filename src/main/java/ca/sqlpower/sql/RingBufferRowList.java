@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity window over the most recent rows of a streaming query,
+ * used by {@link CachedRowSet#follow(java.sql.ResultSet, int, String...)}.
+ * Once the window is full, adding a row overwrites the oldest one in
+ * constant time instead of shifting every row down.
+ * <p>
+ * Rows are appended by a single streaming thread and may be read by any
+ * number of other threads (typically the Swing EDT painting a table)
+ * without taking a lock. The writer first advances the {@link #claimed}
+ * counter, then stores the row in its slot, then publishes it by advancing
+ * the {@link #published} counter, so a reader that sees the new count also
+ * sees the row. Index 0 is always the oldest row still in the window. A
+ * reader checks {@link #claimed} after reading a slot, and if a writer has
+ * started overwriting that slot in the meantime it retries against the
+ * newer window.
+ * <p>
+ * Rows can not be replaced or removed individually. Serializing this list
+ * writes out a plain copy of the rows currently in the window.
+ */
+class RingBufferRowList extends AbstractList<Object[]> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The most rows the buffer will ever hold.
+     */
+    private final int capacity;
+
+    /**
+     * The slots. This starts small and grows until it reaches
+     * {@link #capacity}, after which it is never reallocated.
+     */
+    private volatile AtomicReferenceArray<Object[]> buffer;
+
+    /**
+     * The total number of rows ever added. The row with sequence number
+     * <i>n</i> lives in slot <code>n % capacity</code> until it is
+     * overwritten by row <i>n + capacity</i>.
+     */
+    private volatile long published;
+
+    /**
+     * The number of rows the writer has started to add. This is one ahead
+     * of {@link #published} while a row is being stored, and tells readers
+     * that the slot it goes in may no longer hold the row they wanted.
+     */
+    private volatile long claimed;
+
+    RingBufferRowList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = new AtomicReferenceArray<Object[]>(Math.min(capacity, 16));
+    }
+
+    /**
+     * Returns the number of rows that have been pushed out of the window
+     * since this buffer was created. Adding this to a row's index gives its
+     * 0-based position in the original stream.
+     */
+    long getDroppedCount() {
+        long p = published;
+        return p - Math.min(p, capacity);
+    }
+
+    /**
+     * Returns the total number of rows ever added to this buffer.
+     */
+    long getPublishedCount() {
+        return published;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(published, capacity);
+    }
+
+    @Override
+    public Object[] get(int index) {
+        for (;;) {
+            long p = published;
+            int size = (int) Math.min(p, capacity);
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Row " + index + " is out of range (size=" + size + ")");
+            }
+            long seq = p - size + index;
+            Object[] row = buffer.get((int) (seq % capacity));
+            if (claimed - capacity <= seq) {
+                return row;
+            }
+            // the writer lapped us while we were reading; try again
+        }
+    }
+
+    /**
+     * Adds a row, pushing the oldest row out of the window if it is full.
+     * This is meant to be called by one streaming thread; concurrent callers
+     * are serialized so insertRow() can still be used on a followed row set.
+     */
+    @Override
+    public synchronized boolean add(Object[] row) {
+        if (capacity == 0) {
+            return true;
+        }
+        long seq = published;
+        AtomicReferenceArray<Object[]> b = buffer;
+        if (seq < capacity && seq >= b.length()) {
+            AtomicReferenceArray<Object[]> bigger = new AtomicReferenceArray<Object[]>(
+                    (int) Math.min(capacity, Math.max(16, 2L * b.length())));
+            for (int i = 0; i < b.length(); i++) {
+                bigger.set(i, b.get(i));
+            }
+            b = bigger;
+            buffer = b;
+        }
+        claimed = seq + 1;
+        b.set((int) (seq % capacity), row);
+        published = seq + 1;
+        return true;
+    }
+
+    /**
+     * Returns a consistent copy of the rows in the window at the moment of
+     * the call.
+     */
+    @Override
+    public Object[] toArray() {
+        for (;;) {
+            long p = published;
+            int size = (int) Math.min(p, capacity);
+            AtomicReferenceArray<Object[]> b = buffer;
+            Object[] copy = new Object[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = b.get((int) ((p - size + i) % capacity));
+            }
+            if (claimed - capacity <= p - size) {
+                return copy;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] copy = toArray();
+        if (a.length < copy.length) {
+            a = (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), copy.length);
+        }
+        System.arraycopy(copy, 0, a, 0, copy.length);
+        if (a.length > copy.length) {
+            a[copy.length] = null;
+        }
+        return a;
+    }
+
+    /**
+     * Serializes as an ordinary list of the rows currently in the window.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<Object>(Arrays.asList(toArray()));
+    }
+}
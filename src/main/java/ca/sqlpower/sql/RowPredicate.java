@@ -0,0 +1,701 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ca.sqlpower.sql.CachedRowSet.RowComparator;
+
+/**
+ * A {@link RowFilter} built out of typed column comparisons combined with
+ * AND, OR and NOT. Because a predicate knows which columns it looks at and
+ * what it compares them to, it can be evaluated without a materialised row:
+ * <ul>
+ * <li>{@link CachedRowSet#populate(ResultSet, RowFilter, String...)} tests
+ * each row against the source result set before copying it, so the columns
+ * of rejected rows are never read and numeric comparisons use
+ * {@link ResultSet#getDouble(int)} rather than boxing the value.
+ * <li>{@link CachedRowSet#select(RowPredicate)} evaluates the predicate over
+ * an existing row set in batches, narrowing a selection vector of row
+ * indexes one condition at a time. Against columnar storage, numeric
+ * conditions read the primitive column arrays directly.
+ * </ul>
+ * Predicates also work anywhere an ordinary RowFilter does. They are
+ * immutable and can be shared between threads.
+ * <p>
+ * Comparisons follow the ordering of {@link RowComparator}: numbers compare
+ * numerically, strings compare without regard to case, and other comparable
+ * values use their natural order. Like SQL, a comparison never matches a
+ * null value; use {@link #isNull(int)} to find nulls.
+ */
+public abstract class RowPredicate implements RowFilter {
+
+    /**
+     * The number of rows {@link CachedRowSet#select(RowPredicate)} works on at
+     * a time.
+     */
+    static final int BATCH_SIZE = 1024;
+
+    RowPredicate() {
+        // only the factory methods create predicates
+    }
+
+    // ------------------------------------------------------------------
+    // Factory methods
+    // ------------------------------------------------------------------
+
+    /**
+     * Accepts rows whose value in the given column equals the given value.
+     */
+    public static RowPredicate equalTo(int column, Object value) {
+        return new Comparison(column, Comparison.EQ, value);
+    }
+
+    /**
+     * Accepts rows whose value in the given column is not null and does not
+     * equal the given value.
+     */
+    public static RowPredicate notEqualTo(int column, Object value) {
+        return new Comparison(column, Comparison.NE, value);
+    }
+
+    public static RowPredicate lessThan(int column, Object value) {
+        return new Comparison(column, Comparison.LT, value);
+    }
+
+    public static RowPredicate lessThanOrEqualTo(int column, Object value) {
+        return new Comparison(column, Comparison.LE, value);
+    }
+
+    public static RowPredicate greaterThan(int column, Object value) {
+        return new Comparison(column, Comparison.GT, value);
+    }
+
+    public static RowPredicate greaterThanOrEqualTo(int column, Object value) {
+        return new Comparison(column, Comparison.GE, value);
+    }
+
+    /**
+     * Accepts rows whose value in the given column lies between the given
+     * bounds, inclusive.
+     */
+    public static RowPredicate between(int column, Object low, Object high) {
+        return and(greaterThanOrEqualTo(column, low), lessThanOrEqualTo(column, high));
+    }
+
+    public static RowPredicate isNull(int column) {
+        return new NullCheck(column, true);
+    }
+
+    public static RowPredicate isNotNull(int column) {
+        return new NullCheck(column, false);
+    }
+
+    /**
+     * Accepts rows whose value in the given column, converted to a string,
+     * matches the given regular expression in its entirety.
+     */
+    public static RowPredicate matches(int column, Pattern pattern) {
+        return new Match(column, pattern);
+    }
+
+    /**
+     * Accepts rows that every one of the given predicates accepts. The
+     * predicates are evaluated in the order given, so put the most selective
+     * one first.
+     */
+    public static RowPredicate and(RowPredicate ... predicates) {
+        return new And(predicates);
+    }
+
+    /**
+     * Accepts rows that at least one of the given predicates accepts.
+     */
+    public static RowPredicate or(RowPredicate ... predicates) {
+        return new Or(predicates);
+    }
+
+    public static RowPredicate not(RowPredicate predicate) {
+        return new Not(predicate);
+    }
+
+    /**
+     * Adapts an arbitrary RowFilter so it can be combined with other
+     * predicates. The filter is always given a fully materialised row, so a
+     * predicate that contains one can not skip reading columns.
+     */
+    public static RowPredicate of(RowFilter filter) {
+        if (filter instanceof RowPredicate) {
+            return (RowPredicate) filter;
+        }
+        return new FilterAdapter(filter);
+    }
+
+    // ------------------------------------------------------------------
+    // Evaluation
+    // ------------------------------------------------------------------
+
+    public boolean acceptsRow(Object[] row) throws SQLException {
+        return test(new RowCursor(row));
+    }
+
+    /**
+     * Tests the row the given cursor is on.
+     */
+    abstract boolean test(Cursor cursor) throws SQLException;
+
+    /**
+     * Returns true if this predicate needs every column of a row to be read
+     * before it can be evaluated.
+     */
+    abstract boolean needsWholeRow();
+
+    /**
+     * Copies the rows of the given selection vector that this predicate
+     * accepts into <code>out</code>, preserving their order, and returns how
+     * many there were. <code>out</code> may be the same array as
+     * <code>selection</code>.
+     */
+    int select(StoreCursor cursor, int[] selection, int count, int[] out) throws SQLException {
+        int accepted = 0;
+        for (int i = 0; i < count; i++) {
+            cursor.moveTo(selection[i]);
+            if (test(cursor)) {
+                out[accepted++] = selection[i];
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows of the given list that this
+     * predicate accepts, working through the rows a batch at a time. The
+     * caller must hold the lock on the list.
+     */
+    int[] selectAll(List<Object[]> rows, ColumnarRowList columnar) throws SQLException {
+        int size = rows.size();
+        int[] result = new int[Math.min(size, BATCH_SIZE)];
+        int resultCount = 0;
+        StoreCursor cursor = new StoreCursor(rows, columnar);
+        int[] batch = new int[BATCH_SIZE];
+        for (int start = 0; start < size; start += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, size - start);
+            for (int i = 0; i < count; i++) {
+                batch[i] = start + i;
+            }
+            cursor.startBatch(start);
+            int accepted = select(cursor, batch, count, batch);
+            if (resultCount + accepted > result.length) {
+                result = Arrays.copyOf(result, Math.max(resultCount + accepted, result.length * 2));
+            }
+            System.arraycopy(batch, 0, result, resultCount, accepted);
+            resultCount += accepted;
+        }
+        return Arrays.copyOf(result, resultCount);
+    }
+
+    // ------------------------------------------------------------------
+    // Cursors: the different places a row's values can be read from
+    // ------------------------------------------------------------------
+
+    /**
+     * Reads the values of one row. Columns are 1-based.
+     */
+    static abstract class Cursor {
+        abstract boolean isNull(int column) throws SQLException;
+
+        /**
+         * Returns true if {@link #getDouble(int)} can be used on the given
+         * column of the current row.
+         */
+        abstract boolean isNumeric(int column) throws SQLException;
+
+        abstract double getDouble(int column) throws SQLException;
+
+        abstract Object getObject(int column) throws SQLException;
+
+        /**
+         * Returns every value of the current row.
+         */
+        abstract Object[] getRow() throws SQLException;
+    }
+
+    /**
+     * A cursor over a single materialised row.
+     */
+    static class RowCursor extends Cursor {
+        private final Object[] row;
+
+        RowCursor(Object[] row) {
+            this.row = row;
+        }
+
+        boolean isNull(int column) {
+            return row[column - 1] == null;
+        }
+
+        boolean isNumeric(int column) {
+            return row[column - 1] instanceof Number;
+        }
+
+        double getDouble(int column) {
+            return ((Number) row[column - 1]).doubleValue();
+        }
+
+        Object getObject(int column) {
+            return row[column - 1];
+        }
+
+        Object[] getRow() {
+            return row;
+        }
+    }
+
+    /**
+     * A cursor over the rows stored in a {@link CachedRowSet}. Columnar values
+     * are read straight out of the column arrays; otherwise each row is
+     * fetched at most once per batch, so spilled rows are decoded once no
+     * matter how many conditions look at them.
+     */
+    static class StoreCursor extends Cursor {
+        private final List<Object[]> rows;
+        private final ColumnarRowList columnar;
+        private final Object[][] batchRows = new Object[BATCH_SIZE][];
+        private int batchStart;
+        private int row;
+
+        StoreCursor(List<Object[]> rows, ColumnarRowList columnar) {
+            this.rows = rows;
+            this.columnar = columnar;
+        }
+
+        void startBatch(int start) {
+            batchStart = start;
+            Arrays.fill(batchRows, null);
+        }
+
+        void moveTo(int row) {
+            this.row = row;
+        }
+
+        boolean isNull(int column) throws SQLException {
+            if (columnar != null) {
+                return columnar.isNull(row, column - 1);
+            }
+            return getRow()[column - 1] == null;
+        }
+
+        boolean isNumeric(int column) throws SQLException {
+            if (columnar != null) {
+                return columnar.isNumericColumn(column - 1);
+            }
+            return getRow()[column - 1] instanceof Number;
+        }
+
+        double getDouble(int column) throws SQLException {
+            if (columnar != null && columnar.isNumericColumn(column - 1)) {
+                return columnar.getDouble(row, column - 1);
+            }
+            return ((Number) getObject(column)).doubleValue();
+        }
+
+        Object getObject(int column) throws SQLException {
+            if (columnar != null) {
+                return columnar.getObject(row, column - 1);
+            }
+            return getRow()[column - 1];
+        }
+
+        Object[] getRow() {
+            int slot = row - batchStart;
+            if (slot < 0 || slot >= BATCH_SIZE) {
+                return rows.get(row);
+            }
+            Object[] r = batchRows[slot];
+            if (r == null) {
+                r = rows.get(row);
+                batchRows[slot] = r;
+            }
+            return r;
+        }
+    }
+
+    /**
+     * A cursor over the current row of a result set that is being copied.
+     * Each column is read from the result set at most once per row, and only
+     * if a condition or the copy needs it. Numeric columns are read with
+     * {@link ResultSet#getDouble(int)} when a condition only needs their
+     * value as a number.
+     */
+    static class ResultSetCursor extends Cursor {
+        private final ResultSet rs;
+        private final int columnCount;
+        private final boolean[] numeric;
+        private final boolean[] doubleRead;
+        private final boolean[] objectRead;
+        private final double[] doubles;
+        private final boolean[] doubleNull;
+        private final Object[] objects;
+
+        ResultSetCursor(ResultSet rs) throws SQLException {
+            this.rs = rs;
+            ResultSetMetaData md = rs.getMetaData();
+            columnCount = md.getColumnCount();
+            numeric = new boolean[columnCount + 1];
+            for (int i = 1; i <= columnCount; i++) {
+                numeric[i] = isNumericType(md.getColumnType(i));
+            }
+            doubleRead = new boolean[columnCount + 1];
+            objectRead = new boolean[columnCount + 1];
+            doubles = new double[columnCount + 1];
+            doubleNull = new boolean[columnCount + 1];
+            objects = new Object[columnCount + 1];
+        }
+
+        /**
+         * Forgets the values read from the previous row. Call this after
+         * every call to next() on the result set.
+         */
+        void nextRow() {
+            Arrays.fill(doubleRead, false);
+            Arrays.fill(objectRead, false);
+            Arrays.fill(objects, null);
+        }
+
+        boolean isNull(int column) throws SQLException {
+            if (objectRead[column]) {
+                return objects[column] == null;
+            }
+            if (numeric[column]) {
+                getDouble(column);
+                return doubleNull[column];
+            }
+            return getObject(column) == null;
+        }
+
+        boolean isNumeric(int column) throws SQLException {
+            if (objectRead[column]) {
+                return objects[column] instanceof Number;
+            }
+            return numeric[column];
+        }
+
+        double getDouble(int column) throws SQLException {
+            if (objectRead[column]) {
+                return ((Number) objects[column]).doubleValue();
+            }
+            if (!doubleRead[column]) {
+                doubles[column] = rs.getDouble(column);
+                doubleNull[column] = rs.wasNull();
+                doubleRead[column] = true;
+            }
+            return doubles[column];
+        }
+
+        Object getObject(int column) throws SQLException {
+            if (!objectRead[column]) {
+                objects[column] = rs.getObject(column);
+                objectRead[column] = true;
+            }
+            return objects[column];
+        }
+
+        Object[] getRow() throws SQLException {
+            Object[] row = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                row[i] = getObject(i + 1);
+            }
+            return row;
+        }
+
+        private static boolean isNumericType(int sqlType) {
+            switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return true;
+            default:
+                return false;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Predicate implementations
+    // ------------------------------------------------------------------
+
+    private static class Comparison extends RowPredicate {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+
+        private final int column;
+        private final int op;
+        private final Object value;
+        private final boolean numericValue;
+        private final double doubleValue;
+
+        Comparison(int column, int op, Object value) {
+            if (column < 1) {
+                throw new IllegalArgumentException("Column indexes start at 1, not " + column);
+            }
+            if (value == null) {
+                throw new NullPointerException("Comparisons with null never match; use isNull() instead");
+            }
+            this.column = column;
+            this.op = op;
+            this.value = value;
+            numericValue = value instanceof Number;
+            doubleValue = numericValue ? ((Number) value).doubleValue() : 0;
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            if (cursor.isNull(column)) {
+                return false;
+            }
+            int diff;
+            if (numericValue && cursor.isNumeric(column)) {
+                double v = cursor.getDouble(column);
+                diff = v < doubleValue ? -1 : (v > doubleValue ? 1 : 0);
+            } else {
+                diff = RowComparator.compareValues(cursor.getObject(column), value);
+            }
+            switch (op) {
+            case EQ: return diff == 0;
+            case NE: return diff != 0;
+            case LT: return diff < 0;
+            case LE: return diff <= 0;
+            case GT: return diff > 0;
+            default: return diff >= 0;
+            }
+        }
+
+        boolean needsWholeRow() {
+            return false;
+        }
+    }
+
+    private static class NullCheck extends RowPredicate {
+        private final int column;
+        private final boolean wantNull;
+
+        NullCheck(int column, boolean wantNull) {
+            this.column = column;
+            this.wantNull = wantNull;
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            return cursor.isNull(column) == wantNull;
+        }
+
+        boolean needsWholeRow() {
+            return false;
+        }
+    }
+
+    private static class Match extends RowPredicate {
+        private final int column;
+        private final Pattern pattern;
+
+        Match(int column, Pattern pattern) {
+            this.column = column;
+            this.pattern = pattern;
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            Object v = cursor.getObject(column);
+            return v != null && pattern.matcher(v.toString()).matches();
+        }
+
+        boolean needsWholeRow() {
+            return false;
+        }
+    }
+
+    private static class And extends RowPredicate {
+        private final RowPredicate[] predicates;
+
+        And(RowPredicate[] predicates) {
+            this.predicates = predicates.clone();
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            for (RowPredicate p : predicates) {
+                if (!p.test(cursor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int select(StoreCursor cursor, int[] selection, int count, int[] out) throws SQLException {
+            if (predicates.length == 0) {
+                System.arraycopy(selection, 0, out, 0, count);
+                return count;
+            }
+            // each condition only looks at the rows the previous ones kept
+            count = predicates[0].select(cursor, selection, count, out);
+            for (int i = 1; i < predicates.length && count > 0; i++) {
+                count = predicates[i].select(cursor, out, count, out);
+            }
+            return count;
+        }
+
+        boolean needsWholeRow() {
+            for (RowPredicate p : predicates) {
+                if (p.needsWholeRow()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Or extends RowPredicate {
+        private final RowPredicate[] predicates;
+
+        Or(RowPredicate[] predicates) {
+            this.predicates = predicates.clone();
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            for (RowPredicate p : predicates) {
+                if (p.test(cursor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int select(StoreCursor cursor, int[] selection, int count, int[] out) throws SQLException {
+            // rows not accepted yet, and rows accepted so far; both stay in row order
+            int[] remaining = Arrays.copyOf(selection, count);
+            int remainingCount = count;
+            boolean[] accepted = new boolean[count];
+            int[] hits = new int[count];
+            for (RowPredicate p : predicates) {
+                if (remainingCount == 0) {
+                    break;
+                }
+                int hitCount = p.select(cursor, remaining, remainingCount, hits);
+                if (hitCount == 0) {
+                    continue;
+                }
+                // mark the hits and drop them from the remaining rows
+                int h = 0;
+                int kept = 0;
+                int s = 0;  // position of remaining[i] in selection
+                for (int i = 0; i < remainingCount; i++) {
+                    if (h < hitCount && remaining[i] == hits[h]) {
+                        h++;
+                        while (selection[s] != remaining[i]) {
+                            s++;
+                        }
+                        accepted[s] = true;
+                    } else {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+            }
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (accepted[i]) {
+                    out[n++] = selection[i];
+                }
+            }
+            return n;
+        }
+
+        boolean needsWholeRow() {
+            for (RowPredicate p : predicates) {
+                if (p.needsWholeRow()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Not extends RowPredicate {
+        private final RowPredicate predicate;
+
+        Not(RowPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            return !predicate.test(cursor);
+        }
+
+        @Override
+        int select(StoreCursor cursor, int[] selection, int count, int[] out) throws SQLException {
+            int[] hits = new int[count];
+            int hitCount = predicate.select(cursor, selection, count, hits);
+            int n = 0;
+            int h = 0;
+            for (int i = 0; i < count; i++) {
+                if (h < hitCount && selection[i] == hits[h]) {
+                    h++;
+                } else {
+                    out[n++] = selection[i];
+                }
+            }
+            return n;
+        }
+
+        boolean needsWholeRow() {
+            return predicate.needsWholeRow();
+        }
+    }
+
+    private static class FilterAdapter extends RowPredicate {
+        private final RowFilter filter;
+
+        FilterAdapter(RowFilter filter) {
+            this.filter = filter;
+        }
+
+        boolean test(Cursor cursor) throws SQLException {
+            return filter.acceptsRow(cursor.getRow());
+        }
+
+        boolean needsWholeRow() {
+            return true;
+        }
+    }
+}
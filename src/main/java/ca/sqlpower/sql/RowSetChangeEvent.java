@@ -24,11 +24,17 @@ public class RowSetChangeEvent {
 	private final CachedRowSet rs;
 	private final Object[] row;
 	private final int rowNumber;
+	private final long sequenceNumber;
 	
 	public RowSetChangeEvent(CachedRowSet rs, Object[] row, int rowNumber) {
+		this(rs, row, rowNumber, rowNumber);
+	}
+
+	public RowSetChangeEvent(CachedRowSet rs, Object[] row, int rowNumber, long sequenceNumber) {
 		this.rs = rs;
 		this.row = row;
 		this.rowNumber = rowNumber;
+		this.sequenceNumber = sequenceNumber;
 	}
 
 	public CachedRowSet getRs() {
@@ -39,8 +45,23 @@ public class RowSetChangeEvent {
 		return row;
 	}
 
+	/**
+	 * Returns the 0-based position of the new row in the row set at the time
+	 * it was added. Passing this value plus one to
+	 * {@link CachedRowSet#absolute(int)} moves to the new row, as long as no
+	 * further rows have been added since.
+	 */
 	public int getRowNumber() {
 		return rowNumber;
 	}
 
+	/**
+	 * Returns the 0-based position of the new row in the stream the row set
+	 * is following. This is the same as {@link #getRowNumber()} until a
+	 * followed row set reaches its row limit and starts dropping old rows.
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index over one or more columns of a {@link CachedRowSet}, which finds the
+ * rows having a given key without visiting every row. Indexes are obtained
+ * from {@link CachedRowSet#getHashIndex(int...)} and
+ * {@link CachedRowSet#getSortedIndex(int...)}, and the rows they find can be
+ * copied into a new row set with
+ * {@link CachedRowSet#extractRows(int[], RowFilter)}.
+ * <p>
+ * Rows are identified by their 0-based position in the row set, so row
+ * <i>r</i> is the one <code>absolute(r + 1)</code> moves to. An index is a
+ * snapshot of the rows at the time it was built; the row set discards its
+ * indexes when rows are inserted or updated through its own methods, so get
+ * the index again after changing the row set.
+ */
+public abstract class RowSetIndex {
+
+    /**
+     * The 1-based indexes of the key columns, most significant first.
+     */
+    private final int[] columns;
+
+    /**
+     * The number of rows the row set had when this index was built.
+     */
+    private final int rowCount;
+
+    RowSetIndex(int[] columns, int rowCount) {
+        this.columns = columns.clone();
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Returns the 1-based indexes of the columns this index is keyed on.
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Returns the number of key columns.
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the number of rows that were in the row set when this index
+     * was built.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows whose key columns equal the
+     * given values, one value per key column. Each kind of index says how it
+     * compares values; a {@link SortedRowSetIndex} matches strings without
+     * regard to case.
+     */
+    public abstract int[] lookup(Object ... key);
+
+    /**
+     * Returns true if at least one row has the given key.
+     */
+    public boolean contains(Object ... key) {
+        return lookup(key).length > 0;
+    }
+
+    /**
+     * Turns the arguments of a lookup into one value per key column. A single
+     * null argument passed as the whole array is taken to mean a null key
+     * value.
+     */
+    Object[] checkKey(Object[] key) {
+        if (key == null) {
+            key = new Object[] { null };
+        }
+        if (key.length != columns.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + columns.length + " key values but got " + key.length);
+        }
+        return key;
+    }
+
+    /**
+     * Reads the values of the given columns out of every row of the given
+     * row set, in one pass so spilled rows are only decoded once. Entry
+     * <code>[k][r]</code> of the result is the value of key column <i>k</i>
+     * in row <i>r</i>. The caller must hold the lock on the row set's data.
+     */
+    static Object[][] extractColumns(CachedRowSet rs, List<Object[]> rows, int[] columns) throws SQLException {
+        int columnCount = rs.getMetaData().getColumnCount();
+        for (int col : columns) {
+            if (col < 1 || col > columnCount) {
+                throw new IllegalArgumentException(
+                        "Column " + col + " is out of range (row set has " + columnCount + " columns)");
+            }
+        }
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("An index needs at least one column");
+        }
+        ColumnarRowList columnar = rs.getColumnarStore();
+        int size = rows.size();
+        Object[][] values = new Object[columns.length][size];
+        for (int r = 0; r < size; r++) {
+            Object[] row = columnar == null ? rows.get(r) : null;
+            for (int k = 0; k < columns.length; k++) {
+                values[k][r] = row == null ? columnar.getObject(r, columns[k] - 1) : row[columns[k] - 1];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the rows of the given row set for building an index, or an
+     * empty list if it has never been populated.
+     */
+    static List<Object[]> rowsOf(CachedRowSet rs) {
+        if (rs.data == null) {
+            return Collections.emptyList();
+        }
+        return rs.rowsForReading();
+    }
+}
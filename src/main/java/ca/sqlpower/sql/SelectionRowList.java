@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only list of some of the rows of another list, picked out by a
+ * selection vector of row indexes. This backs the row sets returned by
+ * {@link CachedRowSet#view(int[])}. Serializing it writes out a plain copy
+ * of the selected rows.
+ */
+class SelectionRowList extends AbstractList<Object[]> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Object[]> rows;
+
+    private final int[] selection;
+
+    SelectionRowList(List<Object[]> rows, int[] selection) {
+        this.rows = rows;
+        this.selection = selection.clone();
+    }
+
+    @Override
+    public Object[] get(int index) {
+        return rows.get(selection[index]);
+    }
+
+    @Override
+    public int size() {
+        return selection.length;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<Object[]>(this);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.sqlpower.sql.CachedRowSet.RowComparator;
+
+/**
+ * A {@link RowSetIndex} for range scans. The row indexes are kept sorted by
+ * key, so the rows between two keys are found with two binary searches.
+ * <p>
+ * Keys are ordered the same way a {@link RowComparator} sorting on the key
+ * columns in ascending order would order them: numbers numerically, strings
+ * without regard to case, and nulls first. Rows with equal keys stay in the
+ * order they appear in the row set.
+ * <p>
+ * A bound passed to {@link #range(Object[], boolean, Object[], boolean)} can
+ * give values for fewer columns than the index has, in which case only those
+ * leading columns are compared. An index on (TABLE_SCHEM, TABLE_NAME) can
+ * therefore find every table in a schema as well as one table.
+ */
+public class SortedRowSetIndex extends RowSetIndex {
+
+    /**
+     * The row indexes in key order.
+     */
+    private final int[] order;
+
+    /**
+     * <code>keys[k][i]</code> is the value of key column <i>k</i> in row
+     * <code>order[i]</code>.
+     */
+    private final Object[][] keys;
+
+    /**
+     * Builds a sorted index on the given columns of the given row set. The
+     * caller must hold the lock on the row set's data.
+     */
+    static SortedRowSetIndex build(CachedRowSet rs, int[] columns) throws SQLException {
+        List<Object[]> rows = rowsOf(rs);
+        Object[][] values = extractColumns(rs, rows, columns);
+        int[] order;
+        if (rows.isEmpty()) {
+            order = new int[0];
+        } else {
+            RowComparator c = new RowComparator();
+            for (int col : columns) {
+                c.addSortColumn(col, true);
+            }
+            order = new CachedRowSetSorter(c).sortedIndex(rs, rows);
+        }
+        return new SortedRowSetIndex(columns, order, values);
+    }
+
+    private SortedRowSetIndex(int[] columns, int[] order, Object[][] values) {
+        super(columns, order.length);
+        this.order = order;
+        keys = new Object[columns.length][order.length];
+        for (int k = 0; k < columns.length; k++) {
+            for (int i = 0; i < order.length; i++) {
+                keys[k][i] = values[k][order[i]];
+            }
+        }
+    }
+
+    /**
+     * Returns the 0-based indexes of every row, in key order.
+     */
+    public int[] getSortedRows() {
+        return order.clone();
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows whose key is equal to the given
+     * one, in the order they appear in the row set. Fewer values than there
+     * are key columns may be given to match on the leading columns only.
+     * <p>
+     * Keys are compared the way they are sorted, so strings match without
+     * regard to case: looking up "emp" finds "EMP" and "Emp" too. A
+     * {@link HashRowSetIndex} matches strings exactly.
+     */
+    @Override
+    public int[] lookup(Object ... key) {
+        if (key == null) {
+            key = new Object[] { null };
+        }
+        return range(key, true, key, true);
+    }
+
+    /**
+     * Returns the 0-based indexes of the rows whose keys fall between the
+     * given bounds, in key order.
+     *
+     * @param from
+     *            The lower bound, or null for no lower bound. It may give
+     *            values for only the leading key columns.
+     * @param fromInclusive
+     *            Whether rows equal to the lower bound are included.
+     * @param to
+     *            The upper bound, or null for no upper bound. It may give
+     *            values for only the leading key columns.
+     * @param toInclusive
+     *            Whether rows equal to the upper bound are included.
+     */
+    public int[] range(Object[] from, boolean fromInclusive, Object[] to, boolean toInclusive) {
+        checkBound(from);
+        checkBound(to);
+        int start = from == null ? 0 : search(from, !fromInclusive);
+        int end = to == null ? order.length : search(to, toInclusive);
+        if (start >= end) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(order, start, end);
+    }
+
+    private void checkBound(Object[] bound) {
+        if (bound != null && (bound.length == 0 || bound.length > getColumnCount())) {
+            throw new IllegalArgumentException(
+                    "A bound needs between 1 and " + getColumnCount() + " values, not " + bound.length);
+        }
+    }
+
+    /**
+     * Returns the first position whose key is greater than the given bound
+     * if <code>after</code> is true, or greater than or equal to it if not.
+     */
+    private int search(Object[] bound, boolean after) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int diff = compareAt(mid, bound);
+            if (diff < 0 || (after && diff == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compares the key at the given position with the leading columns of the
+     * given bound.
+     */
+    private int compareAt(int position, Object[] bound) {
+        for (int k = 0; k < bound.length; k++) {
+            int diff = RowComparator.compareValues(keys[k][position], bound[k]);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+}
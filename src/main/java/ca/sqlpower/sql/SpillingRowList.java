@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A list of rows for {@link CachedRowSet} that keeps rows on the heap until
+ * their estimated size reaches a budget, then writes every further row into
+ * a memory-mapped temporary file. Reading a spilled row decodes it from the
+ * mapping into a fresh Object[], so a cursor moving over the row set only
+ * ever holds the current row on the heap. The only per-row heap cost of a
+ * spilled row is its 8 byte file offset.
+ * <p>
+ * Each spilled row is written in a slot that starts with the number of bytes
+ * it has room for. A replaced row is written over its old value when it fits
+ * in the slot, and at the end of the file otherwise. The slots of replaced
+ * and removed rows are not reused, so once they take up more of the file
+ * than the live rows the live rows are copied into a new file.
+ * <p>
+ * Each cell is written as a one byte type tag followed by its value. Values
+ * of the types JDBC drivers normally hand back (numbers, strings, dates,
+ * times, timestamps, booleans and byte arrays) have a compact binary form;
+ * anything else falls back to Java serialization, and must therefore be
+ * Serializable.
+ * <p>
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes (or larger,
+ * for single rows that do not fit) so there is no 2GB limit on the total.
+ * The temporary file is deleted by {@link #close()} or {@link #clear()}, or
+ * at JVM exit if the list is never closed. Serializing this list writes out
+ * a plain in-memory copy of all the rows.
+ */
+class SpillingRowList extends AbstractList<Object[]> implements Serializable, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = Logger.getLogger(SpillingRowList.class);
+
+    /**
+     * The size of each mapped region of the spill file.
+     */
+    static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of bytes the slots of replaced and removed rows have to
+     * take up, as well as more than the live rows, before the spill file is
+     * compacted.
+     */
+    static final int MIN_COMPACTION_WASTE = 1024 * 1024;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INTEGER = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_SHORT = 6;
+    private static final byte TAG_BYTE = 7;
+    private static final byte TAG_BOOLEAN = 8;
+    private static final byte TAG_BIG_DECIMAL = 9;
+    private static final byte TAG_DATE = 10;
+    private static final byte TAG_TIME = 11;
+    private static final byte TAG_TIMESTAMP = 12;
+    private static final byte TAG_BYTES = 13;
+    private static final byte TAG_SERIALIZED = 14;
+
+    /**
+     * The rows that fit in the heap budget. Rows are only spilled once this
+     * list is "full", so row <i>i</i> is on the heap iff <i>i</i> is less
+     * than the size of this list.
+     */
+    private final List<Object[]> heapRows = new ArrayList<Object[]>();
+
+    /**
+     * The heap budget in bytes. Once the estimated size of
+     * {@link #heapRows} passes this, all further rows are spilled.
+     */
+    private final long heapBudget;
+
+    private long heapBytesUsed;
+
+    /**
+     * The directory to create the spill file in, or null for the system
+     * default temporary directory.
+     */
+    private final File spillDirectory;
+
+    private File spillFile;
+
+    private RandomAccessFile spillRaf;
+
+    /**
+     * The mapped regions of the spill file, in file order.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * The position in the file where each of {@link #segments} starts.
+     */
+    private long[] segmentStarts = new long[0];
+
+    /**
+     * The file offset of each spilled row. Entry 0 is the row immediately
+     * after the last heap row.
+     */
+    private long[] spilledOffsets = new long[0];
+
+    private int spilledCount;
+
+    /**
+     * The number of bytes in the spill file taken up by the slots of rows
+     * that have been replaced or removed.
+     */
+    private long wastedBytes;
+
+    /**
+     * Scratch space each row is encoded into before being copied to the
+     * mapping, so we know how long it is before deciding where it goes.
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+    /**
+     * @param heapBudget
+     *            The estimated number of bytes of row data to keep on the
+     *            heap before spilling.
+     * @param spillDirectory
+     *            The directory for the temporary file, or null to use the
+     *            system default.
+     */
+    SpillingRowList(long heapBudget, File spillDirectory) {
+        this.heapBudget = heapBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns the number of rows currently stored in the spill file rather
+     * than on the heap.
+     */
+    int getSpilledRowCount() {
+        return spilledCount;
+    }
+
+    /**
+     * Returns the estimated number of bytes the rows kept on the heap take up.
+     */
+    long getHeapBytesUsed() {
+        return heapBytesUsed;
+    }
+
+    /**
+     * Returns the temporary file the rows are spilled to, or null if there
+     * is none.
+     */
+    File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Returns the number of bytes of the spill file that have been written
+     * to, including the slots of rows that have been replaced or removed.
+     */
+    long getSpillFileLength() {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        int lastIndex = segments.size() - 1;
+        return segmentStarts[lastIndex] + segments.get(lastIndex).position();
+    }
+
+    @Override
+    public int size() {
+        return heapRows.size() + spilledCount;
+    }
+
+    @Override
+    public Object[] get(int index) {
+        if (index < heapRows.size()) {
+            return heapRows.get(index);
+        }
+        int spillIndex = index - heapRows.size();
+        if (spillIndex >= spilledCount) {
+            throw new IndexOutOfBoundsException("Row " + index + " is out of range (size=" + size() + ")");
+        }
+        return readRow(spilledOffsets[spillIndex]);
+    }
+
+    /**
+     * Replaces the given row. A spilled row is written over its old value if
+     * it fits in its slot, and at the end of the spill file otherwise.
+     */
+    @Override
+    public Object[] set(int index, Object[] row) {
+        if (index < heapRows.size()) {
+            return heapRows.set(index, row);
+        }
+        Object[] old = get(index);
+        int spillIndex = index - heapRows.size();
+        if (!rewriteRow(spilledOffsets[spillIndex], row)) {
+            wastedBytes += slotSize(spilledOffsets[spillIndex]);
+            spilledOffsets[spillIndex] = writeRow(row);
+            compactIfWasteful();
+        }
+        return old;
+    }
+
+    @Override
+    public boolean add(Object[] row) {
+        if (spilledCount == 0 && heapBytesUsed < heapBudget) {
+            heapRows.add(row);
+            heapBytesUsed += estimateSize(row);
+        } else {
+            long offset = writeRow(row);
+            if (spilledCount == spilledOffsets.length) {
+                spilledOffsets = Arrays.copyOf(spilledOffsets, Math.max(16, spilledCount * 2));
+            }
+            spilledOffsets[spilledCount++] = offset;
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes the given row. Removing a row from the heap portion of the
+     * list pulls the first spilled row (if any) back onto the heap so the
+     * heap rows always come first.
+     */
+    @Override
+    public Object[] remove(int index) {
+        Object[] old;
+        if (index < heapRows.size()) {
+            old = heapRows.remove(index);
+            heapBytesUsed -= estimateSize(old);
+            if (spilledCount > 0) {
+                heapRows.add(readRow(spilledOffsets[0]));
+                removeSpilledOffset(0);
+            }
+        } else {
+            old = get(index);
+            removeSpilledOffset(index - heapRows.size());
+        }
+        modCount++;
+        return old;
+    }
+
+    private void removeSpilledOffset(int spillIndex) {
+        wastedBytes += slotSize(spilledOffsets[spillIndex]);
+        System.arraycopy(spilledOffsets, spillIndex + 1, spilledOffsets, spillIndex, spilledCount - spillIndex - 1);
+        spilledCount--;
+        compactIfWasteful();
+    }
+
+    /**
+     * Removes all the rows and deletes the spill file. The list can be used
+     * again afterwards.
+     */
+    @Override
+    public void clear() {
+        heapRows.clear();
+        heapBytesUsed = 0;
+        deleteSpillFile();
+        modCount++;
+    }
+
+    /**
+     * Serializes as an ordinary list; the spill file is local to this JVM.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<Object[]>(this);
+    }
+
+    /**
+     * Deletes the spill file. The rows that were spilled are lost, so this
+     * list must not be used after it has been closed. A list that is never
+     * closed leaves its file until the JVM exits.
+     */
+    public void close() {
+        deleteSpillFile();
+    }
+
+    /**
+     * Unmaps and deletes the spill file and forgets the spilled rows.
+     */
+    private void deleteSpillFile() {
+        spilledCount = 0;
+        spilledOffsets = new long[0];
+        wastedBytes = 0;
+        segments.clear();
+        segmentStarts = new long[0];
+        closeFile(spillRaf, spillFile);
+        spillRaf = null;
+        spillFile = null;
+    }
+
+    private static void closeFile(RandomAccessFile raf, File file) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close spill file " + file, e);
+            }
+        }
+        if (file != null && !file.delete()) {
+            logger.debug("Could not delete spill file " + file + " yet; it will be removed on exit");
+        }
+    }
+
+    // ---------------- spill file management ----------------
+
+    /**
+     * Encodes the row and copies it into a new slot at the end of the
+     * mapping, returning the file offset of the slot.
+     */
+    private long writeRow(Object[] row) {
+        scratch.clear();
+        encodeRow(row);
+        scratch.flip();
+        return writeSlot(scratch, scratch.remaining());
+    }
+
+    /**
+     * Writes the given bytes into a new slot with room for the given number
+     * of bytes at the end of the mapping, returning the file offset of the
+     * slot.
+     */
+    private long writeSlot(ByteBuffer bytes, int slotLength) {
+        try {
+            MappedByteBuffer segment = segmentFor(4 + slotLength);
+            long offset = segmentStarts[segments.size() - 1] + segment.position();
+            int end = segment.position() + 4 + slotLength;
+            segment.putInt(slotLength);
+            segment.put(bytes);
+            segment.position(end);
+            return offset;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write row to spill file " + spillFile, e);
+        }
+    }
+
+    /**
+     * Writes the row over the one in the slot at the given offset if it fits,
+     * returning false if it does not.
+     */
+    private boolean rewriteRow(long offset, Object[] row) {
+        scratch.clear();
+        encodeRow(row);
+        scratch.flip();
+        ByteBuffer slot = slotAt(segments, segmentStarts, offset);
+        if (slot.getInt() < scratch.remaining()) {
+            return false;
+        }
+        slot.put(scratch);
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes of the spill file the slot at the given
+     * offset takes up.
+     */
+    private long slotSize(long offset) {
+        return 4 + slotAt(segments, segmentStarts, offset).getInt();
+    }
+
+    /**
+     * Returns a buffer positioned at the start of the slot at the given file
+     * offset, which is on the slot's length.
+     */
+    private static ByteBuffer slotAt(List<MappedByteBuffer> segments, long[] segmentStarts, long offset) {
+        int segmentIndex = Arrays.binarySearch(segmentStarts, offset);
+        if (segmentIndex < 0) {
+            segmentIndex = -segmentIndex - 2;
+        }
+        ByteBuffer in = segments.get(segmentIndex).duplicate();
+        in.position((int) (offset - segmentStarts[segmentIndex]));
+        return in;
+    }
+
+    /**
+     * Copies the live rows into a new spill file if the slots of replaced and
+     * removed rows take up more of the current one than they do.
+     */
+    private void compactIfWasteful() {
+        if (wastedBytes < MIN_COMPACTION_WASTE || segments.isEmpty()) {
+            return;
+        }
+        long fileEnd = getSpillFileLength();
+        if (wastedBytes <= fileEnd - wastedBytes) {
+            return;
+        }
+        logger.debug("Compacting spill file " + spillFile + ", " + wastedBytes + " of " + fileEnd + " bytes are unused");
+        List<MappedByteBuffer> oldSegments = new ArrayList<MappedByteBuffer>(segments);
+        long[] oldSegmentStarts = segmentStarts;
+        RandomAccessFile oldRaf = spillRaf;
+        File oldFile = spillFile;
+        segments.clear();
+        segmentStarts = new long[0];
+        spillRaf = null;
+        spillFile = null;
+        wastedBytes = 0;
+        for (int i = 0; i < spilledCount; i++) {
+            ByteBuffer slot = slotAt(oldSegments, oldSegmentStarts, spilledOffsets[i]);
+            int slotLength = slot.getInt();
+            slot.limit(slot.position() + slotLength);
+            spilledOffsets[i] = writeSlot(slot, slotLength);
+        }
+        closeFile(oldRaf, oldFile);
+    }
+
+    /**
+     * Returns the segment the next row of the given length should be
+     * written to, mapping a new one if the current one is full.
+     */
+    private MappedByteBuffer segmentFor(int length) throws IOException {
+        if (!segments.isEmpty()) {
+            MappedByteBuffer last = segments.get(segments.size() - 1);
+            if (last.remaining() >= length) {
+                return last;
+            }
+        }
+        if (spillRaf == null) {
+            spillFile = File.createTempFile("crs-spill", ".dat", spillDirectory);
+            spillFile.deleteOnExit();
+            spillRaf = new RandomAccessFile(spillFile, "rw");
+            logger.debug("Spilling rows past " + heapRows.size() + " to " + spillFile);
+        }
+        long start = 0;
+        if (!segments.isEmpty()) {
+            int lastIndex = segments.size() - 1;
+            start = segmentStarts[lastIndex] + segments.get(lastIndex).position();
+        }
+        int size = Math.max(SEGMENT_SIZE, length);
+        MappedByteBuffer segment = spillRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, start, size);
+        segments.add(segment);
+        segmentStarts = Arrays.copyOf(segmentStarts, segments.size());
+        segmentStarts[segments.size() - 1] = start;
+        return segment;
+    }
+
+    private Object[] readRow(long offset) {
+        ByteBuffer in = slotAt(segments, segmentStarts, offset);
+        in.getInt();
+        Object[] row = new Object[in.getInt()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = decodeValue(in);
+        }
+        return row;
+    }
+
+    // ---------------- binary row format ----------------
+
+    private void ensureScratch(int extra) {
+        if (scratch.remaining() < extra) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + extra));
+            scratch.flip();
+            bigger.put(scratch);
+            scratch = bigger;
+        }
+    }
+
+    private void encodeRow(Object[] row) {
+        ensureScratch(4);
+        scratch.putInt(row.length);
+        for (Object value : row) {
+            encodeValue(value);
+        }
+    }
+
+    private void encodeValue(Object value) {
+        ensureScratch(16);
+        if (value == null) {
+            scratch.put(TAG_NULL);
+        } else if (value instanceof String) {
+            String s = (String) value;
+            ensureScratch(5 + s.length() * 2);
+            scratch.put(TAG_STRING);
+            scratch.putInt(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                scratch.putChar(s.charAt(i));
+            }
+        } else if (value.getClass() == Integer.class) {
+            scratch.put(TAG_INTEGER).putInt((Integer) value);
+        } else if (value.getClass() == Long.class) {
+            scratch.put(TAG_LONG).putLong((Long) value);
+        } else if (value.getClass() == Double.class) {
+            scratch.put(TAG_DOUBLE).putDouble((Double) value);
+        } else if (value.getClass() == Float.class) {
+            scratch.put(TAG_FLOAT).putFloat((Float) value);
+        } else if (value.getClass() == Short.class) {
+            scratch.put(TAG_SHORT).putShort((Short) value);
+        } else if (value.getClass() == Byte.class) {
+            scratch.put(TAG_BYTE).put((Byte) value);
+        } else if (value.getClass() == Boolean.class) {
+            scratch.put(TAG_BOOLEAN).put((byte) (((Boolean) value).booleanValue() ? 1 : 0));
+        } else if (value.getClass() == BigDecimal.class) {
+            BigDecimal bd = (BigDecimal) value;
+            byte[] unscaled = bd.unscaledValue().toByteArray();
+            ensureScratch(9 + unscaled.length);
+            scratch.put(TAG_BIG_DECIMAL).putInt(bd.scale()).putInt(unscaled.length).put(unscaled);
+        } else if (value.getClass() == java.sql.Date.class) {
+            scratch.put(TAG_DATE).putLong(((java.sql.Date) value).getTime());
+        } else if (value.getClass() == java.sql.Time.class) {
+            scratch.put(TAG_TIME).putLong(((java.sql.Time) value).getTime());
+        } else if (value.getClass() == java.sql.Timestamp.class) {
+            java.sql.Timestamp ts = (java.sql.Timestamp) value;
+            scratch.put(TAG_TIMESTAMP).putLong(ts.getTime()).putInt(ts.getNanos());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            ensureScratch(5 + bytes.length);
+            scratch.put(TAG_BYTES).putInt(bytes.length).put(bytes);
+        } else {
+            byte[] bytes = serialize(value);
+            ensureScratch(5 + bytes.length);
+            scratch.put(TAG_SERIALIZED).putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private Object decodeValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_STRING: {
+            char[] chars = new char[in.getInt()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = in.getChar();
+            }
+            return new String(chars);
+        }
+        case TAG_INTEGER:
+            return Integer.valueOf(in.getInt());
+        case TAG_LONG:
+            return Long.valueOf(in.getLong());
+        case TAG_DOUBLE:
+            return Double.valueOf(in.getDouble());
+        case TAG_FLOAT:
+            return Float.valueOf(in.getFloat());
+        case TAG_SHORT:
+            return Short.valueOf(in.getShort());
+        case TAG_BYTE:
+            return Byte.valueOf(in.get());
+        case TAG_BOOLEAN:
+            return Boolean.valueOf(in.get() != 0);
+        case TAG_BIG_DECIMAL: {
+            int scale = in.getInt();
+            byte[] unscaled = new byte[in.getInt()];
+            in.get(unscaled);
+            return new BigDecimal(new BigInteger(unscaled), scale);
+        }
+        case TAG_DATE:
+            return new java.sql.Date(in.getLong());
+        case TAG_TIME:
+            return new java.sql.Time(in.getLong());
+        case TAG_TIMESTAMP: {
+            java.sql.Timestamp ts = new java.sql.Timestamp(in.getLong());
+            ts.setNanos(in.getInt());
+            return ts;
+        }
+        case TAG_BYTES: {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return bytes;
+        }
+        case TAG_SERIALIZED: {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return deserialize(bytes);
+        }
+        default:
+            throw new IllegalStateException("Corrupt spill file " + spillFile + ": unknown tag " + tag);
+        }
+    }
+
+    private static byte[] serialize(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Can't spill value of type " + value.getClass().getName(), e);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            return in.readObject();
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read spilled value", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Can't read spilled value", e);
+        }
+    }
+
+    /**
+     * Makes a rough guess at the number of heap bytes the given row
+     * occupies. This only has to be good enough to decide when to start
+     * spilling.
+     */
+    static long estimateSize(Object[] row) {
+        long size = 16 + 4L * row.length;
+        for (Object value : row) {
+            if (value == null) {
+                continue;
+            } else if (value instanceof String) {
+                size += 40 + 2L * ((String) value).length();
+            } else if (value instanceof BigDecimal) {
+                size += 72;
+            } else if (value instanceof byte[]) {
+                size += 16 + ((byte[]) value).length;
+            } else {
+                size += 24;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records how far a chunked {@link DataMover} copy got: the key of the last
+ * row committed to the destination, and how many rows that was. Passing a
+ * checkpoint to
+ * {@link DataMover#copyTableInChunks(String, String, TableCopyCheckpoint)}
+ * continues the copy with the row after that key.
+ * <p>
+ * Instances are immutable. The key values are whatever the source driver
+ * returned for the key columns, so a checkpoint should only be used to
+ * resume against the same source database.
+ */
+public class TableCopyCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sourceTableName;
+    private final String destTableName;
+    private final List<String> keyColumns;
+    private final Object[] lastKey;
+    private final int rowsCopied;
+
+    public TableCopyCheckpoint(String sourceTableName, String destTableName,
+            List<String> keyColumns, Object[] lastKey, int rowsCopied) {
+        if (keyColumns.size() != lastKey.length) {
+            throw new IllegalArgumentException(
+                    keyColumns.size() + " key columns but " + lastKey.length + " key values");
+        }
+        this.sourceTableName = sourceTableName;
+        this.destTableName = destTableName;
+        this.keyColumns = Collections.unmodifiableList(new ArrayList<String>(keyColumns));
+        this.lastKey = lastKey.clone();
+        this.rowsCopied = rowsCopied;
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #save(File)}. If the process died
+     * while {@link #save(File)} was replacing the file, the checkpoint it
+     * was replacing is read instead.
+     */
+    public static TableCopyCheckpoint load(File file) throws IOException {
+        File backup = backupFileFor(file);
+        if (!file.exists() && backup.exists()) {
+            file = backup;
+        }
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (TableCopyCheckpoint) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Checkpoint file " + file + " holds an unknown type", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes this checkpoint to the given file. The new checkpoint is
+     * written to a temporary file first, and the previous one is kept until
+     * that has been renamed into place, so if the process dies part way
+     * through, {@link #load(File)} still finds the previous checkpoint.
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            // some platforms will not rename over an existing file, so move
+            // the old one aside until the new one is in place
+            File backup = backupFileFor(file);
+            backup.delete();
+            if (!file.renameTo(backup)) {
+                throw new IOException("Could not rename " + file + " to " + backup);
+            }
+            if (!temp.renameTo(file)) {
+                backup.renameTo(file);
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+            backup.delete();
+        }
+    }
+
+    private static File backupFileFor(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    public String getSourceTableName() {
+        return sourceTableName;
+    }
+
+    public String getDestTableName() {
+        return destTableName;
+    }
+
+    /**
+     * The names of the source columns the copy is ordered by.
+     */
+    public List<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * The values of the key columns in the last row copied, in the same
+     * order as {@link #getKeyColumns()}.
+     */
+    public Object[] getLastKey() {
+        return lastKey.clone();
+    }
+
+    /**
+     * The number of rows copied up to and including the last key.
+     */
+    public int getRowsCopied() {
+        return rowsCopied;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sourceTableName).append(" after (");
+        for (int i = 0; i < lastKey.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(keyColumns.get(i)).append("=").append(lastKey[i]);
+        }
+        return sb.append("), ").append(rowsCopied).append(" rows copied").toString();
+    }
+}
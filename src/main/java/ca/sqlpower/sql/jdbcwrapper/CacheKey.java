@@ -33,6 +33,7 @@ public final class CacheKey {
     private final String dsAddress;
     private final String catalogName;
     private final String schemaName;
+    private final String region;
 
     /**
      * Creates a new cache key. Since instances of SPDataSource can be mutable,
@@ -49,13 +50,49 @@ public final class CacheKey {
      *            the underlying data source doesn't have schemas.
      */
     public CacheKey(DatabaseMetaData dbmd, String catalogName, String schemaName) throws SQLException {
+        this(dbmd, catalogName, schemaName, null);
+    }
+
+    /**
+     * Creates a new cache key for one kind of metadata, so a single cache can
+     * hold several kinds for the same schema without them colliding.
+     * 
+     * @param region
+     *            The kind of metadata being cached, such as "oracle-keys". Keys
+     *            that differ only in region are not equal. May be null.
+     * @see #CacheKey(DatabaseMetaData, String, String)
+     */
+    public CacheKey(DatabaseMetaData dbmd, String catalogName, String schemaName, String region) throws SQLException {
         this.dsAddress = dbmd.getURL() + ";" + dbmd.getUserName();
         this.catalogName = catalogName;
         this.schemaName = schemaName;
+        this.region = region;
+    }
+
+    /**
+     * Returns the catalog of the data being cached, or null.
+     */
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    /**
+     * Returns the schema of the data being cached, or null.
+     */
+    public String getSchemaName() {
+        return schemaName;
     }
 
     /**
-     * Generates a hash code based on the data source, catalog, and schema names.
+     * Returns the kind of metadata being cached, or null.
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Generates a hash code based on the data source, catalog, and schema
+     * names, and the region.
      */
     @Override
     public int hashCode() {
@@ -64,11 +101,13 @@ public final class CacheKey {
         result = prime * result + ((catalogName == null) ? 0 : catalogName.hashCode());
         result = prime * result + ((dsAddress == null) ? 0 : dsAddress.hashCode());
         result = prime * result + ((schemaName == null) ? 0 : schemaName.hashCode());
+        result = prime * result + ((region == null) ? 0 : region.hashCode());
         return result;
     }
 
     /**
-     * Implements equality based on the data source, catalog, and schema names.
+     * Implements equality based on the data source, catalog, and schema names,
+     * and the region.
      */
     @Override
     public boolean equals(Object obj) {
@@ -95,7 +134,22 @@ public final class CacheKey {
             return false;
         }
         
+        if (region == null) {
+            if (other.region != null) return false;
+        } else if (!region.equals(other.region)) {
+            return false;
+        }
+        
         return true;
     }
-    
+
+    /**
+     * Returns the data source address (URL and user name), catalog, schema
+     * and region (if any) this key was made from, in a form that identifies
+     * the key across processes.
+     */
+    @Override
+    public String toString() {
+        return dsAddress + "|" + catalogName + "|" + schemaName + (region == null ? "" : "|" + region);
+    }
 }
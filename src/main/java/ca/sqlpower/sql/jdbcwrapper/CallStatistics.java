@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The timings the {@link JDBCProfiler} has collected for one SQL fingerprint
+ * or one DatabaseMetaData method: how many times it was called, how long the
+ * calls took, and for queries how many rows were read back and how many
+ * fetches from the server that took.
+ * <p>
+ * Call times are kept in a histogram with fixed buckets (see
+ * {@link #getBucketBoundsMicros()}), so recording a call is a few atomic
+ * updates with no locking. The live statistics are only ever handed out as
+ * {@link #snapshot() snapshots}, which do not change afterwards.
+ */
+public class CallStatistics {
+
+    /**
+     * The upper bounds, in microseconds, of the call time histogram buckets.
+     * There is one more bucket for longer calls.
+     */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+        100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+        250000, 500000, 1000000, 5000000, 30000000
+    };
+
+    private final String name;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+
+    CallStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one call that took the given time.
+     *
+     * @param failed
+     *            True if the call threw an exception.
+     */
+    void recordCall(long nanos, boolean failed) {
+        calls.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+        for (;;) {
+            long max = maxNanos.get();
+            if (nanos <= max || maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && micros >= BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Records one call to {@link java.sql.ResultSet#next()} on a result of
+     * this call.
+     *
+     * @param nanos
+     *            How long the call took.
+     * @param hasRow
+     *            What the call returned.
+     * @param roundTrip
+     *            True if the call took long enough that it must have gone to
+     *            the server for more rows.
+     */
+    void recordNext(long nanos, boolean hasRow, boolean roundTrip) {
+        fetchNanos.addAndGet(nanos);
+        if (hasRow) {
+            rows.incrementAndGet();
+        }
+        if (roundTrip) {
+            fetches.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a copy of these statistics as they are now. The counts are
+     * copied one after another, so a snapshot taken while calls are being
+     * recorded may be out by a call or two between counts.
+     */
+    public CallStatistics snapshot() {
+        CallStatistics copy = new CallStatistics(name);
+        for (int i = 0; i < histogram.length(); i++) {
+            copy.histogram.set(i, histogram.get(i));
+        }
+        copy.calls.set(calls.get());
+        copy.failures.set(failures.get());
+        copy.totalNanos.set(totalNanos.get());
+        copy.maxNanos.set(maxNanos.get());
+        copy.rows.set(rows.get());
+        copy.fetches.set(fetches.get());
+        copy.fetchNanos.set(fetchNanos.get());
+        return copy;
+    }
+
+    /**
+     * Returns the SQL fingerprint or DatabaseMetaData method name these
+     * statistics are for.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the upper bounds, in microseconds, of all but the last bucket
+     * of {@link #getHistogram()}.
+     */
+    public static long[] getBucketBoundsMicros() {
+        return BUCKET_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * Returns the number of calls that took less than each of the
+     * {@link #getBucketBoundsMicros() bucket bounds} (and at least the one
+     * before), followed by the number that took longer than the last bound.
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the number of calls that threw an exception.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the total time spent in the calls themselves, not counting the
+     * time spent reading their results.
+     */
+    public double getTotalMillis() {
+        return totalNanos.get() / 1000000.0;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Returns the mean time a call took, or 0 if there have been none.
+     */
+    public double getMeanMillis() {
+        long count = calls.get();
+        return count == 0 ? 0 : totalNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the number of rows read from the results of these calls.
+     */
+    public long getRowCount() {
+        return rows.get();
+    }
+
+    /**
+     * Returns the number of times reading the results of these calls had to
+     * wait on the server for more rows. The driver does not tell us when it
+     * goes to the server, so this counts the calls to next() that took at
+     * least {@link JDBCProfiler#ROUND_TRIP_NANOS}; rows served from the
+     * driver's buffer come back far quicker than that.
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * Returns the total time spent reading the results of these calls.
+     */
+    public double getFetchMillis() {
+        return fetchNanos.get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("calls=%d, failures=%d, total=%.2fms, mean=%.3fms, max=%.2fms",
+                getCallCount(), getFailureCount(), getTotalMillis(), getMeanMillis(), getMaxMillis()));
+        if (getFetchMillis() > 0) {
+            sb.append(String.format(", rows=%d, fetches=%d, fetchTime=%.2fms",
+                    getRowCount(), getFetchCount(), getFetchMillis()));
+        }
+        sb.append(", histogram=[");
+        long[] counts = getHistogram();
+        boolean first = true;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append(i < BUCKET_BOUNDS_MICROS.length ? "<" + BUCKET_BOUNDS_MICROS[i] : ">=" + BUCKET_BOUNDS_MICROS[i - 1]);
+            sb.append("us:").append(counts[i]);
+        }
+        sb.append("] ").append(name);
+        return sb.toString();
+    }
+}
@@ -31,6 +31,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
@@ -38,6 +39,10 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -56,6 +61,33 @@ public abstract class ConnectionDecorator implements Connection {
 	private static Logger logger = Logger.getLogger(ConnectionDecorator.class);
 	
 	private int openStatementCount;
+
+	/**
+	 * The system property that sets how many prepared statements each
+	 * connection keeps for reuse, unless it is changed with
+	 * {@link #setStatementCacheSize(int)}. The default is 0, which leaves
+	 * the cache off.
+	 */
+	public static final String STATEMENT_CACHE_SIZE_PROPERTY = "ca.sqlpower.sql.jdbcwrapper.statementCacheSize";
+
+	private int statementCacheSize = Integer.getInteger(STATEMENT_CACHE_SIZE_PROPERTY, 0);
+
+	/**
+	 * Prepared statements that have been closed by the code that prepared
+	 * them and can be handed out again for the same SQL, least recently used
+	 * first. A statement is removed from here while it is in use, so two
+	 * users of the same SQL never share one, and it is handed out in a new
+	 * decorator each time, so the closed decorator of its last user can't
+	 * use it either.
+	 */
+	private final LinkedHashMap<StatementCacheKey, PreparedStatement> statementCache =
+		new LinkedHashMap<StatementCacheKey, PreparedStatement>(16, 0.75f, true);
+
+	/**
+	 * Set when this connection is closed, after which statements are no
+	 * longer cached.
+	 */
+	private boolean statementCacheClosed;
 	
 	public Array createArrayOf(String arg0, Object[] arg1) throws SQLException {
 		throw new UnsupportedOperationException("Currently it is only possible to wrap JDBC 3.");
@@ -126,6 +158,13 @@ public abstract class ConnectionDecorator implements Connection {
 		this.connection = delegate;
 	}
 
+	/**
+	 * Returns the connection this decorator delegates to.
+	 */
+	public Connection getDelegate() {
+		return connection;
+	}
+
     /**
      * Creates a new ConnectionDecorator (or appropriate subclass) which
      * delegates to the given connection. Outside users can create a
@@ -136,10 +175,26 @@ public abstract class ConnectionDecorator implements Connection {
      * which connections at the DataSourceType level. Hard-coding the wrapper
      * configuration here is slightly harmful.
      * 
+     * <p>
+     * If the {@link JDBCProfiler} is enabled, the decorator is wrapped in a
+     * {@link ProfilingConnectionDecorator}.
+     * 
      * @param delegate
      *            The object to which all JDBC operations will be delegated.
      */
 	public static Connection createFacade(Connection delegate) throws SQLException {
+		Connection facade = createPlatformFacade(delegate);
+		if (JDBCProfiler.isEnabled() && facade instanceof ConnectionDecorator) {
+			return new ProfilingConnectionDecorator(facade);
+		}
+		return facade;
+	}
+
+	/**
+	 * Creates the ConnectionDecorator subclass appropriate for the given
+	 * connection's driver.
+	 */
+	private static Connection createPlatformFacade(Connection delegate) throws SQLException {
 	    String driverName = delegate.getMetaData().getDriverName();
 		logger.debug("static createFacade, driver class is: " + delegate.getClass().getName());
         logger.debug("static createFacade, driver name is: " + driverName);
@@ -194,6 +249,102 @@ public abstract class ConnectionDecorator implements Connection {
 		logger.debug("Existing Statement closed: Count is "+openStatementCount);
 	}
 	
+	/**
+	 * Returns the most prepared statements this connection keeps for reuse.
+	 */
+	public synchronized int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Sets the most prepared statements this connection keeps for reuse.
+	 * While the cache is on, closing a statement made by one of the
+	 * {@link #prepareStatement(String)} methods that do not ask for
+	 * generated keys leaves it open on the database, and preparing the same
+	 * SQL again hands it back with its parameters cleared. This saves
+	 * parsing and planning the statement again on drivers that do not
+	 * cache statements themselves, but each cached statement stays open on
+	 * the database, where it counts against limits such as Oracle's open
+	 * cursors. 0 turns the cache off and closes the statements in it, and is
+	 * the default.
+	 */
+	public synchronized void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+		Iterator<Map.Entry<StatementCacheKey, PreparedStatement>> it = statementCache.entrySet().iterator();
+		while (statementCache.size() > this.statementCacheSize) {
+			Map.Entry<StatementCacheKey, PreparedStatement> entry = it.next();
+			it.remove();
+			closeCachedStatement(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the number of prepared statements waiting for reuse.
+	 */
+	public synchronized int getCachedStatementCount() {
+		return statementCache.size();
+	}
+
+	/**
+	 * Takes an unused statement for the given key out of the statement
+	 * cache, or returns null if there is none. The statement returned is the
+	 * driver's, which the caller must decorate.
+	 */
+	private synchronized PreparedStatement takeCachedStatement(StatementCacheKey key) {
+		PreparedStatement ps = statementCache.remove(key);
+		if (ps != null) {
+			logger.debug("Reusing cached statement " + key);
+		}
+		return ps;
+	}
+
+	/**
+	 * Marks a newly prepared statement as one that may go back in the
+	 * statement cache when it is closed.
+	 */
+	private PreparedStatement makeCacheable(PreparedStatement ps, StatementCacheKey key) {
+		if (ps instanceof PreparedStatementDecorator && getStatementCacheSize() > 0) {
+			((PreparedStatementDecorator) ps).setCacheKey(key);
+		}
+		return ps;
+	}
+
+	/**
+	 * Puts the statement of a decorator that has been closed by its user in
+	 * the statement cache, evicting the least recently used statement if the
+	 * cache is full. This is normally done from the PreparedStatementDecorator.
+	 * 
+	 * @return True if the statement was cached; false if the caller should
+	 *         close it.
+	 */
+	synchronized boolean cacheStatement(PreparedStatementDecorator ps) {
+		if (statementCacheClosed || statementCacheSize == 0 || statementCache.containsKey(ps.getCacheKey())) {
+			return false;
+		}
+		try {
+			ps.resetForReuse();
+		} catch (SQLException e) {
+			logger.debug("Could not reset statement for reuse, closing it instead", e);
+			return false;
+		}
+		statementCache.put(ps.getCacheKey(), ps.getDelegate());
+		if (statementCache.size() > statementCacheSize) {
+			Iterator<Map.Entry<StatementCacheKey, PreparedStatement>> it = statementCache.entrySet().iterator();
+			Map.Entry<StatementCacheKey, PreparedStatement> eldest = it.next();
+			it.remove();
+			closeCachedStatement(eldest.getKey(), eldest.getValue());
+		}
+		return true;
+	}
+
+	private void closeCachedStatement(StatementCacheKey key, PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			logger.warn("Could not close cached statement " + key, e);
+		}
+	}
+
 	/**
 	 * Subclasses must implement this method by creating and returning a new
 	 * Statement decorator appropriate for the database platform.
@@ -215,9 +366,20 @@ public abstract class ConnectionDecorator implements Connection {
 	}
 
 	/**
+	 * Closes the statements in the statement cache, then the connection.
+	 * 
 	 * @throws java.sql.SQLException
 	 */
 	public void close() throws SQLException {
+		List<Map.Entry<StatementCacheKey, PreparedStatement>> cached;
+		synchronized (this) {
+			statementCacheClosed = true;
+			cached = new ArrayList<Map.Entry<StatementCacheKey, PreparedStatement>>(statementCache.entrySet());
+			statementCache.clear();
+		}
+		for (Map.Entry<StatementCacheKey, PreparedStatement> entry : cached) {
+			closeCachedStatement(entry.getKey(), entry.getValue());
+		}
 		connection.close();
 	}
 
@@ -393,7 +555,13 @@ public abstract class ConnectionDecorator implements Connection {
 	 * @throws java.sql.SQLException
 	 */
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql));
+		StatementCacheKey key = new StatementCacheKey(sql, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY, StatementCacheKey.DEFAULT_HOLDABILITY);
+		PreparedStatement ps = takeCachedStatement(key);
+		if (ps != null) {
+			return makeCacheable(makePreparedStatementDecorator(ps), key);
+		}
+		return makeCacheable(makePreparedStatementDecorator(connection.prepareStatement(sql)), key);
 	}
 	/**
 	 * @param sql
@@ -414,8 +582,14 @@ public abstract class ConnectionDecorator implements Connection {
 	 */
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency) throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
-				resultSetConcurrency));
+		StatementCacheKey key = new StatementCacheKey(sql, resultSetType,
+				resultSetConcurrency, StatementCacheKey.DEFAULT_HOLDABILITY);
+		PreparedStatement ps = takeCachedStatement(key);
+		if (ps != null) {
+			return makeCacheable(makePreparedStatementDecorator(ps), key);
+		}
+		return makeCacheable(makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
+				resultSetConcurrency)), key);
 	}
 	/**
 	 * @param sql
@@ -428,8 +602,14 @@ public abstract class ConnectionDecorator implements Connection {
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 	throws SQLException {
-		return makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
-				resultSetConcurrency, resultSetHoldability));
+		StatementCacheKey key = new StatementCacheKey(sql, resultSetType,
+				resultSetConcurrency, resultSetHoldability);
+		PreparedStatement ps = takeCachedStatement(key);
+		if (ps != null) {
+			return makeCacheable(makePreparedStatementDecorator(ps), key);
+		}
+		return makeCacheable(makePreparedStatementDecorator(connection.prepareStatement(sql, resultSetType,
+				resultSetConcurrency, resultSetHoldability)), key);
 	}
 	/**
 	 * @param sql
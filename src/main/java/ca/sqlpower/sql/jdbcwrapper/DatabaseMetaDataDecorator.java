@@ -30,6 +30,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Date;
 
+import ca.sqlpower.sql.CachedRowSet;
+
 /**
  * The DatabaseMetaDataDecorator delegates all operations to a protected DatabaseMetaData instance.
  * Subclasses can perform some operations differently if their underlying JDBC driver does not
@@ -94,21 +96,26 @@ public abstract class DatabaseMetaDataDecorator implements DatabaseMetaData {
      */
     public static final String CACHE_STALE_DATE = "cacheStaleDate";
 
+    /**
+     * See {@link #setPersistentCache(PersistentMetaDataCache)}.
+     */
+    private static volatile PersistentMetaDataCache persistentCache;
+
     /**
      * Retrieves a cached result from the give cache, taking into account stale
-     * dating and whether or not caching is turned on. Also handles thread
-     * synchronization by accessing the cache while synchronized on the given
-     * cache object.
+     * dating and whether or not caching is turned on. An entry that was cached
+     * before the current thread's {@link #CACHE_STALE_DATE} is discarded
+     * rather than returned. The cache is thread safe, so no locking is needed
+     * here.
      * 
      * @param <T>
      *            The cache's value type
      * @param cache
      *            The cache to retrieve the value from (if appropriate to the
-     *            current cache settings). This cache will be flushed if it's
-     *            stale.
+     *            current cache settings).
      * @param key
      *            The key to attempt to retrieve from the cache.
-     * @return The cached item (if caching is enabled and the given cache was
+     * @return The cached item (if caching is enabled and the cached item was
      *         not stale) or null.
      */
     protected <T> T getCachedResult(MetaDataCache<CacheKey, T> cache, CacheKey key) {
@@ -116,27 +123,124 @@ public abstract class DatabaseMetaDataDecorator implements DatabaseMetaData {
         if (ct == CacheType.NO_CACHE) {
             return null;
         }
-        synchronized (cache) {
-            Date staleDate = cacheStaleDate.get();
-            if (staleDate != null && cache.getLastFlushDate().before(staleDate)) {
-                cache.flush();
-                return null;
-            }
-            return cache.get(key);
+        Date staleDate = cacheStaleDate.get();
+        return cache.get(key, staleDate == null ? 0 : staleDate.getTime());
+    }
+
+    /**
+     * Produces a value to cache. Passed to
+     * {@link DatabaseMetaDataDecorator#getCachedResult(MetaDataCache, CacheKey, CacheLoader)}.
+     */
+    protected static interface CacheLoader<T> extends MetaDataCache.Loader<T> {
+    }
+
+    /**
+     * Retrieves a cached result from the given cache, loading and caching it
+     * on a miss if the current thread's {@link #CACHE_TYPE} is
+     * {@link CacheType#EAGER_CACHE}. Concurrent misses on the same key share
+     * one call to the loader, so subclasses can cache a whole schema's worth
+     * of metadata without every thread that asks for it at once querying the
+     * database.
+     * <p>
+     * With no cache type set, an existing entry is still returned but nothing
+     * is loaded, the same as {@link #getCachedResult(MetaDataCache, CacheKey)}.
+     * 
+     * @return The cached or newly loaded item, or null if the caller should
+     *         query the database directly.
+     * @throws SQLException
+     *             If the loader failed.
+     */
+    protected <T> T getCachedResult(MetaDataCache<CacheKey, T> cache, CacheKey key, CacheLoader<T> loader)
+            throws SQLException {
+        CacheType ct = cacheType.get();
+        if (ct != CacheType.EAGER_CACHE) {
+            return getCachedResult(cache, key);
         }
+        Date staleDate = cacheStaleDate.get();
+        return cache.get(key, staleDate == null ? 0 : staleDate.getTime(), loader);
+    }
+
+    /**
+     * Retrieves a cached result like
+     * {@link #getCachedResult(MetaDataCache, CacheKey, CacheLoader)}, but
+     * on a miss first looks in the {@link #getPersistentCache() persistent
+     * cache} before calling the loader, and saves what the loader returns
+     * there for the next process. The persistent cache is only consulted
+     * when {@link #getStalenessToken(String, CacheKey)} can tell whether the stored
+     * result is still current.
+     * 
+     * @param region
+     *            Names the kind of metadata being cached, such as "columns".
+     *            Must be unique among the regions a decorator uses and safe
+     *            to use in a file name.
+     */
+    protected CachedRowSet getCachedResult(MetaDataCache<CacheKey, CachedRowSet> cache, final String region,
+            final CacheKey key, final CacheLoader<CachedRowSet> loader) throws SQLException {
+        final PersistentMetaDataCache disk = persistentCache;
+        if (disk == null) {
+            return getCachedResult(cache, key, loader);
+        }
+        return getCachedResult(cache, key, new CacheLoader<CachedRowSet>() {
+            public CachedRowSet load() throws SQLException {
+                String token = getStalenessToken(region, key);
+                if (token == null) {
+                    return loader.load();
+                }
+                Date staleDate = cacheStaleDate.get();
+                CachedRowSet stored = disk.get(region, key, token, staleDate == null ? 0 : staleDate.getTime());
+                if (stored != null) {
+                    return stored;
+                }
+                CachedRowSet loaded = loader.load();
+                if (loaded != null) {
+                    disk.put(region, key, token, loaded);
+                }
+                return loaded;
+            }
+        });
+    }
+
+    /**
+     * Returns a value that changes whenever the metadata cached in the given
+     * region for the given schema might have changed, such as a count of
+     * its objects combined with the time of its last DDL change. It must
+     * cover every schema the cached result holds rows from. It is compared
+     * with the value saved alongside a result in the
+     * {@link #getPersistentCache() persistent cache} to decide whether that
+     * result can be used.
+     * <p>
+     * This should be much cheaper than the metadata queries it guards. The
+     * default implementation returns null, which means the database offers
+     * no such check and the persistent cache is not used.
+     */
+    protected String getStalenessToken(String region, CacheKey key) throws SQLException {
+        return null;
+    }
+
+    /**
+     * Sets the cache that metadata results are saved to so later processes
+     * can start without querying the data dictionary again. Null, the
+     * default, turns persistent caching off. This applies to every
+     * decorator in the process.
+     */
+    public static void setPersistentCache(PersistentMetaDataCache cache) {
+        persistentCache = cache;
+    }
+
+    public static PersistentMetaDataCache getPersistentCache() {
+        return persistentCache;
     }
 
     /**
      * Puts a key-value association into the give cache, taking into account
-     * stale dating and whether or not caching is turned on. Also handles thread
-     * synchronization by accessing the cache while synchronized on the given
-     * cache object.
+     * whether or not caching is turned on. The cache may evict other entries,
+     * or decline to keep this one, to stay within its size limit.
      * 
      * @param <T>
      *            The cache's value type
      * @param cache
      *            The cache to put the value into (if appropriate to the current
-     *            cache settings). This cache will be flushed if it's stale.
+     *            cache settings).
      * @param key
      *            The key to store into the cache.
      * @param value
@@ -147,13 +251,7 @@ public abstract class DatabaseMetaDataDecorator implements DatabaseMetaData {
         if (ct == CacheType.NO_CACHE) {
             return;
         }
-        synchronized (cache) {
-            Date staleDate = cacheStaleDate.get();
-            if (staleDate != null && cache.getLastFlushDate().before(staleDate)) {
-                cache.flush();
-            }
-            cache.put(key, value);
-        }
+        cache.put(key, value);
     }
 
     /**
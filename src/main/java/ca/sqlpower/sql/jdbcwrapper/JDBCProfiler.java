@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collects timings of the JDBC calls made through decorated connections:
+ * how long each statement took to execute, how many rows were read back
+ * and in how many fetches, and how long each kind of DatabaseMetaData call
+ * took. Statements are grouped by their {@link #fingerprint(String)
+ * fingerprint}, so the same query run with different literals counts as one.
+ * <p>
+ * Profiling is off by default and costs nothing while it is off. Turn it on
+ * with {@link #setEnabled(boolean)} or the {@value #ENABLED_PROPERTY} system
+ * property; connections made by
+ * {@link ConnectionDecorator#createFacade(java.sql.Connection)} from then on
+ * are wrapped in a {@link ProfilingConnectionDecorator}. Connections that
+ * were already open are not profiled.
+ * <p>
+ * All methods are thread safe, and recording a call takes no locks.
+ */
+public class JDBCProfiler {
+
+    private static final Logger logger = Logger.getLogger(JDBCProfiler.class);
+
+    /**
+     * The system property that turns profiling on when the JVM starts.
+     */
+    public static final String ENABLED_PROPERTY = "ca.sqlpower.sql.jdbcwrapper.profile";
+
+    /**
+     * A call to next() that takes at least this long is counted as a fetch
+     * from the server. See {@link CallStatistics#getFetchCount()}.
+     */
+    public static final long ROUND_TRIP_NANOS = 100000;
+
+    /**
+     * The most distinct fingerprints kept. Statements with new fingerprints
+     * after this are counted under {@link #OTHER_STATEMENTS}, so code that
+     * builds its SQL in a way the fingerprint can not see through does not
+     * fill the heap.
+     */
+    static final int MAX_FINGERPRINTS = 1000;
+
+    /**
+     * The name statements are counted under once there are
+     * {@link #MAX_FINGERPRINTS} fingerprints.
+     */
+    public static final String OTHER_STATEMENTS = "(other statements)";
+
+    private static final Pattern VALUE_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final ConcurrentMap<String, CallStatistics> statements =
+        new ConcurrentHashMap<String, CallStatistics>();
+
+    private static final ConcurrentMap<String, CallStatistics> metaDataCalls =
+        new ConcurrentHashMap<String, CallStatistics>();
+
+    /**
+     * Dumps the statistics to the log while periodic dumping is on.
+     */
+    private static Timer dumpTimer;
+
+    private JDBCProfiler() {
+        // static methods only
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns profiling of connections made from now on on or off. Turning it
+     * off does not stop profiling connections that are already open, and
+     * does not clear the statistics.
+     */
+    public static void setEnabled(boolean enabled) {
+        JDBCProfiler.enabled = enabled;
+    }
+
+    /**
+     * Returns the given SQL with its string and number literals replaced by
+     * <code>?</code>, lists of values collapsed to one value, and runs of
+     * white space collapsed to one space. Statements that differ only in
+     * their literals have the same fingerprint.
+     */
+    public static String fingerprint(String sql) {
+        if (sql == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(sql.length());
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                sb.append('?');
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? n : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !endsWithIdentifier(sb)) {
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') {
+            sb.setLength(end - 1);
+        }
+        return VALUE_LIST.matcher(sb).replaceAll("(?)");
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$' || last == '#';
+    }
+
+    /**
+     * Returns the live statistics for statements with the given fingerprint.
+     */
+    static CallStatistics statementStatistics(String fingerprint) {
+        CallStatistics stats = statements.get(fingerprint);
+        if (stats == null) {
+            if (statements.size() >= MAX_FINGERPRINTS) {
+                fingerprint = OTHER_STATEMENTS;
+            }
+            stats = new CallStatistics(fingerprint);
+            CallStatistics existing = statements.putIfAbsent(fingerprint, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the live statistics for the given DatabaseMetaData method.
+     */
+    static CallStatistics metaDataStatistics(String methodName) {
+        CallStatistics stats = metaDataCalls.get(methodName);
+        if (stats == null) {
+            stats = new CallStatistics(methodName);
+            CallStatistics existing = metaDataCalls.putIfAbsent(methodName, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns snapshots of the statistics for each statement fingerprint,
+     * the one that took the most time first.
+     */
+    public static List<CallStatistics> getStatementStatistics() {
+        return snapshot(statements);
+    }
+
+    /**
+     * Returns snapshots of the statistics for each DatabaseMetaData method,
+     * the one that took the most time first.
+     */
+    public static List<CallStatistics> getMetaDataStatistics() {
+        return snapshot(metaDataCalls);
+    }
+
+    private static List<CallStatistics> snapshot(ConcurrentMap<String, CallStatistics> map) {
+        List<CallStatistics> snapshots = new ArrayList<CallStatistics>(map.size());
+        for (CallStatistics stats : map.values()) {
+            snapshots.add(stats.snapshot());
+        }
+        Collections.sort(snapshots, new Comparator<CallStatistics>() {
+            public int compare(CallStatistics o1, CallStatistics o2) {
+                return Double.compare(
+                        o2.getTotalMillis() + o2.getFetchMillis(),
+                        o1.getTotalMillis() + o1.getFetchMillis());
+            }
+        });
+        return snapshots;
+    }
+
+    /**
+     * Discards all the statistics collected so far. Rows read after this
+     * from a result set that was opened before it are not counted.
+     */
+    public static void reset() {
+        statements.clear();
+        metaDataCalls.clear();
+    }
+
+    /**
+     * Returns a readable summary of the DatabaseMetaData calls and of the
+     * given number of statement fingerprints that took the most time.
+     */
+    public static String report(int maxStatements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("JDBC profile, DatabaseMetaData calls:");
+        for (CallStatistics stats : getMetaDataStatistics()) {
+            sb.append("\n  ").append(stats);
+        }
+        List<CallStatistics> statementStats = getStatementStatistics();
+        sb.append("\nJDBC profile, top statements of ").append(statementStats.size()).append(":");
+        for (CallStatistics stats : statementStats.subList(0, Math.min(maxStatements, statementStats.size()))) {
+            sb.append("\n  ").append(stats);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Logs a {@link #report(int)} at INFO level every given number of
+     * milliseconds until {@link #stopPeriodicDump()} is called. Replaces any
+     * periodic dump that was already going.
+     */
+    public static synchronized void startPeriodicDump(long periodMillis, final int maxStatements) {
+        stopPeriodicDump();
+        dumpTimer = new Timer("JDBC profile dump", true);
+        dumpTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                logger.info(report(maxStatements));
+            }
+        }, periodMillis, periodMillis);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (dumpTimer != null) {
+            dumpTimer.cancel();
+            dumpTimer = null;
+        }
+    }
+}
@@ -19,58 +19,370 @@
 
 package ca.sqlpower.sql.jdbcwrapper;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.commons.collections.map.AbstractReferenceMap;
-import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.log4j.Logger;
 
+import ca.sqlpower.sql.CachedRowSet;
 import ca.sqlpower.util.Cache;
 import ca.sqlpower.util.CacheStats;
 
 /**
- * A cache implementation that holds its values via weak references, so they
- * will be freed when there is memory pressure (or when the cache is flushed,
- * of course).
+ * A thread-safe cache for database metadata that is bounded by the total
+ * estimated size of its values rather than by the garbage collector. Reads
+ * do not lock; inserts and evictions are serialized on a single lock, which
+ * is fine because a metadata cache holds few, large entries (typically one
+ * per schema) that are expensive to load and rarely replaced.
+ * <p>
+ * When an insert would take the cache past its {@link #getMaxWeight() weight
+ * limit} or {@link #getMaxMembers() member limit}, the least recently used
+ * entries are evicted to make room. With the {@link Policy#TINY_LFU} policy,
+ * an entry that has been asked for more often than the newcomer is kept, and
+ * the newcomer is turned away instead, so a one-off crawl of a huge schema
+ * can not flush the schemas everybody is working with.
+ * <p>
+ * Entries can also expire, either a fixed {@link #setTimeToLive(long) time}
+ * after they were inserted, or when a caller asks for them with a stale date
+ * later than their insertion time (see
+ * {@link DatabaseMetaDataDecorator#CACHE_STALE_DATE}).
  * 
  * @param <K> The cache key type
  * @param <V> The cache value type
  */
 class MetaDataCache<K, V> implements Cache<K, V> {
 
-    @SuppressWarnings("unchecked")
-    private final Map<K, V> data = new ReferenceMap(AbstractReferenceMap.HARD, AbstractReferenceMap.SOFT);
+    private static final Logger logger = Logger.getLogger(MetaDataCache.class);
+
+    /**
+     * The default weight limit: a quarter of the maximum heap size, in bytes
+     * of estimated row set data, but at least 16MB.
+     */
+    static final long DEFAULT_MAX_WEIGHT = Math.max(16L * 1024L * 1024L, Runtime.getRuntime().maxMemory() / 4);
+
+    /**
+     * How the cache picks what to keep when it is full.
+     */
+    static enum Policy {
+        /**
+         * Always admit new entries, evicting the least recently used ones.
+         */
+        LRU,
+
+        /**
+         * Evict the least recently used entries only if none of them has been
+         * asked for more often than the new entry; otherwise reject the new
+         * entry.
+         */
+        TINY_LFU;
+
+        /**
+         * Returns the policy with the given name, or {@link #LRU} if the
+         * name is null or not the name of a policy.
+         */
+        static Policy forName(String name) {
+            if (name == null) {
+                return LRU;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown metadata cache policy " + name + ", using LRU");
+                return LRU;
+            }
+        }
+    }
+
+    /**
+     * Estimates the size of a cached value, in the same units as the cache's
+     * weight limit.
+     */
+    static interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    /**
+     * Weighs a {@link CachedRowSet} by its estimated size in bytes. Other
+     * values are given a nominal weight of 1KB.
+     */
+    static final Weigher<Object> DEFAULT_WEIGHER = new Weigher<Object>() {
+        public long weigh(Object value) {
+            if (value instanceof CachedRowSet) {
+                return Math.max(1, ((CachedRowSet) value).estimateSize());
+            }
+            return 1024;
+        }
+    };
+
+    /**
+     * Produces the value for a key that is not in the cache. See
+     * {@link MetaDataCache#get(Object, long, Loader)}.
+     */
+    static interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    /**
+     * A load that one thread is running on behalf of every thread that
+     * missed on the same key.
+     */
+    private static class InFlight<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        V value;
+        Throwable failure;
+    }
+
+    /**
+     * A cached value and its bookkeeping.
+     */
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        final long createdAt;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        Entry(V value, long weight, long createdAt, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.weight = weight;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+
+        boolean isExpired(long now, long staleBefore) {
+            return now >= expiresAt || createdAt < staleBefore;
+        }
+    }
+
+    /**
+     * An entry that may be evicted, with its expiry and last access as they
+     * were when the eviction started. Expired entries sort first, then the
+     * least recently used ones.
+     */
+    private static class EvictionCandidate<K, V> implements Comparable<EvictionCandidate<K, V>> {
+        final K key;
+        final Entry<V> entry;
+        final boolean expired;
+        final long lastAccess;
+
+        EvictionCandidate(K key, Entry<V> entry, long now) {
+            this.key = key;
+            this.entry = entry;
+            this.expired = entry.isExpired(now, 0);
+            this.lastAccess = entry.lastAccess;
+        }
+
+        public int compareTo(EvictionCandidate<K, V> other) {
+            if (expired != other.expired) {
+                return expired ? -1 : 1;
+            }
+            return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> data = new ConcurrentHashMap<K, Entry<V>>();
+
+    /**
+     * The loads currently running, by key.
+     */
+    private final ConcurrentHashMap<K, InFlight<V>> inFlight = new ConcurrentHashMap<K, InFlight<V>>();
+
+    /**
+     * Serializes changes to the set of entries so {@link #totalWeight} stays
+     * accurate and two inserts can not both claim the same free space.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * The sum of the weights of the entries in {@link #data}. Guarded by
+     * {@link #writeLock}.
+     */
+    private long totalWeight;
+
+    /**
+     * Hands out access stamps; a higher stamp means a more recent access.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final Policy policy;
+
+    private final Weigher<? super V> weigher;
+
+    /**
+     * Counts how often each key is asked for. Only used by
+     * {@link Policy#TINY_LFU}.
+     */
+    private final FrequencySketch sketch;
+
+    private volatile long maxWeight;
+
+    private volatile int maxMembers = Integer.MAX_VALUE;
+
+    private volatile long timeToLive;
+
+    private volatile long lastFlushDate = System.currentTimeMillis();
 
-    private long lastFlushDate;
-    
     private final MyCacheStats stats = new MyCacheStats();
-    
+
     /**
-     * A CacheStats type where we can actually increment the values!
+     * A CacheStats type where we can actually increment the values! All
+     * access is synchronized because the cache is used from many threads.
      */
-    private class MyCacheStats extends CacheStats {
-        
-        public void incrementHits() {
+    private static class MyCacheStats extends CacheStats {
+
+        public synchronized void incrementHits() {
             totalRequested++;
             totalHits++;
         }
-        
-        public void incrementMisses() {
+
+        public synchronized void incrementMisses() {
             totalRequested++;
             totalMisses++;
         }
-        
-        public void incrementInserts(int number) {
+
+        public synchronized void incrementInserts(int number) {
             totalInserted += number;
         }
-        
-    };
-    
+
+        public synchronized void incrementEvictions() {
+            totalEvicted++;
+        }
+
+        public synchronized void incrementExpirations() {
+            totalExpired++;
+        }
+
+        @Override
+        public synchronized void cacheFlush() {
+            super.cacheFlush();
+        }
+
+        @Override
+        public synchronized int getTotalInserted() {
+            return totalInserted;
+        }
+
+        @Override
+        public synchronized int getTotalRequested() {
+            return totalRequested;
+        }
+
+        @Override
+        public synchronized int getTotalHits() {
+            return totalHits;
+        }
+
+        @Override
+        public synchronized int getTotalMisses() {
+            return totalMisses;
+        }
+
+        @Override
+        public synchronized int getTotalEvicted() {
+            return totalEvicted;
+        }
+
+        @Override
+        public synchronized int getTotalExpired() {
+            return totalExpired;
+        }
+
+        @Override
+        public synchronized double getHitRatio() {
+            return super.getHitRatio();
+        }
+    }
+
+    /**
+     * Creates an LRU cache limited to {@link #DEFAULT_MAX_WEIGHT} bytes of
+     * estimated row set data, weighed with {@link #DEFAULT_WEIGHER}.
+     */
     public MetaDataCache() {
+        this(Policy.LRU, DEFAULT_MAX_WEIGHT, DEFAULT_WEIGHER);
+    }
+
+    public MetaDataCache(Policy policy, long maxWeight, Weigher<? super V> weigher) {
+        this.policy = policy;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch() : null;
     }
 
+    // ------------------------------------------------------------------
+    // Tuning
+    // ------------------------------------------------------------------
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Sets the limit on the total weight of the entries. Lowering it evicts
+     * entries right away.
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        trim();
+    }
+
+    /**
+     * Returns the total weight of the entries currently in the cache.
+     */
+    public long getWeightedSize() {
+        writeLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int getMaxMembers() {
+        return maxMembers;
+    }
+
+    /**
+     * Sets the limit on the number of entries. Lowering it evicts entries
+     * right away.
+     */
+    public void setMaxMembers(int argMaxMembers) {
+        this.maxMembers = argMaxMembers;
+        trim();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets how many milliseconds entries inserted from now on stay in the
+     * cache. 0, the default, means they stay until they are evicted or go
+     * stale.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    // ------------------------------------------------------------------
+    // Cache interface
+    // ------------------------------------------------------------------
+
     public void flush() {
         clear();
     }
@@ -79,74 +391,204 @@ class MetaDataCache<K, V> implements Cache<K, V> {
         return new Date(lastFlushDate);
     }
 
-    public int getMaxMembers() {
-        return Integer.MAX_VALUE;
-    }
-
     public CacheStats getStats() {
         return stats;
     }
 
-    public void setMaxMembers(int argMaxMembers) {
-        throw new UnsupportedOperationException("This cache uses weak references, and doesn't limit max members");
-    }
-
     public void clear() {
-        data.clear();
-        stats.cacheFlush();
-        lastFlushDate = System.currentTimeMillis();
+        writeLock.lock();
+        try {
+            data.clear();
+            totalWeight = 0;
+            stats.cacheFlush();
+            lastFlushDate = System.currentTimeMillis();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public boolean containsKey(Object key) {
-        return data.containsKey(key);
+        Entry<V> e = data.get(key);
+        return e != null && !e.isExpired(System.currentTimeMillis(), 0);
     }
 
     public boolean containsValue(Object value) {
-        return data.containsValue(value);
+        return snapshot().containsValue(value);
     }
 
-    public Set<java.util.Map.Entry<K, V>> entrySet() {
-        return data.entrySet();
+    public Set<Map.Entry<K, V>> entrySet() {
+        return snapshot().entrySet();
     }
 
     public boolean equals(Object o) {
-        return data.equals(o);
+        return snapshot().equals(o);
+    }
+
+    public int hashCode() {
+        return snapshot().hashCode();
     }
 
     public V get(Object key) {
-        V v = data.get(key);
-        if (v == null) {
+        return get(key, 0);
+    }
+
+    /**
+     * Returns the value for the given key, unless it was inserted before the
+     * given time, in which case it is removed and null is returned.
+     * 
+     * @param staleBefore
+     *            Entries inserted before this time, in milliseconds since the
+     *            epoch, are stale. 0 means no entry is stale.
+     */
+    public V get(Object key, long staleBefore) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Entry<V> e = data.get(key);
+        if (e != null && e.isExpired(System.currentTimeMillis(), staleBefore)) {
+            if (removeEntry(key, e)) {
+                stats.incrementExpirations();
+            }
+            e = null;
+        }
+        if (e == null) {
             stats.incrementMisses();
-        } else {
-            stats.incrementHits();
+            return null;
         }
-        return v;
+        e.lastAccess = clock.incrementAndGet();
+        stats.incrementHits();
+        return e.value;
     }
 
-    public int hashCode() {
-        return data.hashCode();
+    /**
+     * Returns the value for the given key, loading it with the given loader
+     * if it is missing or stale. When several threads miss on the same key at
+     * once, only the first one runs its loader; the others wait for it and
+     * get the same value, or an exception if the load failed. This keeps a
+     * burst of requests for an uncached schema from each running the same
+     * expensive data dictionary query.
+     * <p>
+     * The loaded value is returned even if the cache declines to keep it.
+     * 
+     * @param staleBefore
+     *            Entries inserted before this time, in milliseconds since the
+     *            epoch, are stale. 0 means no entry is stale.
+     * @throws SQLException
+     *             If the load failed, in this thread or in the thread that was
+     *             loading on its behalf, or this thread was interrupted while
+     *             it waited.
+     */
+    V get(K key, long staleBefore, Loader<? extends V> loader) throws SQLException {
+        V value = get(key, staleBefore);
+        if (value != null) {
+            return value;
+        }
+        InFlight<V> load = new InFlight<V>();
+        InFlight<V> running = inFlight.putIfAbsent(key, load);
+        if (running != null) {
+            return await(key, running);
+        }
+        try {
+            // another thread may have finished loading between our miss and
+            // claiming the load
+            Entry<V> e = data.get(key);
+            if (e != null && !e.isExpired(System.currentTimeMillis(), staleBefore)) {
+                e.lastAccess = clock.incrementAndGet();
+                load.value = e.value;
+            } else {
+                load.value = loader.load();
+                if (load.value != null) {
+                    put(key, load.value);
+                }
+            }
+            return load.value;
+        } catch (SQLException ex) {
+            load.failure = ex;
+            throw ex;
+        } catch (RuntimeException ex) {
+            load.failure = ex;
+            throw ex;
+        } catch (Error ex) {
+            load.failure = ex;
+            throw ex;
+        } finally {
+            inFlight.remove(key, load);
+            load.done.countDown();
+        }
+    }
+
+    private V await(K key, InFlight<V> running) throws SQLException {
+        try {
+            running.done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for metadata for " + key + " to load", ex);
+        }
+        if (running.failure != null) {
+            throw new SQLException("Loading metadata for " + key + " failed in another thread", running.failure);
+        }
+        return running.value;
     }
 
     public boolean isEmpty() {
-        return data.isEmpty();
+        return size() == 0;
     }
 
     public Set<K> keySet() {
-        return data.keySet();
+        return snapshot().keySet();
     }
 
+    /**
+     * Adds the given value to the cache, evicting other entries if needed to
+     * stay within the limits. The value may not be kept at all if it is
+     * heavier than the whole cache, or if the policy prefers the entries
+     * that are already there.
+     */
     public V put(K key, V value) {
-        stats.incrementInserts(1);
-        return data.put(key, value);
+        if (value == null) {
+            return remove(key);
+        }
+        long weight = weigher.weigh(value);
+        long now = System.currentTimeMillis();
+        long ttl = timeToLive;
+        Entry<V> entry = new Entry<V>(value, weight, now, ttl > 0 ? now + ttl : Long.MAX_VALUE, clock.incrementAndGet());
+        writeLock.lock();
+        try {
+            Entry<V> old = data.get(key);
+            long oldWeight = old == null ? 0 : old.weight;
+            int oldCount = old == null ? 0 : 1;
+            if (weight > maxWeight || !makeRoom(key, weight - oldWeight, 1 - oldCount)) {
+                logger.debug("Not caching value for " + key + " (weight " + weight + ")");
+                stats.incrementEvictions();
+                return null;
+            }
+            data.put(key, entry);
+            totalWeight += weight - oldWeight;
+            stats.incrementInserts(1);
+            return old == null ? null : old.value;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public void putAll(Map<? extends K, ? extends V> t) {
-        stats.incrementInserts(t.size());
-        data.putAll(t);
+        for (Map.Entry<? extends K, ? extends V> e : t.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
     }
 
     public V remove(Object key) {
-        return data.remove(key);
+        writeLock.lock();
+        try {
+            Entry<V> e = data.remove(key);
+            if (e == null) {
+                return null;
+            }
+            totalWeight -= e.weight;
+            return e.value;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public int size() {
@@ -154,7 +596,157 @@ class MetaDataCache<K, V> implements Cache<K, V> {
     }
 
     public Collection<V> values() {
-        return data.values();
+        return snapshot().values();
+    }
+
+    // ------------------------------------------------------------------
+    // Eviction
+    // ------------------------------------------------------------------
+
+    /**
+     * Removes the given entry if it is still the one mapped to the given key.
+     */
+    private boolean removeEntry(Object key, Entry<V> e) {
+        writeLock.lock();
+        try {
+            if (data.remove(key, e)) {
+                totalWeight -= e.weight;
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts entries until there is room for the given additional weight and
+     * entry count. Expired entries go first, then the least recently used
+     * ones. The victims are all chosen before any is evicted, so an entry the
+     * policy turns away leaves the cache as it was. Must be called while
+     * holding {@link #writeLock}.
+     * 
+     * @param candidate
+     *            The key about to be inserted, which is never evicted, or
+     *            null if nothing is being inserted.
+     * @return false if the policy decided the candidate should not be
+     *         admitted.
+     */
+    private boolean makeRoom(Object candidate, long extraWeight, int extraCount) {
+        long weight = totalWeight + extraWeight;
+        int count = data.size() + extraCount;
+        if (weight <= maxWeight && count <= maxMembers) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        // metadata caches are small, so sorting every entry is cheap
+        List<EvictionCandidate<K, V>> byAge = new ArrayList<EvictionCandidate<K, V>>(data.size());
+        for (Map.Entry<K, Entry<V>> e : data.entrySet()) {
+            if (!e.getKey().equals(candidate)) {
+                byAge.add(new EvictionCandidate<K, V>(e.getKey(), e.getValue(), now));
+            }
+        }
+        Collections.sort(byAge);
+        int candidateFrequency = candidate != null && sketch != null ? sketch.frequency(candidate) : 0;
+        List<EvictionCandidate<K, V>> victims = new ArrayList<EvictionCandidate<K, V>>();
+        for (EvictionCandidate<K, V> victim : byAge) {
+            if (weight <= maxWeight && count <= maxMembers) {
+                break;
+            }
+            if (!victim.expired && candidate != null && sketch != null
+                    && sketch.frequency(victim.key) > candidateFrequency) {
+                return false;
+            }
+            victims.add(victim);
+            weight -= victim.entry.weight;
+            count--;
+        }
+        for (EvictionCandidate<K, V> victim : victims) {
+            data.remove(victim.key);
+            totalWeight -= victim.entry.weight;
+            if (victim.expired) {
+                stats.incrementExpirations();
+            } else {
+                stats.incrementEvictions();
+                logger.debug("Evicted " + victim.key + " (weight " + victim.entry.weight + ")");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evicts entries until the cache is within its limits.
+     */
+    private void trim() {
+        writeLock.lock();
+        try {
+            makeRoom(null, 0, 0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the unexpired entries, for the bulk Map methods.
+     */
+    private Map<K, V> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<K, V> copy = new HashMap<K, V>();
+        for (Map.Entry<K, Entry<V>> e : data.entrySet()) {
+            if (!e.getValue().isExpired(now, 0)) {
+                copy.put(e.getKey(), e.getValue().value);
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * A count-min sketch of how often keys have been asked for, with four
+     * rows of 4-bit counters. All counters are halved every so often so that
+     * keys that were popular a long time ago do not stay popular forever.
+     */
+    private static class FrequencySketch {
+        private static final int WIDTH = 1024;
+        private static final int MAX_COUNT = 15;
+        private static final int SAMPLE_SIZE = 10 * WIDTH;
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+        private final byte[][] counts = new byte[SEEDS.length][WIDTH];
+        private int additions;
+
+        synchronized void increment(Object key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int slot = index(h, i);
+                if (counts[i][slot] < MAX_COUNT) {
+                    counts[i][slot]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= SAMPLE_SIZE) {
+                for (byte[] row : counts) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        synchronized int frequency(Object key) {
+            int h = key.hashCode();
+            int min = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, counts[i][index(h, i)]);
+            }
+            return min;
+        }
+
+        private static int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & (WIDTH - 1);
+        }
     }
-    
 }
@@ -19,6 +19,7 @@
 package ca.sqlpower.sql.jdbcwrapper;
 
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -77,27 +78,129 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
         "Indices without having the 'analyze any' permission.";
     
     /**
-	 * A cache of the imported and exported key metadata. When querying for
-	 * either, we cache the entire key list for a schema and then query the cache
-	 * in subsequent queries.
-     * <p>
-     * This field should be accessed via {@link #getCachedResult(MetaDataCache, CacheKey)}
-     * and {@link #putCachedResult(MetaDataCache, CacheKey, Object)}.
-	 */
-    private static final MetaDataCache<CacheKey, CachedRowSet> importedAndExportedKeysCache =
-        new MetaDataCache<CacheKey, CachedRowSet>();
-    
+     * The system property that sets the most bytes of estimated row set data
+     * the Oracle metadata cache holds for every connection in the process.
+     * The default is a quarter of the maximum heap size. It can be changed
+     * later with {@link #setCacheMaxWeight(long)}.
+     */
+    public static final String CACHE_MAX_WEIGHT_PROPERTY = "ca.sqlpower.sql.jdbcwrapper.oracleCacheMaxWeight";
+
     /**
-	 * A cache of column metadata. When queried the first time, we cache the
-	 * entire column list for a schema and then query the cache in subsequent
-	 * queries.
+     * The system property that sets how the Oracle metadata cache picks what
+     * to keep once it is full. "LRU", the default, always caches the newest
+     * result and evicts the least recently used ones. "TINY_LFU" turns the
+     * newest result away instead if the ones it would evict have been asked
+     * for more often, so a one-off crawl of a large schema can not flush the
+     * schemas everybody is working with.
+     */
+    public static final String CACHE_POLICY_PROPERTY = "ca.sqlpower.sql.jdbcwrapper.oracleCachePolicy";
+
+    /**
+	 * The cache of column and key metadata. When either is queried the first
+	 * time, we cache the entire list for a schema and then query the cache
+	 * in subsequent requests. Both kinds share this one cache, and so one
+	 * weight limit, and are told apart by the region of their keys. Cached
+	 * column lists are looked up by their hash index on TABLE_NAME, so a
+	 * request for a single table does not visit every row.
 	 * <p>
-	 * This field should be accessed via {@link #getCachedResult(MetaDataCache, CacheKey)}
-	 * and {@link #putCachedResult(MetaDataCache, CacheKey, Object)}.
+	 * This field should be accessed via {@link #getCachedResult(MetaDataCache, CacheKey, CacheLoader)}
+	 * so concurrent misses for the same schema share one query.
 	 */
-    private static final MetaDataCache<CacheKey, IndexedCachedRowSet> columnsCache =
-        new MetaDataCache<CacheKey, IndexedCachedRowSet>();
+    private static final MetaDataCache<CacheKey, CachedRowSet> cache =
+        new MetaDataCache<CacheKey, CachedRowSet>(
+                MetaDataCache.Policy.forName(System.getProperty(CACHE_POLICY_PROPERTY)),
+                Long.getLong(CACHE_MAX_WEIGHT_PROPERTY, MetaDataCache.DEFAULT_MAX_WEIGHT),
+                MetaDataCache.DEFAULT_WEIGHER);
+
+    /**
+     * The region of the imported and exported key lists.
+     */
+    private static final String KEYS_REGION = "oracle-keys";
+
+    /**
+     * The regions of the column lists with and without the tables in the
+     * recycle bin.
+     */
+    private static final String COLUMNS_REGION = "oracle-columns";
+    private static final String COLUMNS_NO_RECYCLE_BIN_REGION = "oracle-columns-nobin";
+
+    /**
+     * Returns the most bytes of estimated row set data the Oracle metadata
+     * cache holds. See {@link #CACHE_MAX_WEIGHT_PROPERTY}.
+     */
+    public static long getCacheMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    /**
+     * Sets the most bytes of estimated row set data the Oracle metadata cache
+     * holds for every connection in the process. Lowering it evicts cached
+     * metadata right away.
+     */
+    public static void setCacheMaxWeight(long maxWeight) {
+        cache.setMaxWeight(maxWeight);
+    }
     
+    /**
+     * Returns the number of objects in the key's schema (or every schema, if
+     * the key has none) together with the latest DDL time among them. This
+     * changes when a table or column is created, altered or dropped, and is
+     * a single aggregate over ALL_OBJECTS rather than a crawl of the column
+     * and constraint views.
+     * <p>
+     * The cached key lists also hold relationships with tables in other
+     * schemas, so for them the objects of every schema with a foreign key
+     * to or from the key's schema are counted as well. Adding or dropping
+     * such a foreign key changes the DDL time of its table, and the first
+     * one from a new schema brings that schema's objects into the count.
+     */
+    @Override
+    protected String getStalenessToken(String region, CacheKey key) throws SQLException {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT COUNT(*), MAX(last_ddl_time) FROM all_objects";
+            boolean keys = KEYS_REGION.equals(region);
+            if (key.getSchemaName() != null) {
+                sql += " WHERE owner LIKE ? ESCAPE '/'";
+                if (keys) {
+                    sql += " OR owner IN (SELECT owner FROM all_constraints" +
+                    		" WHERE constraint_type = 'R' AND r_owner LIKE ? ESCAPE '/')" +
+                    		" OR owner IN (SELECT r_owner FROM all_constraints" +
+                    		" WHERE constraint_type = 'R' AND owner LIKE ? ESCAPE '/')";
+                }
+            }
+            stmt = getConnection().prepareStatement(sql);
+            if (key.getSchemaName() != null) {
+                stmt.setString(1, key.getSchemaName());
+                if (keys) {
+                    stmt.setString(2, key.getSchemaName());
+                    stmt.setString(3, key.getSchemaName());
+                }
+            }
+            rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            return rs.getLong(1) + "@" + rs.getTimestamp(2);
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    logger.error("Failed to close result set! Squishing this exception: ", ex);
+                }
+            }
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ex) {
+                    logger.error("Failed to close statement! Squishing this exception: ", ex);
+                }
+            }
+        }
+    }
+
     @Override
 	public ResultSet getTypeInfo() throws SQLException {
 		try {
@@ -315,199 +418,146 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 	@Override
 	public ResultSet getImportedKeys(String catalog, final String schema, final String table)
 			throws SQLException {
-	    CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schema);
-		Statement stmt = null;
-		ResultSet rs = null;
-		try {
-			stmt = getConnection().createStatement();
-	        StringBuilder sql = new StringBuilder();
-	        CachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
-
-	        if (cachedResult == null) {
-		        /*
-				 * Oracle's JDBC drivers does not find relationships on alternate
-				 * keys. The following query is based on the query Oracle's driver
-				 * would issue if we called super.getImportedKeys(), adding in the
-				 * part that makes it find alternate key relationships.
-				 */
-		        sql.append("SELECT NULL AS pktable_cat,\n");
-		        sql.append("       p.owner as pktable_schem,\n");
-		        sql.append("       p.table_name as pktable_name,\n");
-		        sql.append("       pc.column_name as pkcolumn_name,\n");
-		        sql.append("       NULL as fktable_cat,\n");
-		        sql.append("       f.owner as fktable_schem,\n");
-		        sql.append("       f.table_name as fktable_name,\n");
-		        sql.append("       fc.column_name as fkcolumn_name,\n");
-		        sql.append("       fc.position as key_seq,\n");
-		        sql.append("       NULL as update_rule,\n");
-		        sql.append("       decode (f.delete_rule, 'CASCADE', 0, 'SET NULL', 2, 1) as delete_rule,\n");
-		        sql.append("       f.constraint_name as fk_name,\n");
-		        sql.append("       p.constraint_name as pk_name,\n");
-		        sql.append("       decode(f.deferrable, 'DEFERRABLE', 5 ,'NOT DEFERRABLE', 7, 'DEFERRED', 6) deferrability\n");
-		        sql.append("FROM all_cons_columns pc, all_constraints p,\n");
-		        sql.append("     all_cons_columns fc, all_constraints f\n");
-		        sql.append("WHERE 1 = 1\n");
-		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-		        	sql.append("	  AND f.table_name = ").append(SQL.quote(table)).append("\n");
-		        	if (schema != null) {
-		        		sql.append("      AND f.owner = ").append(SQL.quote(schema)).append("\n");
-		        	}
-		        }
-		        sql.append("      AND f.constraint_type = 'R'\n");
-		        sql.append("      AND p.owner = f.r_owner\n");
-		        sql.append("      AND p.constraint_name = f.r_constraint_name\n");
-		        sql.append("      AND p.constraint_type in ('P', 'U')\n");
-		        sql.append("      AND pc.owner = p.owner\n");
-		        sql.append("      AND pc.constraint_name = p.constraint_name\n");
-		        sql.append("      AND pc.table_name = p.table_name\n");
-		        sql.append("      AND fc.owner = f.owner\n");
-		        sql.append("      AND fc.constraint_name = f.constraint_name\n");
-		        sql.append("      AND fc.table_name = f.table_name\n");
-		        sql.append("      AND fc.position = pc.position\n");
-		        sql.append("ORDER BY pktable_schem, pktable_name, key_seq");
-		        
-		        logger.debug("getImportedKeys() sql statement was: " + sql.toString());
-		        rs = stmt.executeQuery(sql.toString());
-		        
-		        CachedRowSet result = new CachedRowSet();
-		        result.populate(rs);
-		        
-		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-		        	return result;
-		        } else {
-		        	putCachedResult(importedAndExportedKeysCache, cacheKey, result);
-		        	cachedResult = result;
-		        }
-	        }
-	        
-			CachedRowSet crs = new CachedRowSet();
-			RowFilter filter = new RowFilter() {
-				public boolean acceptsRow(Object[] row) {
-					boolean result;
-					// expecting row[5] to be FK_TABLE_SCHEM
-					// expecting row[6] to be FK_TABLE_NAME
-					if (schema != null){
-						result = (schema.equals(row[5]) && table.equals(row[6]));
-					} else {
-						result = table.equals(row[6]);
-					}
-					return result;
-				}
-			};
-			
-			synchronized (cachedResult) {
-			    crs.populate(cachedResult, filter);
-			    cachedResult.beforeFirst();
-            }
-			
-			return crs;
-		} finally {
-			if (rs != null) {
-                try {
-                    rs.close();
-                } catch (SQLException ex) {
-                    logger.error("Failed to close result set! Squishing this exception: ", ex);
-                }
-            }
-            if (stmt != null) {
-                try {
-                    stmt.close();
-                } catch (SQLException ex) {
-                    logger.error("Failed to close statement! Squishing this exception: ", ex);
-                }
-            }
-		}
+	    CachedRowSet cachedResult = getCachedResult(cache, KEYS_REGION,
+	            new CacheKey(getConnection().getMetaData(), catalog, schema, KEYS_REGION), keysLoader(schema, true));
+	    if (cachedResult == null) {
+	        return queryKeys(schema, table, true, true);
+	    }
+	    
+	    RowFilter filter = null;
+	    if (schema != null) {
+	        filter = new RowFilter() {
+	            public boolean acceptsRow(Object[] row) {
+	                // expecting row[5] to be FK_TABLE_SCHEM
+	                return schema.equals(row[5]);
+	            }
+	        };
+	    }
+	    
+	    // column 7 is FK_TABLE_NAME
+	    int[] tableRows = cachedResult.getHashIndex(7).lookup(table);
+	    return cachedResult.extractRows(tableRows, filter);
 	}
 	
 	@Override
 	public ResultSet getExportedKeys(String catalog, final String schema, final String table)
 			throws SQLException {
-        CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schema);
+	    CachedRowSet cachedResult = getCachedResult(cache, KEYS_REGION,
+	            new CacheKey(getConnection().getMetaData(), catalog, schema, KEYS_REGION), keysLoader(schema, false));
+	    if (cachedResult == null) {
+	        return queryKeys(schema, table, false, true);
+	    }
+	    
+	    RowFilter filter = null;
+	    if (schema != null) {
+	        filter = new RowFilter() {
+	            public boolean acceptsRow(Object[] row) {
+	                // expecting row[1] to be PK_TABLE_SCHEM
+	                return schema.equals(row[1]);
+	            }
+	        };
+	    }
+	    
+	    // column 3 is PK_TABLE_NAME
+	    int[] tableRows = cachedResult.getHashIndex(3).lookup(table);
+	    return cachedResult.extractRows(tableRows, filter);
+	}
+
+	/**
+	 * Returns a loader for the cached key list of a whole schema. Imported and
+	 * exported keys share one cache entry, so concurrent calls to either
+	 * method for the same schema wait on the same query.
+	 */
+	private CacheLoader<CachedRowSet> keysLoader(final String schema, final boolean imported) {
+	    return new CacheLoader<CachedRowSet>() {
+	        public CachedRowSet load() throws SQLException {
+	            return queryKeys(schema, null, imported, false);
+	        }
+	    };
+	}
+
+	/**
+	 * Queries the data dictionary for foreign key relationships.
+	 * 
+	 * @param schema
+	 *            The schema of the table, or null for any schema.
+	 * @param table
+	 *            The table whose keys to find. Ignored unless filtered is true.
+	 * @param imported
+	 *            True to find the keys the table imports, false to find the
+	 *            keys it exports. This decides which side of the relationship
+	 *            the filter applies to and how the rows are ordered.
+	 * @param filtered
+	 *            If false, every relationship with a table in the schema on
+	 *            either side is returned, for caching.
+	 */
+	private CachedRowSet queryKeys(String schema, String table, boolean imported, boolean filtered)
+	        throws SQLException {
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
 			stmt = getConnection().createStatement();
 	        StringBuilder sql = new StringBuilder();
-	        CachedRowSet cachedResult = getCachedResult(importedAndExportedKeysCache, cacheKey);
 
-	        if (cachedResult == null) {
-		        /*
-				 * Oracle's JDBC drivers does not find relationships on alternate
-				 * keys. The following query is based on the query Oracle's driver
-				 * would issue if we called super.getExportedKeys(), adding in the
-				 * part that makes it find alternate key relationships.
-				 */
-		        sql.append("SELECT NULL AS pktable_cat,\n");
-		        sql.append("       p.owner as pktable_schem,\n");
-		        sql.append("       p.table_name as pktable_name,\n");
-		        sql.append("       pc.column_name as pkcolumn_name,\n");
-		        sql.append("       NULL as fktable_cat,\n");
-		        sql.append("       f.owner as fktable_schem,\n");
-		        sql.append("       f.table_name as fktable_name,\n");
-		        sql.append("       fc.column_name as fkcolumn_name,\n");
-		        sql.append("       fc.position as key_seq,\n");
-		        sql.append("       NULL as update_rule,\n");
-		        sql.append("       decode (f.delete_rule, 'CASCADE', 0, 'SET NULL', 2, 1) as delete_rule,\n");
-		        sql.append("       f.constraint_name as fk_name,\n");
-		        sql.append("       p.constraint_name as pk_name,\n");
-		        sql.append("       decode(f.deferrable, 'DEFERRABLE', 5 ,'NOT DEFERRABLE', 7, 'DEFERRED', 6) deferrability\n");
-		        sql.append("FROM all_cons_columns pc, all_constraints p,\n");
-		        sql.append("     all_cons_columns fc, all_constraints f\n");
-		        sql.append("WHERE 1 = 1\n");
-		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-					sql.append("      AND p.table_name = ").append(SQL.quote(table)).append("\n");
-					if (schema != null) {
-						sql.append("      AND p.owner = ").append(SQL.quote(schema)).append("\n");
-		        	}
-		        }
-		        sql.append("      AND f.constraint_type = 'R'\n");
-		        sql.append("      AND p.owner = f.r_owner\n");
-		        sql.append("      AND p.constraint_name = f.r_constraint_name\n");
-		        sql.append("      AND p.constraint_type in ('P', 'U')\n");
-		        sql.append("      AND pc.owner = p.owner\n");
-		        sql.append("      AND pc.constraint_name = p.constraint_name\n");
-		        sql.append("      AND pc.table_name = p.table_name\n");
-		        sql.append("      AND fc.owner = f.owner\n");
-		        sql.append("      AND fc.constraint_name = f.constraint_name\n");
-		        sql.append("      AND fc.table_name = f.table_name\n");
-		        sql.append("      AND fc.position = pc.position\n");
-		        sql.append("ORDER BY fktable_cat, fktable_schem, fktable_name, key_seq");
-		        
-		        logger.debug("getExportedKeys() sql statement was: " + sql.toString());
-		        rs = stmt.executeQuery(sql.toString());
-		        
-		        CachedRowSet result = new CachedRowSet();
-		        result.populate(rs);
-		        
-		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-		        	return result;
-		        } else {
-		        	putCachedResult(importedAndExportedKeysCache, cacheKey, result);
-		        	cachedResult = result;
-		        }
+	        /*
+	         * Oracle's JDBC drivers does not find relationships on alternate
+	         * keys. The following query is based on the query Oracle's driver
+	         * would issue if we called super.getImportedKeys(), adding in the
+	         * part that makes it find alternate key relationships.
+	         */
+	        sql.append("SELECT NULL AS pktable_cat,\n");
+	        sql.append("       p.owner as pktable_schem,\n");
+	        sql.append("       p.table_name as pktable_name,\n");
+	        sql.append("       pc.column_name as pkcolumn_name,\n");
+	        sql.append("       NULL as fktable_cat,\n");
+	        sql.append("       f.owner as fktable_schem,\n");
+	        sql.append("       f.table_name as fktable_name,\n");
+	        sql.append("       fc.column_name as fkcolumn_name,\n");
+	        sql.append("       fc.position as key_seq,\n");
+	        sql.append("       NULL as update_rule,\n");
+	        sql.append("       decode (f.delete_rule, 'CASCADE', 0, 'SET NULL', 2, 1) as delete_rule,\n");
+	        sql.append("       f.constraint_name as fk_name,\n");
+	        sql.append("       p.constraint_name as pk_name,\n");
+	        sql.append("       decode(f.deferrable, 'DEFERRABLE', 5 ,'NOT DEFERRABLE', 7, 'DEFERRED', 6) deferrability\n");
+	        sql.append("FROM all_cons_columns pc, all_constraints p,\n");
+	        sql.append("     all_cons_columns fc, all_constraints f\n");
+	        sql.append("WHERE 1 = 1\n");
+	        if (filtered) {
+	            String side = imported ? "f" : "p";
+	            sql.append("      AND ").append(side).append(".table_name = ").append(SQL.quote(table)).append("\n");
+	            if (schema != null) {
+	                sql.append("      AND ").append(side).append(".owner = ").append(SQL.quote(schema)).append("\n");
+	            }
+	        } else if (schema != null) {
+	            sql.append("      AND (f.owner = ").append(SQL.quote(schema));
+	            sql.append(" OR p.owner = ").append(SQL.quote(schema)).append(")\n");
+	        }
+	        sql.append("      AND f.constraint_type = 'R'\n");
+	        sql.append("      AND p.owner = f.r_owner\n");
+	        sql.append("      AND p.constraint_name = f.r_constraint_name\n");
+	        sql.append("      AND p.constraint_type in ('P', 'U')\n");
+	        sql.append("      AND pc.owner = p.owner\n");
+	        sql.append("      AND pc.constraint_name = p.constraint_name\n");
+	        sql.append("      AND pc.table_name = p.table_name\n");
+	        sql.append("      AND fc.owner = f.owner\n");
+	        sql.append("      AND fc.constraint_name = f.constraint_name\n");
+	        sql.append("      AND fc.table_name = f.table_name\n");
+	        sql.append("      AND fc.position = pc.position\n");
+	        if (imported) {
+	            sql.append("ORDER BY pktable_schem, pktable_name, key_seq");
+	        } else {
+	            sql.append("ORDER BY fktable_cat, fktable_schem, fktable_name, key_seq");
 	        }
 	        
-			CachedRowSet crs = new CachedRowSet();
-			RowFilter filter = new RowFilter() {
-				public boolean acceptsRow(Object[] row) {
-					boolean result;
-					// expecting row[1] to be PK_TABLE_SCHEM
-					// expecting row[2] to be PK_TABLE_NAME
-					if (schema != null){
-						result = (schema.equals(row[1]) && table.equals(row[2]));
-					} else {
-						result = table.equals(row[2]);
-					}
-					return result;
-				}
-			};
-
-            synchronized (cachedResult) {
-                crs.populate(cachedResult, filter);
-                cachedResult.beforeFirst();
-            }
-			
-			return crs;
+	        logger.debug((imported ? "getImportedKeys" : "getExportedKeys") + "() sql statement was: " + sql.toString());
+	        rs = stmt.executeQuery(sql.toString());
+	        
+	        CachedRowSet result = new CachedRowSet();
+	        result.populate(rs);
+	        if (!filtered) {
+	            result.getHashIndex(imported ? 7 : 3);
+	        }
+	        return result;
 		} finally {
 			if (rs != null) {
                 try {
@@ -532,137 +582,164 @@ public class OracleDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
 	 * caches the results and queries the cache in subsequent requests.
 	 */
 	@Override
-	public ResultSet getColumns(String catalog, final String schemaPattern,
+	public ResultSet getColumns(final String catalog, final String schemaPattern,
 			final String tableNamePattern, final String columnNamePattern)
 			throws SQLException {
 		
 	    logger.debug("getColumns("+catalog+", "+schemaPattern+", "+tableNamePattern+", "+columnNamePattern+") cache mode=" + cacheType.get());
 	    
-	    final CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schemaPattern);
+	    final String region = hidingRecycleBinTables ? COLUMNS_NO_RECYCLE_BIN_REGION : COLUMNS_REGION;
+	    final CacheKey cacheKey = new CacheKey(getConnection().getMetaData(), catalog, schemaPattern, region);
+	    
+	    CachedRowSet cachedResult = getCachedResult(cache, region, cacheKey, new CacheLoader<CachedRowSet>() {
+	        public CachedRowSet load() throws SQLException {
+	            logger.debug("No cached data found. Querying data dictionary...");
+	            CachedRowSet result = queryColumns(schemaPattern, null, null);
+	            result.getHashIndex(3);
+	            return result;
+	        }
+	    });
+	    if (cachedResult == null) {
+	        return queryColumns(schemaPattern, tableNamePattern, columnNamePattern == null ? "%" : columnNamePattern);
+	    }
 	    
+		final Pattern tp;
+		
+		if (tableNamePattern != null) {
+			// Here, we are simulating the behaviour of
+			// t.table_name LIKE 'tableNamePattern'
+			final String tablePattern = tableNamePattern.replaceAll("%", ".*");
+			tp = Pattern.compile(tablePattern);
+		} else {
+			tp = null;
+		}
+		
+		final Pattern cp;
+		
+		if (columnNamePattern != null) {
+			// Here, we are simulating the behaviour of
+			// t.column_name LIKE 'columnNamePattern'
+			String columnPattern = columnNamePattern.replace("%", ".*");
+			cp = Pattern.compile(columnPattern);
+		} else {
+			cp = null;
+		}
+		
+		RowFilter filter = new RowFilter() {
+			public boolean acceptsRow(Object[] row) {
+				// expecting row[2] to be FK_TABLE_NAME and row[3] to be FK_COLUMN_NAME
+			    return (tp == null || tp.matcher(row[2].toString()).matches()) &&
+			            (cp == null || cp.matcher(row[3].toString()).matches());
+			}
+		};
+		
+		RowFilter columnFilter = null;
+		if (cp != null) {
+		    columnFilter = new RowFilter() {
+		        public boolean acceptsRow(Object[] row) {
+		            // expecting row[3] to be FK_COLUMN_NAME
+		            return cp.matcher(row[3].toString()).matches();
+		        }
+		    };
+		}
+		
+		logger.debug("Filtering cache...");
+		CachedRowSet filtered;
+		synchronized (cachedResult) {
+		    if (tableNamePattern != null && !tableNamePattern.contains("%")) {
+		        // exact match requested--we can use the index for table name
+		        // (filter still applies to column name)
+		        int[] tableRows = cachedResult.getHashIndex(3).lookup(tableNamePattern);
+		        filtered = cachedResult.extractRows(tableRows, columnFilter);
+		    } else {
+		        // have to search every row for wildcard match on table name
+		        filtered = new CachedRowSet();
+		        filtered.populate(cachedResult, filter);
+		    }
+		    cachedResult.beforeFirst();
+		}
+		
+		return filtered;
+	}
+
+	/**
+	 * Queries the data dictionary for column metadata.
+	 * 
+	 * @param tableNamePattern
+	 *            A LIKE pattern for the tables to include, or null for every
+	 *            table in the schema.
+	 * @param columnNamePattern
+	 *            A LIKE pattern for the columns to include, or null for every
+	 *            column.
+	 */
+	private CachedRowSet queryColumns(String schemaPattern, String tableNamePattern, String columnNamePattern)
+	        throws SQLException {
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-		    IndexedCachedRowSet cachedResult = getCachedResult(columnsCache, cacheKey);
-			if (cachedResult == null) {
-			    logger.debug("No cached data found. Querying data dictionary...");
-				stmt = getConnection().createStatement();
-				
-				StringBuilder sql = new StringBuilder();
-				
-				sql.append("SELECT "); 
-				sql.append("	NULL AS table_cat,\n");
-				sql.append("	t.owner AS table_schem,\n");
-				sql.append("	t.table_name AS table_name,\n");
-				sql.append("	t.column_name AS column_name,\n");
-				sql.append("	DECODE (" +
-						"CASE " +
-						" WHEN SUBSTR(t.data_type, 1, 9) = 'TIMESTAMP' THEN 'TIMESTAMP' " +
-						" ELSE t.data_type " +
-						"END " +
-						", 'CHAR', 1, 'VARCHAR2', 12, 'NUMBER', 3, 'LONG', -1, 'DATE', 91, 'RAW', -3, 'LONG RAW', -4, 'BLOB', 2004, 'CLOB', 2005, 'BFILE', -13, 'FLOAT', 6, 'TIMESTAMP', 93, 'TIMESTAMP WITH TIME ZONE', -101, 'TIMESTAMP WITH LOCAL TIME ZONE', -102, 'INTERVAL YEAR(2) TO MONTH', -103, 'INTERVAL DAY(2) TO SECOND(6)', -104, 'BINARY_FLOAT', 100, 'BINARY_DOUBLE', 101, 'NVARCHAR2', -9, 'NCHAR', -15, 'NCLOB', 2011, 1111)\n");
-				sql.append("	AS data_type,\n"); 
-				sql.append("	t.data_type AS type_name,\n");
-				sql.append("	DECODE (t.data_precision, null, t.data_length, t.data_precision) AS column_size,\n");
-				sql.append("	0 AS buffer_length,\n");
-				sql.append("	t.data_scale AS decimal_digits,\n");
-				sql.append("	10 AS num_prec_radix,\n");
-				sql.append("	DECODE (t.nullable, 'N', 0, 1) AS nullable,\n");
-				sql.append("	c.comments AS remarks,\n");
-				sql.append("	t.data_default AS column_def,\n");
-				sql.append("	0 AS sql_data_type,\n");
-				sql.append("	0 AS sql_datetime_sub,\n");
-				sql.append("	t.data_length AS char_octet_length,\n");
-				sql.append("	t.column_id AS ordinal_position,\n");
-				sql.append("	DECODE (t.nullable, 'N', 'NO', 'YES') AS is_nullable\n");
-				sql.append("FROM\n");
-				sql.append("	all_tab_columns t,\n");
-				sql.append("	all_col_comments c\n");
-				sql.append("WHERE\n");
-				if (schemaPattern != null) {
-					sql.append("	t.owner LIKE ").append(SQL.quote(schemaPattern)).append(" ESCAPE '/'\n");
-					sql.append("	AND");
-				}
-				if (hidingRecycleBinTables) {
-					sql.append("	t.table_name NOT LIKE 'BIN$%' ESCAPE '/'\n");
-					sql.append("	AND");
-				}
-				if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-				    if (tableNamePattern != null) {
-				        sql.append("	t.table_name LIKE ").append(SQL.quote(tableNamePattern)).append(" ESCAPE '/'\n");
-				        sql.append("    AND");
-				    }
-					sql.append("	t.column_name LIKE ").append(SQL.quote(columnNamePattern)).append(" ESCAPE '/'\n");
-					sql.append("	AND");
-				}
-				sql.append("	t.owner=c.owner (+)\n");
-				sql.append("	AND t.table_name=c.table_name (+)\n");
-				sql.append("	AND t.column_name = c.column_name (+)\n");
-				sql.append("ORDER BY\n");
-				sql.append("	table_schem, table_name, ordinal_position");
-				
-				logger.debug("getColumns() sql statement was: \n" + sql.toString());
-
-				stmt.setFetchSize(1000);
-				rs = stmt.executeQuery(sql.toString());
-		        
-		        if (cacheType.get() == null || cacheType.get().equals(CacheType.NO_CACHE)) {
-		            CachedRowSet result = new CachedRowSet();
-		            result.populate(rs);
-		        	return result;
-		        } else {
-		            IndexedCachedRowSet result = new IndexedCachedRowSet(rs, 3);
-		        	putCachedResult(columnsCache, cacheKey, result);
-		        	cachedResult = result;
-		        }
-			}
-	        
-			final Pattern tp;
-			
-			if (tableNamePattern != null) {
-				// Here, we are simulating the behaviour of
-				// t.table_name LIKE 'tableNamePattern'
-				final String tablePattern = tableNamePattern.replaceAll("%", ".*");
-				tp = Pattern.compile(tablePattern);
-			} else {
-				tp = null;
-			}
+			stmt = getConnection().createStatement();
 			
-			final Pattern cp;
+			StringBuilder sql = new StringBuilder();
 			
-			if (columnNamePattern != null) {
-				// Here, we are simulating the behaviour of
-				// t.column_name LIKE 'columnNamePattern'
-				String columnPattern = columnNamePattern.replace("%", ".*");
-				cp = Pattern.compile(columnPattern);
-			} else {
-				cp = null;
+			sql.append("SELECT "); 
+			sql.append("	NULL AS table_cat,\n");
+			sql.append("	t.owner AS table_schem,\n");
+			sql.append("	t.table_name AS table_name,\n");
+			sql.append("	t.column_name AS column_name,\n");
+			sql.append("	DECODE (" +
+					"CASE " +
+					" WHEN SUBSTR(t.data_type, 1, 9) = 'TIMESTAMP' THEN 'TIMESTAMP' " +
+					" ELSE t.data_type " +
+					"END " +
+					", 'CHAR', 1, 'VARCHAR2', 12, 'NUMBER', 3, 'LONG', -1, 'DATE', 91, 'RAW', -3, 'LONG RAW', -4, 'BLOB', 2004, 'CLOB', 2005, 'BFILE', -13, 'FLOAT', 6, 'TIMESTAMP', 93, 'TIMESTAMP WITH TIME ZONE', -101, 'TIMESTAMP WITH LOCAL TIME ZONE', -102, 'INTERVAL YEAR(2) TO MONTH', -103, 'INTERVAL DAY(2) TO SECOND(6)', -104, 'BINARY_FLOAT', 100, 'BINARY_DOUBLE', 101, 'NVARCHAR2', -9, 'NCHAR', -15, 'NCLOB', 2011, 1111)\n");
+			sql.append("	AS data_type,\n"); 
+			sql.append("	t.data_type AS type_name,\n");
+			sql.append("	DECODE (t.data_precision, null, t.data_length, t.data_precision) AS column_size,\n");
+			sql.append("	0 AS buffer_length,\n");
+			sql.append("	t.data_scale AS decimal_digits,\n");
+			sql.append("	10 AS num_prec_radix,\n");
+			sql.append("	DECODE (t.nullable, 'N', 0, 1) AS nullable,\n");
+			sql.append("	c.comments AS remarks,\n");
+			sql.append("	t.data_default AS column_def,\n");
+			sql.append("	0 AS sql_data_type,\n");
+			sql.append("	0 AS sql_datetime_sub,\n");
+			sql.append("	t.data_length AS char_octet_length,\n");
+			sql.append("	t.column_id AS ordinal_position,\n");
+			sql.append("	DECODE (t.nullable, 'N', 'NO', 'YES') AS is_nullable\n");
+			sql.append("FROM\n");
+			sql.append("	all_tab_columns t,\n");
+			sql.append("	all_col_comments c\n");
+			sql.append("WHERE\n");
+			if (schemaPattern != null) {
+				sql.append("	t.owner LIKE ").append(SQL.quote(schemaPattern)).append(" ESCAPE '/'\n");
+				sql.append("	AND");
 			}
+			if (hidingRecycleBinTables) {
+				sql.append("	t.table_name NOT LIKE 'BIN$%' ESCAPE '/'\n");
+				sql.append("	AND");
+			}
+		    if (tableNamePattern != null) {
+		        sql.append("	t.table_name LIKE ").append(SQL.quote(tableNamePattern)).append(" ESCAPE '/'\n");
+		        sql.append("    AND");
+		    }
+		    if (columnNamePattern != null) {
+		        sql.append("	t.column_name LIKE ").append(SQL.quote(columnNamePattern)).append(" ESCAPE '/'\n");
+		        sql.append("	AND");
+		    }
+			sql.append("	t.owner=c.owner (+)\n");
+			sql.append("	AND t.table_name=c.table_name (+)\n");
+			sql.append("	AND t.column_name = c.column_name (+)\n");
+			sql.append("ORDER BY\n");
+			sql.append("	table_schem, table_name, ordinal_position");
 			
-			RowFilter filter = new RowFilter() {
-				public boolean acceptsRow(Object[] row) {
-					// expecting row[2] to be FK_TABLE_NAME and row[3] to be FK_COLUMN_NAME
-				    return (tp == null || tp.matcher(row[2].toString()).matches()) &&
-				            (cp == null || cp.matcher(row[3].toString()).matches());
-				}
-			};
-			
-			logger.debug("Filtering cache...");
-			CachedRowSet filtered;
-			synchronized (cachedResult) {
-			    if (tableNamePattern != null && !tableNamePattern.contains("%")) {
-			        // exact match requested--we can use the index for table name
-			        // (filter still applies to column name)
-			        filtered = cachedResult.extractSingleTable(tableNamePattern);
-			    } else {
-			        // have to search every row for wildcard match on table name
-			        filtered = new CachedRowSet();
-			        filtered.populate(cachedResult, filter);
-			    }
-			    cachedResult.beforeFirst();
-            }
-			
-			return filtered;
+			logger.debug("getColumns() sql statement was: \n" + sql.toString());
+
+			stmt.setFetchSize(1000);
+			rs = stmt.executeQuery(sql.toString());
+	        
+	        CachedRowSet result = new CachedRowSet();
+	        result.populate(rs);
+	        return result;
 		} finally {
 			if (rs != null) {
                 try {
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.CachedRowSet;
+
+/**
+ * A directory of metadata results that outlives the process, so a program
+ * that starts up against a database it has seen before can skip the data
+ * dictionary queries that filled its in-memory caches last time.
+ * <p>
+ * Each entry is one gzipped file holding a serialized {@link CachedRowSet}
+ * along with the {@link CacheKey} it belongs to and a <i>staleness
+ * token</i>. The token is whatever a cheap query against the database
+ * returned when the entry was written (for example, the number of objects
+ * in the schema and the time of the last DDL change). An entry is only
+ * returned if the same query still gives the same token, so the cost of a
+ * warm start is one small query per schema rather than a full crawl.
+ * <p>
+ * Entries are written to a temporary file and renamed into place, so a
+ * reader in another process never sees half an entry. Entries that can not
+ * be read, for example because they were written by an incompatible version
+ * of this library, are deleted and treated as missing.
+ * <p>
+ * To use a persistent cache, pass one to
+ * {@link DatabaseMetaDataDecorator#setPersistentCache(PersistentMetaDataCache)}.
+ * Only decorators that know how to compute a staleness token for their
+ * database make use of it.
+ */
+public class PersistentMetaDataCache {
+
+    private static final Logger logger = Logger.getLogger(PersistentMetaDataCache.class);
+
+    /**
+     * Changes whenever the file layout does, so files in an older layout are
+     * ignored rather than misread.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SUFFIX = ".crs.gz";
+
+    private final File directory;
+
+    /**
+     * Creates a persistent cache that keeps its files in the given directory.
+     * The directory is created if it does not exist.
+     *
+     * @throws IOException
+     *             If the directory does not exist and can not be created.
+     */
+    public PersistentMetaDataCache(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create metadata cache directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the stored result for the given key, or null if there is none
+     * or it was stored with a different staleness token.
+     *
+     * @param region
+     *            Names the kind of metadata, such as "columns", so different
+     *            results for the same schema are kept apart.
+     * @param key
+     *            The schema the result belongs to.
+     * @param token
+     *            The staleness token the database gives now.
+     * @param notBefore
+     *            Entries written before this time, in milliseconds since the
+     *            epoch, are treated as stale. 0 means no limit.
+     */
+    public CachedRowSet get(String region, CacheKey key, String token, long notBefore) {
+        File file = fileFor(region, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT_VERSION) {
+                logger.debug("Discarding " + file + " because it has an old format");
+                in.close();
+                in = null;
+                file.delete();
+                return null;
+            }
+            String storedKey = in.readUTF();
+            String storedToken = in.readUTF();
+            long storedAt = in.readLong();
+            if (!storedKey.equals(key.toString())) {
+                // a hash collision, which the next put will resolve
+                return null;
+            }
+            if (!storedToken.equals(token) || storedAt < notBefore) {
+                logger.debug("Persistent " + region + " entry for " + key + " is stale");
+                return null;
+            }
+            CachedRowSet result = (CachedRowSet) in.readObject();
+            logger.debug("Read " + region + " for " + key + " from " + file);
+            return result;
+        } catch (Exception ex) {
+            logger.warn("Could not read metadata cache file " + file + ". Discarding it.", ex);
+            if (in != null) {
+                closeQuietly(in);
+                in = null;
+            }
+            file.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Stores the given result, replacing any earlier one for the same region
+     * and key. Failure to write is logged and otherwise ignored, since the
+     * result can always be queried again.
+     */
+    public void put(String region, CacheKey key, String token, CachedRowSet value) {
+        File file = fileFor(region, key);
+        File temp = null;
+        ObjectOutputStream out = null;
+        try {
+            temp = File.createTempFile("metadata", ".tmp", directory);
+            out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key.toString());
+            out.writeUTF(token);
+            out.writeLong(System.currentTimeMillis());
+            synchronized (value) {
+                out.writeObject(value);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                // some platforms will not rename over an existing file
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Could not rename " + temp + " to " + file);
+                }
+            }
+            temp = null;
+        } catch (IOException ex) {
+            logger.warn("Could not write metadata cache file " + file, ex);
+        } finally {
+            if (out != null) {
+                closeQuietly(out);
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the stored result for the given region and key, if any.
+     */
+    public void remove(String region, CacheKey key) {
+        fileFor(region, key).delete();
+    }
+
+    /**
+     * Removes every stored result.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(SUFFIX)) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the file for the given region and key. The key is hashed
+     * because it contains a JDBC URL, which is not a usable file name.
+     */
+    private File fileFor(String region, CacheKey key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(key.toString().getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(region).append('-');
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("SHA-1 is missing from this JVM", ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException("UTF-8 is missing from this JVM", ex);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ex) {
+            logger.error("Failed to close metadata cache file! Squishing this exception: ", ex);
+        }
+    }
+}
@@ -138,6 +138,41 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	 * The actual prepared statement that does all the work.
 	 */
 	private final PreparedStatement preparedStatement;
+
+	/**
+	 * The key this statement is kept under in its connection's statement
+	 * cache, or null if it is not to be cached. See
+	 * {@link ConnectionDecorator#setStatementCacheSize(int)}.
+	 */
+	private StatementCacheKey cacheKey;
+
+	/**
+	 * Whether {@link #close()} has been called. A closed decorator is never
+	 * used again; when its statement is cached, the connection hands it out
+	 * again in a new decorator, so a caller that holds on to a closed one
+	 * can't use the statement while someone else has it.
+	 */
+	private boolean closed;
+
+	/**
+	 * False once this statement's settings have been changed or one of its
+	 * executions has failed. Such a statement is really closed rather than
+	 * cached, so the next user of the same SQL does not inherit the changes
+	 * or a plan the database has invalidated.
+	 */
+	private boolean reusable = true;
+
+	/**
+	 * Whether rows have been added to the batch since it was last executed
+	 * or cleared.
+	 */
+	private boolean batchPending;
+
+	/**
+	 * The result set of the last query executed, which is closed when the
+	 * statement goes back in the cache.
+	 */
+	private ResultSet lastResultSet;
 	
 	/**
 	 * Creates a new prepared statement decorator for the given result set.
@@ -152,138 +187,255 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 
 	protected abstract ResultSetMetaData makeResultSetMetaDataDecorator(ResultSetMetaData rsmd);
 
+	/**
+	 * Marks this statement as one its connection may cache under the given
+	 * key when it is closed.
+	 */
+	void setCacheKey(StatementCacheKey cacheKey) {
+		this.cacheKey = cacheKey;
+	}
+
+	StatementCacheKey getCacheKey() {
+		return cacheKey;
+	}
+
+	/**
+	 * Gets this statement ready to be handed out again: closes its last
+	 * result set and clears its parameters, batch and warnings.
+	 */
+	void resetForReuse() throws SQLException {
+		if (lastResultSet != null) {
+			lastResultSet.close();
+			lastResultSet = null;
+		}
+		preparedStatement.clearParameters();
+		if (batchPending) {
+			preparedStatement.clearBatch();
+			batchPending = false;
+		}
+		preparedStatement.clearWarnings();
+	}
+
+	/**
+	 * Returns the statement this decorator passes its calls to.
+	 */
+	PreparedStatement getDelegate() {
+		return preparedStatement;
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("This statement has been closed");
+		}
+	}
+
 	// ------------ PreparedStatement interface is below this line ------------------
 	
 	public void addBatch() throws SQLException {
+		checkOpen();
 		preparedStatement.addBatch();
+		batchPending = true;
 	}
 
 	public void addBatch(String sql) throws SQLException {
+		checkOpen();
 		preparedStatement.addBatch(sql);
+		batchPending = true;
 	}
 
 	public void cancel() throws SQLException {
+		checkOpen();
 		preparedStatement.cancel();
 	}
 
 	public void clearBatch() throws SQLException {
+		checkOpen();
 		preparedStatement.clearBatch();
+		batchPending = false;
 	}
 
 	public void clearParameters() throws SQLException {
+		checkOpen();
 		preparedStatement.clearParameters();
 	}
 
 	public void clearWarnings() throws SQLException {
+		checkOpen();
 		preparedStatement.clearWarnings();
 	}
 
+	/**
+	 * Closes this statement, or gives it back to its connection's statement
+	 * cache if it was prepared through a caching connection. Either way this
+	 * decorator throws an SQLException if it is used again.
+	 */
 	public void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (cacheKey != null && reusable && parentConnection.cacheStatement(this)) {
+			return;
+		}
 		preparedStatement.close();
 	}
 
 	public boolean execute() throws SQLException {
-		return preparedStatement.execute();
+		checkOpen();
+		boolean failed = true;
+		try {
+			boolean result = preparedStatement.execute();
+			failed = false;
+			return result;
+		} finally {
+			if (failed) reusable = false;
+		}
 	}
 
 	public boolean execute(String sql, int autoGeneratedKeys)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.execute(sql, autoGeneratedKeys);
 	}
 
 	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		checkOpen();
 		return preparedStatement.execute(sql, columnIndexes);
 	}
 
 	public boolean execute(String sql, String[] columnNames)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.execute(sql, columnNames);
 	}
 
 	public boolean execute(String sql) throws SQLException {
+		checkOpen();
 		return preparedStatement.execute(sql);
 	}
 
 	public int[] executeBatch() throws SQLException {
-		return preparedStatement.executeBatch();
+		checkOpen();
+		boolean failed = true;
+		try {
+			int[] counts = preparedStatement.executeBatch();
+			batchPending = false;
+			failed = false;
+			return counts;
+		} finally {
+			if (failed) reusable = false;
+		}
 	}
 
 	public ResultSet executeQuery() throws SQLException {
-		return makeResultSetDecorator(preparedStatement.executeQuery());
+		checkOpen();
+		boolean failed = true;
+		try {
+			lastResultSet = preparedStatement.executeQuery();
+			failed = false;
+			return makeResultSetDecorator(lastResultSet);
+		} finally {
+			if (failed) reusable = false;
+		}
 	}
 
 	public ResultSet executeQuery(String sql) throws SQLException {
+		checkOpen();
 		return makeResultSetDecorator(preparedStatement.executeQuery(sql));
 	}
 
 	public int executeUpdate() throws SQLException {
-		return preparedStatement.executeUpdate();
+		checkOpen();
+		boolean failed = true;
+		try {
+			int count = preparedStatement.executeUpdate();
+			failed = false;
+			return count;
+		} finally {
+			if (failed) reusable = false;
+		}
 	}
 
 	public int executeUpdate(String sql, int autoGeneratedKeys)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, autoGeneratedKeys);
 	}
 
 	public int executeUpdate(String sql, int[] columnIndexes)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, columnIndexes);
 	}
 
 	public int executeUpdate(String sql, String[] columnNames)
 			throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql, columnNames);
 	}
 
 	public int executeUpdate(String sql) throws SQLException {
+		checkOpen();
 		return preparedStatement.executeUpdate(sql);
 	}
 
 	public Connection getConnection() throws SQLException {
+		checkOpen();
 		return parentConnection;
 	}
 
 	public int getFetchDirection() throws SQLException {
+		checkOpen();
 		return preparedStatement.getFetchDirection();
 	}
 
 	public int getFetchSize() throws SQLException {
+		checkOpen();
 		return preparedStatement.getFetchSize();
 	}
 
 	public ResultSet getGeneratedKeys() throws SQLException {
+		checkOpen();
 		return makeResultSetDecorator(preparedStatement.getGeneratedKeys());
 	}
 
 	public int getMaxFieldSize() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMaxFieldSize();
 	}
 
 	public int getMaxRows() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMaxRows();
 	}
 
 	public ResultSetMetaData getMetaData() throws SQLException {
+		checkOpen();
 		return makeResultSetMetaDataDecorator(preparedStatement.getMetaData());
 	}
 
 	public boolean getMoreResults() throws SQLException {
+		checkOpen();
 		return preparedStatement.getMoreResults();
 	}
 
 	public boolean getMoreResults(int current) throws SQLException {
+		checkOpen();
 		return preparedStatement.getMoreResults(current);
 	}
 
 	public ParameterMetaData getParameterMetaData() throws SQLException {
+		checkOpen();
 		return preparedStatement.getParameterMetaData();
 	}
 
 	public int getQueryTimeout() throws SQLException {
+		checkOpen();
 		return preparedStatement.getQueryTimeout();
 	}
 
 	public ResultSet getResultSet() throws SQLException {
+		checkOpen();
 		if (preparedStatement.getResultSet() == null) {
 			return null;
 		}
@@ -291,139 +443,177 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	}
 
 	public int getResultSetConcurrency() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetConcurrency();
 	}
 
 	public int getResultSetHoldability() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetHoldability();
 	}
 
 	public int getResultSetType() throws SQLException {
+		checkOpen();
 		return preparedStatement.getResultSetType();
 	}
 
 	public int getUpdateCount() throws SQLException {
+		checkOpen();
 		return preparedStatement.getUpdateCount();
 	}
 
 	public SQLWarning getWarnings() throws SQLException {
+		checkOpen();
 		return preparedStatement.getWarnings();
 	}
 
 	public void setArray(int i, Array x) throws SQLException {
+		checkOpen();
 		preparedStatement.setArray(i, x);
 	}
 
 	public void setAsciiStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setAsciiStream(parameterIndex, x, length);
 	}
 
 	public void setBigDecimal(int parameterIndex, BigDecimal x)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setBigDecimal(parameterIndex, x);
 	}
 
 	public void setBinaryStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setBinaryStream(parameterIndex, x, length);
 	}
 
 	public void setBlob(int i, Blob x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBlob(i, x);
 	}
 
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBoolean(parameterIndex, x);
 	}
 
 	public void setByte(int parameterIndex, byte x) throws SQLException {
+		checkOpen();
 		preparedStatement.setByte(parameterIndex, x);
 	}
 
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		checkOpen();
 		preparedStatement.setBytes(parameterIndex, x);
 	}
 
 	public void setCharacterStream(int parameterIndex, Reader reader, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setCharacterStream(parameterIndex, reader, length);
 	}
 
 	public void setClob(int i, Clob x) throws SQLException {
+		checkOpen();
 		preparedStatement.setClob(i, x);
 	}
 
 	public void setCursorName(String name) throws SQLException {
+		checkOpen();
 		preparedStatement.setCursorName(name);
+		reusable = false;
 	}
 
 	public void setDate(int parameterIndex, Date x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setDate(parameterIndex, x, cal);
 	}
 
 	public void setDate(int parameterIndex, Date x) throws SQLException {
+		checkOpen();
 		preparedStatement.setDate(parameterIndex, x);
 	}
 
 	public void setDouble(int parameterIndex, double x) throws SQLException {
+		checkOpen();
 		preparedStatement.setDouble(parameterIndex, x);
 	}
 
 	public void setEscapeProcessing(boolean enable) throws SQLException {
+		checkOpen();
 		preparedStatement.setEscapeProcessing(enable);
+		reusable = false;
 	}
 
 	public void setFetchDirection(int direction) throws SQLException {
+		checkOpen();
 		preparedStatement.setFetchDirection(direction);
+		reusable = false;
 	}
 
 	public void setFetchSize(int rows) throws SQLException {
+		checkOpen();
 		preparedStatement.setFetchSize(rows);
+		reusable = false;
 	}
 
 	public void setFloat(int parameterIndex, float x) throws SQLException {
+		checkOpen();
 		preparedStatement.setFloat(parameterIndex, x);
 	}
 
 	public void setInt(int parameterIndex, int x) throws SQLException {
+		checkOpen();
 		preparedStatement.setInt(parameterIndex, x);
 	}
 
 	public void setLong(int parameterIndex, long x) throws SQLException {
+		checkOpen();
 		preparedStatement.setLong(parameterIndex, x);
 	}
 
 	public void setMaxFieldSize(int max) throws SQLException {
+		checkOpen();
 		preparedStatement.setMaxFieldSize(max);
+		reusable = false;
 	}
 
 	public void setMaxRows(int max) throws SQLException {
+		checkOpen();
 		preparedStatement.setMaxRows(max);
+		reusable = false;
 	}
 
 	public void setNull(int paramIndex, int sqlType, String typeName)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setNull(paramIndex, sqlType, typeName);
 	}
 
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		checkOpen();
 		preparedStatement.setNull(parameterIndex, sqlType);
 	}
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType,
 			int scale) throws SQLException {
+		checkOpen();
 		
 		preparedStatement.setObject(parameterIndex, x, targetSqlType, scale);
 	}
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setObject(parameterIndex, x, targetSqlType);
 	}
 
 	public void setObject(int parameterIndex, Object x) throws SQLException {
+		checkOpen();
 		preparedStatement.setObject(parameterIndex, applyJavaToJdbcMappings(x));
 	}
 	
@@ -453,47 +643,58 @@ public abstract class PreparedStatementDecorator implements PreparedStatement{
 	}
 
 	public void setQueryTimeout(int seconds) throws SQLException {
+		checkOpen();
 		preparedStatement.setQueryTimeout(seconds);
+		reusable = false;
 	}
 
 	public void setRef(int i, Ref x) throws SQLException {
+		checkOpen();
 		preparedStatement.setRef(i, x);
 	}
 
 	public void setShort(int parameterIndex, short x) throws SQLException {
+		checkOpen();
 		preparedStatement.setShort(parameterIndex, x);
 	}
 
 	public void setString(int parameterIndex, String x) throws SQLException {
+		checkOpen();
 		preparedStatement.setString(parameterIndex, x);
 	}
 
 	public void setTime(int parameterIndex, Time x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTime(parameterIndex, x, cal);
 	}
 
 	public void setTime(int parameterIndex, Time x) throws SQLException {
+		checkOpen();
 		preparedStatement.setTime(parameterIndex, x);
 	}
 
 	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTimestamp(parameterIndex, x, cal);
 	}
 
 	public void setTimestamp(int parameterIndex, Timestamp x)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setTimestamp(parameterIndex, x);
 	}
 
 	@SuppressWarnings("deprecation")
 	public void setUnicodeStream(int parameterIndex, InputStream x, int length)
 			throws SQLException {
+		checkOpen();
 		preparedStatement.setUnicodeStream(parameterIndex, x, length);
 	}
 
 	public void setURL(int parameterIndex, URL x) throws SQLException {
+		checkOpen();
 		preparedStatement.setURL(parameterIndex, x);
 	}
 	
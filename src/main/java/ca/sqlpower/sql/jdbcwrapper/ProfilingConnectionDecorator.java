@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a connection so that the statements, result sets and database
+ * metadata it hands out record their timings with the {@link JDBCProfiler}.
+ * <p>
+ * This decorator goes around the platform-specific decorator that
+ * {@link ConnectionDecorator#createFacade(Connection)} picks, rather than
+ * replacing it, so everything is still done the platform's way and the time
+ * the platform decorators themselves take (for example building a metadata
+ * result set from a catalog query) is part of what is measured.
+ */
+public class ProfilingConnectionDecorator extends ConnectionDecorator {
+
+	/**
+	 * @param delegate
+	 *            The connection to profile. It is normally a platform-specific
+	 *            ConnectionDecorator.
+	 */
+	public ProfilingConnectionDecorator(Connection delegate) {
+		super(delegate);
+	}
+
+	/**
+	 * Returns the connection being profiled, so callers can tell which
+	 * platform decorator is underneath.
+	 */
+	public Connection getDelegate() {
+		return connection;
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		if (databaseMetaDataDecorator == null) {
+			databaseMetaDataDecorator = new ProfilingDatabaseMetaDataDecorator(super.getMetaData(), this);
+		}
+		return databaseMetaDataDecorator;
+	}
+
+	@Override
+	protected Statement makeStatementDecorator(Statement stmt) {
+		return new ProfilingStatementDecorator(this, stmt);
+	}
+
+	/**
+	 * Makes a decorator for a statement whose SQL is not known. The
+	 * prepareStatement methods are overridden to pass the SQL along instead.
+	 */
+	@Override
+	protected PreparedStatement makePreparedStatementDecorator(PreparedStatement pstmt) {
+		return new ProfilingPreparedStatementDecorator(this, pstmt, null);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this, connection.prepareStatement(sql), sql);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this,
+				connection.prepareStatement(sql, autoGeneratedKeys), sql);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this,
+				connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this,
+				connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this,
+				connection.prepareStatement(sql, columnIndexes), sql);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		return new ProfilingPreparedStatementDecorator(this,
+				connection.prepareStatement(sql, columnNames), sql);
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Times each DatabaseMetaData call that returns a result set and records it
+ * under the method's name. See {@link JDBCProfiler}.
+ * <p>
+ * The result sets are handed back exactly as the delegate returned them.
+ * Where the platform decorator reads the whole result into a cached row set
+ * the call time covers reading the rows; where the driver's own result set
+ * is returned, the time spent reading it afterwards is not counted. The
+ * other metadata methods just report driver properties and are not timed.
+ */
+public class ProfilingDatabaseMetaDataDecorator extends DatabaseMetaDataDecorator {
+
+	/**
+	 * @param delegate
+	 *            The metadata to profile. It is normally a platform-specific
+	 *            DatabaseMetaDataDecorator.
+	 */
+	public ProfilingDatabaseMetaDataDecorator(DatabaseMetaData delegate, ConnectionDecorator connectionDecorator) {
+		super(delegate, connectionDecorator);
+	}
+
+	private static void record(String methodName, long start, boolean failed) {
+		JDBCProfiler.metaDataStatistics(methodName).recordCall(System.nanoTime() - start, failed);
+	}
+
+	@Override
+	public ResultSet getAttributes(String catalog, String schemaPattern,
+			String typeNamePattern, String attributeNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getAttributes(catalog, schemaPattern, typeNamePattern, attributeNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getAttributes", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getBestRowIdentifier(String catalog, String schema, String table,
+			int scope, boolean nullable) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getBestRowIdentifier(catalog, schema, table, scope, nullable);
+			failed = false;
+			return rs;
+		} finally {
+			record("getBestRowIdentifier", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getCatalogs() throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getCatalogs();
+			failed = false;
+			return rs;
+		} finally {
+			record("getCatalogs", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getColumnPrivileges(String catalog, String schema,
+			String table, String columnNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getColumnPrivileges(catalog, schema, table, columnNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getColumnPrivileges", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getColumns(String catalog, String schemaPattern,
+			String tableNamePattern, String columnNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getColumns(catalog, schemaPattern, tableNamePattern, columnNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getColumns", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getCrossReference(String primaryCatalog, String primarySchema, String primaryTable,
+			String foreignCatalog, String foreignSchema, String foreignTable) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getCrossReference(primaryCatalog, primarySchema, primaryTable, foreignCatalog, foreignSchema, foreignTable);
+			failed = false;
+			return rs;
+		} finally {
+			record("getCrossReference", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getExportedKeys(String catalog, String schema, String table) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getExportedKeys(catalog, schema, table);
+			failed = false;
+			return rs;
+		} finally {
+			record("getExportedKeys", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getImportedKeys(String catalog, String schema, String table) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getImportedKeys(catalog, schema, table);
+			failed = false;
+			return rs;
+		} finally {
+			record("getImportedKeys", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getIndexInfo(String catalog, String schema, String table,
+			boolean unique, boolean approximate) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getIndexInfo(catalog, schema, table, unique, approximate);
+			failed = false;
+			return rs;
+		} finally {
+			record("getIndexInfo", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getPrimaryKeys(String catalog, String schema, String table) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getPrimaryKeys(catalog, schema, table);
+			failed = false;
+			return rs;
+		} finally {
+			record("getPrimaryKeys", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getProcedureColumns(String catalog, String schemaPattern,
+			String procedureNamePattern, String columnNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getProcedureColumns(catalog, schemaPattern, procedureNamePattern, columnNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getProcedureColumns", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getProcedures(String catalog, String schemaPattern,
+			String procedureNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getProcedures(catalog, schemaPattern, procedureNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getProcedures", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getSchemas() throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getSchemas();
+			failed = false;
+			return rs;
+		} finally {
+			record("getSchemas", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getSuperTables(String catalog, String schemaPattern,
+			String tableNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getSuperTables(catalog, schemaPattern, tableNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getSuperTables", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getSuperTypes(String catalog, String schemaPattern,
+			String typeNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getSuperTypes(catalog, schemaPattern, typeNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getSuperTypes", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getTablePrivileges(String catalog, String schemaPattern,
+			String tableNamePattern) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getTablePrivileges(catalog, schemaPattern, tableNamePattern);
+			failed = false;
+			return rs;
+		} finally {
+			record("getTablePrivileges", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getTables(String catalog, String schemaPattern,
+			String tableNamePattern, String[] types) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getTables(catalog, schemaPattern, tableNamePattern, types);
+			failed = false;
+			return rs;
+		} finally {
+			record("getTables", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getTableTypes() throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getTableTypes();
+			failed = false;
+			return rs;
+		} finally {
+			record("getTableTypes", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getTypeInfo() throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getTypeInfo();
+			failed = false;
+			return rs;
+		} finally {
+			record("getTypeInfo", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getUDTs(String catalog, String schemaPattern,
+			String typeNamePattern, int[] types) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getUDTs(catalog, schemaPattern, typeNamePattern, types);
+			failed = false;
+			return rs;
+		} finally {
+			record("getUDTs", start, failed);
+		}
+	}
+
+	@Override
+	public ResultSet getVersionColumns(String catalog, String schema, String table) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = databaseMetaData.getVersionColumns(catalog, schema, table);
+			failed = false;
+			return rs;
+		} finally {
+			record("getVersionColumns", start, failed);
+		}
+	}
+
+	@Override
+	protected ResultSetDecorator wrap(ResultSet rs) throws SQLException {
+		return new GenericResultSetDecorator(wrap(rs.getStatement()), rs);
+	}
+
+	@Override
+	protected StatementDecorator wrap(Statement statement) {
+		return new GenericStatementDecorator(connectionDecorator, statement);
+	}
+}
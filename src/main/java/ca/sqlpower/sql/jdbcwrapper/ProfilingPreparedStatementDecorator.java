@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Times each execution of a prepared statement and records it under the
+ * statement's fingerprint. See {@link JDBCProfiler}.
+ * <p>
+ * Only the methods that execute the prepared SQL are timed. The ones that
+ * take SQL of their own are not allowed on a prepared statement.
+ */
+public class ProfilingPreparedStatementDecorator extends PreparedStatementDecorator {
+
+	/**
+	 * The fingerprint of the SQL this statement was prepared with.
+	 */
+	private final String fingerprint;
+
+	/**
+	 * The statistics of the last execution, which the rows of its result
+	 * set are recorded in. They are looked up again on each execution in
+	 * case the statistics have been reset.
+	 */
+	private CallStatistics lastStatistics;
+
+	/**
+	 * @param sql
+	 *            The SQL the statement was prepared with, or null if it is
+	 *            not known.
+	 */
+	public ProfilingPreparedStatementDecorator(ConnectionDecorator parentConnection,
+			PreparedStatement ps, String sql) {
+		super(parentConnection, ps);
+		this.fingerprint = sql == null ? "(unknown)" : JDBCProfiler.fingerprint(sql);
+	}
+
+	@Override
+	protected ResultSet makeResultSetDecorator(ResultSet rs) {
+		if (rs == null) {
+			return null;
+		}
+		if (lastStatistics == null) {
+			lastStatistics = JDBCProfiler.statementStatistics(fingerprint);
+		}
+		return new ProfilingResultSetDecorator(this, rs, lastStatistics);
+	}
+
+	@Override
+	protected ResultSetMetaData makeResultSetMetaDataDecorator(ResultSetMetaData rsmd) {
+		// the delegate has already decorated it for the platform
+		return rsmd;
+	}
+
+	@Override
+	public ResultSet executeQuery() throws SQLException {
+		CallStatistics stats = lastStatistics = JDBCProfiler.statementStatistics(fingerprint);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = super.executeQuery();
+			failed = false;
+			return rs;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public boolean execute() throws SQLException {
+		CallStatistics stats = lastStatistics = JDBCProfiler.statementStatistics(fingerprint);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean result = super.execute();
+			failed = false;
+			return result;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException {
+		CallStatistics stats = lastStatistics = JDBCProfiler.statementStatistics(fingerprint);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int count = super.executeUpdate();
+			failed = false;
+			return count;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		CallStatistics stats = JDBCProfiler.statementStatistics("batch: " + fingerprint);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int[] counts = super.executeBatch();
+			failed = false;
+			return counts;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+}
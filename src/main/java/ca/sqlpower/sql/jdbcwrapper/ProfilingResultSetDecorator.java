@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Times the calls to {@link #next()} on a result set and records them with
+ * the statistics of the statement that produced it. See
+ * {@link JDBCProfiler}.
+ */
+public class ProfilingResultSetDecorator extends ResultSetDecorator {
+
+	private final CallStatistics stats;
+
+	/**
+	 * @param parentStatement
+	 *            The profiling statement that produced this result set.
+	 * @param rs
+	 *            The result set to delegate to. It is normally the
+	 *            platform-specific decorator of the driver's result set.
+	 * @param stats
+	 *            The statistics rows are recorded in.
+	 */
+	public ProfilingResultSetDecorator(Statement parentStatement, ResultSet rs, CallStatistics stats) {
+		super(parentStatement, rs);
+		this.stats = stats;
+	}
+
+	@Override
+	protected ResultSetMetaData makeResultSetMetaDataDecorator(ResultSetMetaData rsmd) {
+		// the delegate has already decorated it for the platform
+		return rsmd;
+	}
+
+	@Override
+	public boolean next() throws SQLException {
+		long start = System.nanoTime();
+		boolean hasRow = super.next();
+		long elapsed = System.nanoTime() - start;
+		stats.recordNext(elapsed, hasRow, elapsed >= JDBCProfiler.ROUND_TRIP_NANOS);
+		return hasRow;
+	}
+}
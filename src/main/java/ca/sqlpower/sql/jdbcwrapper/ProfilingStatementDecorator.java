@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Times each statement executed and records it under the SQL's fingerprint.
+ * See {@link JDBCProfiler}.
+ */
+public class ProfilingStatementDecorator extends StatementDecorator {
+
+	/**
+	 * The statistics of the SQL executed last, which the rows of its result
+	 * set are recorded in.
+	 */
+	private CallStatistics lastStatistics;
+
+	/**
+	 * The first SQL added to the current batch. A batch is recorded under
+	 * its fingerprint.
+	 */
+	private String batchSql;
+
+	protected ProfilingStatementDecorator(ConnectionDecorator connection, Statement statement) {
+		super(connection, statement);
+	}
+
+	@Override
+	protected ResultSet makeResultSetDecorator(ResultSet rs) {
+		if (rs == null) {
+			return null;
+		}
+		if (lastStatistics == null) {
+			lastStatistics = JDBCProfiler.statementStatistics("(unknown)");
+		}
+		return new ProfilingResultSetDecorator(this, rs, lastStatistics);
+	}
+
+	/**
+	 * Looks up the statistics for the given SQL and makes them the ones the
+	 * next result set is recorded in.
+	 */
+	private CallStatistics statisticsFor(String sql) {
+		lastStatistics = JDBCProfiler.statementStatistics(JDBCProfiler.fingerprint(sql));
+		return lastStatistics;
+	}
+
+	@Override
+	public ResultSet executeQuery(String sql) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			ResultSet rs = super.executeQuery(sql);
+			failed = false;
+			return rs;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean result = super.execute(sql);
+			failed = false;
+			return result;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean result = super.execute(sql, autoGeneratedKeys);
+			failed = false;
+			return result;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean result = super.execute(sql, columnIndexes);
+			failed = false;
+			return result;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			boolean result = super.execute(sql, columnNames);
+			failed = false;
+			return result;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int count = super.executeUpdate(sql);
+			failed = false;
+			return count;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int count = super.executeUpdate(sql, autoGeneratedKeys);
+			failed = false;
+			return count;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int count = super.executeUpdate(sql, columnIndexes);
+			failed = false;
+			return count;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		CallStatistics stats = statisticsFor(sql);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int count = super.executeUpdate(sql, columnNames);
+			failed = false;
+			return count;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		super.addBatch(sql);
+		if (batchSql == null) {
+			batchSql = sql;
+		}
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		super.clearBatch();
+		batchSql = null;
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		CallStatistics stats = JDBCProfiler.statementStatistics("batch: " + JDBCProfiler.fingerprint(batchSql));
+		batchSql = null;
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int[] counts = super.executeBatch();
+			failed = false;
+			return counts;
+		} finally {
+			stats.recordCall(System.nanoTime() - start, failed);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+/**
+ * Identifies interchangeable prepared statements in a
+ * {@link ConnectionDecorator}'s statement cache: ones prepared from the same
+ * SQL with the same result set type, concurrency and holdability.
+ * <p>
+ * Instances of this class are immutable.
+ */
+final class StatementCacheKey {
+
+    /**
+     * The holdability of a statement prepared without one, which gets the
+     * driver's default.
+     */
+    static final int DEFAULT_HOLDABILITY = -1;
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int resultSetHoldability;
+
+    StatementCacheKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+        if (sql == null) throw new NullPointerException("Null SQL not allowed");
+        this.sql = sql;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+        this.resultSetHoldability = resultSetHoldability;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = sql.hashCode();
+        result = prime * result + resultSetType;
+        result = prime * result + resultSetConcurrency;
+        result = prime * result + resultSetHoldability;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof StatementCacheKey)) return false;
+        StatementCacheKey other = (StatementCacheKey) obj;
+        return sql.equals(other.sql)
+            && resultSetType == other.resultSetType
+            && resultSetConcurrency == other.resultSetConcurrency
+            && resultSetHoldability == other.resultSetHoldability;
+    }
+
+    @Override
+    public String toString() {
+        return sql + " [type=" + resultSetType + ", concurrency=" + resultSetConcurrency +
+            ", holdability=" + resultSetHoldability + "]";
+    }
+}
@@ -35,10 +35,6 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.dbcp.ConnectionFactory;
-import org.apache.commons.dbcp.PoolableConnectionFactory;
-import org.apache.commons.pool.BaseObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool.Config;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.object.ObjectDependentException;
@@ -50,6 +46,9 @@ import ca.sqlpower.object.annotation.Mutator;
 import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.object.annotation.Transient;
 import ca.sqlpower.object.annotation.ConstructorParameter.ParameterType;
+import ca.sqlpower.sql.ConnectionPoolMetrics;
+import ca.sqlpower.sql.ConnectionPoolSettings;
+import ca.sqlpower.sql.InstrumentedConnectionPool;
 import ca.sqlpower.sql.JDBCDSConnectionFactory;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.SPDataSource;
@@ -76,7 +75,18 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 	 * A pool of JDBC connections backed by a Jakarta Commons DBCP pool.
 	 * You should access it only via the getConnectionPool() method.
 	 */
-	private transient BaseObjectPool connectionPool;
+	private transient InstrumentedConnectionPool connectionPool;
+
+	/**
+	 * The pool settings used for data sources that don't have their own.
+	 * Callers wait up to 30 seconds for one of 5 connections rather than
+	 * failing straight away when they are all in use.
+	 */
+	private static final ConnectionPoolSettings DEFAULT_POOL_SETTINGS = new ConnectionPoolSettings();
+	static {
+	    DEFAULT_POOL_SETTINGS.setMaxActive(5);
+	    DEFAULT_POOL_SETTINGS.setMaxIdle(5);
+	}
 	
 	/**
 	 * Tells this database that it is being used to back the PlayPen.  Also 
@@ -84,11 +94,7 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 	 * change.
 	 */
 	private boolean playPenDatabase = false;
-	
-	/**
-	 * Indicates the maximum number of connections held active ever.
-	 */
-	private int maxActiveConnections = 0;
+
 	
 	/**
 	 * The catalog term for the underlying database, according to the JDBC driver's
@@ -671,16 +677,14 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 			return null;
 		} else {
 			try {
-			    int newActiveCount = getConnectionPool().getNumActive() + 1;
-                maxActiveConnections = Math.max(maxActiveConnections,
-			            newActiveCount);
+			    InstrumentedConnectionPool pool = getConnectionPool();
 			    if (logger.isDebugEnabled()) {
-			        logger.debug("getConnection(): giving out active connection " + newActiveCount); //$NON-NLS-1$
+			        logger.debug("getConnection(): giving out active connection " + (pool.getNumActive() + 1)); //$NON-NLS-1$
 			        for (StackTraceElement ste : Thread.currentThread().getStackTrace()) {
 			        	logger.debug(ste.toString());
 			        }
 			    }
-				return (Connection) getConnectionPool().borrowObject();
+				return pool.getConnection();
 			} catch (Exception e) {
 			    final SQLObjectException ex = new SQLObjectException(
 			            "Couldn't connect to database: "+e.getMessage(), e); //$NON-NLS-1$
@@ -719,30 +723,41 @@ public class SQLDatabase extends SQLObject implements java.io.Serializable, Prop
 		} finally {
 			connectionPool = null;
 		}
-		maxActiveConnections = 0;
 	}
-	
-	synchronized BaseObjectPool getConnectionPool() {
+
+	/**
+	 * Returns this database's connection pool, creating it if necessary. The
+	 * pool is sized according to the pool settings among the data source's
+	 * properties (see {@link ConnectionPoolSettings}), falling back on 5
+	 * connections.
+	 */
+	synchronized InstrumentedConnectionPool getConnectionPool() throws SQLException {
 		if (connectionPool == null) {
-            Config poolConfig = new GenericObjectPool.Config();
-            poolConfig.maxActive = 5;
-            poolConfig.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
-			connectionPool = new GenericObjectPool(null, poolConfig);
-			ConnectionFactory cf = new JDBCDSConnectionFactory(dataSource);			
-			new PoolableConnectionFactory(cf, connectionPool, null,
-					null, false, true);
+			ConnectionPoolSettings settings =
+			    ConnectionPoolSettings.forDataSource(dataSource, DEFAULT_POOL_SETTINGS);
+			ConnectionFactory cf = new JDBCDSConnectionFactory(dataSource);
+			connectionPool = new InstrumentedConnectionPool(dataSource.getName(), cf, settings, false);
 		}
 		return connectionPool;
 	}
 
+	/**
+	 * Returns the borrow statistics of this database's connection pool, or
+	 * null if it is not connected.
+	 */
+	@NonProperty
+	public synchronized ConnectionPoolMetrics getConnectionPoolMetrics() {
+	    return connectionPool == null ? null : connectionPool.getMetrics();
+	}
+
 	/**
 	 * Returns the maximum number of active connections that
-	 * this database has ever opened. 
+	 * this database has opened at once since it connected.
 	 * @return Maximum number of active connections ever opened.
 	 */
 	@Transient @Accessor
-    public int getMaxActiveConnections() {
-        return maxActiveConnections;
+    public synchronized int getMaxActiveConnections() {
+        return connectionPool == null ? 0 : connectionPool.getMetrics().getPeakActive();
     }
 
     /**
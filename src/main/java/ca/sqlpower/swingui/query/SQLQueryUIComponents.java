@@ -970,13 +970,29 @@ public class SQLQueryUIComponents {
 	private class StreamingRowSetListener implements RowSetChangeListener {
 
 		private AtomicBoolean hasUpdates = new AtomicBoolean(false);
-    	
+
+		/**
+		 * Set when the row set has dropped old rows to make room for new
+		 * ones, so the rows the table model has shown have moved.
+		 */
+		private AtomicBoolean rowsDropped = new AtomicBoolean(false);
+
+		/**
+		 * The row count the table model was last told about, or -1 before
+		 * the first update.
+		 */
+		private int reportedRowCount = -1;
+
     	private final Timer timer = new Timer(1000, new ActionListener() {
-			
-    		public void actionPerformed(ActionEvent e) {				
-				if (hasUpdates.get()) {
-					listeningTableModel.dataChanged();
-					hasUpdates.set(false);
+
+    		public void actionPerformed(ActionEvent e) {
+				if (hasUpdates.getAndSet(false)) {
+					if (reportedRowCount < 0 || rowsDropped.getAndSet(false)) {
+						listeningTableModel.dataChanged();
+					} else {
+						listeningTableModel.rowsAppended(reportedRowCount);
+					}
+					reportedRowCount = listeningTableModel.getRowCount();
 				}
 			}
 		});
@@ -1014,6 +1030,9 @@ public class SQLQueryUIComponents {
 		}
 		
 		public void rowAdded(RowSetChangeEvent e) {
+			if (e.getRowNumber() != e.getSequenceNumber()) {
+				rowsDropped.set(true);
+			}
 			hasUpdates.set(true);
 		}
 	}
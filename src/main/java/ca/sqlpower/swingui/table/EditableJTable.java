@@ -2,6 +2,7 @@ package ca.sqlpower.swingui.table;
 
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Graphics;
 
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
@@ -48,6 +49,27 @@ public class EditableJTable extends JTable implements TableTextConverter {
 		}
 	}
 	
+	/**
+	 * Lets a {@link ResultSetTableModel} leave cells it has not read yet
+	 * blank while they are painted, rather than reading them on the event
+	 * dispatch thread.
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		TableModel model = TableUtils.unwrap(getModel());
+		if (!(model instanceof ResultSetTableModel)) {
+			super.paintComponent(g);
+			return;
+		}
+		ResultSetTableModel rsModel = (ResultSetTableModel) model;
+		rsModel.setPaintingCells(true);
+		try {
+			super.paintComponent(g);
+		} finally {
+			rsModel.setPaintingCells(false);
+		}
+	}
+	
 	@Override
 	public void columnMarginChanged(ChangeEvent pE) {
 		if (getEditingColumn() != -1 || getEditingRow() != -1) {
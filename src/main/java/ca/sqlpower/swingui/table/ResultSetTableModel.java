@@ -16,12 +16,23 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
  */
-
 package ca.sqlpower.swingui.table;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.swing.SwingUtilities;
@@ -29,25 +40,160 @@ import javax.swing.table.AbstractTableModel;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.sql.CachedRowSet;
+
 /**
  * This is a basic table model that takes in a result set to be displayed in a
  * table. This model can export a given set of rows to a CSV or HTML file. The
  * result set is not allowed to be modified in this table.
+ * <p>
+ * Rows are read from the result set a page at a time into a window of the
+ * most recently used pages, so painting a cell costs a lookup instead of two
+ * cursor moves. A {@link CachedRowSet} is already in memory, so a page of it
+ * that isn't in the window yet is read right away, and it is never read on
+ * any thread but the caller's as its cursor is shared.
+ * <p>
+ * Other result sets are only read in the background while a table is
+ * painting this model (see {@link #setPaintingCells(boolean)}): the pages being
+ * painted and the page after them are read on a background thread, their
+ * cells show as null until then, and one event is fired for the whole page
+ * when it arrives. The row count is found on the background thread too, and
+ * grows as pages are read until then. Everyone else, such as exports,
+ * searches and sorts, gets every row and the full row count read right
+ * away.
  */
 public class ResultSetTableModel extends AbstractTableModel {
     
+	private static final Logger logger = Logger.getLogger(ResultSetTableModel.class);
+
+	/**
+	 * The number of rows read from the result set at a time.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 200;
+
+	/**
+	 * The number of pages kept in the window.
+	 */
+	public static final int DEFAULT_MAX_PAGES = 10;
+
 	/**
-	 * This result set holds the cell entries in the table. 
+	 * This result set holds the cell entries in the table. Volatile because
+	 * the background thread reads it too.
 	 */
-	private ResultSet rs = null;
+	private volatile ResultSet rs = null;
 	
+	private final int pageSize;
+	private final int maxPages;
+
+	/**
+	 * The window: the rows of the most recently used pages, keyed by page
+	 * number, least recently used first. Access is synchronized on the map.
+	 */
+	private final LinkedHashMap<Integer, Object[][]> pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true);
+
+	/**
+	 * The pages queued to be read on the background thread. Access is
+	 * synchronized on {@link #pages}.
+	 */
+	private final Set<Integer> pendingPages = new HashSet<Integer>();
+
+	/**
+	 * Incremented whenever the result set or its contents change, so pages
+	 * read before the change are thrown away when they arrive.
+	 */
+	private volatile int generation;
+
+	/**
+	 * The number of rows in a result set that isn't a CachedRowSet, as far
+	 * as is known so far.
+	 */
+	private volatile int knownRowCount;
+
+	/**
+	 * True once the row count of a result set that isn't a CachedRowSet is
+	 * being found on the background thread.
+	 */
+	private boolean counting;
+
+	/**
+	 * True once {@link #knownRowCount} is the full row count of a result set
+	 * that isn't a CachedRowSet.
+	 */
+	private boolean rowCountKnown;
+
+	/**
+	 * The number of tables painting this model on the event dispatch thread.
+	 * Only used on that thread.
+	 */
+	private int paintingCells;
+
+	/**
+	 * Held while the result set's cursor is being moved, so the background
+	 * thread and the event dispatch thread never move it at the same time.
+	 */
+	private final Object cursorLock = new Object();
+
+	/**
+	 * Reads pages and counts rows. Created when first needed.
+	 */
+	private ExecutorService loader;
+
+	/**
+	 * The column names, labels and classes, read from the result set's
+	 * metadata the first time they are needed. Null until the metadata is
+	 * available.
+	 */
+	private volatile ColumnInfo columns;
+
+	/**
+	 * True while waiting on a background thread for metadata that is not
+	 * available yet.
+	 */
+	private boolean waitingForMetaData;
+
+	private static class ColumnInfo {
+		final String[] names;
+		final String[] labels;
+		final Class<?>[] classes;
+
+		ColumnInfo(ResultSetMetaData rsmd) throws SQLException {
+			int count = rsmd.getColumnCount();
+			names = new String[count];
+			labels = new String[count];
+			classes = new Class<?>[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = rsmd.getColumnName(i + 1);
+				String label = rsmd.getColumnLabel(i + 1);
+				labels[i] = (label == null || label.equals("")) ? names[i] : label;
+				classes[i] = columnClass(rsmd.getColumnType(i + 1));
+			}
+		}
+	}
+
 	/**
 	 * The result set passed in here must be scrollable. If it is not
 	 * it should be wrapped in a CachedRowSet first.
 	 * 
 	 */
 	public ResultSetTableModel(@Nullable ResultSet result) {
+		this(result, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+	}
+
+	/**
+	 * @param result
+	 *            The rows to show. It must be scrollable.
+	 * @param pageSize
+	 *            The number of rows read from the result set at a time.
+	 * @param maxPages
+	 *            The most pages kept in memory.
+	 */
+	public ResultSetTableModel(@Nullable ResultSet result, int pageSize, int maxPages) {
+		if (pageSize < 1 || maxPages < 2) {
+			throw new IllegalArgumentException("Need pages of at least one row and room for two pages");
+		}
 		this.rs = result;
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
 	}
 	
 	/**
@@ -56,118 +202,435 @@ public class ResultSetTableModel extends AbstractTableModel {
 	 */
 	public void setRs(ResultSet rs) {
 		this.rs = rs;
+		columns = null;
+		synchronized (pages) {
+			knownRowCount = 0;
+			counting = false;
+			rowCountKnown = false;
+		}
+		invalidate();
 	}
-	
-	public int getColumnCount() {
-		if (rs == null) {
+
+	/**
+	 * Tables showing this model call this with true before they paint, and
+	 * with false once they are done. Between the two this model does not
+	 * wait for rows of a result set that isn't a {@link CachedRowSet}; it
+	 * reads them in the background instead. Must be called on the event
+	 * dispatch thread.
+	 */
+	public void setPaintingCells(boolean painting) {
+		if (painting) {
+			paintingCells++;
+		} else {
+			paintingCells--;
+		}
+	}
+
+	/**
+	 * Makes rows that aren't in the window yet be read right away on the event
+	 * dispatch thread, even while a table paints, until
+	 * {@link #resumeDeferredReads(int)} is called. This is for code that needs
+	 * every row of the model at once, like a sort. Returns the value to pass
+	 * to resumeDeferredReads.
+	 */
+	int suspendDeferredReads() {
+		if (!SwingUtilities.isEventDispatchThread()) {
 			return 0;
 		}
+		int painting = paintingCells;
+		paintingCells = 0;
+		return painting;
+	}
+
+	/**
+	 * Undoes {@link #suspendDeferredReads()}.
+	 */
+	void resumeDeferredReads(int painting) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			paintingCells = painting;
+		}
+	}
+
+	/**
+	 * Returns true if rows that aren't in the window yet should be read in
+	 * the background instead of waited for.
+	 */
+	private boolean isDeferringReads() {
+		return SwingUtilities.isEventDispatchThread() && paintingCells > 0;
+	}
+
+	/**
+	 * Throws away the window, and any pages being read.
+	 */
+	private void invalidate() {
+		synchronized (pages) {
+			generation++;
+			pages.clear();
+			pendingPages.clear();
+		}
+	}
+
+	/**
+	 * Returns the column information, or null if the result set's metadata
+	 * isn't available yet. In that case the metadata is waited for on a
+	 * background thread, and the table's structure is updated when it arrives.
+	 */
+	private ColumnInfo getColumns() {
+		ColumnInfo info = columns;
+		if (info != null || rs == null) {
+			return info;
+		}
 		try {
-			int i = 0;
-			while (rs.getMetaData() == null && i < 100) {
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					// no op
-				}
-				if (rs.getMetaData()!= null) {
-					break;
-				} else {
-					i++;
-				}
-			}
-			if (rs.getMetaData()!= null) {
-				return rs.getMetaData().getColumnCount();
+			ResultSetMetaData rsmd = rs.getMetaData();
+			if (rsmd != null) {
+				columns = info = new ColumnInfo(rsmd);
 			} else {
-				return 0;
+				waitForMetaData();
 			}
+			return info;
 		} catch (SQLException e) {
 			throw new RuntimeException("Could not get the column count from the result set meta data.", e);
 		}
 	}
 
+	/**
+	 * Polls for the result set's metadata on the background thread for up to
+	 * 10 seconds, and fires a structure change once it appears.
+	 */
+	private void waitForMetaData() {
+		synchronized (pages) {
+			if (waitingForMetaData) {
+				return;
+			}
+			waitingForMetaData = true;
+		}
+		final ResultSet waitingFor = rs;
+		getLoader().execute(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < 100 && waitingFor == rs; i++) {
+						if (waitingFor.getMetaData() != null) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									if (waitingFor == rs) {
+										fireTableStructureChanged();
+									}
+								}
+							});
+							return;
+						}
+						Thread.sleep(100);
+					}
+				} catch (InterruptedException e) {
+					// give up
+				} catch (SQLException e) {
+					logger.error("Could not get the result set meta data", e);
+				} finally {
+					synchronized (pages) {
+						waitingForMetaData = false;
+					}
+				}
+			}
+		});
+	}
+
+	public int getColumnCount() {
+		ColumnInfo info = getColumns();
+		return info == null ? 0 : info.names.length;
+	}
+
 	public int getRowCount() {
+		ResultSet rs = this.rs;
 		if (rs == null) {
 			return 0;
 		}
-		int newRowCount;
+		if (rs instanceof CachedRowSet) {
+			return ((CachedRowSet) rs).size();
+		}
+		final int gen;
+		synchronized (pages) {
+			if (rowCountKnown) {
+				return knownRowCount;
+			}
+			if (isDeferringReads()) {
+				if (!counting) {
+					counting = true;
+					requestPage(0);
+					getLoader().execute(countRows(generation));
+				}
+				return knownRowCount;
+			}
+			gen = generation;
+		}
+		final int count;
 		try {
-			int prevRow = rs.getRow();
-			rs.afterLast();
-			newRowCount = rs.getRow();
-			rs.absolute(prevRow);
+			count = countRowsNow();
 		} catch (SQLException e) {
 			throw new RuntimeException("Could not access the result set given to the table model", e);
 		}
-		return newRowCount;
+		if (SwingUtilities.isEventDispatchThread()) {
+			rowCountFound(gen, count);
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					rowCountFound(gen, count);
+				}
+			});
+		}
+		return count;
 	}
 
 	public Object getValueAt(int rowIndex, int columnIndex) {
 		if (rs == null) {
 			return null;
 		}
-		try {
+		int page = rowIndex / pageSize;
+		int offset = rowIndex % pageSize;
+		Object[][] rows;
+		synchronized (pages) {
+			rows = pages.get(page);
+		}
+		if (rows == null) {
+			if (rs instanceof CachedRowSet || !isDeferringReads()) {
+				try {
+					int gen = generation;
+					rows = readPage(page);
+					cachePage(gen, page, rows);
+				} catch (SQLException e) {
+					throw new RuntimeException(" Could not access the result set given the rowIndex or columnIndex.", e);
+				}
+			} else {
+				requestPage(page);
+				return null;
+			}
+		}
+		if (offset >= pageSize / 2 && isDeferringReads()) {
+			// read ahead of the user scrolling down
+			requestPage(page + 1);
+		}
+		if (offset >= rows.length || columnIndex >= rows[offset].length) {
+			return null;
+		}
+		return rows[offset][columnIndex];
+	}
+
+	/**
+	 * Reads the given page from the result set, leaving the cursor where it
+	 * was.
+	 */
+	private Object[][] readPage(int page) throws SQLException {
+		ResultSet rs = this.rs;
+		List<Object[]> rows = new ArrayList<Object[]>(pageSize);
+		synchronized (cursorLock) {
 			int prevRow = rs.getRow();
-			rs.absolute(rowIndex + 1);
-			Object objectAtPosition = rs.getObject(columnIndex + 1);
+			int colCount = rs.getMetaData().getColumnCount();
+			if (rs.absolute(page * pageSize + 1)) {
+				do {
+					Object[] row = new Object[colCount];
+					for (int i = 0; i < colCount; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					rows.add(row);
+				} while (rows.size() < pageSize && rs.next());
+			}
 			rs.absolute(prevRow);
-			return objectAtPosition;
-		} catch (SQLException e) {
-			throw new RuntimeException(" Could not access the result set given the rowIndex or columnIndex.", e);
 		}
+		return rows.toArray(new Object[rows.size()][]);
 	}
-	
+
+	/**
+	 * Puts the given page in the window, unless the result set has changed
+	 * since the page was read, evicting the least recently used pages past
+	 * {@link #maxPages}.
+	 */
+	private boolean cachePage(int gen, int page, Object[][] rows) {
+		synchronized (pages) {
+			pendingPages.remove(page);
+			if (gen != generation) {
+				return false;
+			}
+			pages.put(page, rows);
+			Iterator<Integer> it = pages.keySet().iterator();
+			while (pages.size() > maxPages && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Queues the given page to be read on the background thread, unless it
+	 * is already in the window, queued, or past the end of the results. A
+	 * CachedRowSet is never read in the background.
+	 */
+	private void requestPage(final int page) {
+		if (rs instanceof CachedRowSet) {
+			return;
+		}
+		final int gen;
+		synchronized (pages) {
+			if (pages.containsKey(page) || pendingPages.contains(page)
+					|| (page > 0 && page * pageSize >= getRowCountForPrefetch())) {
+				return;
+			}
+			pendingPages.add(page);
+			gen = generation;
+		}
+		getLoader().execute(new Runnable() {
+			public void run() {
+				if (gen != generation) {
+					return;
+				}
+				final Object[][] rows;
+				try {
+					rows = readPage(page);
+				} catch (SQLException e) {
+					logger.error("Could not read rows " + page * pageSize + " to " +
+							((page + 1) * pageSize - 1) + " of the result set", e);
+					synchronized (pages) {
+						pendingPages.remove(page);
+					}
+					return;
+				}
+				if (!cachePage(gen, page, rows) || rows.length == 0) {
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (gen != generation) {
+							return;
+						}
+						int first = page * pageSize;
+						int last = first + rows.length - 1;
+						int oldCount = getRowCount();
+						if (!(rs instanceof CachedRowSet) && last >= oldCount) {
+							knownRowCount = last + 1;
+							fireTableRowsInserted(oldCount, last);
+						}
+						if (first < oldCount) {
+							fireTableRowsUpdated(first, Math.min(last, oldCount - 1));
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the row count to limit read-ahead by. Pages past the known end
+	 * of a result set that is still being counted may exist, so they are
+	 * read anyway. Must be called holding the lock on {@link #pages}.
+	 */
+	private int getRowCountForPrefetch() {
+		return rowCountKnown ? knownRowCount : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Counts the rows of the result set, leaving the cursor where it was.
+	 */
+	private int countRowsNow() throws SQLException {
+		ResultSet rs = this.rs;
+		synchronized (cursorLock) {
+			int prevRow = rs.getRow();
+			int count = rs.last() ? rs.getRow() : 0;
+			rs.absolute(prevRow);
+			return count;
+		}
+	}
+
+	/**
+	 * Records the full row count of a result set that isn't a CachedRowSet,
+	 * unless it has changed since the count was started, and tells the
+	 * table about the rows it didn't know of. Must be called on the event
+	 * dispatch thread.
+	 */
+	private void rowCountFound(int gen, int count) {
+		synchronized (pages) {
+			if (gen != generation || rowCountKnown) {
+				return;
+			}
+			rowCountKnown = true;
+		}
+		if (count > knownRowCount) {
+			int oldCount = knownRowCount;
+			knownRowCount = count;
+			fireTableRowsInserted(oldCount, count - 1);
+		}
+	}
+
+	/**
+	 * Finds the number of rows in a result set that isn't a CachedRowSet, and
+	 * tells the table about the rows it didn't know of.
+	 */
+	private Runnable countRows(final int gen) {
+		return new Runnable() {
+			public void run() {
+				final int count;
+				try {
+					count = countRowsNow();
+				} catch (SQLException e) {
+					logger.error("Could not count the rows of the result set", e);
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						rowCountFound(gen, count);
+					}
+				});
+			}
+		};
+	}
+
+	private synchronized ExecutorService getLoader() {
+		if (loader == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Result set table model page reader");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			loader = executor;
+		}
+		return loader;
+	}
+
 	@Override
 	public int findColumn(String columnName) {
-		if (rs == null) {
+		ColumnInfo info = getColumns();
+		if (info == null) {
 			return -1;
 		}
-		try {
-			for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-				if (rs.getMetaData().getColumnName(i).equals(columnName)) {
-					return i;
-				}
+		for (int i = 0; i < info.names.length; i++) {
+			if (info.names[i].equals(columnName)) {
+				return i;
 			}
-		} catch (SQLException e) {
-			throw new RuntimeException("Could not access the result set.", e);
 		}
 		return -1;
 	}
 	
 	@Override
 	public String getColumnName(int column){
-		if (rs == null) {
+		ColumnInfo info = getColumns();
+		if (info == null) {
 			return "";
 		}
-		try {
-			String colName = rs.getMetaData().getColumnLabel(column + 1);
-			if (colName == null || colName.equals("")) {
-				colName = rs.getMetaData().getColumnName(column + 1);
-			}
-			return colName;
-		} catch (SQLException e) {
-			throw new RuntimeException("Could not get the column name.", e);
-		}
+		return info.labels[column];
 	}
 	
 	@Override
 	public Class<?> getColumnClass(int columnIndex) {
-		if (rs == null) {
+		ColumnInfo info = getColumns();
+		if (info == null || columnIndex < 0 || columnIndex >= info.classes.length) {
 			return Object.class;
 		}
-		try {
-			if (columnIndex < 0 || columnIndex >= rs.getMetaData().getColumnCount()) {
-				return Object.class;
-			}
-		} catch (SQLException e1) {
-			throw new RuntimeException(e1);
-		}
-		int columnType;
-		try {
-			columnType = rs.getMetaData().getColumnType(columnIndex + 1);
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
-		}
+		return info.classes[columnIndex];
+	}
+
+	private static Class<?> columnClass(int columnType) {
 		if (columnType == Types.VARCHAR) {
 			return String.class;
 		} else if (columnType == Types.BIT || columnType == Types.INTEGER || columnType == Types.SMALLINT || columnType == Types.TINYINT) {
@@ -178,13 +641,13 @@ public class ResultSetTableModel extends AbstractTableModel {
 			return Float.class;
 		}
 		return Object.class;
-		
 	}
 
     /**
      * Hook for allowing this model to properly track streaming queries. Call
      * this method whenever the resultset in this model has more, less, or
-     * different data than before.
+     * different data than before. Callers should coalesce their changes, as
+     * this throws away the window of rows read so far.
      */
     public void dataChanged() {
     	if (!SwingUtilities.isEventDispatchThread()) {
@@ -192,9 +655,64 @@ public class ResultSetTableModel extends AbstractTableModel {
     		// this method from threads that are not from the vent dispatch one.
     		throw new RuntimeException("A call to a UI update was sent from a thread other than the event dispatch thread. See ResultSetTableModel.");
     	}
+    	synchronized (pages) {
+    		knownRowCount = 0;
+    		counting = false;
+    		rowCountKnown = false;
+    	}
+    	invalidate();
         fireTableDataChanged();
     }
-	
+
+	/**
+	 * Call this when rows have been added to the end of a {@link CachedRowSet}
+	 * result set and nothing else about it has changed. Unlike
+	 * {@link #dataChanged()}, the pages before the new rows are kept and the
+	 * listeners are only told about the rows inserted, so a sorted view of
+	 * this model only has to sort the new rows. Other result sets are treated
+	 * as in {@link #dataChanged()}.
+	 *
+	 * @param firstNewRow
+	 *            The index of the first row added since the listeners were
+	 *            last told the row count.
+	 */
+	public void rowsAppended(int firstNewRow) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			throw new RuntimeException("A call to a UI update was sent from a thread other than the event dispatch thread. See ResultSetTableModel.");
+		}
+		if (!(rs instanceof CachedRowSet)) {
+			dataChanged();
+			return;
+		}
+		int count = getRowCount();
+		if (firstNewRow >= count) {
+			return;
+		}
+		synchronized (pages) {
+			// the page the new rows start in was read short, and read-ahead
+			// may have read the pages after it empty
+			generation++;
+			pendingPages.clear();
+			Iterator<Integer> it = pages.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next() >= firstNewRow / pageSize) {
+					it.remove();
+				}
+			}
+		}
+		fireTableRowsInserted(firstNewRow, count - 1);
+	}
+
+    /**
+     * Returns the number of pages in the window. This is exposed as
+     * package-private so that the tests can examine it.
+     */
+    int getCachedPageCount() {
+    	synchronized (pages) {
+    		return pages.size();
+    	}
+    }
+
     public boolean isRsPresent() {
     	return !(this.rs == null);
     }
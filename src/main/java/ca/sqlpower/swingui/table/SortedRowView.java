@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.swing.table.TableModel;
+
+/**
+ * An order of a table model's rows by a list of sort columns, as worked out
+ * by {@link TableModelSortDecorator}. Instances never change once made, so
+ * one can be built on a background thread and handed to the event dispatch
+ * thread whole.
+ * <p>
+ * The values of the sort columns are read out of the model once, by
+ * {@link #readColumns(TableModel, int[], int, int)} on the thread that owns
+ * the model, into primitive arrays where the column holds only numbers or
+ * dates, or into arrays of strings where it is compared by its string
+ * values, so sorting does not call the model or box values for every
+ * comparison. The keys are kept so rows appended to the model later can be
+ * sorted on their own and merged in.
+ */
+class SortedRowView {
+
+    /**
+     * The values of one sort column, and how they compare. The arrays can be
+     * longer than the number of rows the key holds, leaving room for the
+     * rows of one appended key to be written after them.
+     */
+    private static abstract class SortKey {
+        final int size;
+        final boolean[] nulls;
+
+        /**
+         * Set once a key has been made by writing past the end of this key's
+         * arrays, so only one key ever does.
+         */
+        private boolean extended;
+
+        SortKey(boolean[] nulls, int size) {
+            this.nulls = nulls;
+            this.size = size;
+        }
+
+        /**
+         * Compares the values of the given rows. Null is less than
+         * everything except null.
+         */
+        final int compare(int row1, int row2) {
+            if (nulls[row1]) {
+                return nulls[row2] ? 0 : -1;
+            } else if (nulls[row2]) {
+                return 1;
+            }
+            return compareValues(row1, row2);
+        }
+
+        /**
+         * Returns true if a key holding the given number of rows can use this
+         * key's arrays, which this key never reads past its own size.
+         */
+        final synchronized boolean extendInPlace(int newSize) {
+            if (extended || newSize > nulls.length) {
+                return false;
+            }
+            extended = true;
+            return true;
+        }
+
+        abstract int compareValues(int row1, int row2);
+
+        /**
+         * Returns true if the given values can be held in this kind of key.
+         */
+        abstract boolean accepts(Object[] values);
+
+        /**
+         * Returns a key holding this one's values followed by the given
+         * values, which must be {@link #accepts(Object[]) accepted}.
+         */
+        abstract SortKey append(Object[] values);
+    }
+
+    /**
+     * Returns the length to give arrays that are grown to hold the given
+     * number of rows, leaving room for more to be appended.
+     */
+    private static int grownLength(int size) {
+        return size + (size >> 1) + 16;
+    }
+
+    private static class LongKey extends SortKey {
+        final long[] values;
+        final boolean dates;
+
+        private LongKey(long[] values, boolean[] nulls, int size, boolean dates) {
+            super(nulls, size);
+            this.values = values;
+            this.dates = dates;
+        }
+
+        static LongKey make(Object[] values, boolean dates) {
+            long[] longs = new long[values.length];
+            boolean[] nulls = new boolean[values.length];
+            fill(longs, nulls, 0, values, dates);
+            return new LongKey(longs, nulls, values.length, dates);
+        }
+
+        private static void fill(long[] longs, boolean[] nulls, int from, Object[] values, boolean dates) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    nulls[from + i] = true;
+                } else {
+                    longs[from + i] = dates ? ((java.util.Date) values[i]).getTime() : ((Number) values[i]).longValue();
+                }
+            }
+        }
+
+        int compareValues(int row1, int row2) {
+            long v1 = values[row1];
+            long v2 = values[row2];
+            return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        }
+
+        boolean accepts(Object[] newValues) {
+            return kindOf(newValues) == (dates ? Kind.DATE : Kind.INTEGRAL);
+        }
+
+        SortKey append(Object[] newValues) {
+            int newSize = size + newValues.length;
+            long[] longs = values;
+            boolean[] newNulls = nulls;
+            if (!extendInPlace(newSize)) {
+                longs = Arrays.copyOf(values, grownLength(newSize));
+                newNulls = Arrays.copyOf(nulls, longs.length);
+            }
+            fill(longs, newNulls, size, newValues, dates);
+            return new LongKey(longs, newNulls, newSize, dates);
+        }
+    }
+
+    private static class DoubleKey extends SortKey {
+        final double[] values;
+
+        private DoubleKey(double[] values, boolean[] nulls, int size) {
+            super(nulls, size);
+            this.values = values;
+        }
+
+        static DoubleKey make(Object[] values) {
+            double[] doubles = new double[values.length];
+            boolean[] nulls = new boolean[values.length];
+            fill(doubles, nulls, 0, values);
+            return new DoubleKey(doubles, nulls, values.length);
+        }
+
+        private static void fill(double[] doubles, boolean[] nulls, int from, Object[] values) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    nulls[from + i] = true;
+                } else {
+                    doubles[from + i] = ((Number) values[i]).doubleValue();
+                }
+            }
+        }
+
+        int compareValues(int row1, int row2) {
+            return Double.compare(values[row1], values[row2]);
+        }
+
+        boolean accepts(Object[] newValues) {
+            Kind kind = kindOf(newValues);
+            return kind == Kind.INTEGRAL || kind == Kind.FLOATING;
+        }
+
+        SortKey append(Object[] newValues) {
+            int newSize = size + newValues.length;
+            double[] doubles = values;
+            boolean[] newNulls = nulls;
+            if (!extendInPlace(newSize)) {
+                doubles = Arrays.copyOf(values, grownLength(newSize));
+                newNulls = Arrays.copyOf(nulls, doubles.length);
+            }
+            fill(doubles, newNulls, size, newValues);
+            return new DoubleKey(doubles, newNulls, newSize);
+        }
+    }
+
+    private static class ObjectKey extends SortKey {
+        final Object[] values;
+        final Comparator<Object> comparator;
+
+        ObjectKey(Object[] values, Comparator<Object> comparator) {
+            this(values, nullsOf(values), values.length, comparator);
+        }
+
+        ObjectKey(Object[] values, boolean[] nulls, int size, Comparator<Object> comparator) {
+            super(nulls, size);
+            this.values = values;
+            this.comparator = comparator;
+        }
+
+        private static boolean[] nullsOf(Object[] values) {
+            boolean[] nulls = new boolean[values.length];
+            for (int i = 0; i < values.length; i++) {
+                nulls[i] = values[i] == null;
+            }
+            return nulls;
+        }
+
+        int compareValues(int row1, int row2) {
+            return comparator.compare(values[row1], values[row2]);
+        }
+
+        boolean accepts(Object[] newValues) {
+            return true;
+        }
+
+        SortKey append(Object[] newValues) {
+            int newSize = size + newValues.length;
+            Object[] objects = values;
+            boolean[] newNulls = nulls;
+            if (!extendInPlace(newSize)) {
+                objects = Arrays.copyOf(values, grownLength(newSize));
+                newNulls = Arrays.copyOf(nulls, objects.length);
+            }
+            for (int i = 0; i < newValues.length; i++) {
+                objects[size + i] = newValues[i];
+                newNulls[size + i] = newValues[i] == null;
+            }
+            return withValues(objects, newNulls, newSize);
+        }
+
+        /**
+         * Makes a key of the same kind as this one with the given values.
+         */
+        ObjectKey withValues(Object[] objects, boolean[] newNulls, int newSize) {
+            return new ObjectKey(objects, newNulls, newSize, comparator);
+        }
+    }
+
+    /**
+     * Compares strings made from the column values ahead of time, so the
+     * values' toString() isn't called for every comparison.
+     */
+    private static class StringKey extends ObjectKey {
+        StringKey(Object[] values) {
+            super(toStrings(values), STRING_ORDER);
+        }
+
+        private StringKey(Object[] values, boolean[] nulls, int size) {
+            super(values, nulls, size, STRING_ORDER);
+        }
+
+        private static Object[] toStrings(Object[] values) {
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                strings[i] = values[i] == null ? null : values[i].toString();
+            }
+            return strings;
+        }
+
+        @Override
+        SortKey append(Object[] newValues) {
+            return super.append(toStrings(newValues));
+        }
+
+        @Override
+        ObjectKey withValues(Object[] objects, boolean[] newNulls, int newSize) {
+            return new StringKey(objects, newNulls, newSize);
+        }
+    }
+
+    private static final Comparator<Object> STRING_ORDER = new Comparator<Object>() {
+        public int compare(Object o1, Object o2) {
+            return ((String) o1).compareTo((String) o2);
+        }
+    };
+
+    private enum Kind { INTEGRAL, FLOATING, DATE, OTHER }
+
+    /**
+     * Returns the kind of primitive key that can hold all the given values.
+     * All nulls count as integral.
+     */
+    private static Kind kindOf(Object[] values) {
+        Kind kind = Kind.INTEGRAL;
+        boolean sawDate = false;
+        boolean sawNumber = false;
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            Class<?> c = value.getClass();
+            if (c == Integer.class || c == Long.class || c == Short.class || c == Byte.class) {
+                sawNumber = true;
+            } else if (c == Double.class || c == Float.class) {
+                sawNumber = true;
+                kind = Kind.FLOATING;
+            } else if (c == java.util.Date.class || c == java.sql.Date.class) {
+                sawDate = true;
+            } else {
+                return Kind.OTHER;
+            }
+            if (sawDate && sawNumber) {
+                return Kind.OTHER;
+            }
+        }
+        return sawDate ? Kind.DATE : kind;
+    }
+
+    /**
+     * Makes the key for a column whose values are compared with the given
+     * comparator.
+     */
+    @SuppressWarnings("unchecked")
+    private static SortKey makeKey(Object[] values, Comparator<?> comparator) {
+        if (comparator == TableModelSortDecorator.COMPARABLE_COMAPRATOR) {
+            switch (kindOf(values)) {
+            case INTEGRAL:
+                return LongKey.make(values, false);
+            case FLOATING:
+                return DoubleKey.make(values);
+            case DATE:
+                return LongKey.make(values, true);
+            default:
+                break;
+            }
+        } else if (comparator == TableModelSortDecorator.LEXICAL_COMPARATOR) {
+            return new StringKey(values);
+        }
+        return new ObjectKey(values, (Comparator<Object>) comparator);
+    }
+
+    /**
+     * Reads the values of the given columns for the given rows, as the
+     * values to pass to {@link #sort(Object[][], boolean[], Comparator[])}
+     * or {@link #append(Object[][])}. This is the only part of sorting that
+     * calls the model, so it is done on the thread the model belongs to and
+     * the rest can be done on any thread.
+     */
+    static Object[][] readColumns(TableModel model, int[] columns, int fromRow, int toRow) {
+        Object[][] values = new Object[columns.length][toRow - fromRow];
+        for (int i = 0; i < columns.length; i++) {
+            for (int row = fromRow; row < toRow; row++) {
+                values[i][row - fromRow] = model.getValueAt(row, columns[i]);
+            }
+        }
+        return values;
+    }
+
+    private final boolean[] descending;
+    private final SortKey[] keys;
+
+    /**
+     * The model index of the row at each view index.
+     */
+    final int[] viewToModel;
+
+    /**
+     * The view index of the row at each model index.
+     */
+    final int[] modelToView;
+
+    private SortedRowView(boolean[] descending, SortKey[] keys, int[] viewToModel) {
+        this.descending = descending;
+        this.keys = keys;
+        this.viewToModel = viewToModel;
+        modelToView = new int[viewToModel.length];
+        for (int i = 0; i < viewToModel.length; i++) {
+            modelToView[viewToModel[i]] = i;
+        }
+    }
+
+    /**
+     * Sorts rows by the given values.
+     *
+     * @param values
+     *            The values of each of the sort columns for every row, most
+     *            significant first, as read by {@link #readColumns(TableModel, int[], int, int)}.
+     * @param descending
+     *            Whether each of the sort columns sorts in descending order.
+     * @param comparators
+     *            The comparator for each of the sort columns.
+     */
+    static SortedRowView sort(Object[][] values, boolean[] descending, Comparator<?>[] comparators) {
+        int rowCount = values.length == 0 ? 0 : values[0].length;
+        SortKey[] keys = new SortKey[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = makeKey(values[i], comparators[i]);
+        }
+        int[] order = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+        }
+        new RowOrder(keys, descending).sort(order);
+        return new SortedRowView(descending, keys, order);
+    }
+
+    /**
+     * Returns true if the values of rows appended to the model can be held in
+     * the keys made for this view's rows, so they can be
+     * {@link #append(Object[][]) merged in} rather than the whole model being
+     * sorted again.
+     */
+    boolean canAppend(Object[][] newValues) {
+        for (int i = 0; i < keys.length; i++) {
+            if (!keys[i].accepts(newValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a view that also has the rows the model has gained at its end
+     * since this one was made, sorting only the new rows and merging them
+     * in. The new rows' values must be ones this view
+     * {@link #canAppend(Object[][]) can append}.
+     */
+    SortedRowView append(Object[][] newValues) {
+        int oldCount = size();
+        int addedCount = keys.length == 0 ? 0 : newValues[0].length;
+        int newCount = oldCount + addedCount;
+        SortKey[] newKeys = new SortKey[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            newKeys[i] = keys[i].append(newValues[i]);
+        }
+        RowOrder order = new RowOrder(newKeys, descending);
+        int[] added = new int[addedCount];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = oldCount + i;
+        }
+        order.sort(added);
+
+        // merge, taking old rows first on ties as a full sort would
+        int[] merged = new int[newCount];
+        int i = 0, j = 0, k = 0;
+        while (i < oldCount && j < added.length) {
+            merged[k++] = order.compare(added[j], viewToModel[i]) < 0 ? added[j++] : viewToModel[i++];
+        }
+        System.arraycopy(viewToModel, i, merged, k, oldCount - i);
+        System.arraycopy(added, j, merged, k + oldCount - i, added.length - j);
+        return new SortedRowView(descending, newKeys, merged);
+    }
+
+    /**
+     * Returns the number of rows in this view.
+     */
+    int size() {
+        return viewToModel.length;
+    }
+
+    /**
+     * Compares rows by the sort keys in turn, and sorts arrays of row
+     * indexes with a stable merge sort.
+     */
+    private static class RowOrder {
+        private final SortKey[] keys;
+        private final boolean[] descending;
+
+        RowOrder(SortKey[] keys, boolean[] descending) {
+            this.keys = keys;
+            this.descending = descending;
+        }
+
+        int compare(int row1, int row2) {
+            for (int i = 0; i < keys.length; i++) {
+                int comparison = keys[i].compare(row1, row2);
+                if (comparison != 0) {
+                    return descending[i] ? -comparison : comparison;
+                }
+            }
+            return 0;
+        }
+
+        void sort(int[] rows) {
+            int[] buffer = rows.clone();
+            mergeSort(buffer, rows, 0, rows.length);
+        }
+
+        /**
+         * Sorts src[from..to) into dest[from..to). Both arrays must start
+         * out with the same contents.
+         */
+        private void mergeSort(int[] src, int[] dest, int from, int to) {
+            if (to - from < 8) {
+                for (int i = from + 1; i < to; i++) {
+                    for (int j = i; j > from && compare(dest[j - 1], dest[j]) > 0; j--) {
+                        int t = dest[j];
+                        dest[j] = dest[j - 1];
+                        dest[j - 1] = t;
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            mergeSort(dest, src, from, mid);
+            mergeSort(dest, src, mid, to);
+            if (compare(src[mid - 1], src[mid]) <= 0) {
+                System.arraycopy(src, from, dest, from, to - from);
+                return;
+            }
+            for (int i = from, p = from, q = mid; i < to; i++) {
+                if (q >= to || (p < mid && compare(src[p], src[q]) <= 0)) {
+                    dest[i] = src[p++];
+                } else {
+                    dest[i] = src[q++];
+                }
+            }
+        }
+    }
+}
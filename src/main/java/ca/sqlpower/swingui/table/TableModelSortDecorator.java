@@ -16,25 +16,30 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
  */
-package ca.sqlpower.swingui.table;
-
+package ca.sqlpower.swingui.table;
+
 import java.awt.Component;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
@@ -44,529 +49,712 @@ import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 
 import org.apache.log4j.Logger;
-
-/**
- * TableSorter is a decorator for TableModels; adding sorting
- * functionality to a supplied TableModel. TableSorter does
- * not store or copy the data in its TableModel; instead it maintains
- * a map from the row indexes of the view to the row indexes of the
- * model. As requests are made of the sorter (like getValueAt(row, col))
- * they are passed to the underlying model after the row numbers
- * have been translated via the internal mapping array. This way,
- * the TableSorter appears to hold another copy of the table
- * with the rows in a different order.
- * <p/>
- * TableSorter registers itself as a listener to the underlying model,
- * just as the JTable itself would. Events recieved from the model
- * are examined, sometimes manipulated (typically widened), and then
- * passed on to the TableSorter's listeners (typically the JTable).
- * If a change to the model has invalidated the order of TableSorter's
- * rows, a note of this is made and the sorter will resort the
- * rows the next time a value is requested.
- * <p/>
- * When the tableHeader property is set, either by using the
- * setTableHeader() method or the two argument constructor, the
- * table header may be used as a complete UI for TableSorter.
- * The default renderer of the tableHeader is decorated with a renderer
- * that indicates the sorting status of each column. In addition,
- * a mouse listener is installed with the following behavior:
- * <ul>
- * <li>
- * Mouse-click: Clears the sorting status of all other columns
- * and advances the sorting status of that column through three
- * values: {NOT_SORTED, ASCENDING, DESCENDING} (then back to
- * NOT_SORTED again).
- * <li>
- * SHIFT-mouse-click: Clears the sorting status of all other columns
- * and cycles the sorting status of the column through the same
- * three values, in the opposite order: {NOT_SORTED, DESCENDING, ASCENDING}.
- * <li>
- * CONTROL-mouse-click and CONTROL-SHIFT-mouse-click: as above except
- * that the changes to the column do not cancel the statuses of columns
- * that are already sorting - giving a way to initiate a compound
- * sort.
- * </ul>
- * <p/>
- * This is a long overdue rewrite of a class of the same name that
- * first appeared in the swing table demos in 1997.
- *
- * @author Philip Milne
- * @author Brendon McLean
- * @author Dan van Enckevort
- * @author Parwinder Sekhon
- * @version 2.0 02/27/04
- */
-
+
+/**
+ * TableSorter is a decorator for TableModels; adding sorting
+ * functionality to a supplied TableModel. TableSorter does
+ * not store or copy the data in its TableModel; instead it maintains
+ * a map from the row indexes of the view to the row indexes of the
+ * model. As requests are made of the sorter (like getValueAt(row, col))
+ * they are passed to the underlying model after the row numbers
+ * have been translated via the internal mapping array. This way,
+ * the TableSorter appears to hold another copy of the table
+ * with the rows in a different order.
+ * <p/>
+ * TableSorter registers itself as a listener to the underlying model,
+ * just as the JTable itself would. Events recieved from the model
+ * are examined, sometimes manipulated (typically widened), and then
+ * passed on to the TableSorter's listeners (typically the JTable).
+ * If a change to the model has invalidated the order of TableSorter's
+ * rows, a note of this is made and the sorter will resort the
+ * rows the next time a value is requested.
+ * <p/>
+ * The values of the sorting columns are read out of the model once per
+ * sort, into primitive arrays where they are numbers or dates (see
+ * {@link SortedRowView}). When a large model is sorted on the event
+ * dispatch thread, the values are read there and sorted on a background
+ * thread instead, and the rows stay in their old order until the new one is
+ * swapped in and a data changed event is fired. Rows appended to the end of
+ * the model are sorted on their own and merged into the existing order
+ * rather than sorting the whole model again.
+ * <p/>
+ * When the tableHeader property is set, either by using the
+ * setTableHeader() method or the two argument constructor, the
+ * table header may be used as a complete UI for TableSorter.
+ * The default renderer of the tableHeader is decorated with a renderer
+ * that indicates the sorting status of each column. In addition,
+ * a mouse listener is installed with the following behavior:
+ * <ul>
+ * <li>
+ * Mouse-click: Clears the sorting status of all other columns
+ * and advances the sorting status of that column through three
+ * values: {NOT_SORTED, ASCENDING, DESCENDING} (then back to
+ * NOT_SORTED again).
+ * <li>
+ * SHIFT-mouse-click: Clears the sorting status of all other columns
+ * and cycles the sorting status of the column through the same
+ * three values, in the opposite order: {NOT_SORTED, DESCENDING, ASCENDING}.
+ * <li>
+ * CONTROL-mouse-click and CONTROL-SHIFT-mouse-click: as above except
+ * that the changes to the column do not cancel the statuses of columns
+ * that are already sorting - giving a way to initiate a compound
+ * sort.
+ * </ul>
+ * <p/>
+ * This is a long overdue rewrite of a class of the same name that
+ * first appeared in the swing table demos in 1997.
+ *
+ * @author Philip Milne
+ * @author Brendon McLean
+ * @author Dan van Enckevort
+ * @author Parwinder Sekhon
+ * @version 2.0 02/27/04
+ */
+
 public class TableModelSortDecorator extends AbstractTableModel implements CleanupTableModel, TableModelWrapper {
 	
 	private final AtomicBoolean arraysUpToDate = new AtomicBoolean(false);
-	
-	private static final Logger logger = Logger.getLogger(TableModelSortDecorator.class);
-	
-    protected TableModel tableModel;
-
-    public static final int DESCENDING = -1;
-    public static final int NOT_SORTED = 0;
-    public static final int ASCENDING = 1;
-
-    private static Directive EMPTY_DIRECTIVE = new Directive(-1, NOT_SORTED);
-
-    public static final Comparator COMPARABLE_COMAPRATOR = new Comparator() {
-        public int compare(Object o1, Object o2) {
-            return ((Comparable) o1).compareTo(o2);
-        }
-    };
-    public static final Comparator LEXICAL_COMPARATOR = new Comparator() {
-        public int compare(Object o1, Object o2) {
-            return o1.toString().compareTo(o2.toString());
-        }
-    };
-
-    private Row[] viewToModel;
-    private int[] modelToView;
-
-    private JTableHeader tableHeader;
-    private MouseListener mouseListener;
-    private TableModelListener tableModelListener;
-    private Map<Class, Comparator> columnComparators = new HashMap<Class, Comparator>();
-    private List<Directive> sortingColumns = new ArrayList<Directive>();
-
-    /**
-     * The y location of the header wrapped by the sort decorator.
-     * This will change the area allowed to be clicked to sort
-     * a column. This will be null if it has not been set yet.
-     */
-	private Integer headerLabelYLoc = null;
-
-	/**
-     * The height of the header wrapped by the sort decorator.
-     * This will change the area allowed to be clicked to sort
-     * a column. This will be null if it has not been set yet.
-     */
-	private Integer headerLabelHeight = null;
-
-    public TableModelSortDecorator() {
-    	logger.debug("Constructing table model sort decorator");
-        this.mouseListener = new MouseHandler();
-        this.tableModelListener = new TableModelHandler();
-    }
-
-    public TableModelSortDecorator(TableModel tableModel) {
-        this();
-        setWrappedModel(tableModel);
-    }
-
-    public TableModelSortDecorator(TableModel tableModel, JTableHeader tableHeader) {
-        this();
-        setTableHeader(tableHeader);
-        setWrappedModel(tableModel);
-    }
-
-    private void clearSortingState() {
-        viewToModel = null;
-        modelToView = null;
-    }
-
-    public TableModel getWrappedModel() {
-        return tableModel;
-    }
-
-    public void setWrappedModel(TableModel tableModel) {
-        if (this.tableModel != null) {
-            this.tableModel.removeTableModelListener(tableModelListener);
-        }
-
-        arraysUpToDate.set(false);
+
+	/**
+	 * Models with at least this many rows are sorted on a background thread
+	 * when the sort is asked for on the event dispatch thread.
+	 */
+	public static final int DEFAULT_BACKGROUND_SORT_THRESHOLD = 20000;
+	
+	private static final Logger logger = Logger.getLogger(TableModelSortDecorator.class);
+	
+    protected TableModel tableModel;
+
+    public static final int DESCENDING = -1;
+    public static final int NOT_SORTED = 0;
+    public static final int ASCENDING = 1;
+
+    private static Directive EMPTY_DIRECTIVE = new Directive(-1, NOT_SORTED);
+
+    public static final Comparator COMPARABLE_COMAPRATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return ((Comparable) o1).compareTo(o2);
+        }
+    };
+    public static final Comparator LEXICAL_COMPARATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return o1.toString().compareTo(o2.toString());
+        }
+    };
+
+    /**
+     * The current order of the rows, or null if they are in model order.
+     * This may be out of date while a new order is being worked out; see
+     * {@link #arraysUpToDate}. It is replaced whole, never changed.
+     */
+    private volatile SortedRowView sortedView;
+
+    /**
+     * If the only change since {@link #sortedView} was worked out is rows
+     * appended to the model, the view to merge the new rows into.
+     * Otherwise null, and the whole model is sorted again.
+     */
+    private volatile SortedRowView appendBase;
+
+    /**
+     * Counts the changes that make the row order out of date, so an order
+     * worked out in the background before the latest change is thrown away.
+     */
+    private final AtomicInteger sortGeneration = new AtomicInteger();
+
+    /**
+     * The generation of the last sort started in the background. Only used
+     * on the event dispatch thread.
+     */
+    private int backgroundSortGeneration = -1;
+
+    private int backgroundSortThreshold = DEFAULT_BACKGROUND_SORT_THRESHOLD;
+
+    /**
+     * Runs the background sorts. Created when first needed.
+     */
+    private ExecutorService sorter;
+
+    private JTableHeader tableHeader;
+    private MouseListener mouseListener;
+    private TableModelListener tableModelListener;
+    private Map<Class, Comparator> columnComparators = new HashMap<Class, Comparator>();
+    private List<Directive> sortingColumns = new ArrayList<Directive>();
+
+    /**
+     * The y location of the header wrapped by the sort decorator.
+     * This will change the area allowed to be clicked to sort
+     * a column. This will be null if it has not been set yet.
+     */
+	private Integer headerLabelYLoc = null;
+
+	/**
+     * The height of the header wrapped by the sort decorator.
+     * This will change the area allowed to be clicked to sort
+     * a column. This will be null if it has not been set yet.
+     */
+	private Integer headerLabelHeight = null;
+
+    public TableModelSortDecorator() {
+    	logger.debug("Constructing table model sort decorator");
+        this.mouseListener = new MouseHandler();
+        this.tableModelListener = new TableModelHandler();
+    }
+
+    public TableModelSortDecorator(TableModel tableModel) {
+        this();
+        setWrappedModel(tableModel);
+    }
+
+    public TableModelSortDecorator(TableModel tableModel, JTableHeader tableHeader) {
+        this();
+        setTableHeader(tableHeader);
+        setWrappedModel(tableModel);
+    }
+
+    private void clearSortingState() {
+        sortGeneration.incrementAndGet();
+        arraysUpToDate.set(false);
+        appendBase = null;
+    }
+
+    /**
+     * Notes that rows have been appended to the end of the model, so they
+     * can be merged into the current order instead of sorting all the rows
+     * again.
+     */
+    private void rowsAppended() {
+        if (arraysUpToDate.get()) {
+            appendBase = sortedView;
+        }
+        sortGeneration.incrementAndGet();
+        arraysUpToDate.set(false);
+    }
+
+    public TableModel getWrappedModel() {
+        return tableModel;
+    }
+
+    public void setWrappedModel(TableModel tableModel) {
+        if (this.tableModel != null) {
+            this.tableModel.removeTableModelListener(tableModelListener);
+        }
+
         this.tableModel = tableModel;
-        
-        if (this.tableModel != null) {
-            this.tableModel.addTableModelListener(tableModelListener);
-        }
-
-        clearSortingState();
-        fireTableStructureChanged();
-    }
-
-    public JTableHeader getTableHeader() {
-        return tableHeader;
-    }
-
-    public void setTableHeader(JTableHeader tableHeader) {
-        if (this.tableHeader != null) {
-            this.tableHeader.removeMouseListener(mouseListener);
-            TableCellRenderer defaultRenderer = this.tableHeader.getDefaultRenderer();
-            if (defaultRenderer instanceof SortableHeaderRenderer) {
-                this.tableHeader.setDefaultRenderer(((SortableHeaderRenderer) defaultRenderer).tableCellRenderer);
-            }
-        }
-        this.tableHeader = tableHeader;
-        if (this.tableHeader != null) {
-            this.tableHeader.addMouseListener(mouseListener);
-            this.tableHeader.setDefaultRenderer(
-                    new SortableHeaderRenderer(this.tableHeader.getDefaultRenderer()));
-        }
-    }
-
-    public boolean isSorting() {
-        return sortingColumns.size() != 0;
-    }
-
-    private Directive getDirective(int column) {
-        for (int i = 0; i < sortingColumns.size(); i++) {
-            Directive directive = sortingColumns.get(i);
-            if (directive.column == column) {
-                return directive;
-            }
-        }
-        return EMPTY_DIRECTIVE;
-    }
-
-    public int getSortingStatus(int column) {
-        return getDirective(column).direction;
-    }
-
-    private void sortingStatusChanged() {
-        clearSortingState();
-        fireTableDataChanged();
-        if (tableHeader != null) {
-            tableHeader.repaint();
-        }
-    }
-
-    public void setSortingStatus(int column, int status) {
-    	LinkedHashMap<Integer, Integer> columnMap = new LinkedHashMap<Integer, Integer>();
-    	columnMap.put(column, status);
-        setSortingStatus(columnMap);
-    }
-
-	/**
-	 * This will set the sorting status of multiple rows at once and then fire
-	 * the sorting status changed event. Each entry in columnToStatusMap maps a
-	 * column to a sorting status defined in this class.
-	 * 
-	 * A linked hash map is used here to keep the order of the columns as it is
-	 * important for sorting.
-	 */
-    public void setSortingStatus(LinkedHashMap<Integer, Integer> columnToStatusMap) {
-    	for (Map.Entry<Integer, Integer> entry :columnToStatusMap.entrySet()) {
-    		logger.debug("Sorting status changed. Setting column number " + entry.getKey() + " to status " + entry.getValue(), new Exception());
-    		Directive directive = getDirective(entry.getKey());
-    		if (directive != EMPTY_DIRECTIVE) {
-    			sortingColumns.remove(directive);
-    		}
-    		if (entry.getValue() != NOT_SORTED) {
-    			sortingColumns.add(new Directive(entry.getKey(), entry.getValue()));
-    		}
-    	}
-    	sortingStatusChanged();
-    }
-
-    protected Icon getHeaderRendererIcon(int column, int size) {
-        Directive directive = getDirective(column);
-        if (directive == EMPTY_DIRECTIVE) {
-            return null;
-        }
-        return new Arrow(directive.direction == DESCENDING, size, sortingColumns.indexOf(directive));
-    }
-
-    private void cancelSorting() {
-        sortingColumns.clear();
-        sortingStatusChanged();
-    }
-
-    public void setColumnComparator(Class type, Comparator comparator) {
-        if (comparator == null) {
-            columnComparators.remove(type);
-        } else {
-            columnComparators.put(type, comparator);
-        }
-    }
-
-    protected Comparator getComparator(int column) {
-        Class columnType = tableModel.getColumnClass(column);
-        Comparator comparator = (Comparator) columnComparators.get(columnType);
-        if (comparator != null) {
-            return comparator;
-        }
-        if (Comparable.class.isAssignableFrom(columnType)) {
-            return COMPARABLE_COMAPRATOR;
-        }
-        return LEXICAL_COMPARATOR;
+        sortedView = null;
+        
+        if (this.tableModel != null) {
+            this.tableModel.addTableModelListener(tableModelListener);
+        }
+
+        clearSortingState();
+        fireTableStructureChanged();
     }
-    
-    private void updateArrays() {
 
-		viewToModel = null;
-		modelToView = null;
-		
-		synchronized (tableModel) {
-			
-			int tableModelRowCount = tableModel.getRowCount();
-			viewToModel = new Row[tableModelRowCount];
-			if (viewToModel != null) {
-				for (int row = 0; row < tableModelRowCount; row++) {
-					viewToModel[row] = new Row(row);
-				}
+    public JTableHeader getTableHeader() {
+        return tableHeader;
+    }
 
-				if (isSorting()) {
-					Arrays.sort(viewToModel);
-				}
+    public void setTableHeader(JTableHeader tableHeader) {
+        if (this.tableHeader != null) {
+            this.tableHeader.removeMouseListener(mouseListener);
+            TableCellRenderer defaultRenderer = this.tableHeader.getDefaultRenderer();
+            if (defaultRenderer instanceof SortableHeaderRenderer) {
+                this.tableHeader.setDefaultRenderer(((SortableHeaderRenderer) defaultRenderer).tableCellRenderer);
+            }
+        }
+        this.tableHeader = tableHeader;
+        if (this.tableHeader != null) {
+            this.tableHeader.addMouseListener(mouseListener);
+            this.tableHeader.setDefaultRenderer(
+                    new SortableHeaderRenderer(this.tableHeader.getDefaultRenderer()));
+        }
+    }
+
+    public boolean isSorting() {
+        return sortingColumns.size() != 0;
+    }
+
+    private Directive getDirective(int column) {
+        for (int i = 0; i < sortingColumns.size(); i++) {
+            Directive directive = sortingColumns.get(i);
+            if (directive.column == column) {
+                return directive;
+            }
+        }
+        return EMPTY_DIRECTIVE;
+    }
+
+    public int getSortingStatus(int column) {
+        return getDirective(column).direction;
+    }
+
+    private void sortingStatusChanged() {
+        clearSortingState();
+        fireTableDataChanged();
+        if (tableHeader != null) {
+            tableHeader.repaint();
+        }
+    }
+
+    public void setSortingStatus(int column, int status) {
+    	LinkedHashMap<Integer, Integer> columnMap = new LinkedHashMap<Integer, Integer>();
+    	columnMap.put(column, status);
+        setSortingStatus(columnMap);
+    }
+
+	/**
+	 * This will set the sorting status of multiple rows at once and then fire
+	 * the sorting status changed event. Each entry in columnToStatusMap maps a
+	 * column to a sorting status defined in this class.
+	 * 
+	 * A linked hash map is used here to keep the order of the columns as it is
+	 * important for sorting.
+	 */
+    public void setSortingStatus(LinkedHashMap<Integer, Integer> columnToStatusMap) {
+    	for (Map.Entry<Integer, Integer> entry :columnToStatusMap.entrySet()) {
+    		logger.debug("Sorting status changed. Setting column number " + entry.getKey() + " to status " + entry.getValue(), new Exception());
+    		Directive directive = getDirective(entry.getKey());
+    		if (directive != EMPTY_DIRECTIVE) {
+    			sortingColumns.remove(directive);
+    		}
+    		if (entry.getValue() != NOT_SORTED) {
+    			sortingColumns.add(new Directive(entry.getKey(), entry.getValue()));
+    		}
+    	}
+    	sortingStatusChanged();
+    }
+
+    protected Icon getHeaderRendererIcon(int column, int size) {
+        Directive directive = getDirective(column);
+        if (directive == EMPTY_DIRECTIVE) {
+            return null;
+        }
+        return new Arrow(directive.direction == DESCENDING, size, sortingColumns.indexOf(directive));
+    }
+
+    private void cancelSorting() {
+        sortingColumns.clear();
+        sortingStatusChanged();
+    }
+
+    public void setColumnComparator(Class type, Comparator comparator) {
+        if (comparator == null) {
+            columnComparators.remove(type);
+        } else {
+            columnComparators.put(type, comparator);
+        }
+    }
+
+    protected Comparator getComparator(int column) {
+        Class columnType = tableModel.getColumnClass(column);
+        Comparator comparator = (Comparator) columnComparators.get(columnType);
+        if (comparator != null) {
+            return comparator;
+        }
+        if (Comparable.class.isAssignableFrom(columnType)) {
+            return COMPARABLE_COMAPRATOR;
+        }
+        return LEXICAL_COMPARATOR;
+    }
+
+    /**
+     * Sets the number of rows at which a sort asked for on the event dispatch
+     * thread is done on a background thread instead. Smaller models are
+     * sorted right away, and models sorted off the event dispatch thread are
+     * always sorted on the calling thread.
+     */
+    public void setBackgroundSortThreshold(int backgroundSortThreshold) {
+    	this.backgroundSortThreshold = backgroundSortThreshold;
+    }
 
-				int n = viewToModel.length;
-				modelToView = new int[n];
-				for (int i = 0; i < n; i++) {
-					modelToView[viewToModel[i].modelIndex] = i;
+    public int getBackgroundSortThreshold() {
+    	return backgroundSortThreshold;
+    }
+
+    /**
+     * Works out the order of the rows for the current sorting columns. The
+     * values of the sorting columns are read out of the model on the calling
+     * thread, so the model is only used by the thread that owns it, and the
+     * returned task only sorts those values so it can be run on any thread.
+     * When a base view is given, only the rows appended to the model since
+     * it was made are read.
+     */
+    private Runnable makeSortTask(final int generation, final SortedRowView base, final boolean background) {
+    	final int[] columns = new int[sortingColumns.size()];
+    	final boolean[] descending = new boolean[columns.length];
+    	final Comparator<?>[] comparators = new Comparator<?>[columns.length];
+    	for (int i = 0; i < columns.length; i++) {
+    		Directive directive = sortingColumns.get(i);
+    		columns[i] = directive.column;
+    		descending[i] = directive.direction == DESCENDING;
+    		comparators[i] = getComparator(directive.column);
+    	}
+    	final TableModel model = tableModel;
+    	Object[][] values = null;
+    	SortedRowView appendTo = null;
+    	// Rows the result set model would otherwise load in the background
+    	// while a table paints are needed for the sort right away.
+    	TableModel bottom = TableUtils.unwrap(model);
+    	ResultSetTableModel rsModel = bottom instanceof ResultSetTableModel ? (ResultSetTableModel) bottom : null;
+    	int paintingCells = rsModel == null ? 0 : rsModel.suspendDeferredReads();
+    	try {
+    		synchronized (model) {
+    			int rowCount = model.getRowCount();
+    			if (base != null && base.size() <= rowCount) {
+    				values = SortedRowView.readColumns(model, columns, base.size(), rowCount);
+    				if (base.canAppend(values)) {
+    					appendTo = base;
+    				}
+    			}
+    			if (appendTo == null) {
+    				values = SortedRowView.readColumns(model, columns, 0, rowCount);
+    			}
+    		}
+    	} finally {
+    		if (rsModel != null) {
+    			rsModel.resumeDeferredReads(paintingCells);
+    		}
+    	}
+    	final Object[][] sortValues = values;
+    	final SortedRowView appendBase = appendTo;
+    	return new Runnable() {
+			public void run() {
+				SortedRowView view;
+				try {
+					if (appendBase != null) {
+						view = appendBase.append(sortValues);
+					} else {
+						view = SortedRowView.sort(sortValues, descending, comparators);
+					}
+				} catch (RuntimeException e) {
+					if (!background) {
+						throw e;
+					}
+					logger.error("Sorting the table failed", e);
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							// let the next look at the rows try again
+							if (backgroundSortGeneration == generation) {
+								backgroundSortGeneration = -1;
+							}
+						}
+					});
+					return;
 				}
-				arraysUpToDate.set(true);
+				final SortedRowView newView = view;
+				if (!background) {
+					swapIn(generation, newView);
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (swapIn(generation, newView)) {
+							fireTableDataChanged();
+						}
+					}
+				});
 			}
-		}
-    }
-
-    private Row[] getViewToModel() {
-    	if (!arraysUpToDate.get() || viewToModel == null) {
-    		updateArrays();
+		};
+    }
+
+    /**
+     * Makes the given order the current one, unless the rows have been
+     * changed or the sorting columns set since it was started.
+     */
+    private boolean swapIn(int generation, SortedRowView view) {
+    	if (generation != sortGeneration.get() || tableModel == null) {
+    		return false;
+    	}
+    	sortedView = view;
+    	appendBase = null;
+    	arraysUpToDate.set(true);
+    	return true;
+    }
+
+    private void updateArrays() {
+    	makeSortTask(sortGeneration.get(), appendBase, false).run();
+    }
+
+    private void sortInBackground() {
+    	int generation = sortGeneration.get();
+    	if (generation == backgroundSortGeneration) {
+    		return;
+    	}
+    	backgroundSortGeneration = generation;
+    	logger.debug("Sorting " + tableModel.getRowCount() + " rows in the background");
+    	getSorter().execute(makeSortTask(generation, appendBase, true));
+    }
+
+    private synchronized ExecutorService getSorter() {
+    	if (sorter == null) {
+    		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+    				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread t = new Thread(r, "Table sort");
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    		executor.allowCoreThreadTimeOut(true);
+    		sorter = executor;
+    	}
+    	return sorter;
+    }
+
+    /**
+     * Returns the current order of the rows, sorting them first if they are
+     * out of order and the model is small or this isn't the event dispatch
+     * thread. Returns null if the rows are in model order, including while a
+     * model that has shrunk is sorted in the background.
+     */
+    private SortedRowView getSortedView() {
+    	if (tableModel == null || !isSorting()) {
+    		return null;
     	}
-    	return viewToModel;
-    }
-
+    	if (!arraysUpToDate.get()) {
+    		if (SwingUtilities.isEventDispatchThread() && tableModel.getRowCount() >= backgroundSortThreshold) {
+    			sortInBackground();
+    		} else {
+    			updateArrays();
+    		}
+    	}
+    	SortedRowView view = sortedView;
+    	if (view != null && view.size() > tableModel.getRowCount()) {
+    		return null;
+    	}
+    	return view;
+    }
+
+    /**
+     * Returns the model index of the row at the given view index. Rows past
+     * the end of the current order, such as rows appended to the model that
+     * have not been sorted in yet, are in model order.
+     */
     public int modelIndex(int viewIndex) {
-		return getViewToModel()[viewIndex].modelIndex;
-    }
-
-    private int[] getModelToView() {
-    	if (!arraysUpToDate.get() || modelToView == null) {
-    		updateArrays();
+    	SortedRowView view = getSortedView();
+    	if (view == null || viewIndex >= view.size()) {
+    		return viewIndex;
     	}
-    	return modelToView;
-    }
-
-    // TableModel interface methods
-
-    public int getRowCount() {
-        return (tableModel == null) ? 0 : tableModel.getRowCount();
-    }
-
-    public int getColumnCount() {
-        return (tableModel == null) ? 0 : tableModel.getColumnCount();
-    }
-
-    public String getColumnName(int column) {
-        return tableModel.getColumnName(column);
-    }
-
-    public Class<?> getColumnClass(int column) {
-        return tableModel.getColumnClass(column);
-    }
-
-    public boolean isCellEditable(int row, int column) {
-        return tableModel.isCellEditable(modelIndex(row), column);
-    }
-
-    public Object getValueAt(int row, int column) {
-        return tableModel.getValueAt(modelIndex(row), column);
-    }
-
-    public void setValueAt(Object aValue, int row, int column) {
-        tableModel.setValueAt(aValue, modelIndex(row), column);
-    }
-
-    // Helper classes
-
-    private class Row implements Comparable {
-        private int modelIndex;
-
-        public Row(int index) {
-            this.modelIndex = index;
-        }
-
-        public int compareTo(Object o) {
-            int row1 = modelIndex;
-            int row2 = ((Row) o).modelIndex;
-
-            for (Iterator<Directive> it = sortingColumns.iterator(); it.hasNext();) {
-                Directive directive = (Directive) it.next();
-                int column = directive.column;
-                Object o1 = tableModel.getValueAt(row1, column);
-                Object o2 = tableModel.getValueAt(row2, column);
-                int comparison = 0;
-                // Define null less than everything, except null.
-                if (o1 == null && o2 == null) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
-                } else if (o2 == null) {
-                    comparison = 1;
-                } else {
-                    comparison = getComparator(column).compare(o1, o2);
-                }
-                if (comparison != 0) {
-                    return directive.direction == DESCENDING ? -comparison : comparison;
-                }
-            }
-            return 0;
-        }
-    }
-
-    private class TableModelHandler implements TableModelListener {
+		return view.viewToModel[viewIndex];
+    }
+
+    private int viewIndex(int modelIndex) {
+    	SortedRowView view = getSortedView();
+    	if (view == null || modelIndex >= view.size()) {
+    		return modelIndex;
+    	}
+    	return view.modelToView[modelIndex];
+    }
+
+    /**
+     * Returns true if the rows are in the order of the current sorting
+     * columns, false if they are being sorted in the background. This is
+     * exposed as package-private so that the tests can examine it.
+     */
+    boolean isSortUpToDate() {
+    	return !isSorting() || arraysUpToDate.get();
+    }
+
+    // TableModel interface methods
+
+    public int getRowCount() {
+        return (tableModel == null) ? 0 : tableModel.getRowCount();
+    }
+
+    public int getColumnCount() {
+        return (tableModel == null) ? 0 : tableModel.getColumnCount();
+    }
+
+    public String getColumnName(int column) {
+        return tableModel.getColumnName(column);
+    }
+
+    public Class<?> getColumnClass(int column) {
+        return tableModel.getColumnClass(column);
+    }
+
+    public boolean isCellEditable(int row, int column) {
+        return tableModel.isCellEditable(modelIndex(row), column);
+    }
+
+    public Object getValueAt(int row, int column) {
+        return tableModel.getValueAt(modelIndex(row), column);
+    }
+
+    public void setValueAt(Object aValue, int row, int column) {
+        tableModel.setValueAt(aValue, modelIndex(row), column);
+    }
+
+    // Helper classes
+
+    private class TableModelHandler implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
         	
         	
-            // If we're not sorting by anything, just pass the event along.
+            // If we're not sorting by anything, just pass the event along.
             if (!isSorting()) {
             	// if adding new
-            	if (e.getType() == TableModelEvent.INSERT) {
+            	if (e.getType() == TableModelEvent.INSERT) {
             		 clearSortingState();
-            	}
-                fireTableChanged(e);
-                return;
-            }
-
-            // If the table structure has changed, cancel the sorting; the
-            // sorting columns may have been either moved or deleted from
-            // the model.
-            if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
-                cancelSorting();
-                fireTableChanged(e);
-                return;
-            }
-
-            // We can map a cell event through to the view without widening
-            // when the following conditions apply:
-            //
-            // a) all the changes are on one row (e.getFirstRow() == e.getLastRow()) and,
-            // b) all the changes are in one column (column != TableModelEvent.ALL_COLUMNS) and,
-            // c) we are not sorting on that column (getSortingStatus(column) == NOT_SORTED) and,
-            // d) a reverse lookup will not trigger a sort (modelToView != null)
-            //
-            // Note: INSERT and DELETE events fail this test as they have column == ALL_COLUMNS.
-            //
-            // The last check, for (modelToView != null) is to see if modelToView
-            // is already allocated. If we don't do this check; sorting can become
-            // a performance bottleneck for applications where cells
-            // change rapidly in different parts of the table. If cells
-            // change alternately in the sorting column and then outside of
-            // it this class can end up re-sorting on alternate cell updates -
-            // which can be a performance problem for large tables. The last
-            // clause avoids this problem.
-            int column = e.getColumn();
-            if (e.getFirstRow() == e.getLastRow()
-                    && column != TableModelEvent.ALL_COLUMNS
-                    && getSortingStatus(column) == NOT_SORTED
-                    && modelToView != null) {
-                int viewIndex = getModelToView()[e.getFirstRow()];
-                fireTableChanged(new TableModelEvent(TableModelSortDecorator.this,
-                                                     viewIndex, viewIndex,
-                                                     column, e.getType()));
-                return;
-            }
-
-            // Something has happened to the data that may have invalidated the row order.
-         // if adding new
-            if (e.getType() == TableModelEvent.INSERT) {
-        		 clearSortingState();
-        	}
+            	}
+                fireTableChanged(e);
+                return;
+            }
+
+            // If the table structure has changed, cancel the sorting; the
+            // sorting columns may have been either moved or deleted from
+            // the model.
+            if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                cancelSorting();
+                fireTableChanged(e);
+                return;
+            }
+
+            // We can map a cell event through to the view without widening
+            // when the following conditions apply:
+            //
+            // a) all the changes are on one row (e.getFirstRow() == e.getLastRow()) and,
+            // b) all the changes are in one column (column != TableModelEvent.ALL_COLUMNS) and,
+            // c) we are not sorting on that column (getSortingStatus(column) == NOT_SORTED) and,
+            // d) a reverse lookup will not trigger a sort (the order is up to date)
+            //
+            // Note: INSERT and DELETE events fail this test as they have column == ALL_COLUMNS.
+            //
+            // The last check is to see if the order is already worked out. If we don't do this check; sorting can become
+            // a performance bottleneck for applications where cells
+            // change rapidly in different parts of the table. If cells
+            // change alternately in the sorting column and then outside of
+            // it this class can end up re-sorting on alternate cell updates -
+            // which can be a performance problem for large tables. The last
+            // clause avoids this problem.
+            int column = e.getColumn();
+            if (e.getFirstRow() == e.getLastRow()
+                    && column != TableModelEvent.ALL_COLUMNS
+                    && getSortingStatus(column) == NOT_SORTED
+                    && arraysUpToDate.get()) {
+                int viewIndex = viewIndex(e.getFirstRow());
+                fireTableChanged(new TableModelEvent(TableModelSortDecorator.this,
+                                                     viewIndex, viewIndex,
+                                                     column, e.getType()));
+                return;
+            }
+
+            // Rows appended to the end of the model only have to be sorted
+            // among themselves and merged in.
+            SortedRowView base = arraysUpToDate.get() ? sortedView : appendBase;
+            if (e.getType() == TableModelEvent.INSERT && base != null
+            		&& e.getFirstRow() >= base.size()
+            		&& e.getLastRow() == tableModel.getRowCount() - 1) {
+            	rowsAppended();
+            	fireTableDataChanged();
+            	return;
+            }
+
+            // Something else has happened to the data that may have invalidated the row order.
+            clearSortingState();
             fireTableDataChanged();
-            return;
-        }
-    }
-
-    private class MouseHandler extends MouseAdapter {
-    	public void mouseClicked(MouseEvent e) {
-    		JTableHeader h = (JTableHeader) e.getSource();
-    		TableColumnModel columnModel = h.getColumnModel();
-    		Integer height = headerLabelHeight;
-    		if (height == null) {
-    			height = h.getHeight();
-    		}
-    		logger.debug("Y mouse click at " + e.getY() + " header label y location " + headerLabelYLoc + " header label height " + height);
-    		if (e.getY() > headerLabelYLoc && e.getY() < headerLabelYLoc + height){
-    			logger.debug("Table header was clicked");
-    			int viewColumn = columnModel.getColumnIndexAtX(e.getX());
-    			
-    			if(viewColumn < 0){
-    				return;
-    			}
-    			int column = columnModel.getColumn(viewColumn).getModelIndex();
-    			if (column != -1) {
-    				int status = getSortingStatus(column);
-    				LinkedHashMap<Integer, Integer> newSortingStatus = new LinkedHashMap<Integer, Integer>();
-    				if (!e.isControlDown()) {
-    					for (Directive d : sortingColumns) {
-    						if (d.getDirection() != NOT_SORTED) {
-    							newSortingStatus.put(d.getColumn(), NOT_SORTED);
-    						}
-    					}
-    				}
-    				// Cycle the sorting states through {NOT_SORTED, ASCENDING, DESCENDING} or
-    				// {NOT_SORTED, DESCENDING, ASCENDING} depending on whether shift is pressed.
-    				status = status + (e.isShiftDown() ? -1 : 1);
-    				status = (status + 4) % 3 - 1; // signed mod, returning {-1, 0, 1}
-    				newSortingStatus.put(column, status);
-    				setSortingStatus(newSortingStatus);
-    			}
-    		}
-    	}
-    }
-
-    private class SortableHeaderRenderer implements TableCellRenderer {
-        private TableCellRenderer tableCellRenderer;
-
-        public SortableHeaderRenderer(TableCellRenderer tableCellRenderer) {
-            this.tableCellRenderer = tableCellRenderer;
-        }
-        
-        public Component getTableCellRendererComponent(JTable table,
-                                                       Object value,
-                                                       boolean isSelected,
-                                                       boolean hasFocus,
-                                                       int row,
-                                                       int column) {
-            Component c = tableCellRenderer.getTableCellRendererComponent(table,
-                    value, isSelected, hasFocus, row, column);
-            if (c instanceof JLabel) {
-                JLabel l = (JLabel) c;
-                if (headerLabelYLoc == null) {
-                	headerLabelYLoc = 0;
-                }
-                l.setHorizontalTextPosition(JLabel.LEFT);
-                int modelColumn = table.convertColumnIndexToModel(column);
-                l.setIcon(getHeaderRendererIcon(modelColumn, l.getFont().getSize()));
-            }
-            return c;
-        }
-    }
-
-    private static class Directive {
-        private int column;
-        private int direction;
-
-        public Directive(int column, int direction) {
-            this.column = column;
-            this.direction = direction;
-        }
-        
-        public int getColumn() {
-			return column;
-		}
-        
-        public int getDirection() {
-			return direction;
-		}
-    }
-    
-    /**
-     * This will allow setting the y location and height of the
-     * table header if only part of the table header should be
-     * clickable to sort.
-     */
-    public void setTableHeaderYBounds(int yLoc, int height) {
-    	headerLabelYLoc = yLoc;
-    	headerLabelHeight = height;
+            return;
+        }
+    }
+
+    private class MouseHandler extends MouseAdapter {
+    	public void mouseClicked(MouseEvent e) {
+    		JTableHeader h = (JTableHeader) e.getSource();
+    		TableColumnModel columnModel = h.getColumnModel();
+    		Integer height = headerLabelHeight;
+    		if (height == null) {
+    			height = h.getHeight();
+    		}
+    		logger.debug("Y mouse click at " + e.getY() + " header label y location " + headerLabelYLoc + " header label height " + height);
+    		if (e.getY() > headerLabelYLoc && e.getY() < headerLabelYLoc + height){
+    			logger.debug("Table header was clicked");
+    			int viewColumn = columnModel.getColumnIndexAtX(e.getX());
+    			
+    			if(viewColumn < 0){
+    				return;
+    			}
+    			int column = columnModel.getColumn(viewColumn).getModelIndex();
+    			if (column != -1) {
+    				int status = getSortingStatus(column);
+    				LinkedHashMap<Integer, Integer> newSortingStatus = new LinkedHashMap<Integer, Integer>();
+    				if (!e.isControlDown()) {
+    					for (Directive d : sortingColumns) {
+    						if (d.getDirection() != NOT_SORTED) {
+    							newSortingStatus.put(d.getColumn(), NOT_SORTED);
+    						}
+    					}
+    				}
+    				// Cycle the sorting states through {NOT_SORTED, ASCENDING, DESCENDING} or
+    				// {NOT_SORTED, DESCENDING, ASCENDING} depending on whether shift is pressed.
+    				status = status + (e.isShiftDown() ? -1 : 1);
+    				status = (status + 4) % 3 - 1; // signed mod, returning {-1, 0, 1}
+    				newSortingStatus.put(column, status);
+    				setSortingStatus(newSortingStatus);
+    			}
+    		}
+    	}
+    }
+
+    private class SortableHeaderRenderer implements TableCellRenderer {
+        private TableCellRenderer tableCellRenderer;
+
+        public SortableHeaderRenderer(TableCellRenderer tableCellRenderer) {
+            this.tableCellRenderer = tableCellRenderer;
+        }
+        
+        public Component getTableCellRendererComponent(JTable table,
+                                                       Object value,
+                                                       boolean isSelected,
+                                                       boolean hasFocus,
+                                                       int row,
+                                                       int column) {
+            Component c = tableCellRenderer.getTableCellRendererComponent(table,
+                    value, isSelected, hasFocus, row, column);
+            if (c instanceof JLabel) {
+                JLabel l = (JLabel) c;
+                if (headerLabelYLoc == null) {
+                	headerLabelYLoc = 0;
+                }
+                l.setHorizontalTextPosition(JLabel.LEFT);
+                int modelColumn = table.convertColumnIndexToModel(column);
+                l.setIcon(getHeaderRendererIcon(modelColumn, l.getFont().getSize()));
+            }
+            return c;
+        }
+    }
+
+    private static class Directive {
+        private int column;
+        private int direction;
+
+        public Directive(int column, int direction) {
+            this.column = column;
+            this.direction = direction;
+        }
+        
+        public int getColumn() {
+			return column;
+		}
+        
+        public int getDirection() {
+			return direction;
+		}
+    }
+    
+    /**
+     * This will allow setting the y location and height of the
+     * table header if only part of the table header should be
+     * clickable to sort.
+     */
+    public void setTableHeaderYBounds(int yLoc, int height) {
+    	headerLabelYLoc = yLoc;
+    	headerLabelHeight = height;
     }
 
 	public void cleanup() {
 		if (tableModel instanceof CleanupTableModel) {
 			((CleanupTableModel) tableModel).cleanup();
 		}
-	}
-}
+	}
+}
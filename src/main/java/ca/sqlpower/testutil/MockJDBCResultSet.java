@@ -201,7 +201,12 @@ public class MockJDBCResultSet implements ResultSet {
 	}
 
 	public long getLong(int columnIndex) throws SQLException {
-		throw new UnsupportedOperationException("Not implemented");
+        Object val = getRowCol(columnIndex);
+        if (val == null) {
+            return 0;
+        } else {
+            return ((Number) val).longValue();
+        }
 	}
 
 	public float getFloat(int columnIndex) throws SQLException {
@@ -209,7 +214,12 @@ public class MockJDBCResultSet implements ResultSet {
 	}
 
 	public double getDouble(int columnIndex) throws SQLException {
-		throw new UnsupportedOperationException("Not implemented");
+        Object val = getRowCol(columnIndex);
+        if (val == null) {
+            return 0;
+        } else {
+            return ((Number) val).doubleValue();
+        }
 	}
 
 	public BigDecimal getBigDecimal(int columnIndex, int scale)
@@ -218,7 +228,7 @@ public class MockJDBCResultSet implements ResultSet {
 	}
 
 	public byte[] getBytes(int columnIndex) throws SQLException {
-		throw new UnsupportedOperationException("Not implemented");
+		return (byte[]) getRowCol(columnIndex);
 	}
 
 	public Date getDate(int columnIndex) throws SQLException {
@@ -5,6 +5,8 @@ public class CacheStats {
 	protected int totalRequested;
 	protected int totalHits;
 	protected int totalMisses;
+	protected int totalEvicted;
+	protected int totalExpired;
 
 	public CacheStats() {
 	}
@@ -14,6 +16,8 @@ public class CacheStats {
 		totalRequested = 0;
 		totalHits = 0;
 		totalMisses = 0;
+		totalEvicted = 0;
+		totalExpired = 0;
 	}
 
 	public int getTotalInserted() {
@@ -32,6 +36,22 @@ public class CacheStats {
 		return totalMisses;
 	}
 
+	/**
+	 * Returns the number of items the cache has thrown out to stay within
+	 * its size limits, including items it declined to keep at all.
+	 */
+	public int getTotalEvicted() {
+		return totalEvicted;
+	}
+
+	/**
+	 * Returns the number of items the cache has thrown out because they had
+	 * been in the cache too long or had gone stale.
+	 */
+	public int getTotalExpired() {
+		return totalExpired;
+	}
+
 	/**
 	 * Returns a number between 0 and 1 indicating the cache hit
 	 * ratio.  0 is worst (no hits); 1 is best but unachievable unless
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An index of the entries in a list of JAR files, built with one pass over
+ * each JAR's directory. Looking up an entry is then a hash lookup that finds
+ * the first JAR containing it, rather than opening a connection to each JAR
+ * in turn.
+ * <p>
+ * The JAR files are opened when the index is built and stay open for as long
+ * as the index is in use, so it is meant to be kept for the life of a class
+ * loader. JARs that can't be opened are left out of the index.
+ */
+public class JarEntryIndex {
+
+    private static final Logger logger = Logger.getLogger(JarEntryIndex.class);
+
+    /**
+     * An open JAR file and where it came from.
+     */
+    private static class IndexedJar {
+        final URL location;
+        final JarFile jarFile;
+
+        IndexedJar(URL location, JarFile jarFile) {
+            this.location = location;
+            this.jarFile = jarFile;
+        }
+    }
+
+    /**
+     * The JARs that could be opened, in classpath order.
+     */
+    private final List<IndexedJar> jars = new ArrayList<IndexedJar>();
+
+    /**
+     * Maps each entry name to the first JAR that contains it.
+     */
+    private final Map<String, IndexedJar> entries = new HashMap<String, IndexedJar>();
+
+    /**
+     * Opens and indexes the given JAR files. Entries in earlier JARs hide
+     * entries of the same name in later ones.
+     *
+     * @param jarLocations
+     *            The JAR files, which must not be jar: URLs. Null elements
+     *            are skipped.
+     */
+    public JarEntryIndex(List<URL> jarLocations) {
+        for (URL location : jarLocations) {
+            if (location == null) {
+                continue;
+            }
+            JarFile jarFile;
+            try {
+                jarFile = openJar(location);
+            } catch (IOException ex) {
+                logger.debug("Skipping unreadable JAR file " + location, ex);
+                continue;
+            }
+            IndexedJar jar = new IndexedJar(location, jarFile);
+            jars.add(jar);
+            for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements(); ) {
+                String name = e.nextElement().getName();
+                if (!entries.containsKey(name)) {
+                    entries.put(name, jar);
+                }
+            }
+            logger.debug("Indexed " + jarFile.size() + " entries of " + location);
+        }
+    }
+
+    /**
+     * Opens a local JAR file directly, and any other through a
+     * JarURLConnection, which copies a remote JAR to a local file first.
+     */
+    private static JarFile openJar(URL location) throws IOException {
+        if ("file".equals(location.getProtocol())) {
+            try {
+                return new JarFile(new File(location.toURI()));
+            } catch (URISyntaxException ex) {
+                // fall through and let the URL connection make sense of it
+            }
+        }
+        JarURLConnection connection = (JarURLConnection) new URL("jar:" + location + "!/").openConnection();
+        return connection.getJarFile();
+    }
+
+    /**
+     * Returns true if any of the JARs has an entry of the given name.
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Returns the contents of the given entry in the first JAR that has one,
+     * or null if none does.
+     */
+    public byte[] readEntry(String name) throws IOException {
+        IndexedJar jar = entries.get(name);
+        if (jar == null) {
+            return null;
+        }
+        return readEntry(jar.jarFile, jar.jarFile.getEntry(name));
+    }
+
+    /**
+     * Returns jar: URLs for the given entry in each JAR that has one, in
+     * classpath order.
+     */
+    public List<URL> findEntryURLs(String name) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        if (!entries.containsKey(name)) {
+            return urls;
+        }
+        for (IndexedJar jar : jars) {
+            if (jar.jarFile.getEntry(name) != null) {
+                urls.add(new URL("jar:" + jar.location + "!/" + name));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the number of distinct entry names in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the whole of the given entry of the given JAR file.
+     */
+    public static byte[] readEntry(JarFile jarFile, ZipEntry entry) throws IOException {
+        InputStream is = jarFile.getInputStream(entry);
+        try {
+            long size = entry.getSize();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int) size : 8192);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
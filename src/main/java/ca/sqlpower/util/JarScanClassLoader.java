@@ -20,7 +20,6 @@
 package ca.sqlpower.util;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.util.Enumeration;
@@ -80,10 +79,12 @@ public abstract class JarScanClassLoader extends ClassLoader {
 			ZipEntry ent = (ZipEntry) entries.nextElement();
 			if (ent.getName().endsWith(".class")) { //$NON-NLS-1$
 				try {
-					// drop the .class from the name
-					String [] s = ent.getName().split("\\."); //$NON-NLS-1$
-					// look for the class using dots instead of slashes
-					findClass(s[0].replace('/','.'));
+					// drop the .class and look for the class using dots instead of slashes
+					String name = ent.getName().substring(0, ent.getName().length() - ".class".length()).replace('/', '.'); //$NON-NLS-1$
+					// classes defined already as a dependency of another are already checked
+					if (findLoadedClass(name) == null) {
+						readAndCheckClass(ent, name);
+					}
 				} catch (ClassFormatError ex) {
 					logger.warn("JAR entry "+ent.getName()+" ends in .class but is not a class", ex); //$NON-NLS-1$ //$NON-NLS-2$
 				} catch (NoClassDefFoundError ex) {
@@ -117,27 +118,16 @@ public abstract class JarScanClassLoader extends ClassLoader {
 				return clazz;
 			}
 			// haven't seen this before, so go get it...
-			InputStream is = jf.getInputStream(ent);
-			return readAndCheckClass(is, (int) ent.getSize(), name);
+			return readAndCheckClass(ent, name);
 		} catch (IOException ex) {
 			throw new ClassNotFoundException("IO Exception reading class from jar file", ex); //$NON-NLS-1$
 		}
 	}
 
-	private Class<?> readAndCheckClass(InputStream is, int size, String expectedName)
+	private Class<?> readAndCheckClass(ZipEntry ent, String expectedName)
 		throws IOException, ClassFormatError {
-		byte[] buf = new byte[size];
-		int offs = 0, n;
-        
-		while ( (n = is.read(buf, offs, size-offs)) >= 0 && offs < size) {
-			offs += n;
-		}
-        final int total = offs;
-		if (total != size) {
-			logger.warn("Only read "+total+" bytes of class " //$NON-NLS-1$ //$NON-NLS-2$
-						+expectedName+" from JAR file; exptected "+size); //$NON-NLS-1$
-		}
-		Class<?> clazz = defineClass(expectedName, buf, 0, total);
+		byte[] buf = JarEntryIndex.readEntry(jf, ent);
+		Class<?> clazz = defineClass(expectedName, buf, 0, buf.length);
 		if (checkClass(clazz)) {
 			logger.info("Found jdbc driver "+clazz.getName()); //$NON-NLS-1$
 			drivers.add(clazz.getName());
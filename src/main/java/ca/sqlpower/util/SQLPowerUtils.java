@@ -23,9 +23,11 @@ import org.apache.log4j.Logger;
 
 import ca.sqlpower.enterprise.client.SPServerInfo;
 import ca.sqlpower.object.CleanupExceptions;
+import ca.sqlpower.object.MappedSPTree;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
 import ca.sqlpower.object.SPObject;
+import ca.sqlpower.object.SPObjectUUIDIndex;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.util.UserPrompter.UserPromptOptions;
 import ca.sqlpower.util.UserPrompter.UserPromptResponse;
@@ -312,8 +314,9 @@ public class SQLPowerUtils {
 	 * UUID, returning null if the item is not found. Throws ClassCastException
 	 * if in item is found, but it is not of the expected type.
 	 * 
-	 * Note: If you are using an ArchitectProject, it is better to use its
-	 * getObjectInTree method, since that uses a HashMap, not recursion.
+	 * If the root is a {@link MappedSPTree}, such as an ArchitectProject, its
+	 * map is used rather than searching the tree. To look up many objects in
+	 * a tree that isn't mapped, use an {@link SPObjectUUIDIndex}.
 	 * 
 	 * @param <T>
 	 *            The expected type of the item
@@ -328,6 +331,9 @@ public class SQLPowerUtils {
 	 *         descendent tree rooted at the given root object.
 	 */
     public static <T extends SPObject> T findByUuid(SPObject root, String uuid, Class<T> expectedType) {
+        if (root instanceof MappedSPTree && !root.getUUID().equals(uuid)) {
+            return expectedType.cast(((MappedSPTree) root).getObjectInTree(uuid));
+        }
         return expectedType.cast(findRecursively(root, uuid));
     }
     
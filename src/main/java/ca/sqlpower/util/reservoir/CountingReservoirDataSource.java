@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+/**
+ * A reservoir data source that keeps track of how many records have gone past
+ * its cursor. {@link ParallelReservoirSampler} needs this to know how much
+ * weight to give each partition's sample when it merges them.
+ */
+public interface CountingReservoirDataSource<T> extends ReservoirDataSource<T> {
+
+    /**
+     * Returns the number of records read or skipped so far. Once
+     * {@link #hasNext()} has returned false, this must be the total number of
+     * records in the data source, even if the last skip asked to go past the
+     * end.
+     */
+    public long getRecordCount();
+}
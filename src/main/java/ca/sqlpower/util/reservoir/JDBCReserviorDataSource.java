@@ -33,7 +33,7 @@ import java.sql.Statement;
  * to skip rows on your platform, but this class isn't achieving that behaviour,
  * please send us a patch that makes it work!
  */
-public class JDBCReserviorDataSource implements ReservoirDataSource<Object[]> {
+public class JDBCReserviorDataSource implements CountingReservoirDataSource<Object[]> {
 
     private final Statement stmt;
     private final ResultSet rs;
@@ -125,4 +125,8 @@ public class JDBCReserviorDataSource implements ReservoirDataSource<Object[]> {
     public int getRowCount() {
         return rowCount;
     }
+
+    public long getRecordCount() {
+        return rowCount;
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Takes a random sample of a data set that has been split into disjoint
+ * partitions, for example one query per range of primary keys, each on its
+ * own connection. Each partition is sampled on its own thread with a
+ * {@link SkippingReservoir}, then the partition samples are merged into one.
+ * <p>
+ * The merge gives each partition weight in proportion to the number of
+ * records it had, not the number it contributed to its own sample: each slot
+ * of the merged sample comes from a partition chosen with probability
+ * (records of the partition not yet represented) / (records of all partitions
+ * not yet represented), and takes a record of that partition's sample chosen
+ * at random. The result is distributed exactly as a sample of the whole data
+ * set would be.
+ */
+public class ParallelReservoirSampler<T> {
+
+    private final int threads;
+
+    Random r = new Random();
+
+    /**
+     * @param threads
+     *            The most partitions to sample at once.
+     */
+    public ParallelReservoirSampler(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread, not " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * The sample of one partition, and how many records it was taken from.
+     */
+    private static class PartitionSample<T> {
+        final List<T> records;
+        long population;
+
+        PartitionSample(List<T> records, long population) {
+            this.records = records;
+            this.population = population;
+        }
+    }
+
+    /**
+     * Creates a random sample of the records in all the given partitions and
+     * returns it. The length of the returned array will be
+     * <tt>min(</tt><i>n</i><tt>,</tt> <i>N</i><tt>)</tt>, where <i>N</i> is
+     * the total number of records in all the partitions.
+     *
+     * @param partitions
+     *            The data sources to sample. No record may be in more than one
+     *            of them, and no two of them may share a connection.
+     * @param n
+     *            The sample size
+     * @throws ReservoirDataException
+     *             If accessing any of the data sources throws an exception
+     */
+    public T[] getSample(List<? extends CountingReservoirDataSource<T>> partitions, int n)
+            throws ReservoirDataException {
+        if (partitions.isEmpty()) throw new IllegalArgumentException("No partitions to sample");
+        Class<T> elemType = partitions.get(0).getElementType();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, partitions.size()));
+        List<PartitionSample<T>> samples = new ArrayList<PartitionSample<T>>(partitions.size());
+        try {
+            List<Future<PartitionSample<T>>> futures = new ArrayList<Future<PartitionSample<T>>>();
+            for (CountingReservoirDataSource<T> partition : partitions) {
+                futures.add(executor.submit(sampleTask(partition, n, r.nextLong())));
+            }
+            for (Future<PartitionSample<T>> future : futures) {
+                samples.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReservoirDataException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ReservoirDataException) {
+                throw (ReservoirDataException) e.getCause();
+            }
+            throw new ReservoirDataException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return merge(samples, n, elemType);
+    }
+
+    private Callable<PartitionSample<T>> sampleTask(
+            final CountingReservoirDataSource<T> partition, final int n, final long seed) {
+        return new Callable<PartitionSample<T>>() {
+            public PartitionSample<T> call() throws ReservoirDataException {
+                SkippingReservoir<T> reservoir = new SkippingReservoir<T>();
+                reservoir.setRandomSeed(seed);
+                List<T> records = new ArrayList<T>(n);
+                for (T record : reservoir.getSample(partition, n)) {
+                    records.add(record);
+                }
+                return new PartitionSample<T>(records, partition.getRecordCount());
+            }
+        };
+    }
+
+    private T[] merge(List<PartitionSample<T>> samples, int n, Class<T> elemType) {
+        long remaining = 0;
+        for (PartitionSample<T> sample : samples) {
+            remaining += sample.population;
+        }
+        int size = (int) Math.min(n, remaining);
+        T[] merged = makeArray(elemType, size);
+        for (int k = 0; k < size; k++) {
+            long x = (long) (r.nextDouble() * remaining);
+            PartitionSample<T> chosen = null;
+            for (PartitionSample<T> sample : samples) {
+                chosen = sample;
+                if (x < sample.population) {
+                    break;
+                }
+                x -= sample.population;
+            }
+            // Never happens unless the partitions miscounted their records
+            if (chosen.records.isEmpty()) {
+                throw new IllegalStateException("Partition reported " + chosen.population +
+                        " more records than it returned");
+            }
+            int last = chosen.records.size() - 1;
+            int i = r.nextInt(last + 1);
+            merged[k] = chosen.records.get(i);
+            chosen.records.set(i, chosen.records.get(last));
+            chosen.records.remove(last);
+            chosen.population--;
+            remaining--;
+        }
+        return merged;
+    }
+
+    /**
+     * Sets the seed value for random number generation. The partitions are
+     * sampled with seeds drawn from it, so the same seed and the same
+     * partitions give the same sample.
+     */
+    public void setRandomSeed(long s) {
+        r.setSeed(s);
+    }
+
+    /**
+     * Creates an array of the given size having elements of the given type.
+     * This is in a separate method because it uses a cast that causes a type
+     * safety warning.  Don't worry though: it's type safe.
+     */
+    @SuppressWarnings("unchecked")
+    private T[] makeArray(Class<T> elemType, int size) {
+        return (T[]) Array.newInstance(elemType, size);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Implementation of Reservoir that draws how many records to skip between
+ * replacements instead of drawing a random number for every record. It uses
+ * <i>Algorithm L</i> from "Reservoir-Sampling Algorithms of Time Complexity
+ * O(n(1 + log(N/n)))" by K.-H. Li, which gives the same distribution of
+ * samples as Vitter's Algorithm Z with much less arithmetic: the gaps between
+ * replacements are geometrically distributed, so after the reservoir fills,
+ * only about <i>n</i>(1 + ln(<i>N</i>/<i>n</i>)) records are ever read.
+ * <p>
+ * The records in between are passed over with one call to
+ * {@link ReservoirDataSource#skipRecords(int)} per gap, so this pays off most
+ * with data sources that can skip in bulk more cheaply than they can read.
+ * With a data source that can't, it still saves building every record.
+ * <p>
+ * For the same seed, this reservoir does not choose the same sample as
+ * {@link BasicReservoir}.
+ */
+public class SkippingReservoir<T> implements Reservoir<T> {
+
+    Random r = new Random();
+
+    public T[] getSample(ReservoirDataSource<T> dataSource, int n) throws ReservoirDataException {
+        if (n == 0) {
+            return makeArray(dataSource.getElementType(), 0);
+        }
+        // The reservoir.
+        List<T> C = new ArrayList<T>(n);
+
+        // Make the first n records candidates for the sample
+        for (int j = 0; j < n && dataSource.hasNext(); j++) {
+            C.add(dataSource.readNextRecord());
+        }
+
+        if (C.size() == n) {
+            // W is distributed as the largest of n uniform random keys, the
+            // threshold a record's key has to beat to get into the reservoir
+            double w = Math.exp(Math.log(nextUniform()) / n);
+            while (true) {
+                double gap = Math.floor(Math.log(nextUniform()) / Math.log(1.0 - w));
+                if (!skip(dataSource, gap)) {
+                    break;
+                }
+                C.set(r.nextInt(n), dataSource.readNextRecord());
+                w *= Math.exp(Math.log(nextUniform()) / n);
+            }
+        }
+
+        return C.toArray(makeArray(dataSource.getElementType(), C.size()));
+    }
+
+    /**
+     * Skips the given number of records, which may be more than fit in an int
+     * (or infinite, once w has become tiny).
+     *
+     * @return true if there is a record to read after the skip.
+     */
+    private boolean skip(ReservoirDataSource<T> dataSource, double count) throws ReservoirDataException {
+        while (count > 0) {
+            int chunk = (int) Math.min(count, Integer.MAX_VALUE);
+            dataSource.skipRecords(chunk);
+            count -= chunk;
+            if (count > 0 && !dataSource.hasNext()) {
+                return false;
+            }
+        }
+        return dataSource.hasNext();
+    }
+
+    /**
+     * Returns a random number in the range 0 < u <= 1, so its log is finite.
+     */
+    private double nextUniform() {
+        return 1.0 - r.nextDouble();
+    }
+
+    public void setRandomSeed(long s) {
+        r.setSeed(s);
+    }
+
+    /**
+     * Creates an array of the given size having elements of the given type.
+     * This is in a separate method because it uses a cast that causes a type
+     * safety warning.  Don't worry though: it's type safe.
+     */
+    @SuppressWarnings("unchecked")
+    private T[] makeArray(Class<T> elemType, int size) {
+        return (T[]) Array.newInstance(elemType, size);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A reservoir data source that reads the results of an SQL query through a
+ * forward-only cursor with a large fetch size. Unlike
+ * {@link JDBCReserviorDataSource}, it never asks the driver where the cursor
+ * is relative to the end of the results, which makes many drivers materialise
+ * the whole result set before they can answer. It looks one row ahead instead.
+ * <p>
+ * Skipped rows still come over the wire, but in batches of the fetch size,
+ * and their column values are never read. Use it with a
+ * {@link SkippingReservoir} to avoid building most of the records at all.
+ */
+public class StreamingJDBCReservoirDataSource implements CountingReservoirDataSource<Object[]> {
+
+    /**
+     * The number of rows fetched from the server at a time unless another
+     * fetch size is given.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 10000;
+
+    private final Statement stmt;
+    private final ResultSet rs;
+    private final int colCount;
+
+    /**
+     * True when the cursor has been moved ahead to the row the next read
+     * will return, so {@link #onRow} says whether there is one.
+     */
+    private boolean advanced;
+    private boolean onRow;
+
+    /**
+     * The number of rows read or skipped so far.
+     */
+    private long rowCount;
+
+    /**
+     * Runs the query with a fetch size of {@link #DEFAULT_FETCH_SIZE}.
+     *
+     * @see #StreamingJDBCReservoirDataSource(Connection, String, int)
+     */
+    public StreamingJDBCReservoirDataSource(Connection con, String query) throws SQLException {
+        this(con, query, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param con
+     *            The connection to use. WARNING: auto-commit will be turned
+     *            off for this connection, because some drivers (PostgreSQL's,
+     *            for one) only stream results inside a transaction. If you
+     *            want auto-commit on, turn it back on when you're finished
+     *            with this reservoir data source.
+     * @param query
+     *            The query to execute
+     * @param fetchSize
+     *            The number of rows to fetch from the server at a time
+     * @throws SQLException
+     *             if there is a problem reading the data from the database.
+     */
+    public StreamingJDBCReservoirDataSource(Connection con, String query, int fetchSize) throws SQLException {
+        con.setAutoCommit(false);
+        stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        rs = stmt.executeQuery(query);
+        colCount = rs.getMetaData().getColumnCount();
+    }
+
+    /**
+     * The element type is an array: the column values of a row returned by the query.
+     */
+    public Class<Object[]> getElementType() {
+        return Object[].class;
+    }
+
+    public boolean hasNext() throws ReservoirDataException {
+        if (!advanced) {
+            try {
+                onRow = rs.next();
+            } catch (SQLException e) {
+                throw new ReservoirDataException(e);
+            }
+            advanced = true;
+        }
+        return onRow;
+    }
+
+    public Object[] readNextRecord() throws ReservoirDataException {
+        if (!hasNext()) throw new ReservoirDataException("Attempted to read past last record");
+        try {
+            Object[] rowValues = new Object[colCount];
+            for (int i = 0; i < colCount; i++) {
+                rowValues[i] = rs.getObject(i + 1);
+            }
+            advanced = false;
+            rowCount++;
+            return rowValues;
+        } catch (SQLException e) {
+            throw new ReservoirDataException(e);
+        }
+    }
+
+    public void skipRecords(int count) throws ReservoirDataException {
+        for (int i = 0; i < count && hasNext(); i++) {
+            advanced = false;
+            rowCount++;
+        }
+    }
+
+    public long getRecordCount() {
+        return rowCount;
+    }
+
+    /**
+     * Closes the statement and the results. The connection is left open.
+     */
+    public void close() throws SQLException {
+        stmt.close();
+    }
+
+    /**
+     * This is exposed as package-private so that the tests can examine
+     * the statement settings.
+     */
+    Statement getStatement() {
+        return stmt;
+    }
+}
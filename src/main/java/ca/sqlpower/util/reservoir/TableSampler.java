@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sql.jdbcwrapper.OracleConnectionDecorator;
+import ca.sqlpower.sql.jdbcwrapper.PostgresConnectionDecorator;
+import ca.sqlpower.sql.jdbcwrapper.ProfilingConnectionDecorator;
+import ca.sqlpower.sql.jdbcwrapper.SQLServerConnectionDecorator;
+
+/**
+ * Takes a random sample of the rows of a database table, having the database
+ * do most of the sampling where the platform supports it. The table is read
+ * with the platform's table sample clause (Oracle's SAMPLE, or TABLESAMPLE on
+ * PostgreSQL and SQL Server) at a percentage that should return a few more
+ * rows than asked for, and the rows that come back are cut down to the exact
+ * sample size with a client-side {@link Reservoir}. On other platforms, or if
+ * the sampled query fails, every row is streamed through the client-side
+ * reservoir instead.
+ * <p>
+ * The clause comes from the data source type's
+ * {@link JDBCDataSourceType#getTableSampleClause() table sample clause}
+ * property. For data source types that don't set it, the platform is guessed
+ * from the decorator {@link ca.sqlpower.sql.jdbcwrapper.ConnectionDecorator}
+ * put on the connection.
+ * <p>
+ * Note that SQL Server only samples whole pages, so rows that are stored
+ * together are chosen together there. Oracle's SAMPLE and PostgreSQL's
+ * TABLESAMPLE BERNOULLI choose rows independently.
+ */
+public class TableSampler {
+
+    private static final Logger logger = Logger.getLogger(TableSampler.class);
+
+    public static final String ORACLE_SAMPLE_CLAUSE = "SAMPLE ({0})";
+    public static final String POSTGRES_SAMPLE_CLAUSE = "TABLESAMPLE BERNOULLI ({0})";
+    public static final String SQL_SERVER_SAMPLE_CLAUSE = "TABLESAMPLE ({0} PERCENT)";
+
+    /**
+     * How many times more rows than asked for the sampled query should return
+     * on average. Extra rows let the sample size come out right most of the
+     * time, despite the random number of rows the database returns.
+     */
+    public static final double DEFAULT_OVERSAMPLING = 1.5;
+
+    /**
+     * The smallest percentage Oracle accepts in a SAMPLE clause.
+     */
+    private static final BigDecimal MIN_PERCENT = new BigDecimal("0.000001");
+
+    private static final BigDecimal ONE_HUNDRED = new BigDecimal(100);
+
+    private final Reservoir<Object[]> reservoir;
+
+    private double oversampling = DEFAULT_OVERSAMPLING;
+
+    /**
+     * Creates a table sampler that cuts the rows down with a
+     * {@link SkippingReservoir}.
+     */
+    public TableSampler() {
+        this(new SkippingReservoir<Object[]>());
+    }
+
+    /**
+     * @param reservoir
+     *            The reservoir that makes the final sample from the rows the
+     *            database returns.
+     */
+    public TableSampler(Reservoir<Object[]> reservoir) {
+        this.reservoir = reservoir;
+    }
+
+    /**
+     * Returns a random sample of the rows of the given table. The length of
+     * the returned array will be <tt>min(</tt><i>n</i><tt>,</tt> <i>N</i>
+     * <tt>)</tt>, as with {@link Reservoir#getSample(ReservoirDataSource, int)}.
+     * WARNING: auto-commit will be turned off for the connection.
+     * <p>
+     * If a sampled query fails, it is undone before every row is read
+     * instead, as some databases refuse further statements in a transaction
+     * after one fails. Work the caller has not committed is kept: the query
+     * is rolled back to a savepoint if the caller's transaction is open, and
+     * the whole transaction is only rolled back if the sampler started it.
+     *
+     * @param con
+     *            The connection to use.
+     * @param platform
+     *            The type of database the connection is to, or null to go by
+     *            the connection's decorator alone.
+     * @param catalog
+     *            The table's catalog, or null if the platform has none.
+     * @param schema
+     *            The table's schema, or null if the platform has none.
+     * @param table
+     *            The table's name, as the database stores it.
+     * @param columns
+     *            The select list, for example "*".
+     * @param n
+     *            The sample size.
+     */
+    public Object[][] getSample(Connection con, JDBCDataSourceType platform,
+            String catalog, String schema, String table, String columns, int n)
+            throws SQLException, ReservoirDataException {
+        String tableName = qualifiedName(con.getMetaData(), catalog, schema, table);
+        String query = "SELECT " + columns + " FROM " + tableName;
+        String clause = findSampleClause(con, platform);
+        if (clause != null && n > 0) {
+            boolean ownTransaction = con.getAutoCommit();
+            long rowCount = estimateRowCount(con, catalog, schema, table, tableName);
+            BigDecimal percent = samplePercent(n, rowCount);
+            while (percent != null) {
+                Savepoint savepoint = ownTransaction ? null : setSavepoint(con);
+                Object[][] sample;
+                try {
+                    sample = sample(con, query + " " + clause.replace("{0}", percent.toPlainString()), n);
+                } catch (SQLException e) {
+                    logger.warn("Sampling in the database failed; sampling every row of " + tableName + " instead", e);
+                    if (savepoint != null) {
+                        con.rollback(savepoint);
+                    } else if (ownTransaction) {
+                        con.rollback();
+                    }
+                    break;
+                }
+                releaseSavepoint(con, savepoint);
+                if (sample.length == n) {
+                    return sample;
+                }
+                logger.debug("Sampling " + percent + "% of " + tableName + " returned only " + sample.length +
+                        " of " + n + " rows");
+                percent = increasePercent(percent, n, sample.length);
+            }
+        }
+        return sample(con, query, n);
+    }
+
+    /**
+     * Sets a savepoint to undo a failed sampled query back to, returning null
+     * if the driver does not support them.
+     */
+    private static Savepoint setSavepoint(Connection con) {
+        try {
+            return con.setSavepoint();
+        } catch (SQLException e) {
+            logger.debug("Couldn't set a savepoint; a failed sampled query will not be undone", e);
+            return null;
+        }
+    }
+
+    /**
+     * Releases the given savepoint, if there is one. Drivers that don't
+     * support releasing savepoints drop them at the end of the transaction.
+     */
+    private static void releaseSavepoint(Connection con, Savepoint savepoint) {
+        if (savepoint == null) {
+            return;
+        }
+        try {
+            con.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            logger.debug("Couldn't release a savepoint", e);
+        }
+    }
+
+    /**
+     * Returns the table sample clause to use on the given connection, or null
+     * if its platform doesn't have one.
+     */
+    static String findSampleClause(Connection con, JDBCDataSourceType platform) {
+        if (platform != null && platform.getTableSampleClause() != null) {
+            return platform.getTableSampleClause();
+        }
+        while (con instanceof ProfilingConnectionDecorator) {
+            con = ((ProfilingConnectionDecorator) con).getDelegate();
+        }
+        if (con instanceof OracleConnectionDecorator) {
+            return ORACLE_SAMPLE_CLAUSE;
+        } else if (con instanceof PostgresConnectionDecorator) {
+            return POSTGRES_SAMPLE_CLAUSE;
+        } else if (con instanceof SQLServerConnectionDecorator) {
+            return SQL_SERVER_SAMPLE_CLAUSE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the percentage of rows to sample to get about
+     * {@link #oversampling} times n rows out of rowCount, or null if that
+     * would be all of them.
+     */
+    BigDecimal samplePercent(int n, long rowCount) {
+        if (rowCount <= 0) {
+            return null;
+        }
+        BigDecimal percent = new BigDecimal(100.0 * n * oversampling / rowCount);
+        if (percent.compareTo(ONE_HUNDRED) >= 0) {
+            return null;
+        }
+        return percent.max(MIN_PERCENT).setScale(6, RoundingMode.UP).stripTrailingZeros();
+    }
+
+    /**
+     * Returns a larger percentage to retry with after the given one returned
+     * too few rows, or null to give up and read every row.
+     */
+    private BigDecimal increasePercent(BigDecimal percent, int n, int rowsReturned) {
+        double factor = oversampling * n / Math.max(rowsReturned, 1);
+        BigDecimal next = percent.multiply(new BigDecimal(Math.max(factor, 2.0)));
+        if (next.compareTo(ONE_HUNDRED) >= 0) {
+            return null;
+        }
+        return next.setScale(6, RoundingMode.UP).stripTrailingZeros();
+    }
+
+    private Object[][] sample(Connection con, String query, int n) throws SQLException, ReservoirDataException {
+        logger.debug("Sampling " + n + " rows of " + query);
+        StreamingJDBCReservoirDataSource ds = new StreamingJDBCReservoirDataSource(con, query);
+        try {
+            return reservoir.getSample(ds, n);
+        } catch (ReservoirDataException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        } finally {
+            ds.close();
+        }
+    }
+
+    /**
+     * Returns the number of rows in the given table, using the database's
+     * statistics if it keeps any so the table doesn't have to be counted.
+     */
+    private long estimateRowCount(Connection con, String catalog, String schema, String table,
+            String tableName) throws SQLException {
+        ResultSet rs = null;
+        try {
+            rs = con.getMetaData().getIndexInfo(catalog, schema, table, false, true);
+            while (rs.next()) {
+                // 7 is TYPE and 11 is CARDINALITY
+                if (rs.getInt(7) == DatabaseMetaData.tableIndexStatistic && rs.getLong(11) > 0) {
+                    return rs.getLong(11);
+                }
+            }
+        } catch (SQLException e) {
+            logger.debug("Couldn't read the statistics of " + tableName + "; counting its rows", e);
+        } finally {
+            if (rs != null) rs.close();
+        }
+
+        Statement stmt = con.createStatement();
+        try {
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName);
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Returns the table's name qualified by its catalog and schema, each part
+     * quoted so it is matched exactly as given.
+     */
+    private static String qualifiedName(DatabaseMetaData dbmd, String catalog, String schema, String table)
+            throws SQLException {
+        String quote = dbmd.getIdentifierQuoteString();
+        if (quote == null || quote.trim().length() == 0) {
+            quote = "";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (catalog != null) {
+            sb.append(quote).append(catalog).append(quote).append(dbmd.getCatalogSeparator());
+        }
+        if (schema != null) {
+            sb.append(quote).append(schema).append(quote).append(".");
+        }
+        sb.append(quote).append(table).append(quote);
+        return sb.toString();
+    }
+
+    public double getOversampling() {
+        return oversampling;
+    }
+
+    /**
+     * Sets how many times more rows than asked for the sampled query should
+     * return on average. The default is {@link #DEFAULT_OVERSAMPLING}.
+     */
+    public void setOversampling(double oversampling) {
+        if (oversampling < 1.0) throw new IllegalArgumentException("Oversampling must be at least 1, not " + oversampling);
+        this.oversampling = oversampling;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.object.SPObjectUUIDIndex;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class PersistedObjectSchedulerTest extends TestCase {
+
+    /**
+     * Orders siblings by index only.
+     */
+    private static final Comparator<PersistedSPObject> BY_INDEX = new Comparator<PersistedSPObject>() {
+        public int compare(PersistedSPObject o1, PersistedSPObject o2) {
+            return o1.getIndex() - o2.getIndex();
+        }
+    };
+
+    private SQLDatabase db;
+    private SQLTable table1;
+    private SQLTable table2;
+    private SPObjectUUIDIndex index;
+    private PersistedObjectScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        table1 = new SQLTable(db, true);
+        db.addTable(table1);
+        table2 = new SQLTable(db, true);
+        db.addTable(table2);
+        index = new SPObjectUUIDIndex(db);
+        scheduler = new PersistedObjectScheduler(index, BY_INDEX);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        index.cleanup();
+    }
+
+    private static PersistedSPObject pso(String parent, String type, String uuid, int index) {
+        return new PersistedSPObject(parent, type, uuid, index);
+    }
+
+    private static List<String> uuids(List<PersistedSPObject> objects) {
+        List<String> uuids = new ArrayList<String>();
+        for (PersistedSPObject pso : objects) {
+            uuids.add(pso.getUUID());
+        }
+        return uuids;
+    }
+
+    public void testParentsBeforeChildrenDepthFirst() throws Exception {
+        List<PersistedSPObject> objects = Arrays.asList(
+                pso("b", "C", "b1", 1),
+                pso("a", "C", "a0", 0),
+                pso(table2.getUUID(), "P", "b", 0),
+                pso("b", "C", "b0", 0),
+                pso(table1.getUUID(), "P", "a", 0),
+                pso("a0", "C", "a00", 0));
+        assertEquals(Arrays.asList("a", "a0", "a00", "b", "b0", "b1"),
+                uuids(scheduler.schedule(objects)));
+    }
+
+    public void testForcedOrderAndLastTypes() throws Exception {
+        scheduler.forceOrder("Table", "Relationship");
+        scheduler.placeLast("Key");
+        List<PersistedSPObject> objects = Arrays.asList(
+                pso(db.getUUID(), "Table", "t1", 0),
+                pso("t1", "Key", "k1", 0),
+                pso("t1", "Relationship", "r1", 1),
+                pso("r1", "Mapping", "m1", 0),
+                pso("t1", "Column", "c1", 2),
+                pso(db.getUUID(), "Table", "t2", 1),
+                pso("t2", "Column", "c2", 0));
+        assertEquals(Arrays.asList("t1", "c1", "t2", "r1", "m1", "c2", "k1"),
+                uuids(scheduler.schedule(objects)));
+    }
+
+    public void testUnplaceableObjectsGoLast() throws Exception {
+        scheduler.forceOrder("Before", "After");
+        List<PersistedSPObject> objects = Arrays.asList(
+                pso("x", "C", "y", 0),
+                pso("y", "C", "x", 0),
+                pso("missing", "C", "orphan", 0),
+                pso(db.getUUID(), "After", "after", 0),
+                pso("after", "Before", "before", 0),
+                pso(db.getUUID(), "C", "ok", 1));
+        List<String> order = uuids(scheduler.schedule(objects));
+        assertEquals(6, order.size());
+        assertEquals(Arrays.asList("ok", "orphan", "after", "before"), order.subList(0, 4));
+        assertTrue(order.subList(4, 6).containsAll(Arrays.asList("x", "y")));
+    }
+}
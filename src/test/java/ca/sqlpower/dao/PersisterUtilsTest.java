@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.helper.PersisterHelperFinder;
+import ca.sqlpower.dao.helper.SPPersisterHelper;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class PersisterUtilsTest extends TestCase {
+
+    /**
+     * A parent type with no allowedChildTypes field, so it can only be
+     * looked up if its child types are registered.
+     */
+    private static interface RegisteredParent extends SPObject {
+    }
+
+    public void testChildTypePositions() throws Exception {
+        assertEquals(0, PersisterUtils.getTypePosition(SQLColumn.class.getName(), SQLTable.class.getName()));
+        assertEquals(3, PersisterUtils.getTypePosition(SQLIndex.class.getName(), SQLTable.class.getName()));
+        assertEquals(-1, PersisterUtils.getTypePosition(SQLTable.class.getName(), SQLTable.class.getName()));
+        
+        // asking again must give the same answers from the cached table
+        assertEquals(3, PersisterUtils.getTypePosition(SQLIndex.class.getName(), SQLTable.class.getName()));
+        assertEquals(SQLIndex.class, 
+                PersisterUtils.getParentAllowedChildType(SQLIndex.class.getName(), SQLTable.class.getName()));
+        assertNull(PersisterUtils.getParentAllowedChildType(SQLTable.class, SQLTable.class));
+        assertEquals(SQLColumn.class, PersisterUtils.getParentAllowedChildType(SQLColumn.class.getName(), ""));
+    }
+
+    public void testRegisteredAllowedChildTypes() throws Exception {
+        try {
+            PersisterUtils.getAllowedChildTypes(SQLObject.class);
+            fail("SQLObject has no allowedChildTypes field of its own");
+        } catch (NoSuchFieldException expected) {
+            // expected
+        }
+        
+        List<Class<? extends SPObject>> childTypes = 
+            Arrays.<Class<? extends SPObject>>asList(SQLColumn.class, SQLObject.class);
+        PersisterUtils.registerAllowedChildTypes(RegisteredParent.class, childTypes);
+        assertSame(childTypes, PersisterUtils.getAllowedChildTypes(RegisteredParent.class));
+        assertEquals(SQLColumn.class, PersisterUtils.getParentAllowedChildType(SQLColumn.class, RegisteredParent.class));
+        assertEquals(SQLObject.class, PersisterUtils.getParentAllowedChildType(SQLTable.class, RegisteredParent.class));
+        assertEquals(1, PersisterUtils.getTypePosition(SQLTable.class.getName(), RegisteredParent.class.getName()));
+    }
+
+    public void testFinderSharesRegisteredHelpers() throws Exception {
+        SPPersisterHelper<?> helper = (SPPersisterHelper<?>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { SPPersisterHelper.class }, 
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return null;
+                    }
+                });
+        String type = RegisteredParent.class.getName();
+        PersisterHelperFinder.registerHelper(type, helper);
+        assertSame(helper, PersisterHelperFinder.findPersister(type));
+        assertSame(helper, PersisterHelperFinder.findPersister(type));
+        
+        try {
+            PersisterHelperFinder.findPersister("ca.sqlpower.dao.NoSuchType");
+            fail("There is no helper for a class that does not exist");
+        } catch (ClassNotFoundException expected) {
+            // expected
+        }
+    }
+}
@@ -19,7 +19,11 @@
 
 package ca.sqlpower.dao;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.SPListener;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sqlobject.SQLDatabase;
@@ -76,5 +80,51 @@ public class SPSessionPersisterTest extends TestCase {
         //to actually remove the imported key so it should stay there.
         assertEquals(1, table2.getChildren(SQLImportedKey.class).size());
     }
+
+    /**
+     * Tests that a discarded persister can be made to stop listening to the
+     * tree it looked objects up in, so the tree does not keep it alive.
+     */
+    public void testCleanupRemovesTreeListeners() throws Exception {
+        final Set<SPListener> indexListeners = new HashSet<SPListener>();
+        final SQLDatabase testDatabase = new SQLDatabase() {
+            @Override
+            public void addSPListener(SPListener l) {
+                super.addSPListener(l);
+                indexListeners.add(l);
+            }
+            @Override
+            public void removeSPListener(SPListener l) {
+                super.removeSPListener(l);
+                indexListeners.remove(l);
+            }
+        };
+        SQLTable table = new SQLTable(testDatabase, true);
+        testDatabase.addTable(table);
+        int listenerCount = indexListeners.size();
+
+        SPSessionPersister sessionPersister = new SPSessionPersister(
+                "Testing persister", testDatabase, new SessionPersisterSuperConverter(
+                        new PlDotIni(), testDatabase)) {
+
+            @Override
+            protected void refreshRootNode(PersistedSPObject pso) {
+                //do nothing
+            }
+        };
+        sessionPersister.setWorkspaceContainer(new WorkspaceContainer() {
+            public SPObject getWorkspace() {
+                return testDatabase;
+            }
+        });
+
+        sessionPersister.begin();
+        sessionPersister.removeObject(testDatabase.getUUID(), table.getUUID());
+        sessionPersister.commit();
+        assertTrue(indexListeners.size() > listenerCount);
+
+        sessionPersister.cleanup();
+        assertEquals(listenerCount, indexListeners.size());
+    }
     
 }
@@ -7,9 +7,21 @@ package ca.sqlpower.dao;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.WorkspaceContainer;
 
 public class XMLPersisterTest extends PersisterTest {
 
@@ -54,6 +66,204 @@ public class XMLPersisterTest extends PersisterTest {
 		assertEquals("", out.toString());
 	}
 	
+	/**
+	 * The XML should reach the output stream while the objects are being
+	 * persisted rather than all at once on commit.
+	 */
+	public void testWritesBeforeCommit() throws Exception {
+		for (int i = 0; i < 5000; i++) {
+			persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLColumn", "child" + i, i);
+			persister.persistProperty("child" + i, "name", DataType.STRING, "column " + i);
+		}
+		assertTrue(out.size() > 0);
+		loadWorkspace();
+		assertEquals(5001, numObjects);
+		assertTrue(out.toString("UTF-8").endsWith("</tester>" + System.getProperty("line.separator")));
+	}
+	
+	public void testCompressedOutput() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		XMLPersister compressing = new XMLPersister(compressed, "ca.sqlpower.testutil.SPObjectRoot", "tester", null, true);
+		compressing.begin();
+		compressing.persistObject(null, "ca.sqlpower.testutil.SPObjectRoot", workspaceId, 0);
+		compressing.persistProperty(workspaceId, "name", DataType.STRING, "compressed \u00e9");
+		compressing.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLColumn", "child", 0);
+		compressing.commit();
+		
+		XMLPersisterReader reader = new XMLPersisterReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), "UTF-8"), 
+				receiver, upgradePersisterManager, "tester");
+		reader.read();
+		assertEquals(2, numObjects);
+		assertEquals("compressed \u00e9", receivedString);
+		
+		// the byte stream reader should notice the compression on its own
+		numObjects = 0;
+		receivedString = null;
+		reader = new XMLPersisterReader(new ByteArrayInputStream(compressed.toByteArray()), 
+				receiver, upgradePersisterManager, "tester");
+		reader.read();
+		assertEquals(2, numObjects);
+		assertEquals("compressed \u00e9", receivedString);
+	}
+	
+	public void testReadInBatches() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLColumn", "child" + i, i);
+			persister.persistProperty("child" + i, "name", DataType.STRING, "column " + i);
+		}
+		persister.commit();
+		
+		final List<String> calls = new ArrayList<String>();
+		SPPersister batchTarget = new StubSPPersister() {
+			@Override
+			public void begin() throws SPPersistenceException {
+				calls.add("begin");
+			}
+			@Override
+			public void commit() throws SPPersistenceException {
+				calls.add("commit");
+			}
+			@Override
+			public void persistObject(String parentUUID, String type, String uuid, int index) 
+					throws SPPersistenceException {
+				calls.add(uuid);
+			}
+			@Override
+			public void persistProperty(String uuid, String propertyName, DataType propertyType, 
+					Object newValue) throws SPPersistenceException {
+				calls.add(uuid + "." + propertyName);
+			}
+		};
+		XMLPersisterReader reader = new XMLPersisterReader(new ByteArrayInputStream(out.toByteArray()), 
+				batchTarget, upgradePersisterManager, "tester");
+		reader.setCommitBatchSize(4);
+		reader.read();
+		
+		// the writer stores a null UUID as an empty one
+		String rootUUID = workspaceId == null ? "" : workspaceId;
+		assertEquals(Arrays.asList("begin", 
+				rootUUID, rootUUID + ".name", 
+				"child0", "child0.name", "child1", "child1.name", "child2", "child2.name", "commit", "begin", 
+				"child3", "child3.name", "child4", "child4.name", "child5", "child5.name", 
+				"child6", "child6.name", "commit", "begin",
+				"child7", "child7.name", "child8", "child8.name", "child9", "child9.name", "commit"), 
+				calls);
+	}
+	
+	/**
+	 * Relationships, their column mappings, imported keys and anything that
+	 * refers to them can point at objects further on in the file so they
+	 * have to wait for the last batch.
+	 */
+	public void testReadInBatchesHoldsBackRelationships() throws Exception {
+		persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLTable", "pkTable", 0);
+		persister.persistObject("pkTable", "ca.sqlpower.sqlobject.SQLRelationship", "rel", 0);
+		persister.persistProperty("rel", "fkTable", DataType.REFERENCE, "fkTable");
+		persister.persistObject("rel", "ca.sqlpower.sqlobject.SQLRelationship$ColumnMapping", "mapping", 0);
+		persister.persistProperty("mapping", "fkColumn", DataType.REFERENCE, "fkColumn");
+		persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLTable", "fkTable", 1);
+		persister.persistObject("fkTable", "ca.sqlpower.sqlobject.SQLColumn", "fkColumn", 0);
+		persister.persistObject("fkTable", "ca.sqlpower.sqlobject.SQLRelationship$SQLImportedKey", "key", 0);
+		persister.persistProperty("key", "foreignKey", DataType.REFERENCE, "rel");
+		persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLColumn", "user", 0);
+		persister.persistProperty("user", "relationship", DataType.REFERENCE, "rel");
+		persister.persistObject(workspaceId, "ca.sqlpower.sqlobject.SQLColumn", "other", 1);
+		persister.commit();
+		
+		final List<String> calls = new ArrayList<String>();
+		SPPersister batchTarget = new StubSPPersister() {
+			@Override
+			public void begin() throws SPPersistenceException {
+				calls.add("begin");
+			}
+			@Override
+			public void commit() throws SPPersistenceException {
+				calls.add("commit");
+			}
+			@Override
+			public void persistObject(String parentUUID, String type, String uuid, int index) 
+					throws SPPersistenceException {
+				calls.add(uuid);
+			}
+			@Override
+			public void persistProperty(String uuid, String propertyName, DataType propertyType, 
+					Object newValue) throws SPPersistenceException {
+				calls.add(uuid + "." + propertyName);
+			}
+		};
+		XMLPersisterReader reader = new XMLPersisterReader(new ByteArrayInputStream(out.toByteArray()), 
+				batchTarget, upgradePersisterManager, "tester");
+		reader.setCommitBatchSize(2);
+		reader.read();
+		
+		String rootUUID = workspaceId == null ? "" : workspaceId;
+		assertEquals(Arrays.asList("begin", 
+				rootUUID, rootUUID + ".name", "pkTable", "commit", "begin", 
+				"fkTable", "fkColumn", "commit", "begin", 
+				"other", 
+				"rel", "rel.fkTable", "mapping", "mapping.fkColumn", "key", "key.foreignKey", 
+				"user", "user.relationship", "commit"), 
+				calls);
+	}
+
+	/**
+	 * A relationship from a table to one further on in the file has to be
+	 * created when the file is read into a session in batches.
+	 */
+	public void testReadRelationshipsInBatchesIntoSession() throws Exception {
+		final SQLDatabase db = new SQLDatabase();
+		SQLTable pkTable = new SQLTable(db, true);
+		pkTable.setName("pkTable");
+		db.addTable(pkTable);
+		SQLColumn pkColumn = new SQLColumn();
+		pkColumn.setName("id");
+		pkTable.addColumn(pkColumn);
+		pkTable.addToPK(pkColumn);
+		SQLTable fkTable = new SQLTable(db, true);
+		fkTable.setName("fkTable");
+		db.addTable(fkTable);
+		SQLRelationship relationship = new SQLRelationship();
+		relationship.attachRelationship(pkTable, fkTable, true);
+		
+		ByteArrayOutputStream dbOut = new ByteArrayOutputStream();
+		XMLPersister dbPersister = new XMLPersister(dbOut, SQLDatabase.class.getName(), "tester");
+		SPPersisterListener listener = new SPPersisterListener(dbPersister, 
+				new SessionPersisterSuperConverter(new PlDotIni(), db));
+		listener.persistObjectInterleaveProperties(db, 0, true, dbPersister);
+		
+		final SQLDatabase readDb = new SQLDatabase();
+		readDb.setUUID(db.getUUID());
+		SPSessionPersister sessionPersister = new SPSessionPersister("Batch reader", readDb, 
+				new SessionPersisterSuperConverter(new PlDotIni(), readDb)) {
+			@Override
+			protected void refreshRootNode(PersistedSPObject pso) {
+				// the root is the database being read into
+			}
+		};
+		sessionPersister.setWorkspaceContainer(new WorkspaceContainer() {
+			public SPObject getWorkspace() {
+				return readDb;
+			}
+		});
+		XMLPersisterReader reader = new XMLPersisterReader(new ByteArrayInputStream(dbOut.toByteArray()), 
+				sessionPersister, upgradePersisterManager, "tester");
+		reader.setCommitBatchSize(2);
+		reader.read();
+		
+		assertEquals(2, readDb.getTables().size());
+		SQLTable readPkTable = readDb.getTableByName("pkTable");
+		SQLTable readFkTable = readDb.getTableByName("fkTable");
+		assertEquals(1, readPkTable.getExportedKeys().size());
+		SQLRelationship readRelationship = readPkTable.getExportedKeys().get(0);
+		assertEquals(relationship.getUUID(), readRelationship.getUUID());
+		assertSame(readFkTable, readRelationship.getFkTable());
+		assertEquals(1, readFkTable.getImportedKeys().size());
+		assertSame(readRelationship, readFkTable.getImportedKeys().get(0).getRelationship());
+		assertEquals(1, readRelationship.getChildren().size());
+		assertSame(readFkTable.getColumn(0), readRelationship.getChildren(SQLRelationship.ColumnMapping.class).get(0).getFkColumn());
+	}
+	
 	@Override
 	protected void loadWorkspace() throws Exception {
 		persister.commit();
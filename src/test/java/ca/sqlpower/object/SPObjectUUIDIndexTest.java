@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class SPObjectUUIDIndexTest extends TestCase {
+
+    private SQLDatabase db;
+    private SQLTable table;
+    private SQLColumn column;
+    private SPObjectUUIDIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        table = new SQLTable(db, true);
+        db.addTable(table);
+        column = new SQLColumn();
+        table.addColumn(column);
+        index = new SPObjectUUIDIndex(db);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        index.cleanup();
+    }
+
+    public void testIndexesExistingTree() throws Exception {
+        assertSame(db, index.getObjectInTree(db.getUUID()));
+        assertSame(table, index.findByUuid(table.getUUID(), SQLTable.class));
+        assertSame(column, index.getObjectInTree(column.getUUID()));
+        assertNull(index.getObjectInTree("no such uuid"));
+        try {
+            index.findByUuid(column.getUUID(), SQLTable.class);
+            fail("A column is not a table");
+        } catch (ClassCastException expected) {
+            // expected
+        }
+    }
+
+    public void testFollowsChildEvents() throws Exception {
+        SQLTable newTable = new SQLTable(db, true);
+        SQLColumn newColumn = new SQLColumn();
+        newTable.addColumn(newColumn);
+        db.addTable(newTable);
+        assertSame(newTable, index.getObjectInTree(newTable.getUUID()));
+        assertSame(newColumn, index.getObjectInTree(newColumn.getUUID()));
+
+        db.removeTable(table);
+        assertNull(index.getObjectInTree(table.getUUID()));
+        assertNull(index.getObjectInTree(column.getUUID()));
+
+        // removed objects are no longer listened to
+        SQLColumn orphan = new SQLColumn();
+        table.addColumn(orphan);
+        assertNull(index.getObjectInTree(orphan.getUUID()));
+    }
+
+    public void testFollowsUUIDChanges() throws Exception {
+        String oldUUID = column.getUUID();
+        column.setUUID("new-uuid");
+        assertNull(index.getObjectInTree(oldUUID));
+        assertSame(column, index.getObjectInTree("new-uuid"));
+    }
+
+    public void testStaleEntriesAreNotReturned() throws Exception {
+        String oldUUID = column.getUUID();
+        column.generateNewUUID();
+        assertNull("the UUID changed without an event", index.getObjectInTree(oldUUID));
+        index.rebuild();
+        assertSame(column, index.getObjectInTree(column.getUUID()));
+    }
+
+    public void testCleanupStopsListening() throws Exception {
+        index.cleanup();
+        assertEquals(0, index.size());
+        SQLTable newTable = new SQLTable(db, true);
+        db.addTable(newTable);
+        assertEquals(0, index.size());
+    }
+}
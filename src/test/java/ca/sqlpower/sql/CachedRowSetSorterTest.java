@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.File;
+import java.sql.Date;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.CachedRowSet.RowComparator;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class CachedRowSetSorterTest extends TestCase {
+
+    /**
+     * Enough rows to take the parallel path.
+     */
+    private static final int ROW_COUNT = 60000;
+
+    private CachedRowSet crs;
+
+    private RowComparator comparator;
+
+    @Override
+    protected void setUp() throws Exception {
+        MockJDBCResultSet rs = new MockJDBCResultSet(3);
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "bucket");
+        rs.getMetaData().setColumnType(2, Types.INTEGER);
+        rs.setColumnName(3, "name");
+        rs.getMetaData().setColumnType(3, Types.VARCHAR);
+        Random r = new Random(1234L);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            Integer bucket = r.nextInt(20) == 0 ? null : Integer.valueOf(r.nextInt(50));
+            rs.addRow(new Object[] { i, bucket, r.nextBoolean() ? "Name" + r.nextInt(100) : "name" + r.nextInt(100) });
+        }
+        crs = new CachedRowSet();
+        crs.populate(rs);
+
+        comparator = new RowComparator();
+        comparator.addSortColumn(2, false);
+        comparator.addSortColumn(3, true);
+    }
+
+    /**
+     * Sorting the same rows with Collections.sort and the row comparator is
+     * the reference the sorter has to match exactly, including the order of
+     * rows that compare equal.
+     */
+    private List<Object> expectedIds() {
+        List<Object[]> rows = new ArrayList<Object[]>(crs.getData());
+        Collections.sort(rows, comparator);
+        List<Object> ids = new ArrayList<Object>();
+        for (Object[] row : rows) {
+            ids.add(row[0]);
+        }
+        return ids;
+    }
+
+    private void assertIndexMatches(int[] index) {
+        List<Object> expected = expectedIds();
+        List<Object[]> rows = crs.getData();
+        assertEquals(expected.size(), index.length);
+        for (int i = 0; i < index.length; i++) {
+            assertEquals("Position " + i, expected.get(i), rows.get(index[i])[0]);
+        }
+    }
+
+    public void testSingleThreadedIndex() throws Exception {
+        CachedRowSetSorter sorter = new CachedRowSetSorter(comparator);
+        sorter.setParallelism(1);
+        assertIndexMatches(sorter.sortedIndex(crs));
+    }
+
+    public void testParallelIndex() throws Exception {
+        CachedRowSetSorter sorter = new CachedRowSetSorter(comparator);
+        sorter.setParallelism(4);
+        assertIndexMatches(sorter.sortedIndex(crs));
+    }
+
+    public void testExternalIndex() throws Exception {
+        CachedRowSetSorter sorter = new CachedRowSetSorter(comparator);
+        sorter.setMemoryBudget(100000);
+        assertIndexMatches(sorter.sortedIndex(crs));
+    }
+
+    /**
+     * Keys that are neither numbers nor strings are written to the run files
+     * too, and the run files are gone once the sort is done.
+     */
+    public void testExternalSortOfDates() throws Exception {
+        MockJDBCResultSet rs = new MockJDBCResultSet(2);
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "day");
+        rs.getMetaData().setColumnType(2, Types.DATE);
+        Random r = new Random(99L);
+        for (int i = 0; i < 5000; i++) {
+            rs.addRow(new Object[] { i, r.nextInt(10) == 0 ? null : new Date(r.nextInt(1000) * 86400000L) });
+        }
+        crs = new CachedRowSet();
+        crs.populate(rs);
+        comparator = new RowComparator();
+        comparator.addSortColumn(2, true);
+
+        File dir = File.createTempFile("sorter", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        try {
+            CachedRowSetSorter sorter = new CachedRowSetSorter(comparator);
+            sorter.setMemoryBudget(10000);
+            sorter.setTempDirectory(dir);
+            assertIndexMatches(sorter.sortedIndex(crs));
+            assertEquals(0, dir.list().length);
+        } finally {
+            dir.delete();
+        }
+    }
+
+    public void testColumnarSortedCopy() throws Exception {
+        CachedRowSet columnar = new CachedRowSet();
+        columnar.setColumnarStorage(true);
+        columnar.populate(crs);
+
+        CachedRowSet sorted = columnar.sort(comparator);
+        List<Object> expected = expectedIds();
+        assertEquals(expected.size(), sorted.size());
+        int i = 0;
+        while (sorted.next()) {
+            assertEquals("Position " + i, expected.get(i), sorted.getObject(1));
+            i++;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+import ca.sqlpower.testutil.MockJDBCResultSetMetaData;
+
+public class CachedRowSetTest extends TestCase {
+
+    private MockJDBCResultSet rs;
+
+    @Override
+    protected void setUp() throws Exception {
+        rs = new MockJDBCResultSet(5);
+        MockJDBCResultSetMetaData md = rs.getMetaData();
+        rs.setColumnName(1, "id");
+        md.setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "amount");
+        md.setColumnType(2, Types.DOUBLE);
+        rs.setColumnName(3, "big_id");
+        md.setColumnType(3, Types.NUMERIC);
+        md.setPrecision(3, 10);
+        md.setScale(3, 0);
+        rs.setColumnName(4, "name");
+        md.setColumnType(4, Types.VARCHAR);
+        rs.setColumnName(5, "code");
+        md.setColumnType(5, Types.INTEGER);
+
+        rs.addRow(new Object[] { 1, 1.5, new BigDecimal(100), "apple", 10 });
+        rs.addRow(new Object[] { 2, null, new BigDecimal(200), "banana", 20 });
+        rs.addRow(new Object[] { null, 3.5, null, "apple", "not an int" });
+    }
+
+    public void testColumnarPopulateReturnsOriginalTypes() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(rs);
+
+        assertEquals(3, crs.size());
+        assertTrue(crs.next());
+        assertEquals(Integer.valueOf(1), crs.getObject(1));
+        assertEquals(Double.valueOf(1.5), crs.getObject(2));
+        assertEquals(new BigDecimal(100), crs.getObject(3));
+        assertEquals("apple", crs.getObject(4));
+        assertEquals(Integer.valueOf(10), crs.getObject(5));
+    }
+
+    public void testColumnarPrimitiveGettersAndNulls() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(rs);
+
+        crs.absolute(2);
+        assertEquals(2, crs.getInt(1));
+        assertFalse(crs.wasNull());
+        assertEquals(0.0, crs.getDouble(2));
+        assertTrue(crs.wasNull());
+        assertEquals(200L, crs.getLong(3));
+        assertEquals("banana", crs.getString(4));
+
+        crs.absolute(3);
+        assertEquals(0, crs.getInt(1));
+        assertTrue(crs.wasNull());
+        assertNull(crs.getObject(3));
+        assertTrue(crs.wasNull());
+    }
+
+    /**
+     * A value that does not fit the column's declared type has to survive
+     * the trip through columnar storage unchanged.
+     */
+    public void testColumnarFallsBackForUnexpectedValues() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(rs);
+
+        crs.absolute(3);
+        assertEquals("not an int", crs.getObject(5));
+        crs.absolute(1);
+        assertEquals(Integer.valueOf(10), crs.getObject(5));
+    }
+
+    public void testColumnarMatchesRowStorage() throws Exception {
+        CachedRowSet rows = new CachedRowSet();
+        rows.populate(rs);
+        CachedRowSet columns = new CachedRowSet();
+        columns.setColumnarStorage(true);
+        columns.populate(rs);
+
+        assertEquals(rows.size(), columns.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] expected = rows.getData().get(i);
+            Object[] actual = columns.getData().get(i);
+            for (int col = 0; col < expected.length; col++) {
+                assertEquals("Row " + i + " col " + col, expected[col], actual[col]);
+            }
+        }
+    }
+
+    /**
+     * A string column whose values are mostly distinct is not worth
+     * dictionary encoding, while one with few distinct values stays encoded.
+     */
+    public void testColumnarHighCardinalityStrings() throws Exception {
+        MockJDBCResultSet strings = new MockJDBCResultSet(2);
+        strings.setColumnName(1, "key");
+        strings.getMetaData().setColumnType(1, Types.VARCHAR);
+        strings.setColumnName(2, "category");
+        strings.getMetaData().setColumnType(2, Types.VARCHAR);
+        int rows = ColumnarRowList.StringColumn.MIN_DICTIONARY_SIZE * 4;
+        for (int i = 0; i < rows; i++) {
+            strings.addRow(new Object[] { "key" + i, "category" + (i % 10) });
+        }
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(strings);
+
+        for (int i = 0; i < rows; i++) {
+            assertTrue(crs.next());
+            assertEquals("key" + i, crs.getString(1));
+            assertEquals("category" + (i % 10), crs.getString(2));
+        }
+
+        ColumnarRowList.Column keys = ColumnarRowList.createColumn(Types.VARCHAR, 0, 0);
+        ColumnarRowList.Column categories = ColumnarRowList.createColumn(Types.VARCHAR, 0, 0);
+        keys.resize(rows);
+        categories.resize(rows);
+        int refusedAt = -1;
+        for (int i = 0; i < rows && refusedAt == -1; i++) {
+            if (!keys.set(i, "key" + i)) {
+                refusedAt = i;
+            }
+            assertTrue(categories.set(i, "category" + (i % 10)));
+        }
+        assertEquals(ColumnarRowList.StringColumn.MIN_DICTIONARY_SIZE, refusedAt);
+    }
+
+    public void testColumnarUpdateAndInsert() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(rs);
+
+        crs.absolute(1);
+        crs.updateObject(4, "cherry");
+        assertEquals("cherry", crs.getString(4));
+
+        crs.moveToInsertRow();
+        crs.updateObject(1, 4);
+        crs.updateObject(4, "date");
+        crs.insertRow();
+        crs.moveToCurrentRow();
+
+        assertEquals(4, crs.size());
+        crs.absolute(4);
+        assertEquals(4, crs.getInt(1));
+        assertEquals("date", crs.getString(4));
+    }
+
+    public void testColumnarSort() throws SQLException {
+        CachedRowSet crs = new CachedRowSet();
+        crs.setColumnarStorage(true);
+        crs.populate(rs);
+
+        CachedRowSet.RowComparator c = new CachedRowSet.RowComparator();
+        c.addSortColumn(1, false);
+        CachedRowSet sorted = crs.sort(c);
+
+        sorted.next();
+        assertEquals(2, sorted.getInt(1));
+        sorted.next();
+        assertEquals(1, sorted.getInt(1));
+    }
+
+    public void testSpillKeepsRowsPastThreshold() throws Exception {
+        MockJDBCResultSet big = new MockJDBCResultSet(3);
+        big.setColumnName(1, "id");
+        big.setColumnName(2, "name");
+        big.setColumnName(3, "amount");
+        for (int i = 0; i < 1000; i++) {
+            big.addRow(new Object[] { i, "row " + i, i % 7 == 0 ? null : new BigDecimal("" + i + ".25") });
+        }
+
+        CachedRowSet crs = new CachedRowSet();
+        crs.setSpillThreshold(1000);
+        crs.populate(big);
+
+        assertEquals(1000, crs.size());
+        int count = 0;
+        while (crs.next()) {
+            int i = crs.getInt(1);
+            assertEquals(count, i);
+            assertEquals("row " + i, crs.getString(2));
+            if (i % 7 == 0) {
+                assertNull(crs.getObject(3));
+                assertTrue(crs.wasNull());
+            } else {
+                assertEquals(new BigDecimal("" + i + ".25"), crs.getBigDecimal(3));
+            }
+            count++;
+        }
+        assertEquals(1000, count);
+
+        crs.absolute(900);
+        crs.updateString(2, "changed");
+        crs.absolute(1);
+        crs.absolute(900);
+        assertEquals("changed", crs.getString(2));
+    }
+
+    public void testSpilledRowUpdatesDoNotGrowFileWithoutBound() throws Exception {
+        SpillingRowList rows = new SpillingRowList(0, null);
+        for (int i = 0; i < 100; i++) {
+            rows.add(new Object[] { i, "row " + i });
+        }
+        long length = rows.getSpillFileLength();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 100; i++) {
+                rows.set(i, new Object[] { i, "row " + (round % 10) });
+            }
+        }
+        assertEquals("rows that fit should be overwritten in place", length, rows.getSpillFileLength());
+
+        StringBuilder value = new StringBuilder();
+        for (int round = 0; round < 200; round++) {
+            value.append("grow");
+            for (int i = 0; i < 100; i++) {
+                rows.set(i, new Object[] { i, value.toString() });
+            }
+        }
+        long live = 100 * (4 + 4 + 5 + 5 + 2 * value.length());
+        assertTrue("spill file is " + rows.getSpillFileLength() + " bytes for " + live + " bytes of rows",
+                rows.getSpillFileLength() <= 2 * live + SpillingRowList.MIN_COMPACTION_WASTE);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, rows.get(i)[0]);
+            assertEquals(value.toString(), rows.get(i)[1]);
+        }
+
+        File spillFile = rows.getSpillFile();
+        assertTrue(spillFile.exists());
+        rows.close();
+        assertFalse(spillFile.exists());
+    }
+
+    public void testDeleteSpillFile() throws Exception {
+        MockJDBCResultSet big = new MockJDBCResultSet(1);
+        big.setColumnName(1, "id");
+        for (int i = 0; i < 100; i++) {
+            big.addRow(new Object[] { i });
+        }
+
+        File spillDirectory = File.createTempFile("crs-test", "");
+        assertTrue(spillDirectory.delete());
+        assertTrue(spillDirectory.mkdir());
+        try {
+            CachedRowSet crs = new CachedRowSet();
+            crs.setSpillThreshold(100);
+            crs.setSpillDirectory(spillDirectory);
+            crs.populate(big);
+            assertEquals(1, spillDirectory.listFiles().length);
+
+            crs.populate(big);
+            assertEquals("populating again should delete the old spill file", 1, spillDirectory.listFiles().length);
+
+            crs.deleteSpillFile();
+            assertEquals(0, spillDirectory.listFiles().length);
+        } finally {
+            spillDirectory.delete();
+        }
+    }
+
+    /**
+     * Reads a full ring buffer while another thread keeps adding to it, and
+     * checks that every read sees the rows of one window, oldest first.
+     */
+    public void testRingBufferReadsKeepRowOrderWhileWriting() throws Exception {
+        final int capacity = 8;
+        final int total = 1000000;
+        final RingBufferRowList rows = new RingBufferRowList(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rows.add(new Object[] { i });
+        }
+        Thread writer = new Thread() {
+            public void run() {
+                for (int i = capacity; i < total; i++) {
+                    rows.add(new Object[] { i });
+                }
+            }
+        };
+        writer.start();
+        while (writer.isAlive()) {
+            int first = (Integer) rows.get(0)[0];
+            int last = (Integer) rows.get(capacity - 1)[0];
+            assertTrue("row 0 was " + first + " but the last row was " + last, first < last);
+
+            Object[] window = rows.toArray();
+            assertEquals(capacity, window.length);
+            for (int i = 1; i < window.length; i++) {
+                assertEquals((Integer) ((Object[]) window[0])[0] + i, ((Object[]) window[i])[0]);
+            }
+        }
+        writer.join();
+        assertEquals(total - capacity, rows.get(0)[0]);
+    }
+
+    public void testFollowKeepsLastRowsInWindow() throws Exception {
+        MockJDBCResultSet stream = new MockJDBCResultSet(1);
+        stream.setColumnName(1, "id");
+        for (int i = 0; i < 100; i++) {
+            stream.addRow(new Object[] { i });
+        }
+
+        final List<RowSetChangeEvent> events = new ArrayList<RowSetChangeEvent>();
+        CachedRowSet crs = new CachedRowSet();
+        crs.addRowSetListener(new RowSetChangeListener() {
+            public void rowAdded(RowSetChangeEvent e) {
+                events.add(e);
+            }
+        });
+        crs.follow(stream, 10);
+
+        assertEquals(10, crs.size());
+        assertTrue(crs.first());
+        assertEquals(90, crs.getInt(1));
+        assertEquals(1, crs.getRow());
+        assertTrue(crs.last());
+        assertEquals(99, crs.getInt(1));
+        assertEquals(10, crs.getRow());
+
+        assertEquals(100, events.size());
+        RowSetChangeEvent lastEvent = events.get(99);
+        assertEquals(9, lastEvent.getRowNumber());
+        assertEquals(99L, lastEvent.getSequenceNumber());
+        assertEquals(3, events.get(3).getRowNumber());
+        assertEquals(3L, events.get(3).getSequenceNumber());
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class DataMoverTest extends TestCase {
+
+    /**
+     * Stands in for a destination connection, recording the rows inserted
+     * through its prepared statement.
+     */
+    private static class Destination implements InvocationHandler {
+        final List<List<Object>> inserted = new ArrayList<List<Object>>();
+        final List<List<Object>> uncommitted = new ArrayList<List<Object>>();
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        int commits;
+        int rollbacks;
+        boolean supportsBatches = true;
+        int failAtBatch = -1;
+
+        private final List<List<Object>> pending = new ArrayList<List<Object>>();
+        private Object[] params;
+        private String sql;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                sql = (String) args[0];
+                pending.clear();
+                params = new Object[sql.length() - sql.replace("?", "").length()];
+                return proxy(PreparedStatement.class, this);
+            } else if (name.equals("getMetaData")) {
+                return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("supportsBatchUpdates")) return supportsBatches;
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+            } else if (name.equals("commit")) {
+                commits++;
+                inserted.addAll(uncommitted);
+                uncommitted.clear();
+            } else if (name.equals("rollback")) {
+                rollbacks++;
+                uncommitted.clear();
+            } else if (name.equals("setNull")) {
+                params[(Integer) args[0] - 1] = null;
+            } else if (name.startsWith("set") && args.length >= 2 && args[0] instanceof Integer) {
+                params[(Integer) args[0] - 1] = args[1];
+            } else if (name.equals("addBatch")) {
+                pending.add(new ArrayList<Object>(Arrays.asList(params)));
+            } else if (name.equals("executeBatch")) {
+                if (batchSizes.size() == failAtBatch) {
+                    throw new SQLException("constraint violated");
+                }
+                batchSizes.add(pending.size());
+                uncommitted.addAll(pending);
+                pending.clear();
+                return new int[0];
+            } else if (name.equals("executeUpdate") && sql.startsWith("DELETE")) {
+                // only single column keys are simulated
+                int after = ((Number) params[0]).intValue();
+                for (Iterator<List<Object>> it = inserted.iterator(); it.hasNext(); ) {
+                    if (((Number) it.next().get(0)).intValue() > after) {
+                        it.remove();
+                    }
+                }
+                return 0;
+            } else if (name.equals("executeUpdate")) {
+                uncommitted.add(new ArrayList<Object>(Arrays.asList(params)));
+                return 1;
+            }
+            return null;
+        }
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(DataMoverTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Connection source(final MockJDBCResultSet rs) {
+        return (Connection) proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createStatement")) {
+                    return proxy(Statement.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("executeQuery")) return rs;
+                            return null;
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+    }
+
+    private MockJDBCResultSet rs;
+    private Destination dst;
+    private Connection dstCon;
+
+    @Override
+    protected void setUp() throws Exception {
+        rs = new MockJDBCResultSet(4);
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "amount");
+        rs.getMetaData().setColumnType(2, Types.DECIMAL);
+        rs.setColumnName(3, "ratio");
+        rs.getMetaData().setColumnType(3, Types.DOUBLE);
+        rs.setColumnName(4, "name");
+        rs.getMetaData().setColumnType(4, Types.VARCHAR);
+        for (int i = 0; i < 25; i++) {
+            rs.addRow(new Object[] {
+                    i, new BigDecimal("12345678901234567.89"), i % 5 == 0 ? null : i / 4.0, "row" + i });
+        }
+        dst = new Destination();
+        dstCon = (Connection) proxy(Connection.class, dst);
+    }
+
+    private void checkInserted() {
+        assertEquals(25, dst.inserted.size());
+        for (int i = 0; i < 25; i++) {
+            List<Object> row = dst.inserted.get(i);
+            assertEquals(i, ((Number) row.get(0)).intValue());
+            assertEquals(new BigDecimal("12345678901234567.89"), row.get(1));
+            assertEquals(i % 5 == 0 ? null : i / 4.0, row.get(2));
+            assertEquals("row" + i, row.get(3));
+        }
+    }
+
+    public void testPipelinedBatches() throws Exception {
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.setBatchSize(10);
+        mover.setQueueCapacity(1);
+        assertEquals(25, mover.copyTable("DEST", "SRC"));
+        checkInserted();
+        assertEquals(Arrays.asList(10, 10, 5), dst.batchSizes);
+        assertEquals(1, dst.commits);
+        assertEquals(25, mover.getLastCopyStats().getRowCount());
+    }
+
+    public void testUnpipelinedWithCommitInterval() throws Exception {
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.setPipelined(false);
+        mover.setBatchSize(10);
+        mover.setCommitInterval(20);
+        mover.copyTable("DEST", "SRC");
+        checkInserted();
+        // once after 20 rows and once at the end
+        assertEquals(2, dst.commits);
+    }
+
+    public void testRowAtATimeWithoutBatchSupport() throws Exception {
+        dst.supportsBatches = false;
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.copyTable("DEST", "SRC");
+        checkInserted();
+        assertTrue(dst.batchSizes.isEmpty());
+    }
+
+    public void testFailedBatchRollsBack() throws Exception {
+        dst.failAtBatch = 1;
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.setBatchSize(10);
+        try {
+            mover.copyTable("DEST", "SRC");
+            fail("The second batch should have failed");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().startsWith("Prepared insert statement failed at row 10"));
+        }
+        assertEquals(1, dst.rollbacks);
+        assertEquals(0, dst.commits);
+    }
+
+    /**
+     * Copying within one connection must not read the source on another
+     * thread while the destination is written.
+     */
+    public void testSameConnectionIsNotPipelined() throws Exception {
+        final Set<Thread> readers = Collections.synchronizedSet(new HashSet<Thread>());
+        final ResultSet recording = (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("next")) {
+                    readers.add(Thread.currentThread());
+                }
+                try {
+                    return method.invoke(rs, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        Connection shared = (Connection) proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("createStatement")) {
+                    return proxy(Statement.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("executeQuery")) return recording;
+                            return null;
+                        }
+                    });
+                }
+                return dst.invoke(proxy, method, args);
+            }
+        });
+        DataMover mover = new DataMover(shared, shared);
+        assertTrue(mover.isPipelined());
+        mover.setBatchSize(10);
+        assertEquals(25, mover.copyTable("DEST", "SRC"));
+        checkInserted();
+        assertEquals(Collections.singleton(Thread.currentThread()), readers);
+    }
+
+    /**
+     * LOB columns are read in full, so the values queued for the writer do
+     * not depend on the source result set staying on their row.
+     */
+    public void testLobsAreMaterialized() throws Exception {
+        rs = new MockJDBCResultSet(2);
+        rs.setColumnName(1, "doc");
+        rs.getMetaData().setColumnType(1, Types.CLOB);
+        rs.setColumnName(2, "image");
+        rs.getMetaData().setColumnType(2, Types.BLOB);
+        rs.addRow(new Object[] { "some text", new byte[] { 1, 2, 3 } });
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.copyTable("DEST", "SRC");
+        assertEquals(1, dst.inserted.size());
+        assertEquals("some text", dst.inserted.get(0).get(0));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) dst.inserted.get(0).get(1)));
+    }
+
+    /**
+     * An unsigned INTEGER column can hold values past the range of an int,
+     * which must not wrap around on the way to the destination.
+     */
+    public void testUnsignedIntegersAreNotTruncated() throws Exception {
+        rs = new MockJDBCResultSet(1);
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.addRow(new Object[] { 4294967295L });
+        rs.addRow(new Object[] { 7 });
+        DataMover mover = new DataMover(dstCon, source(rs));
+        mover.copyTable("DEST", "SRC");
+        assertEquals(2, dst.inserted.size());
+        assertEquals(4294967295L, ((Number) dst.inserted.get(0).get(0)).longValue());
+        assertEquals(7, ((Number) dst.inserted.get(1).get(0)).longValue());
+    }
+
+    /**
+     * Stands in for a source connection whose table is keyed on its first
+     * column, answering chunk queries by filtering the given rows.
+     */
+    private static Connection keyedSource(final MockJDBCResultSet all) {
+        return (Connection) proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("prepareStatement")) {
+                    final Object[] after = new Object[1];
+                    final int[] maxRows = new int[] { Integer.MAX_VALUE };
+                    return proxy(PreparedStatement.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("setObject")) {
+                                after[0] = args[1];
+                            } else if (method.getName().equals("setMaxRows")) {
+                                maxRows[0] = (Integer) args[0];
+                            } else if (method.getName().equals("executeQuery")) {
+                                MockJDBCResultSet chunk = new MockJDBCResultSet(all.getMetaData().getColumnCount());
+                                for (int col = 1; col <= all.getMetaData().getColumnCount(); col++) {
+                                    chunk.setColumnName(col, all.getMetaData().getColumnName(col));
+                                    chunk.getMetaData().setColumnType(col, all.getMetaData().getColumnType(col));
+                                }
+                                int rows = 0;
+                                all.beforeFirst();
+                                while (all.next() && rows < maxRows[0]) {
+                                    if (after[0] == null || all.getInt(1) > ((Number) after[0]).intValue()) {
+                                        Object[] row = new Object[all.getMetaData().getColumnCount()];
+                                        for (int col = 1; col <= row.length; col++) {
+                                            row[col - 1] = all.getObject(col);
+                                        }
+                                        chunk.addRow(row);
+                                        rows++;
+                                    }
+                                }
+                                return chunk;
+                            }
+                            return null;
+                        }
+                    });
+                } else if (name.equals("createStatement")) {
+                    return proxy(Statement.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("executeQuery")) {
+                                int rows = 0;
+                                all.beforeFirst();
+                                while (all.next()) {
+                                    rows++;
+                                }
+                                MockJDBCResultSet count = new MockJDBCResultSet(1);
+                                count.addRow(new Object[] { rows });
+                                return count;
+                            }
+                            return null;
+                        }
+                    });
+                } else if (name.equals("getMetaData")) {
+                    return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("getPrimaryKeys")) {
+                                MockJDBCResultSet keys = new MockJDBCResultSet(1);
+                                keys.setColumnName(1, "COLUMN_NAME");
+                                keys.addRow(new Object[] { "id" });
+                                return keys;
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testChunkedCopyByPrimaryKey() throws Exception {
+        DataMover mover = new DataMover(dstCon, keyedSource(rs));
+        mover.setBatchSize(4);
+        mover.setChunkSize(10);
+        assertEquals(25, mover.copyTableInChunks("DEST", "SRC", null));
+        checkInserted();
+        // three chunks, plus the final commit
+        assertEquals(4, dst.commits);
+        assertEquals(Integer.valueOf(25), mover.getJobSize());
+        assertEquals(25, mover.getProgress());
+        assertTrue(mover.isFinished());
+        TableCopyCheckpoint checkpoint = mover.getLastCheckpoint();
+        assertEquals(Arrays.asList("id"), checkpoint.getKeyColumns());
+        assertEquals(24, ((Number) checkpoint.getLastKey()[0]).intValue());
+    }
+
+    public void testResumeFromSavedCheckpoint() throws Exception {
+        File file = File.createTempFile("checkpoint", ".ser");
+        try {
+            dst.failAtBatch = 4;
+            DataMover mover = new DataMover(dstCon, keyedSource(rs));
+            mover.setBatchSize(4);
+            mover.setChunkSize(12);
+            mover.setCheckpointFile(file);
+            try {
+                mover.copyTableInChunks("DEST", "SRC", null);
+                fail("The fifth batch should have failed");
+            } catch (RuntimeException ex) {
+                // expected
+            }
+            assertEquals(12, dst.inserted.size());
+
+            // pretend a chunk was committed just before the process died
+            dst.inserted.add(Arrays.<Object>asList(12, null, null, null));
+
+            dst.failAtBatch = -1;
+            TableCopyCheckpoint checkpoint = TableCopyCheckpoint.load(file);
+            assertEquals(12, checkpoint.getRowsCopied());
+            DataMover resumed = new DataMover(dstCon, keyedSource(rs));
+            resumed.setChunkSize(12);
+            assertEquals(25, resumed.copyTableInChunks("DEST", "SRC", checkpoint));
+            assertEquals(13, resumed.getLastCopyStats().getRowCount());
+            checkInserted();
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testResumeRejectsCheckpointForOtherTables() throws Exception {
+        TableCopyCheckpoint checkpoint = new TableCopyCheckpoint("SRC", "DEST",
+                Arrays.asList("id"), new Object[] { 12 }, 12);
+        DataMover mover = new DataMover(dstCon, keyedSource(rs));
+        try {
+            mover.copyTableInChunks("DEST", "OTHER_SRC", checkpoint);
+            fail("A checkpoint from another source table should be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            mover.copyTableInChunks("OTHER_DEST", "SRC", checkpoint);
+            fail("A checkpoint for another destination table should be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertTrue(dst.inserted.isEmpty());
+    }
+
+    public void testLoadFallsBackToCheckpointBeingReplaced() throws Exception {
+        File file = File.createTempFile("checkpoint", ".ser");
+        File backup = new File(file.getPath() + ".bak");
+        try {
+            new TableCopyCheckpoint("SRC", "DEST", Arrays.asList("id"), new Object[] { 12 }, 12).save(file);
+            // the process died after moving the old checkpoint aside
+            assertTrue(file.renameTo(backup));
+            assertEquals(12, TableCopyCheckpoint.load(file).getRowsCopied());
+
+            new TableCopyCheckpoint("SRC", "DEST", Arrays.asList("id"), new Object[] { 20 }, 20).save(file);
+            assertEquals(20, TableCopyCheckpoint.load(file).getRowsCopied());
+        } finally {
+            file.delete();
+            backup.delete();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class DelayedWebResultSetTest extends TestCase {
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+                DelayedWebResultSetTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private int queries;
+
+    /**
+     * A stand-in connection whose statements count their queries and
+     * return one row with one column.
+     */
+    private final Connection connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getMetaData")) {
+                return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getURL")) return "jdbc:test";
+                        if (method.getName().equals("getUserName")) return "tester";
+                        return null;
+                    }
+                });
+            } else if (method.getName().equals("createStatement")) {
+                return proxy(Statement.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("executeQuery")) {
+                            queries++;
+                            MockJDBCResultSet rs = new MockJDBCResultSet(1);
+                            rs.addRow(new Object[] { "value" });
+                            return rs;
+                        }
+                        return null;
+                    }
+                });
+            }
+            return null;
+        }
+    });
+
+    /**
+     * Overrides the cache hooks the way a subclass that copies or filters
+     * its results would, and keeps its results in its own cache.
+     */
+    private static class HookedResultSet extends DelayedWebResultSet {
+        final QueryResultCache cache;
+        final List<String> calls;
+
+        HookedResultSet(QueryResultCache cache, List<String> calls) {
+            super(1, "select value from t");
+            this.cache = cache;
+            this.calls = calls;
+        }
+
+        @Override
+        public QueryResultCache getQueryResultCache() {
+            return cache;
+        }
+
+        @Override
+        protected CachedRowSet getCachedResult(String key) throws SQLException {
+            calls.add("get");
+            return super.getCachedResult(key);
+        }
+
+        @Override
+        protected CachedRowSet addResultsToCache(String key, CachedRowSet results) throws SQLException {
+            calls.add("add");
+            return super.addResultsToCache(key, results);
+        }
+    }
+
+    public void testSubclassCacheHooksAreUsed() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        List<String> calls = new ArrayList<String>();
+
+        HookedResultSet first = new HookedResultSet(cache, calls);
+        first.execute(connection);
+        assertFalse(first.isFromCache());
+        assertEquals(1, queries);
+        assertEquals(1, cache.size());
+
+        HookedResultSet second = new HookedResultSet(cache, calls);
+        second.execute(connection);
+        assertTrue(second.isFromCache());
+        assertEquals(1, queries);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("get");
+        expected.add("add");
+        expected.add("get");
+        assertEquals(expected, calls);
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.dbcp.ConnectionFactory;
+
+public class InstrumentedConnectionPoolTest extends TestCase {
+
+    /**
+     * Makes stand-in connections and counts the validation queries run on
+     * them.
+     */
+    private static class CountingFactory implements ConnectionFactory {
+        int connections;
+        int validations;
+
+        public Connection createConnection() throws SQLException {
+            connections++;
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                boolean closed;
+                boolean autoCommit = true;
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals("createStatement")) {
+                        return proxy(Statement.class, new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                if (method.getName().equals("executeQuery")) {
+                                    validations++;
+                                    return proxy(ResultSet.class, new InvocationHandler() {
+                                        public Object invoke(Object proxy, Method method, Object[] args) {
+                                            return method.getName().equals("next") ? true : null;
+                                        }
+                                    });
+                                }
+                                return null;
+                            }
+                        });
+                    } else if (name.equals("isClosed")) {
+                        return closed;
+                    } else if (name.equals("close")) {
+                        closed = true;
+                    } else if (name.equals("getAutoCommit")) {
+                        return autoCommit;
+                    } else if (name.equals("setAutoCommit")) {
+                        autoCommit = (Boolean) args[0];
+                    } else if (name.equals("isReadOnly") || name.equals("getWarnings")) {
+                        return name.equals("isReadOnly") ? false : null;
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+                InstrumentedConnectionPoolTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private CountingFactory factory;
+    private ConnectionPoolSettings settings;
+
+    @Override
+    protected void setUp() throws Exception {
+        factory = new CountingFactory();
+        settings = new ConnectionPoolSettings();
+        settings.setMaxActive(2);
+        settings.setMaxWaitMillis(50);
+        settings.setValidationQuery("select 1");
+        settings.setTimeBetweenEvictionRunsMillis(0);
+    }
+
+    public void testReusesConnectionsAndCountsPeak() throws Exception {
+        InstrumentedConnectionPool pool = new InstrumentedConnectionPool("test", factory, settings, false);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        assertEquals(2, pool.getNumActive());
+        a.close();
+        b.close();
+        pool.getConnection().close();
+
+        assertEquals(2, factory.connections);
+        ConnectionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(3, metrics.getBorrowCount());
+        assertEquals(2, metrics.getPeakActive());
+        assertEquals(0, metrics.getActiveCount());
+        assertEquals(2, metrics.getIdleCount());
+        long total = 0;
+        for (long count : metrics.getBorrowTimeHistogram()) {
+            total += count;
+        }
+        assertEquals(3, total);
+        pool.close();
+    }
+
+    public void testExhaustedPoolWaitsThenTimesOut() throws Exception {
+        InstrumentedConnectionPool pool = new InstrumentedConnectionPool("test", factory, settings, false);
+        Connection a = pool.getConnection();
+        pool.getConnection();
+        long start = System.currentTimeMillis();
+        try {
+            pool.getConnection();
+            fail("The pool should have been exhausted");
+        } catch (SQLTimeoutException ex) {
+            assertTrue(ex.getMessage().startsWith("Timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        assertEquals(1, pool.getMetrics().getTimeoutCount());
+        assertTrue(pool.getMetrics().getMaxWaitMillis() >= 40);
+
+        // a connection returned while waiting is handed to the waiter
+        settings.setMaxWaitMillis(5000);
+        final InstrumentedConnectionPool waiting = new InstrumentedConnectionPool("test", factory, settings, false);
+        final Connection held = waiting.getConnection();
+        waiting.getConnection();
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    held.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }.start();
+        waiting.getConnection();
+        assertEquals(0, waiting.getMetrics().getTimeoutCount());
+        a.close();
+    }
+
+    public void testValidatesOnlyIdleConnections() throws Exception {
+        settings.setValidationIdleMillis(60000);
+        InstrumentedConnectionPool pool = new InstrumentedConnectionPool("test", factory, settings, false);
+        for (int i = 0; i < 5; i++) {
+            pool.getConnection().close();
+        }
+        assertEquals(0, factory.validations);
+
+        settings.setValidationIdleMillis(0);
+        pool = new InstrumentedConnectionPool("test", factory, settings, false);
+        for (int i = 0; i < 5; i++) {
+            pool.getConnection().close();
+        }
+        assertEquals(5, factory.validations);
+    }
+
+    public void testSettingsFromDataSource() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.put(ConnectionPoolSettings.POOL_MAX_ACTIVE, "20");
+        ds.put(ConnectionPoolSettings.POOL_MAX_WAIT, "not a number");
+        ConnectionPoolSettings read = ConnectionPoolSettings.forDataSource(ds, settings);
+        assertEquals(20, read.getMaxActive());
+        assertEquals(50, read.getMaxWaitMillis());
+        assertEquals("select 1", read.getValidationQuery());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class QueryResultCacheTest extends TestCase {
+
+    /**
+     * Makes a row set with the given number of rows, each holding a
+     * 100-character string.
+     */
+    private static CachedRowSet rows(int count) throws SQLException {
+        MockJDBCResultSet rs = new MockJDBCResultSet(1);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            value.append('x');
+        }
+        for (int i = 0; i < count; i++) {
+            rs.addRow(new Object[] { value.toString() });
+        }
+        CachedRowSet crs = new CachedRowSet();
+        crs.populate(rs);
+        return crs;
+    }
+
+    /**
+     * Counts its loads, and can be made to wait until released.
+     */
+    private static class CountingLoader implements QueryResultCache.Loader {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release;
+        final int rowCount;
+
+        CountingLoader(int rowCount, CountDownLatch release) {
+            this.rowCount = rowCount;
+            this.release = release;
+        }
+
+        public CachedRowSet load() throws SQLException {
+            loads.incrementAndGet();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new SQLException("interrupted");
+                }
+            }
+            return rows(rowCount);
+        }
+    }
+
+    public void testEntriesExpire() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        CountingLoader loader = new CountingLoader(1, null);
+        CachedRowSet first = cache.get("q", 50, 0, loader, null);
+        assertSame(first, cache.get("q", 50, 0, loader, null));
+        assertEquals(1, loader.loads.get());
+        Thread.sleep(80);
+        assertNull(cache.getIfPresent("q"));
+        assertNotSame(first, cache.get("q", 50, 0, loader, null));
+        assertEquals(2, loader.loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(10, 0);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingLoader loader = new CountingLoader(3, release);
+        final List<CachedRowSet> results = new ArrayList<CachedRowSet>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        CachedRowSet crs = cache.get("q", 0, 0, loader, null);
+                        synchronized (results) {
+                            results.add(crs);
+                        }
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+        while (cache.getMissCount() + cache.getHitCount() < 8) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(1, loader.loads.get());
+        assertEquals(8, results.size());
+        for (CachedRowSet crs : results) {
+            assertSame(results.get(0), crs);
+        }
+    }
+
+    public void testFailedLoadIsNotCached() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        QueryResultCache.Loader failing = new QueryResultCache.Loader() {
+            public CachedRowSet load() throws SQLException {
+                throw new SQLException("table not found");
+            }
+        };
+        try {
+            cache.get("q", 0, 0, failing, null);
+            fail("The load should have failed");
+        } catch (SQLException e) {
+            assertEquals("table not found", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+        CountingLoader loader = new CountingLoader(1, null);
+        cache.get("q", 0, 0, loader, null);
+        assertEquals(1, loader.loads.get());
+    }
+
+    public void testEvictsByWeight() throws Exception {
+        long weight = rows(100).estimateSize();
+        QueryResultCache cache = new QueryResultCache(10, weight * 2 + weight / 2);
+        cache.put("a", rows(100), 0);
+        cache.put("b", rows(100), 0);
+        cache.getIfPresent("a");
+        cache.put("c", rows(100), 0);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getIfPresent("a"));
+        assertNull("b was least recently used", cache.getIfPresent("b"));
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+
+        cache.put("huge", rows(1000), 0);
+        assertNull("a result heavier than the whole cache is not kept", cache.getIfPresent("huge"));
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Makes a row set with the given number of rows that spills all but
+     * the first few of them to a file in the given directory.
+     */
+    private static CachedRowSet spilledRows(int count, File spillDirectory) throws SQLException {
+        MockJDBCResultSet rs = new MockJDBCResultSet(1);
+        for (int i = 0; i < count; i++) {
+            rs.addRow(new Object[] { "row " + i });
+        }
+        CachedRowSet crs = new CachedRowSet();
+        crs.setSpillThreshold(100);
+        crs.setSpillDirectory(spillDirectory);
+        crs.populate(rs);
+        return crs;
+    }
+
+    public void testDroppedResultsReleaseTheirSpillFiles() throws Exception {
+        File spillDirectory = File.createTempFile("cache-test", "");
+        assertTrue(spillDirectory.delete());
+        assertTrue(spillDirectory.mkdir());
+        try {
+            QueryResultCache cache = new QueryResultCache(1, 0);
+            CachedRowSet spilled = spilledRows(100, spillDirectory);
+            cache.put("a", spilled, 0);
+            assertTrue(spilled.getSpillFileSize() > 0);
+            assertTrue("spilled bytes count towards the weight",
+                    cache.getWeight() >= spilled.getSpillFileSize() + spilled.estimateSize());
+
+            CachedRowSet reader = cache.getIfPresent("a");
+            cache.remove("a");
+            assertEquals("a reader is still using the file", 1, spillDirectory.listFiles().length);
+            assertEquals(100, reader.size());
+            reader.releaseSpillFile();
+            assertEquals(0, spillDirectory.listFiles().length);
+
+            cache.put("b", spilledRows(100, spillDirectory), 0);
+            cache.put("c", spilledRows(100, spillDirectory), 0);
+            assertEquals("the evicted result's file is deleted", 1, spillDirectory.listFiles().length);
+            cache.clear();
+            assertEquals(0, spillDirectory.listFiles().length);
+        } finally {
+            for (File f : spillDirectory.listFiles()) {
+                f.delete();
+            }
+            spillDirectory.delete();
+        }
+    }
+
+    public void testServesStaleWhileRefreshing() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        CountingLoader loader = new CountingLoader(1, null);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingLoader refresher = new CountingLoader(2, release);
+        CachedRowSet stale = cache.get("q", 30, 10000, loader, refresher);
+        Thread.sleep(50);
+
+        assertSame(stale, cache.get("q", 30, 10000, loader, refresher));
+        assertSame(stale, cache.get("q", 30, 10000, loader, refresher));
+        assertEquals(2, cache.getStaleHitCount());
+        release.countDown();
+        for (int i = 0; i < 100 && cache.getIfPresent("q") == null; i++) {
+            Thread.sleep(10);
+        }
+        CachedRowSet fresh = cache.getIfPresent("q");
+        assertNotNull(fresh);
+        assertEquals(2, fresh.size());
+        assertEquals("one refresh at a time", 1, refresher.loads.get());
+        assertEquals(1, loader.loads.get());
+    }
+}
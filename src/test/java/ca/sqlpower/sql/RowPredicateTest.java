@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class RowPredicateTest extends TestCase {
+
+    /**
+     * Counts the values read with getObject().
+     */
+    private static class CountingResultSet extends MockJDBCResultSet {
+        int objectReads;
+
+        CountingResultSet(int columns) throws SQLException {
+            super(columns);
+        }
+
+        @Override
+        public Object getObject(int columnIndex) throws SQLException {
+            objectReads++;
+            return super.getObject(columnIndex);
+        }
+    }
+
+    private CountingResultSet rs;
+
+    @Override
+    protected void setUp() throws Exception {
+        rs = new CountingResultSet(3);
+        rs.setColumnName(1, "id");
+        rs.getMetaData().setColumnType(1, Types.INTEGER);
+        rs.setColumnName(2, "name");
+        rs.getMetaData().setColumnType(2, Types.VARCHAR);
+        rs.setColumnName(3, "amount");
+        rs.getMetaData().setColumnType(3, Types.DOUBLE);
+        for (int i = 0; i < 3000; i++) {
+            rs.addRow(new Object[] { i, "name" + (i % 10), i % 3 == 0 ? null : Double.valueOf(i / 2.0) });
+        }
+    }
+
+    private static List<Integer> ids(CachedRowSet crs) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        crs.beforeFirst();
+        while (crs.next()) {
+            ids.add(crs.getInt(1));
+        }
+        return ids;
+    }
+
+    public void testPushdownSkipsRejectedRows() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populate(rs, RowPredicate.lessThan(1, 5));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), ids(crs));
+        // the numeric condition is read with getDouble(), so only kept rows are boxed
+        assertEquals(5 * 3, rs.objectReads);
+    }
+
+    public void testPopulateColumns() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populateColumns(rs, RowPredicate.equalTo(2, "NAME3"), 3, 1);
+        assertEquals(2, crs.getMetaData().getColumnCount());
+        assertEquals("AMOUNT", crs.getMetaData().getColumnName(1));
+        assertEquals(300, crs.size());
+        crs.absolute(2);
+        assertEquals(13, crs.getInt(2));
+        assertEquals(6.5, crs.getDouble(1));
+    }
+
+    public void testPredicateTreeMatchesRowFilter() throws Exception {
+        RowPredicate p = RowPredicate.or(
+                RowPredicate.and(RowPredicate.between(1, 10, 20), RowPredicate.isNotNull(3)),
+                RowPredicate.matches(2, Pattern.compile("name7")),
+                RowPredicate.not(RowPredicate.lessThan(1, 2990)));
+        CachedRowSet all = new CachedRowSet();
+        all.populate(rs);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++) {
+            if ((i >= 10 && i <= 20 && i % 3 != 0) || i % 10 == 7 || i >= 2990) {
+                expected.add(i);
+            }
+        }
+
+        CachedRowSet pushed = new CachedRowSet();
+        pushed.populate(rs, p);
+        assertEquals(expected, ids(pushed));
+
+        List<Integer> selected = new ArrayList<Integer>();
+        for (int row : all.select(p)) {
+            selected.add(row);
+        }
+        assertEquals(expected, selected);
+
+        int passed = 0;
+        for (int row = 1; row <= all.size(); row++) {
+            if (all.wouldPass(row, p)) {
+                passed++;
+            }
+        }
+        assertEquals(expected.size(), passed);
+    }
+
+    public void testColumnarSelectAndView() throws Exception {
+        CachedRowSet columnar = new CachedRowSet();
+        columnar.setColumnarStorage(true);
+        columnar.populate(rs);
+
+        CachedRowSet view = columnar.filteredView(
+                RowPredicate.and(RowPredicate.greaterThan(3, 1490.0), RowPredicate.isNotNull(2)));
+        assertEquals(Arrays.asList(2981, 2983, 2984, 2986, 2987, 2989, 2990, 2992, 2993, 2995, 2996, 2998, 2999),
+                ids(view));
+        assertEquals(3000, columnar.size());
+    }
+
+    public void testPlainFilterStillSeesWholeRow() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populateColumns(rs, new RowFilter() {
+            public boolean acceptsRow(Object[] row) {
+                return row[2] == null && ((Integer) row[0]).intValue() < 10;
+            }
+        }, 1);
+        assertEquals(Arrays.asList(0, 3, 6, 9), ids(crs));
+    }
+}
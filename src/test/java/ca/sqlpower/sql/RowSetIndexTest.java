@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class RowSetIndexTest extends TestCase {
+
+    private CachedRowSet crs;
+
+    @Override
+    protected void setUp() throws Exception {
+        MockJDBCResultSet rs = new MockJDBCResultSet(3);
+        rs.setColumnName(1, "schema");
+        rs.getMetaData().setColumnType(1, Types.VARCHAR);
+        rs.setColumnName(2, "table");
+        rs.getMetaData().setColumnType(2, Types.VARCHAR);
+        rs.setColumnName(3, "size");
+        rs.getMetaData().setColumnType(3, Types.NUMERIC);
+
+        // deliberately not grouped by table
+        rs.addRow(new Object[] { "A", "T1", new BigDecimal(10) });
+        rs.addRow(new Object[] { "B", "T2", new BigDecimal(5) });
+        rs.addRow(new Object[] { "A", "T2", null });
+        rs.addRow(new Object[] { "A", "T1", new BigDecimal(30) });
+        rs.addRow(new Object[] { "B", "T1", new BigDecimal(20) });
+        crs = new CachedRowSet();
+        crs.populate(rs);
+    }
+
+    public void testHashLookup() throws Exception {
+        HashRowSetIndex index = crs.getHashIndex(2);
+        assertTrue(Arrays.equals(new int[] { 0, 3, 4 }, index.lookup("T1")));
+        assertTrue(Arrays.equals(new int[] { 1, 2 }, index.lookup("T2")));
+        assertEquals(0, index.lookup("t1").length);
+        assertFalse(index.contains("T3"));
+        assertEquals(Arrays.asList("T1", "T2"), index.getDistinctKeys());
+    }
+
+    public void testHashLookupOnSeveralColumns() throws Exception {
+        HashRowSetIndex index = crs.getHashIndex(1, 2);
+        assertTrue(Arrays.equals(new int[] { 0, 3 }, index.lookup("A", "T1")));
+        assertTrue(Arrays.equals(new int[] { 4 }, index.lookup("B", "T1")));
+        assertEquals(4, index.getDistinctKeyCount());
+    }
+
+    public void testHashLookupMatchesNumbersByValue() throws Exception {
+        HashRowSetIndex index = crs.getHashIndex(3);
+        assertTrue(Arrays.equals(new int[] { 1 }, index.lookup(5)));
+        assertTrue(Arrays.equals(new int[] { 3 }, index.lookup(new BigDecimal("30.00"))));
+        assertTrue(Arrays.equals(new int[] { 2 }, index.lookup((Object) null)));
+    }
+
+    public void testSortedRange() throws Exception {
+        SortedRowSetIndex index = crs.getSortedIndex(3);
+        assertTrue(Arrays.equals(new int[] { 2, 1, 0, 4, 3 }, index.getSortedRows()));
+        assertTrue(Arrays.equals(new int[] { 0, 4 },
+                index.range(new Object[] { 10 }, true, new Object[] { 30 }, false)));
+        assertTrue(Arrays.equals(new int[] { 4, 3 },
+                index.range(new Object[] { 10 }, false, null, false)));
+    }
+
+    public void testSortedPrefixLookup() throws Exception {
+        SortedRowSetIndex index = crs.getSortedIndex(1, 2);
+        assertTrue(Arrays.equals(new int[] { 0, 3, 2 }, index.lookup("a")));
+        assertTrue(Arrays.equals(new int[] { 4 }, index.lookup("B", "T1")));
+    }
+
+    public void testIndexIsDiscardedWhenRowsChange() throws Exception {
+        HashRowSetIndex before = crs.getHashIndex(2);
+        assertSame(before, crs.getHashIndex(2));
+
+        crs.moveToInsertRow();
+        crs.updateObject(1, "C");
+        crs.updateObject(2, "T3");
+        crs.insertRow();
+        crs.moveToCurrentRow();
+
+        HashRowSetIndex after = crs.getHashIndex(2);
+        assertNotSame(before, after);
+        assertTrue(Arrays.equals(new int[] { 5 }, after.lookup("T3")));
+    }
+
+    public void testExtractRows() throws Exception {
+        int[] rows = crs.getHashIndex(2).lookup("T1");
+        CachedRowSet extracted = crs.extractRows(rows, new RowFilter() {
+            public boolean acceptsRow(Object[] row) {
+                return "A".equals(row[0]);
+            }
+        });
+        assertEquals(2, extracted.size());
+        assertEquals(3, extracted.getMetaData().getColumnCount());
+        extracted.next();
+        assertEquals(10, extracted.getInt(3));
+        extracted.next();
+        assertEquals(30, extracted.getInt(3));
+    }
+
+    public void testColumnarIndex() throws Exception {
+        CachedRowSet columnar = new CachedRowSet();
+        columnar.setColumnarStorage(true);
+        columnar.populate(crs);
+        assertTrue(Arrays.equals(new int[] { 0, 3, 4 }, columnar.getHashIndex(2).lookup("T1")));
+        assertTrue(Arrays.equals(new int[] { 2, 1, 0, 4, 3 }, columnar.getSortedIndex(3).getSortedRows()));
+    }
+}
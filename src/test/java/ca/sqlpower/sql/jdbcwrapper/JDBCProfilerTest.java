@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class JDBCProfilerTest extends TestCase {
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+                JDBCProfilerTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Returns a result set with the given number of rows.
+     */
+    private static ResultSet rows(int count) {
+        MockJDBCResultSet rs = new MockJDBCResultSet(1);
+        for (int i = 0; i < count; i++) {
+            rs.addRow(new Object[] { i });
+        }
+        return rs;
+    }
+
+    /**
+     * A stand-in connection whose queries each return three rows, and whose
+     * statements fail on SQL containing "bad".
+     */
+    private final Connection connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            InvocationHandler statement = new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (args != null && args.length > 0 && String.valueOf(args[0]).contains("bad")) {
+                        throw new SQLException("bad SQL");
+                    }
+                    if (method.getName().equals("executeQuery")) return rows(3);
+                    if (method.getName().equals("executeUpdate")) return 1;
+                    return null;
+                }
+            };
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class, statement);
+            } else if (name.equals("prepareStatement")) {
+                return proxy(PreparedStatement.class, statement);
+            } else if (name.equals("getMetaData")) {
+                return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getName().equals("getTables") ? rows(2) : null;
+                    }
+                });
+            }
+            return null;
+        }
+    });
+
+    @Override
+    protected void setUp() throws Exception {
+        JDBCProfiler.reset();
+    }
+
+    private static CallStatistics find(List<CallStatistics> stats, String name) {
+        for (CallStatistics s : stats) {
+            if (s.getName().equals(name)) return s;
+        }
+        fail("No statistics for " + name + " in " + stats);
+        return null;
+    }
+
+    public void testFingerprint() throws Exception {
+        assertEquals("SELECT * FROM t1 WHERE a = ? AND b = -? AND c IN (?)",
+                JDBCProfiler.fingerprint("SELECT *\n  FROM t1 WHERE a = 'it''s'  AND b = -12.5 AND c IN (1, 2,3) "));
+        assertEquals("select \"col 1\" from t where x > ?",
+                JDBCProfiler.fingerprint("select \"col 1\" from t where x > 42"));
+        assertEquals(JDBCProfiler.fingerprint("select * from t where id = 1"),
+                JDBCProfiler.fingerprint("select * from t where id = 99999"));
+    }
+
+    public void testStatementsGroupedByFingerprint() throws Exception {
+        Connection con = new ProfilingConnectionDecorator(connection);
+        Statement stmt = con.createStatement();
+        for (int i = 0; i < 4; i++) {
+            ResultSet rs = stmt.executeQuery("select * from t where id = " + i);
+            while (rs.next()) { /* read them all */ }
+        }
+        stmt.executeUpdate("delete from t where id = 7");
+        try {
+            stmt.executeUpdate("bad delete from t where id = 8");
+            fail("The statement should have failed");
+        } catch (SQLException expected) {
+            // expected
+        }
+        stmt.close();
+
+        List<CallStatistics> stats = JDBCProfiler.getStatementStatistics();
+        CallStatistics select = find(stats, "select * from t where id = ?");
+        assertEquals(4, select.getCallCount());
+        assertEquals(12, select.getRowCount());
+        assertEquals(1, find(stats, "delete from t where id = ?").getCallCount());
+        assertEquals(1, find(stats, "bad delete from t where id = ?").getFailureCount());
+
+        long total = 0;
+        for (long count : select.getHistogram()) {
+            total += count;
+        }
+        assertEquals(4, total);
+    }
+
+    public void testPreparedStatementAndMetaData() throws Exception {
+        Connection con = new ProfilingConnectionDecorator(connection);
+        PreparedStatement ps = con.prepareStatement("select * from t where id = ?");
+        ps.setInt(1, 1);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) { /* read them all */ }
+        ps.executeQuery();
+        assertSame(ps, rs.getStatement());
+
+        DatabaseMetaData dbmd = con.getMetaData();
+        assertSame(con, dbmd.getConnection());
+        dbmd.getTables(null, null, "%", null);
+        dbmd.getTables(null, null, "%", null);
+
+        CallStatistics select = find(JDBCProfiler.getStatementStatistics(), "select * from t where id = ?");
+        assertEquals(2, select.getCallCount());
+        assertEquals(3, select.getRowCount());
+        assertEquals(2, find(JDBCProfiler.getMetaDataStatistics(), "getTables").getCallCount());
+
+        // snapshots do not change, and reset starts over
+        JDBCProfiler.reset();
+        ps.executeQuery();
+        assertEquals(2, select.getCallCount());
+        assertEquals(1, find(JDBCProfiler.getStatementStatistics(), "select * from t where id = ?").getCallCount());
+        assertTrue(JDBCProfiler.getMetaDataStatistics().isEmpty());
+    }
+}
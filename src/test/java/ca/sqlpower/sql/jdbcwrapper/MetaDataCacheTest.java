@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.jdbcwrapper.MetaDataCache.Loader;
+import ca.sqlpower.sql.jdbcwrapper.MetaDataCache.Policy;
+import ca.sqlpower.sql.jdbcwrapper.MetaDataCache.Weigher;
+
+public class MetaDataCacheTest extends TestCase {
+
+    /**
+     * Weighs a string by its length.
+     */
+    private static final Weigher<String> LENGTH = new Weigher<String>() {
+        public long weigh(String value) {
+            return value.length();
+        }
+    };
+
+    public void testEvictsLeastRecentlyUsedToStayUnderWeight() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 10, LENGTH);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cccc");
+
+        assertEquals("aaaa", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getWeightedSize());
+        assertEquals(1, cache.getStats().getTotalEvicted());
+        assertEquals(3, cache.getStats().getTotalHits());
+        assertEquals(1, cache.getStats().getTotalMisses());
+    }
+
+    public void testValueHeavierThanCacheIsNotKept() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 10, LENGTH);
+        cache.put("a", "aaaa");
+        cache.put("big", "this is far too long");
+        assertNull(cache.get("big"));
+        assertEquals("aaaa", cache.get("a"));
+    }
+
+    public void testReplacingValueAdjustsWeight() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 10, LENGTH);
+        cache.put("a", "aaaaaaaa");
+        cache.put("a", "aa");
+        assertEquals(2, cache.getWeightedSize());
+        assertEquals(0, cache.getStats().getTotalEvicted());
+    }
+
+    public void testMaxMembers() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 1000, LENGTH);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        cache.setMaxMembers(2);
+        assertEquals(2, cache.size());
+        assertFalse(cache.containsKey("a"));
+    }
+
+    public void testStaleEntriesAreDiscarded() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 1000, LENGTH);
+        cache.put("a", "a");
+        long inserted = System.currentTimeMillis();
+        assertEquals("a", cache.get("a", inserted - 1000));
+        assertNull(cache.get("a", inserted + 1000));
+        assertFalse(cache.containsKey("a"));
+        assertEquals(1, cache.getStats().getTotalExpired());
+    }
+
+    public void testTimeToLive() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 1000, LENGTH);
+        cache.setTimeToLive(1);
+        cache.put("a", "a");
+        Thread.sleep(20);
+        assertNull(cache.get("a"));
+    }
+
+    public void testTinyLfuKeepsPopularEntries() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.TINY_LFU, 10, LENGTH);
+        cache.put("hot", "hhhhhh");
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        cache.put("cold", "cccccc");
+        assertEquals("hhhhhh", cache.get("hot"));
+        assertNull(cache.get("cold"));
+
+        // once the newcomer has been asked for as often, it gets in
+        for (int i = 0; i < 10; i++) {
+            cache.get("cold");
+        }
+        cache.put("cold", "cccccc");
+        assertEquals("cccccc", cache.get("cold"));
+        assertFalse(cache.containsKey("hot"));
+    }
+
+    /**
+     * An entry turned away must not cost the cache the entries that would
+     * have made room for it.
+     */
+    public void testRejectedEntryEvictsNothing() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.TINY_LFU, 10, LENGTH);
+        cache.put("cold", "cccc");
+        cache.put("hot", "hhhh");
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        // needs both entries gone, and the second one is more popular
+        cache.put("new", "nnnnnnnn");
+        assertFalse(cache.containsKey("new"));
+        assertTrue(cache.containsKey("cold"));
+        assertTrue(cache.containsKey("hot"));
+        assertEquals(8, cache.getWeightedSize());
+    }
+
+    public void testPolicyForName() throws Exception {
+        assertEquals(Policy.LRU, Policy.forName(null));
+        assertEquals(Policy.TINY_LFU, Policy.forName("tiny_lfu"));
+        assertEquals(Policy.LRU, Policy.forName("no such policy"));
+    }
+
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        final MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 1000, LENGTH);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Loader<String> loader = new Loader<String>() {
+            public String load() throws SQLException {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new SQLException(ex);
+                }
+                return "loaded";
+            }
+        };
+        final String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        results[n] = cache.get("a", 0, loader);
+                    } catch (SQLException ex) {
+                        results[n] = ex.toString();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        while (loads.get() == 0) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, loads.get());
+        for (String result : results) {
+            assertEquals("loaded", result);
+        }
+        assertEquals("loaded", cache.get("a"));
+    }
+
+    public void testFailedLoadIsNotCached() throws Exception {
+        MetaDataCache<String, String> cache = new MetaDataCache<String, String>(Policy.LRU, 1000, LENGTH);
+        try {
+            cache.get("a", 0, new Loader<String>() {
+                public String load() throws SQLException {
+                    throw new SQLException("no database");
+                }
+            });
+            fail("load should have failed");
+        } catch (SQLException ex) {
+            assertEquals("no database", ex.getMessage());
+        }
+        assertEquals("second", cache.get("a", 0, new Loader<String>() {
+            public String load() {
+                return "second";
+            }
+        }));
+    }
+}
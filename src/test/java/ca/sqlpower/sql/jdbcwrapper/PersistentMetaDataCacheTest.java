@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.CachedRowSet;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class PersistentMetaDataCacheTest extends TestCase {
+
+    private File dir;
+    private PersistentMetaDataCache cache;
+    private CacheKey key;
+    private CachedRowSet columns;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("pmdc", "");
+        dir.delete();
+        cache = new PersistentMetaDataCache(dir);
+
+        DatabaseMetaData dbmd = (DatabaseMetaData) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getURL")) return "jdbc:test:warehouse";
+                        if (method.getName().equals("getUserName")) return "scott";
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        key = new CacheKey(dbmd, null, "DW");
+
+        MockJDBCResultSet rs = new MockJDBCResultSet(2);
+        rs.setColumnName(1, "table_name");
+        rs.getMetaData().setColumnType(1, Types.VARCHAR);
+        rs.setColumnName(2, "column_name");
+        rs.getMetaData().setColumnType(2, Types.VARCHAR);
+        rs.addRow(new Object[] { "FACT", "ID" });
+        rs.addRow(new Object[] { "FACT", "AMOUNT" });
+        rs.addRow(new Object[] { "DIM", "ID" });
+        columns = new CachedRowSet();
+        columns.populate(rs);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.clear();
+        dir.delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        cache.put("columns", key, "42@t1", columns);
+        CachedRowSet read = cache.get("columns", key, "42@t1", 0);
+        assertNotNull(read);
+        assertEquals(3, read.size());
+        assertEquals("TABLE_NAME", read.getMetaData().getColumnName(1));
+        assertTrue(java.util.Arrays.equals(new int[] { 0, 1 }, read.getHashIndex(1).lookup("FACT")));
+        assertNull(cache.get("keys", key, "42@t1", 0));
+    }
+
+    public void testChangedTokenIsStale() throws Exception {
+        cache.put("columns", key, "42@t1", columns);
+        assertNull(cache.get("columns", key, "43@t2", 0));
+    }
+
+    public void testEntryOlderThanStaleDateIsIgnored() throws Exception {
+        cache.put("columns", key, "42@t1", columns);
+        assertNull(cache.get("columns", key, "42@t1", System.currentTimeMillis() + 1000));
+    }
+
+    public void testCorruptFileIsDiscarded() throws Exception {
+        cache.put("columns", key, "42@t1", columns);
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        assertNull(cache.get("columns", key, "42@t1", 0));
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql.jdbcwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+/**
+ * Tests the prepared statement cache in {@link ConnectionDecorator}.
+ */
+public class StatementCacheTest extends TestCase {
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+                StatementCacheTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private int prepared;
+    private int closed;
+    private int clearedParameters;
+
+    /**
+     * A stand-in connection that counts the statements prepared and closed
+     * on it. Its statements fail on SQL containing "bad".
+     */
+    private final Connection connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("prepareStatement")) {
+                prepared++;
+                final String sql = (String) args[0];
+                return proxy(PreparedStatement.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            closed++;
+                        } else if (name.equals("clearParameters")) {
+                            clearedParameters++;
+                        } else if (name.equals("executeQuery")) {
+                            if (sql.contains("bad")) throw new SQLException("bad SQL");
+                            return new MockJDBCResultSet(1);
+                        }
+                        return null;
+                    }
+                });
+            }
+            return null;
+        }
+    });
+
+    private ConnectionDecorator con;
+
+    @Override
+    protected void setUp() throws Exception {
+        con = new GenericConnectionDecorator(connection);
+        con.setStatementCacheSize(2);
+    }
+
+    public void testReusesClosedStatements() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            PreparedStatement ps = con.prepareStatement("select * from t where id = ?");
+            ps.setInt(1, i);
+            ps.executeQuery();
+            ps.close();
+        }
+        assertEquals(1, prepared);
+        assertEquals(0, closed);
+        assertEquals(5, clearedParameters);
+        assertEquals(1, con.getCachedStatementCount());
+
+        // a different result set type is a different statement
+        con.prepareStatement("select * from t where id = ?",
+                ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+        assertEquals(2, prepared);
+        assertEquals(2, con.getCachedStatementCount());
+    }
+
+    public void testStatementsInUseAreNotShared() throws Exception {
+        PreparedStatement a = con.prepareStatement("select 1");
+        PreparedStatement b = con.prepareStatement("select 1");
+        assertNotSame(a, b);
+        a.close();
+        b.close();
+        assertEquals(2, prepared);
+        assertEquals("only one idle statement is kept per SQL", 1, closed);
+        b.close();
+        assertEquals("closing twice must not close or cache again", 1, closed);
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        con.prepareStatement("select 1").close();
+        con.prepareStatement("select 2").close();
+        con.prepareStatement("select 1").close();
+        con.prepareStatement("select 3").close();
+        assertEquals(2, con.getCachedStatementCount());
+        assertEquals(1, closed);
+
+        con.prepareStatement("select 1").close();
+        assertEquals("select 1 should still have been cached", 3, prepared);
+        con.prepareStatement("select 2").close();
+        assertEquals(4, prepared);
+    }
+
+    public void testChangedOrFailedStatementsAreNotCached() throws Exception {
+        PreparedStatement ps = con.prepareStatement("select 1");
+        ps.setMaxRows(10);
+        ps.close();
+        assertEquals(1, closed);
+
+        ps = con.prepareStatement("bad select");
+        try {
+            ps.executeQuery();
+            fail("The query should have failed");
+        } catch (SQLException expected) {
+            // expected
+        }
+        ps.close();
+        assertEquals(2, closed);
+        assertEquals(0, con.getCachedStatementCount());
+    }
+
+    public void testClosingConnectionClosesCachedStatements() throws Exception {
+        con.prepareStatement("select 1").close();
+        con.prepareStatement("select 2").close();
+        PreparedStatement open = con.prepareStatement("select 3");
+        con.close();
+        assertEquals(2, closed);
+        open.close();
+        assertEquals(3, closed);
+        assertEquals(0, con.getCachedStatementCount());
+    }
+
+    public void testCacheIsOffByDefault() throws Exception {
+        ConnectionDecorator uncached = new GenericConnectionDecorator(connection);
+        assertEquals(0, uncached.getStatementCacheSize());
+        uncached.prepareStatement("select 1").close();
+        uncached.prepareStatement("select 1").close();
+        assertEquals(2, prepared);
+        assertEquals(2, closed);
+        assertEquals(0, uncached.getCachedStatementCount());
+    }
+
+    /**
+     * A caller that keeps a statement after closing it must not be able to
+     * use it while the cache has handed it to someone else.
+     */
+    public void testClosedStatementCannotBeUsed() throws Exception {
+        PreparedStatement first = con.prepareStatement("select * from t where id = ?");
+        first.close();
+        PreparedStatement second = con.prepareStatement("select * from t where id = ?");
+        assertEquals(1, prepared);
+        assertNotSame(first, second);
+        try {
+            first.setInt(1, 42);
+            fail("A closed statement should not be usable");
+        } catch (SQLException expected) {
+            // expected
+        }
+        try {
+            first.executeQuery();
+            fail("A closed statement should not be usable");
+        } catch (SQLException expected) {
+            // expected
+        }
+        second.setInt(1, 1);
+        second.executeQuery();
+        second.close();
+        assertEquals(1, con.getCachedStatementCount());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.CachedRowSet;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class ResultSetTableModelTest extends TestCase {
+
+    private static MockJDBCResultSet rows(int count) {
+        MockJDBCResultSet rs = new MockJDBCResultSet(2);
+        rs.setColumnName(1, "id");
+        rs.setColumnName(2, "name");
+        for (int i = 0; i < count; i++) {
+            rs.addRow(new Object[] { i, "row " + i });
+        }
+        return rs;
+    }
+
+    private int cursorMoves;
+
+    /**
+     * Wraps the given result set so it is not a CachedRowSet, counting the
+     * calls that move its cursor.
+     */
+    private ResultSet countingMoves(final ResultSet rs) {
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("absolute") || name.equals("last") || name.equals("next")) {
+                            cursorMoves++;
+                        }
+                        try {
+                            return method.invoke(rs, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Reads the given cell on the event dispatch thread the way a table
+     * painting it would, returning null if the row isn't known yet.
+     */
+    private static Object paintCell(final ResultSetTableModel model, final int row, final int column)
+            throws Exception {
+        final Object[] value = new Object[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.setPaintingCells(true);
+                try {
+                    value[0] = model.getRowCount() > row ? model.getValueAt(row, column) : null;
+                } finally {
+                    model.setPaintingCells(false);
+                }
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Waits for the given row to arrive while painting.
+     */
+    private static void waitFor(final ResultSetTableModel model, int row) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (paintCell(model, row, 0) != null) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Row " + row + " never arrived");
+    }
+
+    public void testCachedRowSetPages() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populate(rows(1000));
+        ResultSetTableModel model = new ResultSetTableModel(crs, 100, 3);
+        assertEquals(1000, model.getRowCount());
+        assertEquals(2, model.getColumnCount());
+        assertEquals("NAME", model.getColumnName(1));
+        assertEquals(1, model.findColumn("NAME"));
+        for (int row = 0; row < 1000; row += 37) {
+            assertEquals(row, model.getValueAt(row, 0));
+            assertEquals("row " + row, model.getValueAt(row, 1));
+            assertTrue(model.getCachedPageCount() <= 3);
+        }
+        assertEquals("the cursor is left where it was", 0, crs.getRow());
+    }
+
+    public void testOtherResultSetsLoadInBackgroundWhilePainting() throws Exception {
+        ResultSet rs = countingMoves(rows(1000));
+        final ResultSetTableModel model = new ResultSetTableModel(rs, 100, 3);
+        final List<TableModelEvent> events = new ArrayList<TableModelEvent>();
+        model.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                events.add(e);
+            }
+        });
+
+        assertNull(paintCell(model, 0, 1));
+        waitFor(model, 999);
+        assertEquals("row 0", paintCell(model, 0, 1));
+
+        // paint every cell of the first page a few times, which used to take
+        // two cursor moves per cell
+        int movesBefore = cursorMoves;
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.setPaintingCells(true);
+                try {
+                    for (int repaint = 0; repaint < 10; repaint++) {
+                        for (int row = 0; row < 100; row++) {
+                            model.getValueAt(row, 0);
+                            model.getValueAt(row, 1);
+                        }
+                    }
+                } finally {
+                    model.setPaintingCells(false);
+                }
+            }
+        });
+        waitFor(model, 150);
+        assertEquals(150, paintCell(model, 150, 0));
+        assertTrue("Cursor moved " + (cursorMoves - movesBefore) + " times",
+                cursorMoves - movesBefore < 2 * 100 + 5);
+        // one event per page read and one for the count, not one per row
+        assertTrue("Got " + events.size() + " events", events.size() <= 5);
+    }
+
+    /**
+     * Anything but painting, such as an export or a sort, must see every row
+     * straight away.
+     */
+    public void testOtherResultSetsReadRightAwayWhenNotPainting() throws Exception {
+        ResultSet rs = countingMoves(rows(1000));
+        ResultSetTableModel model = new ResultSetTableModel(rs, 100, 3);
+        assertEquals(1000, model.getRowCount());
+        for (int row = 0; row < 1000; row++) {
+            assertEquals(row, model.getValueAt(row, 0));
+        }
+        assertTrue(model.getCachedPageCount() <= 3);
+        assertTrue("Cursor moved " + cursorMoves + " times", cursorMoves < 1000 + 100);
+    }
+
+    /**
+     * A table painting one model must not make another model, such as one
+     * being exported, leave its rows unread.
+     */
+    public void testPaintingOneModelDoesNotDeferAnother() throws Exception {
+        final ResultSetTableModel painted = new ResultSetTableModel(countingMoves(rows(1000)), 100, 3);
+        final ResultSetTableModel other = new ResultSetTableModel(countingMoves(rows(1000)), 100, 3);
+        final Object[] value = new Object[2];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                painted.setPaintingCells(true);
+                try {
+                    value[0] = other.getRowCount();
+                    value[1] = other.getValueAt(500, 1);
+                } finally {
+                    painted.setPaintingCells(false);
+                }
+            }
+        });
+        assertEquals(1000, value[0]);
+        assertEquals("row 500", value[1]);
+    }
+
+    public void testCachedRowSetIsNotReadInBackground() throws Exception {
+        CachedRowSet crs = new CachedRowSet();
+        crs.populate(rows(1000));
+        final ResultSetTableModel model = new ResultSetTableModel(crs, 100, 10);
+        // reading past the middle of a page would read the next one ahead
+        assertEquals(80, paintCell(model, 80, 0));
+        Thread.sleep(50);
+        assertEquals(1, model.getCachedPageCount());
+    }
+
+    public void testDataChangedRereads() throws Exception {
+        final CachedRowSet crs = new CachedRowSet();
+        crs.populate(rows(10));
+        final ResultSetTableModel model = new ResultSetTableModel(crs, 100, 3);
+        assertEquals("row 5", model.getValueAt(5, 1));
+        crs.populate(rows(20));
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.dataChanged();
+            }
+        });
+        assertEquals(20, model.getRowCount());
+        assertEquals("row 15", model.getValueAt(15, 1));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableModel;
+
+import junit.framework.TestCase;
+
+public class TableModelSortDecoratorTest extends TestCase {
+
+    /**
+     * A table of a number column and a string column. The number column
+     * is compared as Comparables.
+     */
+    private static class NumberTableModel extends DefaultTableModel {
+        NumberTableModel() {
+            super(new Object[] { "number", "name" }, 0);
+        }
+
+        @Override
+        public Class<?> getColumnClass(int columnIndex) {
+            return columnIndex == 0 ? Comparable.class : String.class;
+        }
+    }
+
+    private NumberTableModel model;
+    private TableModelSortDecorator sorter;
+    private Random random = new Random(42);
+
+    @Override
+    protected void setUp() throws Exception {
+        model = new NumberTableModel();
+        sorter = new TableModelSortDecorator(model);
+    }
+
+    private void addRows(int count, boolean doubles) {
+        for (int i = 0; i < count; i++) {
+            Object number;
+            if (random.nextInt(10) == 0) {
+                number = null;
+            } else if (doubles) {
+                number = random.nextInt(50) / 4.0;
+            } else {
+                number = random.nextInt(50);
+            }
+            model.addRow(new Object[] { number, "name " + random.nextInt(20) });
+        }
+    }
+
+    /**
+     * Checks the sorter's order against a stable sort of the model rows in
+     * the way the sorter sorts them: nulls first, then by the number column's
+     * values as Comparables, then by the name column's string values.
+     */
+    private void assertSorted(final boolean numberDescending) {
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < model.getRowCount(); i++) {
+            expected.add(i);
+        }
+        Collections.sort(expected, new Comparator<Integer>() {
+            public int compare(Integer r1, Integer r2) {
+                int c = compareValues(model.getValueAt(r1, 0), model.getValueAt(r2, 0));
+                if (c != 0) {
+                    return numberDescending ? -c : c;
+                }
+                return compareValues(model.getValueAt(r1, 1), model.getValueAt(r2, 1));
+            }
+
+            @SuppressWarnings("unchecked")
+            private int compareValues(Object o1, Object o2) {
+                if (o1 == null) {
+                    return o2 == null ? 0 : -1;
+                } else if (o2 == null) {
+                    return 1;
+                }
+                if (o1 instanceof Number && o2 instanceof Number) {
+                    return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+                }
+                return ((Comparable) o1).compareTo(o2);
+            }
+        });
+        assertEquals(model.getRowCount(), sorter.getRowCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("view row " + i, expected.get(i).intValue(), sorter.modelIndex(i));
+        }
+    }
+
+    private void sortByNumberThenName(int numberDirection) {
+        sorter.setSortingStatus(0, numberDirection);
+        sorter.setSortingStatus(1, TableModelSortDecorator.ASCENDING);
+    }
+
+    public void testSortsIntegersAndDoubles() throws Exception {
+        addRows(500, false);
+        sortByNumberThenName(TableModelSortDecorator.ASCENDING);
+        assertSorted(false);
+        sorter.setSortingStatus(0, TableModelSortDecorator.DESCENDING);
+        sorter.setSortingStatus(1, TableModelSortDecorator.ASCENDING);
+        assertSorted(true);
+
+        model.setRowCount(0);
+        addRows(500, true);
+        assertSorted(true);
+
+        sorter.setSortingStatus(0, TableModelSortDecorator.NOT_SORTED);
+        sorter.setSortingStatus(1, TableModelSortDecorator.NOT_SORTED);
+        for (int i = 0; i < model.getRowCount(); i++) {
+            assertEquals(i, sorter.modelIndex(i));
+        }
+    }
+
+    public void testCustomComparator() throws Exception {
+        addRows(200, false);
+        sorter.setColumnComparator(String.class, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return o2.compareTo(o1);
+            }
+        });
+        sorter.setSortingStatus(1, TableModelSortDecorator.ASCENDING);
+        String previous = null;
+        for (int i = 0; i < sorter.getRowCount(); i++) {
+            String name = (String) sorter.getValueAt(i, 1);
+            if (previous != null) {
+                assertTrue(previous + " should sort after " + name, previous.compareTo(name) >= 0);
+            }
+            previous = name;
+        }
+    }
+
+    public void testAppendedRowsAreMergedIn() throws Exception {
+        addRows(300, false);
+        sortByNumberThenName(TableModelSortDecorator.ASCENDING);
+        assertSorted(false);
+        for (int i = 0; i < 5; i++) {
+            addRows(40, false);
+            assertSorted(false);
+        }
+
+        // doubles don't fit the integer keys, so this sorts everything again
+        addRows(40, true);
+        assertSorted(false);
+    }
+
+    public void testLargeModelsSortInBackground() throws Exception {
+        addRows(2000, false);
+        sorter.setBackgroundSortThreshold(100);
+        final AtomicInteger dataChangedEvents = new AtomicInteger();
+        sorter.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                if (e.getFirstRow() == 0 && e.getLastRow() == Integer.MAX_VALUE) {
+                    dataChangedEvents.incrementAndGet();
+                }
+            }
+        });
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                sortByNumberThenName(TableModelSortDecorator.ASCENDING);
+                sorter.getValueAt(0, 0);
+            }
+        });
+        for (int i = 0; i < 200 && !sorter.isSortUpToDate(); i++) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    // let the swap run
+                }
+            });
+        }
+        assertTrue(sorter.isSortUpToDate());
+        assertEquals("one event per sorting status change and one for the swap", 3, dataChangedEvents.get());
+        assertSorted(false);
+    }
+
+    /**
+     * The model can change on the event dispatch thread at any time, so a
+     * background sort must not read it from the sort thread.
+     */
+    public void testBackgroundSortReadsModelOnEventThread() throws Exception {
+        final AtomicInteger offThreadReads = new AtomicInteger();
+        model = new NumberTableModel() {
+            @Override
+            public Object getValueAt(int row, int column) {
+                if (!SwingUtilities.isEventDispatchThread()) {
+                    offThreadReads.incrementAndGet();
+                }
+                return super.getValueAt(row, column);
+            }
+        };
+        sorter = new TableModelSortDecorator(model);
+        sorter.setBackgroundSortThreshold(100);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                addRows(2000, false);
+                sortByNumberThenName(TableModelSortDecorator.ASCENDING);
+                sorter.getValueAt(0, 0);
+            }
+        });
+        for (int i = 0; i < 200 && !sorter.isSortUpToDate(); i++) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    sorter.getValueAt(0, 0);
+                }
+            });
+        }
+        assertTrue(sorter.isSortUpToDate());
+        assertEquals(0, offThreadReads.get());
+    }
+
+    /**
+     * A background sort that fails must be tried again rather than leave the
+     * rows out of order for good.
+     */
+    public void testFailedBackgroundSortIsRetried() throws Exception {
+        addRows(2000, false);
+        sorter.setBackgroundSortThreshold(100);
+        final AtomicInteger failures = new AtomicInteger();
+        sorter.setColumnComparator(String.class, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                if (failures.get() == 0) {
+                    failures.incrementAndGet();
+                    throw new IllegalStateException("first sort fails");
+                }
+                return o1.compareTo(o2);
+            }
+        });
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                sorter.setSortingStatus(1, TableModelSortDecorator.ASCENDING);
+                sorter.getValueAt(0, 0);
+            }
+        });
+        for (int i = 0; i < 200 && !sorter.isSortUpToDate(); i++) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    sorter.getValueAt(0, 0);
+                }
+            });
+        }
+        assertEquals(1, failures.get());
+        assertTrue(sorter.isSortUpToDate());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+public class JarEntryIndexTest extends TestCase {
+
+    private File first;
+    private File second;
+
+    /**
+     * Writes a JAR holding the given entries, each containing its own name
+     * followed by the given suffix.
+     */
+    private static File makeJar(String suffix, String... names) throws Exception {
+        File jar = File.createTempFile("index-test", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        for (String name : names) {
+            out.putNextEntry(new JarEntry(name));
+            out.write((name + suffix).getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        out.close();
+        return jar;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        first = makeJar(" in first", "a/One.class", "shared.properties");
+        second = makeJar(" in second", "a/Two.class", "shared.properties");
+    }
+
+    public void testFirstJarWins() throws Exception {
+        JarEntryIndex index = new JarEntryIndex(Arrays.asList(first.toURI().toURL(), second.toURI().toURL()));
+        assertEquals(3, index.size());
+        assertTrue(index.contains("a/Two.class"));
+        assertFalse(index.contains("a/Three.class"));
+        assertEquals("a/One.class in first", new String(index.readEntry("a/One.class"), "UTF-8"));
+        assertEquals("a/Two.class in second", new String(index.readEntry("a/Two.class"), "UTF-8"));
+        assertEquals("shared.properties in first", new String(index.readEntry("shared.properties"), "UTF-8"));
+        assertNull(index.readEntry("a/Three.class"));
+    }
+
+    public void testFindsEntryInEveryJar() throws Exception {
+        JarEntryIndex index = new JarEntryIndex(Arrays.asList(first.toURI().toURL(), second.toURI().toURL()));
+        List<URL> urls = index.findEntryURLs("shared.properties");
+        assertEquals(2, urls.size());
+        InputStream in = urls.get(1).openStream();
+        byte[] buf = new byte[100];
+        int n = in.read(buf);
+        in.close();
+        assertEquals("shared.properties in second", new String(buf, 0, n, "UTF-8"));
+        assertTrue(index.findEntryURLs("missing").isEmpty());
+    }
+
+    public void testSkipsMissingJars() throws Exception {
+        File missing = new File(first.getParentFile(), "does-not-exist-" + System.nanoTime() + ".jar");
+        JarEntryIndex index = new JarEntryIndex(Arrays.asList(null, missing.toURI().toURL(), second.toURI().toURL()));
+        assertEquals(2, index.size());
+        assertEquals("a/Two.class in second", new String(index.readEntry("a/Two.class"), "UTF-8"));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class ParallelReservoirSamplerTest extends TestCase {
+
+    /**
+     * A partition holding the records first..first+recCount-1.
+     */
+    private static class Partition extends TestingReservoirDataSource {
+        private final int first;
+
+        Partition(int first, int recCount) {
+            super(recCount);
+            this.first = first;
+        }
+
+        @Override
+        public Integer readNextRecord() throws ReservoirDataException {
+            return first + super.readNextRecord();
+        }
+    }
+
+    private ParallelReservoirSampler<Integer> sampler;
+
+    @Override
+    protected void setUp() throws Exception {
+        sampler = new ParallelReservoirSampler<Integer>(3);
+        sampler.setRandomSeed(1234L);
+    }
+
+    public void testSampleIsDistinctAndInRange() throws Exception {
+        Integer[] s = sampler.getSample(Arrays.asList(
+                new Partition(0, 500), new Partition(500, 0), new Partition(500, 300), new Partition(800, 200)), 100);
+        assertEquals(100, s.length);
+        Set<Integer> distinct = new HashSet<Integer>(Arrays.asList(s));
+        assertEquals(100, distinct.size());
+        for (Integer value : s) {
+            assertTrue(value >= 0 && value < 1000);
+        }
+    }
+
+    public void testSampleLargerThanPopulation() throws Exception {
+        Integer[] s = sampler.getSample(Arrays.asList(new Partition(0, 5), new Partition(5, 3)), 20);
+        assertEquals(8, s.length);
+        Arrays.sort(s);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, s[i].intValue());
+        }
+    }
+
+    /**
+     * A partition with a tenth of the records should supply about a tenth of
+     * the sample, even though both partitions fill their own reservoirs.
+     */
+    public void testPartitionsWeightedByPopulation() throws Exception {
+        int fromSmall = 0;
+        for (int i = 0; i < 300; i++) {
+            List<Partition> partitions = new ArrayList<Partition>();
+            partitions.add(new Partition(0, 900));
+            partitions.add(new Partition(900, 100));
+            for (Integer value : sampler.getSample(partitions, 10)) {
+                if (value >= 900) fromSmall++;
+            }
+        }
+        // 300 expected; the standard deviation is about 16
+        assertTrue("The small partition supplied " + fromSmall, fromSmall > 240 && fromSmall < 360);
+    }
+}
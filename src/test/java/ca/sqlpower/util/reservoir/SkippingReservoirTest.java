@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SkippingReservoirTest extends TestCase {
+
+    /**
+     * Counts the records read and the calls to skip.
+     */
+    private static class CountingDataSource extends TestingReservoirDataSource {
+        int reads;
+        int skips;
+
+        CountingDataSource(int recCount) {
+            super(recCount);
+        }
+
+        @Override
+        public Integer readNextRecord() throws ReservoirDataException {
+            reads++;
+            return super.readNextRecord();
+        }
+
+        @Override
+        public void skipRecords(int count) throws ReservoirDataException {
+            skips++;
+            super.skipRecords(count);
+        }
+    }
+
+    private SkippingReservoir<Integer> r;
+
+    @Override
+    protected void setUp() throws Exception {
+        r = new SkippingReservoir<Integer>();
+        r.setRandomSeed(1234L);
+    }
+
+    public void testSampleSmallerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(1000), 50);
+        assertEquals(50, s.length);
+        Set<Integer> distinct = new HashSet<Integer>();
+        for (Integer value : s) {
+            assertTrue("Sample " + value + " outside range 0..999", value >= 0 && value < 1000);
+            distinct.add(value);
+        }
+        assertEquals(50, distinct.size());
+    }
+
+    public void testSampleLargerThanPopulation() throws Exception {
+        Integer[] s = r.getSample(new TestingReservoirDataSource(100), 200);
+        assertEquals(100, s.length);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, s[i].intValue());
+        }
+    }
+
+    public void testEmptyDataSource() throws Exception {
+        assertEquals(0, r.getSample(new TestingReservoirDataSource(0), 10).length);
+        assertEquals(0, r.getSample(new TestingReservoirDataSource(10), 0).length);
+    }
+
+    public void testReadsFewRecords() throws Exception {
+        CountingDataSource ds = new CountingDataSource(1000000);
+        assertEquals(10, r.getSample(ds, 10).length);
+        assertFalse(ds.hasNext());
+        // about n(1 + ln(N/n)) = 125 are expected
+        assertTrue("Read " + ds.reads + " records", ds.reads < 400);
+        assertTrue("at most one skip per gap", ds.skips > 0 && ds.skips <= ds.reads - 10 + 1);
+    }
+
+    /**
+     * Every record should be about as likely to end up in the sample.
+     */
+    public void testUniform() throws Exception {
+        int[] counts = new int[20];
+        for (int i = 0; i < 4000; i++) {
+            for (Integer value : r.getSample(new TestingReservoirDataSource(20), 5)) {
+                counts[value]++;
+            }
+        }
+        // 1000 expected for each; the standard deviation is about 27
+        for (int i = 0; i < counts.length; i++) {
+            assertTrue("Record " + i + " was chosen " + counts[i] + " times",
+                    counts[i] > 880 && counts[i] < 1120);
+        }
+    }
+}
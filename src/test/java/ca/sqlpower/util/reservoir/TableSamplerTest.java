@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2026, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.util.reservoir;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sql.jdbcwrapper.PostgresConnectionDecorator;
+import ca.sqlpower.sql.jdbcwrapper.ProfilingConnectionDecorator;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class TableSamplerTest extends TestCase {
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+                TableSamplerTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static ResultSet rows(int count) {
+        MockJDBCResultSet rs = new MockJDBCResultSet(1);
+        for (int i = 0; i < count; i++) {
+            rs.addRow(new Object[] { i });
+        }
+        return rs;
+    }
+
+    /**
+     * The queries run on the connection, in order.
+     */
+    private final List<String> queries = new ArrayList<String>();
+
+    /**
+     * The number of rows each sampled query returns, in turn. Once they run
+     * out, sampled queries fail.
+     */
+    private final List<Integer> sampledRows = new ArrayList<Integer>();
+
+    private int rollbacks;
+
+    private int savepointRollbacks;
+
+    private boolean autoCommit = true;
+
+    /**
+     * A stand-in connection to a 1000-row table whose statistics say it has
+     * 1000 rows.
+     */
+    private final Connection connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("executeQuery")) return null;
+                        String sql = (String) args[0];
+                        queries.add(sql);
+                        if (sql.contains("SAMPLE")) {
+                            if (sampledRows.isEmpty()) throw new SQLException("syntax error at SAMPLE");
+                            return rows(sampledRows.remove(0));
+                        }
+                        return rows(1000);
+                    }
+                });
+            } else if (name.equals("getMetaData")) {
+                return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getIdentifierQuoteString")) return "\"";
+                        if (name.equals("getIndexInfo")) {
+                            MockJDBCResultSet rs = new MockJDBCResultSet(13);
+                            rs.addRow(new Object[] { null, "S", "T", false, null, null,
+                                    (int) DatabaseMetaData.tableIndexStatistic, 0, null, null, 1000, 10, null });
+                            return rs;
+                        }
+                        return null;
+                    }
+                });
+            } else if (name.equals("rollback")) {
+                if (args == null) {
+                    rollbacks++;
+                } else {
+                    savepointRollbacks++;
+                }
+            } else if (name.equals("getAutoCommit")) {
+                return autoCommit;
+            } else if (name.equals("setAutoCommit")) {
+                autoCommit = (Boolean) args[0];
+            } else if (name.equals("setSavepoint")) {
+                return proxy(Savepoint.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+            }
+            return null;
+        }
+    });
+
+    private JDBCDataSourceType oracle;
+    private TableSampler sampler;
+
+    @Override
+    protected void setUp() throws Exception {
+        oracle = new JDBCDataSourceType();
+        oracle.putProperty(JDBCDataSourceType.TABLE_SAMPLE_CLAUSE, TableSampler.ORACLE_SAMPLE_CLAUSE);
+        SkippingReservoir<Object[]> reservoir = new SkippingReservoir<Object[]>();
+        reservoir.setRandomSeed(1234L);
+        sampler = new TableSampler(reservoir);
+    }
+
+    public void testSamplesInDatabase() throws Exception {
+        sampledRows.add(20);
+        Object[][] sample = sampler.getSample(connection, oracle, null, "S", "T", "*", 10);
+        assertEquals(10, sample.length);
+        assertEquals(1, queries.size());
+        assertEquals("SELECT * FROM \"S\".\"T\" SAMPLE (1.5)", queries.get(0));
+    }
+
+    public void testRetriesWithLargerPercentage() throws Exception {
+        sampledRows.add(5);
+        sampledRows.add(20);
+        assertEquals(10, sampler.getSample(connection, oracle, null, "S", "T", "*", 10).length);
+        assertEquals(2, queries.size());
+        assertEquals("SELECT * FROM \"S\".\"T\" SAMPLE (4.5)", queries.get(1));
+    }
+
+    public void testFallsBackToClientSide() throws Exception {
+        assertEquals(10, sampler.getSample(connection, oracle, null, "S", "T", "*", 10).length);
+        assertEquals(1, rollbacks);
+        assertEquals("SELECT * FROM \"S\".\"T\"", queries.get(queries.size() - 1));
+
+        queries.clear();
+        assertEquals(10, sampler.getSample(connection, new JDBCDataSourceType(), null, "S", "T", "*", 10).length);
+        assertEquals("platforms without a sample clause read every row",
+                "SELECT * FROM \"S\".\"T\"", queries.get(0));
+    }
+
+    /**
+     * A failed sampled query must not roll back work the caller hasn't
+     * committed yet.
+     */
+    public void testFailureKeepsCallersTransaction() throws Exception {
+        autoCommit = false;
+        assertEquals(10, sampler.getSample(connection, oracle, null, "S", "T", "*", 10).length);
+        assertEquals(0, rollbacks);
+        assertEquals(1, savepointRollbacks);
+    }
+
+    public void testPlatformFromDecorator() throws Exception {
+        assertNull(TableSampler.findSampleClause(connection, null));
+        Connection postgres = new ProfilingConnectionDecorator(new PostgresConnectionDecorator(connection));
+        assertEquals(TableSampler.POSTGRES_SAMPLE_CLAUSE, TableSampler.findSampleClause(postgres, null));
+        assertEquals(TableSampler.ORACLE_SAMPLE_CLAUSE, TableSampler.findSampleClause(postgres, oracle));
+    }
+
+    public void testSamplePercent() throws Exception {
+        assertNull(sampler.samplePercent(10, 10));
+        assertNull("unknown row count", sampler.samplePercent(10, 0));
+        assertEquals(new BigDecimal("0.000001"), sampler.samplePercent(1, Long.MAX_VALUE));
+        assertEquals(new BigDecimal("15"), sampler.samplePercent(100, 1000));
+    }
+}
@@ -24,7 +24,7 @@ package ca.sqlpower.util.reservoir;
  * The numeric value of each record is its position (the first record
  * has value 0, next has value 1, and so on).
  */
-public class TestingReservoirDataSource implements ReservoirDataSource<Integer> {
+public class TestingReservoirDataSource implements CountingReservoirDataSource<Integer> {
 
     /**
      * The total number of records in this data source.
@@ -59,4 +59,8 @@ public class TestingReservoirDataSource implements ReservoirDataSource<Integer>
         currentRecord += count;
     }
 
+    public long getRecordCount() {
+        return Math.min(currentRecord, recCount);
+    }
+
 }